@@ -153,6 +153,7 @@ public class HardwareModuleWorker extends AbstractModuleWorker {
                 tokenInfo.getLabel().trim(), // PKCS11 gives us only 32 bytes.
                 module.isPinVerificationPerSigning(),
                 module.isBatchSigningEnabled(),
+                module.getSigningSessionPoolSize(),
                 module.getSignMechanismName(),
                 module.getPrivKeyAttributes(),
                 module.getPubKeyAttributes()
@@ -0,0 +1,205 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.State;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.TokenException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+import static iaik.pkcs.pkcs11.Token.SessionType.SERIAL_SESSION;
+
+/**
+ * Pool of PKCS#11 sessions used for signing concurrently. The login state is shared by all sessions
+ * of the application, so the sessions are logged in when the token is logged in.
+ */
+@Slf4j
+class HardwareTokenSessionPool {
+
+    private final Token token;
+
+    private final BlockingQueue<Session> idleSessions;
+
+    // Number of lost sessions that could not be opened again.
+    private final AtomicInteger missingSessions = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Opens the given number of sessions on the token.
+     * @param token the token
+     * @param size the number of sessions
+     * @throws TokenException if a session cannot be opened
+     */
+    HardwareTokenSessionPool(Token token, int size) throws TokenException {
+        this.token = token;
+        this.idleSessions = new ArrayBlockingQueue<>(size);
+
+        try {
+            for (int i = 0; i < size; i++) {
+                idleSessions.add(openSession());
+            }
+        } catch (TokenException e) {
+            close();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Takes an idle session from the pool, waiting if all sessions are in use.
+     * @param timeoutMillis maximum time to wait
+     * @return the session
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Session borrow(long timeoutMillis) throws InterruptedException {
+        if (closed) {
+            throw new CodedException(X_INTERNAL_ERROR, "Signing sessions are closed");
+        }
+
+        Session session = idleSessions.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+
+        if (session == null) {
+            throw new CodedException(X_INTERNAL_ERROR, "No signing session available");
+        }
+
+        return session;
+    }
+
+    /**
+     * Returns the session to the pool.
+     * @param session the session
+     */
+    void release(Session session) {
+        if (closed || !idleSessions.offer(session)) {
+            closeQuietly(session);
+        }
+    }
+
+    /**
+     * Closes the lost session and opens a new one in its place.
+     * @param lostSession the session that can no longer be used
+     * @return the new session
+     * @throws TokenException if a new session cannot be opened
+     */
+    Session replace(Session lostSession) throws TokenException {
+        closeQuietly(lostSession);
+
+        try {
+            return openSession();
+        } catch (TokenException e) {
+            missingSessions.incrementAndGet();
+
+            throw e;
+        }
+    }
+
+    /**
+     * Checks the idle sessions, replacing the ones that can no longer be used, and opens the
+     * sessions that were lost earlier.
+     * @return false, if a session is not logged in
+     */
+    boolean checkIdleSessions() {
+        reopenMissingSessions();
+
+        boolean loggedIn = true;
+
+        for (int i = idleSessions.size(); i > 0 && !closed; i--) {
+            Session session = idleSessions.poll();
+
+            if (session == null) {
+                break;
+            }
+
+            try {
+                State state = session.getSessionInfo().getState();
+
+                loggedIn &= State.RO_USER_FUNCTIONS.equals(state) || State.RW_USER_FUNCTIONS.equals(state);
+            } catch (TokenException e) {
+                log.warn("Signing session lost, opening a new session", e);
+
+                try {
+                    session = replace(session);
+                } catch (TokenException openException) {
+                    log.error("Failed to open signing session", openException);
+
+                    continue;
+                }
+            }
+
+            release(session);
+        }
+
+        return loggedIn;
+    }
+
+    /**
+     * Closes the idle sessions. The sessions in use are closed when they are released.
+     */
+    void close() {
+        closed = true;
+
+        Session session;
+
+        while ((session = idleSessions.poll()) != null) {
+            closeQuietly(session);
+        }
+    }
+
+    private void reopenMissingSessions() {
+        while (!closed && missingSessions.get() > 0) {
+            try {
+                release(openSession());
+            } catch (TokenException e) {
+                log.error("Failed to open signing session", e);
+
+                return;
+            }
+
+            missingSessions.decrementAndGet();
+        }
+    }
+
+    private Session openSession() throws TokenException {
+        return token.openSession(SERIAL_SESSION, false, null, null);
+    }
+
+    private static void closeQuietly(Session session) {
+        try {
+            session.closeSession();
+        } catch (Exception e) {
+            log.warn("Failed to close signing session", e);
+        }
+    }
+}
@@ -35,8 +35,10 @@ import ee.ria.xroad.signer.protocol.message.ActivateToken;
 import ee.ria.xroad.signer.protocol.message.GenerateKey;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
 import ee.ria.xroad.signer.tokenmanager.module.ModuleConf;
+import ee.ria.xroad.signer.util.CalculateSignature;
 import ee.ria.xroad.signer.util.SignerUtil;
 
+import akka.actor.ActorRef;
 import iaik.pkcs.pkcs11.Mechanism;
 import iaik.pkcs.pkcs11.Session;
 import iaik.pkcs.pkcs11.Token;
@@ -54,9 +56,14 @@ import javax.xml.bind.DatatypeConverter;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_KEY_NOT_FOUND;
@@ -99,17 +106,24 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
     private static final Mechanism KEYGEN_MECHANISM = Mechanism.get(PKCS11Constants.CKM_RSA_PKCS_KEY_PAIR_GEN);
 
+    private static final long SIGNING_SESSION_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(60);
+
     private final HardwareTokenType tokenType;
 
     // maps signature algorithm id and signing mechanism
     private final Map<String, Mechanism> signMechanisms;
 
-    // maps key id (hex) to RSAPrivateKey
-    private final Map<String, RSAPrivateKey> privateKeys = new HashMap<>();
+    // maps key id (hex) to RSAPrivateKey, read by the signing threads. The map is never modified, changes are
+    // published by replacing it.
+    private volatile Map<String, RSAPrivateKey> privateKeys = Collections.emptyMap();
     private final Map<String, List<X509PublicKeyCertificate>> certs = new HashMap<>();
 
     private Session activeSession;
 
+    // Sessions and threads for signing concurrently, if the token has a signing session pool.
+    private volatile HardwareTokenSessionPool signingSessions;
+    private ExecutorService signingExecutor;
+
     /**
      * @param tokenInfo the token info
      * @param tokenType the token type
@@ -199,6 +213,12 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         } catch (Exception e) {
             log.warn("Failed to close active session", e);
         }
+
+        closeSigningSessions();
+
+        if (signingExecutor != null) {
+            signingExecutor.shutdown();
+        }
     }
 
     @Override
@@ -210,10 +230,18 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             findPublicKeysForPrivateKeys();
             findCertificatesNotInConf();
         }
+
+        checkSigningSessions();
     }
 
     @Override
     protected void onMessage(Object message) throws Exception {
+        if (message instanceof CalculateSignature && signingSessions != null) {
+            calculateSignatureConcurrently((CalculateSignature) message);
+
+            return;
+        }
+
         try {
             super.onMessage(message);
         } finally {
@@ -305,7 +333,9 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         byte[] publicKeyBytes = generateX509PublicKey(publicKey);
         String publicKeyBase64 = encodeBase64(publicKeyBytes);
 
-        privateKeys.put(keyId, privateKey);
+        Map<String, RSAPrivateKey> newPrivateKeys = new HashMap<>(privateKeys);
+        newPrivateKeys.put(keyId, privateKey);
+        privateKeys = Collections.unmodifiableMap(newPrivateKeys);
 
         return new GenerateKeyResult(keyId, publicKeyBase64);
     }
@@ -324,7 +354,10 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
             try {
                 activeSession.destroyObject(privateKey);
-                privateKeys.remove(keyId);
+
+                Map<String, RSAPrivateKey> newPrivateKeys = new HashMap<>(privateKeys);
+                newPrivateKeys.remove(keyId);
+                privateKeys = Collections.unmodifiableMap(newPrivateKeys);
             } catch (Exception e) {
                 throw new CodedException(X_INTERNAL_ERROR, "Failed to delete private key '%s' on token '%s': %s",
                         keyId, getWorkerId(), e);
@@ -397,7 +430,11 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
     protected byte[] sign(String keyId, String signatureAlgorithmId, byte[] data) throws Exception {
         log.trace("sign({}, {})", keyId, signatureAlgorithmId);
 
-        assertActiveSession();
+        HardwareTokenSessionPool sessions = signingSessions;
+
+        if (sessions == null) {
+            assertActiveSession();
+        }
 
         if (tokenType.isPinVerificationPerSigning()) {
             try {
@@ -430,9 +467,11 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                         "Unsupported signature algorithm '%s'", signatureAlgorithmId);
             }
 
-            activeSession.signInit(signMechanism, key);
+            if (sessions != null) {
+                return signWithPooledSession(sessions, signMechanism, key, data);
+            }
 
-            return activeSession.sign(data);
+            return sign(activeSession, signMechanism, key, data);
         } finally {
             if (tokenType.isPinVerificationPerSigning()) {
                 try {
@@ -446,6 +485,127 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
 
     // ------------------------------------------------------------------------
 
+    private void calculateSignatureConcurrently(CalculateSignature signRequest) {
+        ActorRef sender = getSender();
+        ActorRef self = getSelf();
+
+        signingExecutor.execute(() -> {
+            try {
+                sender.tell(calculateSignature(signRequest), self);
+            } finally {
+                // Same as after the messages handled by the actor, the token info (e.g. the
+                // signature counters) may have changed. TokenManager is synchronized.
+                updateTokenInfo();
+            }
+        });
+    }
+
+    private byte[] signWithPooledSession(HardwareTokenSessionPool sessions, Mechanism signMechanism,
+            RSAPrivateKey key, byte[] data) throws Exception {
+        Session session = sessions.borrow(SIGNING_SESSION_WAIT_MILLIS);
+
+        try {
+            return sign(session, signMechanism, key, data);
+        } catch (PKCS11Exception e) {
+            if (!isSessionLost(e)) {
+                throw e;
+            }
+
+            log.warn("Signing session on token '{}' lost, retrying with a new session", getWorkerId(), e);
+
+            Session lostSession = session;
+            session = null;
+            session = sessions.replace(lostSession);
+
+            if (e.getErrorCode() == PKCS11Constants.CKR_USER_NOT_LOGGED_IN) {
+                relogin(session, e);
+            }
+
+            return sign(session, signMechanism, key, data);
+        } finally {
+            if (session != null) {
+                sessions.release(session);
+            }
+        }
+    }
+
+    private static byte[] sign(Session session, Mechanism signMechanism, RSAPrivateKey key, byte[] data)
+            throws Exception {
+        session.signInit(signMechanism, key);
+
+        return session.sign(data);
+    }
+
+    private static boolean isSessionLost(PKCS11Exception e) {
+        return e.getErrorCode() == PKCS11Constants.CKR_SESSION_HANDLE_INVALID
+                || e.getErrorCode() == PKCS11Constants.CKR_SESSION_CLOSED
+                || e.getErrorCode() == PKCS11Constants.CKR_USER_NOT_LOGGED_IN;
+    }
+
+    private void relogin(Session session, PKCS11Exception cause) throws Exception {
+        char[] password = PasswordStore.getPassword(tokenId);
+
+        if (password == null) {
+            // The token has been logged out
+            throw cause;
+        }
+
+        log.info("Logging in token '{}' again", getWorkerId());
+
+        HardwareTokenUtil.login(session, password);
+    }
+
+    private boolean isConcurrentSigningEnabled() {
+        return tokenType.getSigningSessionPoolSize() > 1 && !tokenType.isPinVerificationPerSigning();
+    }
+
+    private void openSigningSessions() throws Exception {
+        closeSigningSessions();
+
+        if (!isConcurrentSigningEnabled() || getToken() == null) {
+            return;
+        }
+
+        int poolSize = tokenType.getSigningSessionPoolSize();
+
+        if (signingExecutor == null) {
+            AtomicInteger threadCount = new AtomicInteger();
+
+            signingExecutor = Executors.newFixedThreadPool(poolSize, r -> {
+                Thread thread = new Thread(r, "signer-" + getWorkerId() + "-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+
+                return thread;
+            });
+        }
+
+        signingSessions = new HardwareTokenSessionPool(getToken(), poolSize);
+
+        log.info("Opened {} signing sessions on token '{}'", poolSize, getWorkerId());
+    }
+
+    private void closeSigningSessions() {
+        if (signingSessions != null) {
+            signingSessions.close();
+            signingSessions = null;
+        }
+    }
+
+    // Replaces the lost signing sessions and logs in again if the token has lost the login state.
+    private void checkSigningSessions() {
+        HardwareTokenSessionPool sessions = signingSessions;
+
+        if (sessions != null && !sessions.checkIdleSessions() && isPinStored()) {
+            log.warn("Signing sessions on token '{}' are not logged in, logging in again", getWorkerId());
+
+            try {
+                login();
+            } catch (Exception e) {
+                log.error("Failed to log in to token '{}'", getWorkerId(), e);
+            }
+        }
+    }
+
     private void findKeysNotInConf() throws Exception {
         log.trace("findKeysNotInConf()");
 
@@ -591,6 +751,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             setTokenStatus(tokenId, TokenStatusInfo.OK);
             setTokenActive(tokenId, true);
             loadPrivateKeys();
+            openSigningSessions();
         } catch (PKCS11Exception e) {
             setTokenStatusFromErrorCode(e.getErrorCode());
 
@@ -603,7 +764,8 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             return;
         }
 
-        privateKeys.clear();
+        closeSigningSessions();
+        privateKeys = Collections.emptyMap();
 
         log.trace("logout()");
 
@@ -635,7 +797,7 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
             return;
         }
 
-        privateKeys.clear();
+        Map<String, RSAPrivateKey> newPrivateKeys = new HashMap<>();
 
         List<RSAPrivateKey> keysOnToken = findPrivateKeys(activeSession,
                 tokenType.getPrivKeyAttributes().getAllowedMechanisms());
@@ -651,8 +813,13 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
                 continue;
             }
 
-            privateKeys.put(keyId, keyOnToken);
+            newPrivateKeys.put(keyId, keyOnToken);
+        }
+
+        // publish the keys before they are marked available
+        privateKeys = Collections.unmodifiableMap(newPrivateKeys);
 
+        for (String keyId : newPrivateKeys.keySet()) {
             log.trace("Private key '{}' added to token '{}'", keyId, getWorkerId());
 
             if (!hasKey(keyId)) {
@@ -667,14 +834,14 @@ public class HardwareTokenWorker extends AbstractTokenWorker {
         for (KeyInfo keyInfo: listKeys(tokenId)) {
             String keyId = keyInfo.getId();
 
-            if (!privateKeys.containsKey(keyId)) {
+            if (!newPrivateKeys.containsKey(keyId)) {
                 setKeyAvailable(keyId, false);
 
                 log.debug("Private key ({}) not found in token '{}'", keyId, getWorkerId());
             }
         }
 
-        if (privateKeys.isEmpty()) {
+        if (newPrivateKeys.isEmpty()) {
             log.warn("No private key(s) found in token '{}'", getWorkerId());
         }
     }
@@ -0,0 +1,181 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import iaik.pkcs.pkcs11.Mechanism;
+import iaik.pkcs.pkcs11.Session;
+import iaik.pkcs.pkcs11.Token;
+import iaik.pkcs.pkcs11.objects.RSAPrivateKey;
+import iaik.pkcs.pkcs11.wrapper.PKCS11Constants;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Multi-threaded signing load test of the signing session pool. The PKCS#11 sessions are simulated,
+ * each signing operation taking a fixed time, so that the throughput must grow with the number of
+ * signing threads when every thread uses its own session from the pool.
+ */
+@Slf4j
+public class HardwareTokenSigningPerformanceTest {
+
+    private static final long SIGNING_MILLIS = 5;
+
+    private static final long MEASUREMENT_MILLIS = TimeUnit.SECONDS.toMillis(1);
+
+    private final AtomicInteger concurrentSignings = new AtomicInteger();
+
+    private final AtomicInteger maxConcurrentSignings = new AtomicInteger();
+
+    /**
+     * Test that signing with 4 threads and 4 pooled sessions runs the signing operations
+     * concurrently and yields a clearly higher throughput than signing with a single thread.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void signingThroughputScalesWithSessions() throws Exception {
+        Token token = createToken();
+
+        long singleThreaded = measure(token, 1);
+
+        maxConcurrentSignings.set(0);
+
+        long multiThreaded = measure(token, 4);
+
+        log.info("Signatures/s with 1 thread: {}, with 4 threads: {}", singleThreaded, multiThreaded);
+
+        assertEquals(4, maxConcurrentSignings.get());
+        assertTrue("Expected higher throughput with 4 threads (" + multiThreaded + ") than with 1 thread ("
+                + singleThreaded + ")", multiThreaded > 2 * singleThreaded);
+    }
+
+    /**
+     * Test that the number of concurrent signing operations is bounded by the size of the
+     * session pool, no matter how many threads are signing.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void concurrentSigningBoundedByPoolSize() throws Exception {
+        measure(createToken(), 2, 8);
+
+        assertEquals(2, maxConcurrentSignings.get());
+    }
+
+    private Token createToken() throws Exception {
+        Token token = mock(Token.class);
+
+        when(token.openSession(any(Token.SessionType.class), anyBoolean(), any(), any()))
+                .thenAnswer(invocation -> createSession());
+
+        return token;
+    }
+
+    private Session createSession() throws Exception {
+        Session session = mock(Session.class);
+
+        doAnswer(invocation -> {
+            int current = concurrentSignings.incrementAndGet();
+            maxConcurrentSignings.accumulateAndGet(current, Math::max);
+
+            try {
+                Thread.sleep(SIGNING_MILLIS);
+            } finally {
+                concurrentSignings.decrementAndGet();
+            }
+
+            return new byte[] {1};
+        }).when(session).sign(any(byte[].class));
+
+        return session;
+    }
+
+    private long measure(Token token, int threads) throws Exception {
+        return measure(token, threads, threads);
+    }
+
+    private static long measure(Token token, int poolSize, int threads) throws Exception {
+        HardwareTokenSessionPool sessions = new HardwareTokenSessionPool(token, poolSize);
+
+        RSAPrivateKey key = new RSAPrivateKey();
+        Mechanism mechanism = Mechanism.get(PKCS11Constants.CKM_RSA_PKCS);
+        byte[] data = {1, 2, 3};
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong signatures = new AtomicLong();
+        AtomicBoolean failed = new AtomicBoolean();
+        CountDownLatch finished = new CountDownLatch(threads);
+
+        try {
+            for (int i = 0; i < threads; i++) {
+                new Thread(() -> {
+                    try {
+                        while (running.get()) {
+                            Session session = sessions.borrow(MEASUREMENT_MILLIS);
+
+                            try {
+                                session.signInit(mechanism, key);
+                                session.sign(data);
+                            } finally {
+                                sessions.release(session);
+                            }
+
+                            signatures.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        log.error("Signing failed", e);
+
+                        failed.set(true);
+                    } finally {
+                        finished.countDown();
+                    }
+                }).start();
+            }
+
+            Thread.sleep(MEASUREMENT_MILLIS);
+            running.set(false);
+            finished.await();
+        } finally {
+            sessions.close();
+        }
+
+        assertFalse("Signing failed", failed.get());
+
+        return signatures.get() * TimeUnit.SECONDS.toMillis(1) / MEASUREMENT_MILLIS;
+    }
+}
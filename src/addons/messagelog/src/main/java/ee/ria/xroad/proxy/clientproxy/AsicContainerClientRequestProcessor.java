@@ -39,6 +39,8 @@ import ee.ria.xroad.common.conf.serverconf.IsAuthentication;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.common.messagelog.archive.ArchiveEntry;
+import ee.ria.xroad.common.messagelog.archive.LogArchiveReader;
 import ee.ria.xroad.common.monitoring.MessageInfo;
 import ee.ria.xroad.common.util.HttpHeaders;
 import ee.ria.xroad.common.util.MimeTypes;
@@ -58,6 +60,7 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
@@ -216,8 +219,8 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private void writeAllContainers(ClientId clientId, String queryId, AsicContainerNameGenerator nameGen)
             throws Exception {
         String filename = AsicUtils.escapeString(queryId);
-        List<MessageRecord> requests = timestampedRecords(clientId, queryId, false);
-        List<MessageRecord> responses = timestampedRecords(clientId, queryId, true);
+        List<AsicContainerSource> requests = timestampedContainers(clientId, queryId, false);
+        List<AsicContainerSource> responses = timestampedContainers(clientId, queryId, true);
 
         if (!requests.isEmpty() || !responses.isEmpty()) {
             try (ZipOutputStream zos = startZipResponse(filename)) {
@@ -233,7 +236,7 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private void writeRequestContainers(ClientId clientId, String queryId, AsicContainerNameGenerator nameGen)
             throws Exception {
         String filename = AsicUtils.escapeString(queryId) + "-" + AsicContainerNameGenerator.TYPE_REQUEST;
-        List<MessageRecord> records = timestampedRecords(clientId, queryId, false);
+        List<AsicContainerSource> records = timestampedContainers(clientId, queryId, false);
 
         if (!records.isEmpty()) {
             try (ZipOutputStream zos = startZipResponse(filename)) {
@@ -248,7 +251,7 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
     private void writeResponseContainers(ClientId clientId, String queryId, AsicContainerNameGenerator nameGen)
             throws Exception {
         String filename = AsicUtils.escapeString(queryId) + "-response";
-        List<MessageRecord> records = timestampedRecords(clientId, queryId, true);
+        List<AsicContainerSource> records = timestampedContainers(clientId, queryId, true);
 
         if (!records.isEmpty()) {
             try (ZipOutputStream zos = startZipResponse(filename)) {
@@ -260,6 +263,29 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         }
     }
 
+    /**
+     * Returns the containers of the records still in the database followed by the containers of the records that
+     * have been removed from it after archiving. The latter are read from the archive files when written.
+     */
+    private List<AsicContainerSource> timestampedContainers(ClientId clientId, String queryId, boolean response)
+            throws Exception {
+        List<AsicContainerSource> containers = new ArrayList<>();
+
+        for (MessageRecord record : timestampedRecords(clientId, queryId, response)) {
+            containers.add(() -> record.toAsicContainer().getBytes());
+        }
+
+        for (ArchiveEntry entry : LogRecordManager.getArchivedByQueryId(queryId, clientId, response)) {
+            if (LogArchiveReader.isAvailable(entry)) {
+                containers.add(() -> LogArchiveReader.readContainer(entry));
+            } else {
+                log.warn("Log archive {} of message {} is not available", entry.getArchiveFile(), queryId);
+            }
+        }
+
+        return containers;
+    }
+
     private List<MessageRecord> timestampedRecords(ClientId clientId, String queryId, boolean response)
             throws Exception {
         List<MessageRecord> allRecords = LogRecordManager.getByQueryId(queryId, clientId, response);
@@ -289,35 +315,40 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         }
     }
 
-    private void writeContainers(List<MessageRecord> requests, String queryId, AsicContainerNameGenerator nameGen,
-            ZipOutputStream zos, String type) throws Exception {
+    private void writeContainers(List<AsicContainerSource> containers, String queryId,
+            AsicContainerNameGenerator nameGen, ZipOutputStream zos, String type) throws Exception {
 
-        for (MessageRecord record : requests) {
+        for (AsicContainerSource container : containers) {
             String filename = nameGen.getArchiveFilename(queryId, type);
             zos.putNextEntry(new ZipEntry(filename));
-            zos.write(record.toAsicContainer().getBytes());
+            zos.write(container.getBytes());
             zos.closeEntry();
         }
     }
 
     private void writeAsicContainer(ClientId clientId, String queryId, AsicContainerNameGenerator nameGen,
             boolean response) throws Exception {
-        MessageRecord request = getTimestampedRecord(clientId, queryId, response);
+        byte[] container = getTimestampedContainer(clientId, queryId, response);
         String filename = nameGen.getArchiveFilename(queryId,
                 response ? AsicContainerNameGenerator.TYPE_RESPONSE : AsicContainerNameGenerator.TYPE_REQUEST);
 
         servletResponse.setContentType(MimeTypes.ASIC_ZIP);
         servletResponse.setHeader(HttpHeaders.CONTENT_DISPOSITION, "filename=\"" + filename + "\"");
 
-        servletResponse.getOutputStream().write(request.toAsicContainer().getBytes());
+        servletResponse.getOutputStream().write(container);
     }
 
-    @SneakyThrows
-    private MessageRecord getTimestampedRecord(ClientId clientId, String queryId, boolean response) {
+    private byte[] getTimestampedContainer(ClientId clientId, String queryId, boolean response) throws Exception {
         MessageRecord record = LogRecordManager.getByQueryIdUnique(queryId, clientId, response);
 
         if (record != null) {
-            return ensureRecordTimestamped(record);
+            return ensureRecordTimestamped(record).toAsicContainer().getBytes();
+        }
+
+        ArchiveEntry entry = LogRecordManager.getArchivedByQueryIdUnique(queryId, clientId, response);
+
+        if (entry != null && LogArchiveReader.isAvailable(entry)) {
+            return LogArchiveReader.readContainer(entry);
         } else {
             throw new CodedExceptionWithHttpStatus(HttpServletResponse.SC_NOT_FOUND, ErrorCodes.X_NOT_FOUND,
                     DOCUMENTS_NOT_FOUND_FAULT_MESSAGE);
@@ -379,6 +410,11 @@ class AsicContainerClientRequestProcessor extends MessageProcessorBase {
         return RandomStringUtils.randomAlphanumeric(RANDOM_LENGTH);
     }
 
+    @FunctionalInterface
+    private interface AsicContainerSource {
+        byte[] getBytes() throws Exception;
+    }
+
     private static class VerificationConfWriter implements FileConsumer, Closeable {
 
         private static final String PREFIX = "verificationconf/";
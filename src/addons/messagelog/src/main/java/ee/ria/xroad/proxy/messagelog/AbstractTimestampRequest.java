@@ -62,13 +62,19 @@ abstract class AbstractTimestampRequest {
         TimeStampRequest tsRequest = createTimestampRequest(getRequestData());
 
         TsRequest req = makeTsRequest(tsRequest, tspUrls);
-        if (req.getInputStream() == null) {
-            throw new RuntimeException("Could not get response from TSP");
+
+        TimeStampResponse tsResponse = req.getResponse();
+
+        if (tsResponse == null) {
+            if (req.getInputStream() == null) {
+                throw new RuntimeException("Could not get response from TSP");
+            }
+
+            tsResponse = getTimestampResponse(req.getInputStream());
+            verify(tsRequest, tsResponse);
         }
 
-        TimeStampResponse tsResponse = getTimestampResponse(req.getInputStream());
         log.info("tsresponse {}", tsResponse);
-        verify(tsRequest, tsResponse);
 
         return result(tsResponse, req.getUrl());
     }
@@ -77,28 +83,29 @@ abstract class AbstractTimestampRequest {
     public static class TsRequest {
         private final InputStream inputStream;
         private final String url;
+        // Already verified response, null if it has to be read from the input stream
+        private final TimeStampResponse response;
 
         TsRequest(final InputStream inputStream, final String url) {
+            this(inputStream, url, null);
+        }
+
+        TsRequest(final InputStream inputStream, final String url, final TimeStampResponse response) {
             this.inputStream = inputStream;
             this.url = url;
+            this.response = response;
         }
     }
 
     protected TsRequest makeTsRequest(TimeStampRequest request,
             List<String> tspUrls) throws Exception {
-        for (String url: tspUrls) {
-            try {
-                log.debug("Sending time-stamp request to {}", url);
-
-                return new TsRequest(TimestamperUtil.makeTsRequest(request, url), url);
-            } catch (Exception ex) {
-                log.error("Failed to get time stamp from " + url, ex);
-            }
-        }
+        // The response is verified within the attempt, so that an invalid response does not win the race
+        return TimestamperClient.getInstance().execute(tspUrls, url -> {
+            TimeStampResponse response = getTimestampResponse(TimestamperUtil.makeTsRequest(request, url));
+            verify(request, response);
 
-        // All the URLs failed. Throw exception.
-        throw new RuntimeException(
-                "Failed to get time stamp from any time-stamping providers");
+            return new TsRequest(null, url, response);
+        });
     }
 
     private TimeStampRequest createTimestampRequest(byte[] data)
@@ -26,10 +26,12 @@ package ee.ria.xroad.proxy.messagelog;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ErrorCodes;
+import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.common.messagelog.archive.ArchiveEntry;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveBase;
 import ee.ria.xroad.common.messagelog.archive.LogArchiveWriter;
@@ -41,7 +43,7 @@ import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.output.NullOutputStream;
-import org.hibernate.Criteria;
+import org.hibernate.FetchMode;
 import org.hibernate.Session;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Projections;
@@ -52,8 +54,18 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveTransferCommand;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
@@ -63,20 +75,51 @@ import static org.apache.commons.lang3.StringUtils.isBlank;
 /**
  * Reads all non-archived time-stamped records from the database, writes them
  * to archive file and marks the records as archived.
+ *
+ * <p>Message records are read in pages ordered by id. The ASiC containers of
+ * a page are generated in parallel by a bounded pool of workers while they
+ * are written to the archive in the original order. Time-stamp records are
+ * marked archived once all of their message records have been archived.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class LogArchiver extends UntypedActor {
 
-    private static final int MAX_RECORDS_IN_ARCHIVE = 10;
-    private static final int MAX_RECORDS_IN_PATCHS = 360;
     private static final String PROPERTY_NAME_ARCHIVED = "archived";
 
+    private static final int CONTAINERS_IN_PROGRESS_PER_WORKER = 2;
+
     public static final String START_ARCHIVING = "doArchive";
 
     private final Path archivePath;
     private final Path workingPath;
-    private boolean safeTransactionBatch;
+
+    private ExecutorService containerWorkers;
+    private long lastArchivedRecordId;
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        AtomicInteger threadCount = new AtomicInteger();
+
+        containerWorkers = Executors.newFixedThreadPool(
+                MessageLogProperties.getArchiveWorkerCount(),
+                r -> {
+                    Thread worker = new Thread(r,
+                            "messagelog-archiver-" + threadCount.incrementAndGet());
+                    worker.setDaemon(true);
+
+                    return worker;
+                });
+    }
+
+    @Override
+    public void postStop() throws Exception {
+        containerWorkers.shutdownNow();
+
+        super.postStop();
+    }
 
     @Override
     public void onReceive(Object message) throws Exception {
@@ -86,6 +129,8 @@ public class LogArchiver extends UntypedActor {
             try {
                 Long maxTimestampId = doInTransaction(session -> getMaxTimestampId(session));
                 if (maxTimestampId != null) {
+                    lastArchivedRecordId = 0;
+
                     while (handleArchive(maxTimestampId)) { }
                 }
             } catch (Exception ex) {
@@ -98,8 +143,9 @@ public class LogArchiver extends UntypedActor {
 
     private boolean handleArchive(long maxTimestampId) throws Exception {
         return doInTransaction(session -> {
-            List<LogRecord> records = getRecordsToBeArchived(session, maxTimestampId);
-            if (records == null || records.isEmpty()) {
+            List<MessageRecord> records = getNonArchivedMessageRecords(session, maxTimestampId,
+                    lastArchivedRecordId, MessageLogProperties.getArchivePageSize());
+            if (records.isEmpty()) {
                 log.info("No records to be archived at this time");
                 return false;
             }
@@ -109,26 +155,31 @@ public class LogArchiver extends UntypedActor {
             long start = System.currentTimeMillis();
             int recordsArchived = 0;
 
-            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(session)) {
+            HibernateLogArchiveBase archiveBase = this.new HibernateLogArchiveBase(session);
+
+            try (LogArchiveWriter archiveWriter = createLogArchiveWriter(archiveBase)) {
                 while (!records.isEmpty()) {
                     if (archive(archiveWriter, records)) {
                         runTransferCommand(getArchiveTransferCommand());
                     }
+
+                    archiveBase.flushArchivedRecords();
+                    markTimestampRecordsArchived(session, records);
+
                     recordsArchived += records.size();
+                    lastArchivedRecordId = records.get(records.size() - 1).getId();
 
-                    //flush changes (records marked as archived) and free memory
-                    //used up by cached records retrieved previously in the session
-                    session.flush();
+                    // free memory used up by the records of the page
                     session.clear();
 
-                    if (safeTransactionBatch
-                            && recordsArchived >= MessageLogProperties.getArchiveTransactionBatchSize()) {
+                    if (recordsArchived >= MessageLogProperties.getArchiveTransactionBatchSize()) {
                         log.info("Archived {} log records in {} ms", recordsArchived,
                                 System.currentTimeMillis() - start);
                         return true;
                     }
 
-                    records = getRecordsToBeArchived(session, maxTimestampId);
+                    records = getNonArchivedMessageRecords(session, maxTimestampId,
+                            lastArchivedRecordId, MessageLogProperties.getArchivePageSize());
                 }
             } catch (Exception e) {
                 throw new CodedException(ErrorCodes.X_INTERNAL_ERROR, e);
@@ -144,21 +195,44 @@ public class LogArchiver extends UntypedActor {
     }
 
     private boolean archive(LogArchiveWriter archiveWriter,
-            List<LogRecord> records) throws Exception {
+            List<MessageRecord> records) throws Exception {
+        int maxContainersInProgress = MessageLogProperties.getArchiveWorkerCount()
+                * CONTAINERS_IN_PROGRESS_PER_WORKER;
+
+        Deque<Future<byte[]>> containers = new ArrayDeque<>();
+        Iterator<MessageRecord> pending = records.iterator();
 
         boolean producedArchiveFile = false;
-        for (LogRecord record : records) {
-            producedArchiveFile |= archiveWriter.write(record);
+        try {
+            for (MessageRecord record : records) {
+                while (containers.size() < maxContainersInProgress && pending.hasNext()) {
+                    MessageRecord next = pending.next();
+
+                    containers.add(containerWorkers.submit(() -> next.toAsicContainer().getBytes()));
+                }
+
+                producedArchiveFile |= archiveWriter.write(record, getContainer(containers.remove()));
+            }
+        } finally {
+            containers.forEach(container -> container.cancel(true));
         }
 
         return producedArchiveFile;
     }
 
-    private LogArchiveWriter createLogArchiveWriter(Session session) {
+    private static byte[] getContainer(Future<byte[]> container) throws Exception {
+        try {
+            return container.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private LogArchiveWriter createLogArchiveWriter(LogArchiveBase archiveBase) {
         return new LogArchiveWriter(
             getArchivePath(),
             getWorkingPath(),
-            this.new HibernateLogArchiveBase(session)
+            archiveBase
         );
     }
 
@@ -190,76 +264,71 @@ public class LogArchiver extends UntypedActor {
         return workingPath;
     }
 
-    protected List<LogRecord> getRecordsToBeArchived(Session session, long maxTimestampId) {
-        List<LogRecord> recordsToArchive = new ArrayList<>();
-        safeTransactionBatch = false;
-        int allowedInArchiveCount = MAX_RECORDS_IN_ARCHIVE;
-        for (TimestampRecord ts : getNonArchivedTimestampRecords(session, MAX_RECORDS_IN_PATCHS, maxTimestampId)) {
-            List<MessageRecord> messages =
-                    getNonArchivedMessageRecords(session, ts.getId(),
-                            allowedInArchiveCount);
-            if (allTimestampMessagesArchived(session, ts.getId())) {
-                log.trace("Timestamp record #{} will be archived",
-                        ts.getId());
-                recordsToArchive.add(ts);
-                safeTransactionBatch = true;
-            } else {
-                log.trace("Timestamp record #{} still related to"
-                                + " non-archived message records",
-                        ts.getId());
-            }
-
-            recordsToArchive.addAll(messages);
-            allowedInArchiveCount -= messages.size();
-            if (safeTransactionBatch || allowedInArchiveCount <= 0) {
-                break;
-            }
-        }
-        return recordsToArchive;
-    }
-
-    @SuppressWarnings("unchecked")
-    protected List<TimestampRecord> getNonArchivedTimestampRecords(
-            Session session, int maxRecordsToGet, long maxTimestampId) {
-        Criteria criteria = session.createCriteria(TimestampRecord.class);
-        criteria.add(Restrictions.eq(PROPERTY_NAME_ARCHIVED, false));
-        criteria.add(Restrictions.le("id", maxTimestampId));
-        criteria.setMaxResults(maxRecordsToGet);
-        criteria.addOrder(Order.asc("id"));
-        return criteria.list();
-    }
-
     @SuppressWarnings("unchecked")
     protected Long getMaxTimestampId(Session session) {
         return (Long) session
                 .createCriteria(TimestampRecord.class)
                 .add(Restrictions.eq(PROPERTY_NAME_ARCHIVED, false))
+                .add(Restrictions.ge("time", LogRecordPartitions.getActiveSince()))
                 .setProjection(Projections.max("id"))
                 .uniqueResult();
     }
 
+    /**
+     * Returns the next page of non-archived message records, time-stamped by
+     * a time-stamp record not newer than the given one, that follow the given
+     * message record.
+     */
     @SuppressWarnings("unchecked")
     protected List<MessageRecord> getNonArchivedMessageRecords(Session session,
-            Long timestampRecordNumber, int maxRecordsToGet) {
+            long maxTimestampId, long afterRecordId, int maxRecordsToGet) {
         return session
                 .createCriteria(MessageRecord.class)
+                .createAlias("timestampRecord", "ts")
+                .setFetchMode("timestampRecord", FetchMode.JOIN)
                 .add(Restrictions.eq(PROPERTY_NAME_ARCHIVED, false))
-                .add(Restrictions.eq("timestampRecord.id",
-                        timestampRecordNumber))
+                .add(Restrictions.gt("id", afterRecordId))
+                .add(Restrictions.ge("time", LogRecordPartitions.getActiveSince()))
+                .add(Restrictions.le("ts.id", maxTimestampId))
+                .addOrder(Order.asc("id"))
                 .setMaxResults(maxRecordsToGet)
+                .setReadOnly(true)
                 .list();
     }
 
-    protected boolean allTimestampMessagesArchived(Session session,
-            Long timestampRecordNumber) {
-        Long result = (Long) session
-                .createCriteria(MessageRecord.class)
-                .add(Restrictions.eq(PROPERTY_NAME_ARCHIVED, false))
-                .add(Restrictions.eq("timestampRecord.id",
-                        timestampRecordNumber))
-                .setProjection(Projections.rowCount())
-                .uniqueResult();
-        return result == 0;
+    /**
+     * Marks archived the time-stamp records of the given message records that
+     * no longer have any non-archived message records.
+     */
+    @SuppressWarnings("unchecked")
+    protected void markTimestampRecordsArchived(Session session,
+            List<MessageRecord> archivedRecords) {
+        Set<Long> timestampIds = archivedRecords.stream()
+                .map(record -> record.getTimestampRecord().getId())
+                .collect(Collectors.toSet());
+
+        List<Long> completedTimestampIds = session
+                .createQuery("select t.id from " + TimestampRecord.class.getName() + " t"
+                        + " where t.archived = false and t.id in (:ids) and not exists ("
+                        + "from " + MessageRecord.class.getName() + " m"
+                        + " where m.timestampRecord = t and m.archived = false)")
+                .setParameterList("ids", timestampIds)
+                .list();
+
+        log.trace("Setting time-stamp records {} archived", completedTimestampIds);
+
+        setArchived(session, completedTimestampIds);
+    }
+
+    private static void setArchived(Session session, List<Long> recordIds) {
+        if (recordIds.isEmpty()) {
+            return;
+        }
+
+        session.createQuery("update " + AbstractLogRecord.class.getName()
+                        + " set archived = true where id in (:ids)")
+                .setParameterList("ids", recordIds)
+                .executeUpdate();
     }
 
     protected void markArchiveCreated(final DigestEntry lastArchive,
@@ -273,6 +342,10 @@ public class LogArchiver extends UntypedActor {
                 .executeUpdate();
 
             session.save(lastArchive);
+
+            // the insert may be deferred until flush, flush it before the
+            // session is cleared at the end of the page
+            session.flush();
         }
     }
 
@@ -331,13 +404,37 @@ public class LogArchiver extends UntypedActor {
             LogArchiver.this.markArchiveCreated(lastArchive, session);
         }
 
+        /**
+         * Saves the entries and flushes the session, so that the inserts are
+         * not discarded when the session is cleared after the page.
+         */
+        @Override
+        public void markArchiveEntriesCreated(List<ArchiveEntry> entries)
+                throws Exception {
+            log.trace("Saving {} archive entries", entries.size());
+
+            entries.forEach(session::save);
+            session.flush();
+        }
+
+        private final List<Long> archivedRecordIds = new ArrayList<>();
+
         @Override
         public void markRecordArchived(LogRecord logRecord) throws Exception {
             log.trace("Setting {} #{} archived",
                     logRecord.getClass().getName(), logRecord.getId());
 
-            logRecord.setArchived(true);
-            session.saveOrUpdate(logRecord);
+            archivedRecordIds.add(logRecord.getId());
+        }
+
+        /**
+         * Updates the archived flag of the records marked archived since the
+         * previous call with a single statement.
+         */
+        void flushArchivedRecords() {
+            setArchived(session, archivedRecordIds);
+
+            archivedRecordIds.clear();
         }
 
         @Override
@@ -24,54 +24,143 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.messagelog.archive.ArchiveEntry;
+import ee.ria.xroad.common.messagelog.archive.LogArchiveReader;
 
 import akka.actor.UntypedActor;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Session;
 import org.joda.time.DateTime;
 
-import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
-
+import java.util.List;
 
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
 
 /**
- * Deletes all archived log records from the database.
+ * Deletes all archived log records from the database. Partitions of the log record table that contain only
+ * archived records are dropped as a whole, the rest of the records are deleted in batches of consecutive record
+ * numbers, each in its own transaction. Archive entries are deleted once they are older than their retention
+ * period or their log archive has been removed from the archive directory.
  */
 @Slf4j
 public class LogCleaner extends UntypedActor {
 
     public static final String START_CLEANING = "doClean";
 
+    static final int CLEAN_BATCH_SIZE = 10000;
+
+    // Number of the first log record of the next batch, null if there are no more records to remove
+    private Long nextRecord;
+
+    @Override
+    public void preStart() throws Exception {
+        super.preStart();
+
+        LogRecordPartitions.reset();
+    }
+
     @Override
     public void onReceive(Object message) throws Exception {
         log.trace("onReceive({})", message);
 
         if (message.equals(START_CLEANING)) {
             try {
-                doInTransaction(session -> {
-                    handleClean(session);
-                    return null;
-                });
+                LogRecordPartitions.maintain(System.currentTimeMillis(), getRemoveBefore());
+
+                nextRecord = doInTransaction(LogCleaner::getFirstArchivedRecord);
+
+                long removed = 0;
+
+                while (nextRecord != null) {
+                    removed += doInTransaction(this::handleClean);
+                }
+
+                if (removed == 0) {
+                    log.info("No archived records to remove from database");
+                } else {
+                    log.info("Removed {} archived records from database", removed);
+                }
             } catch (Exception e) {
                 log.error("Failed to clean archived records from database", e);
             }
+
+            try {
+                int removed = doInTransaction(LogCleaner::handleCleanArchiveEntries);
+
+                log.info("Removed {} archive entries from database", removed);
+            } catch (Exception e) {
+                log.error("Failed to clean archive entries from database", e);
+            }
         } else {
             unhandled(message);
         }
     }
 
-    protected void handleClean(Session session) {
-        DateTime date = new DateTime();
-        date = date.minusDays(MessageLogProperties.getKeepRecordsForDays());
+    /**
+     * Removes the archived records older than the retention period from the next batch of record numbers.
+     * @param session the Hibernate session
+     * @return the number of records removed
+     */
+    protected int handleClean(Session session) {
+        long first = nextRecord;
+        long removeBefore = getRemoveBefore();
 
-        String hql = "delete AbstractLogRecord r where r.archived = true and "
-                + "r.time <= " + date.getMillis();
-        int removed = session.createQuery(hql).executeUpdate();
-        if (removed == 0) {
-            log.info("No archived records to remove from database");
-        } else {
-            log.info("Removed {} archived records from database", removed);
+        int removed = session.createQuery("delete " + AbstractLogRecord.class.getName()
+                + " r where r.id >= :first and r.id < :last and r.archived = true and r.time <= :removeBefore")
+                .setParameter("first", first)
+                .setParameter("last", first + CLEAN_BATCH_SIZE)
+                .setParameter("removeBefore", removeBefore)
+                .executeUpdate();
+
+        // Record numbers grow with time, stop at the first batch starting with a record to keep
+        Object[] next = (Object[]) session.createQuery("select r.id, r.time from " + AbstractLogRecord.class.getName()
+                + " r where r.id = (select min(n.id) from " + AbstractLogRecord.class.getName()
+                + " n where n.id >= :last)")
+                .setParameter("last", first + CLEAN_BATCH_SIZE)
+                .uniqueResult();
+
+        nextRecord = next != null && next[1] != null && (Long) next[1] <= removeBefore ? (Long) next[0] : null;
+
+        return removed;
+    }
+
+    /**
+     * Removes the archive entries older than their retention period and the entries of log archives that are no
+     * longer in the archive directory.
+     * @param session the Hibernate session
+     * @return the number of archive entries removed
+     */
+    static int handleCleanArchiveEntries(Session session) {
+        int removed = session.createQuery("delete " + ArchiveEntry.class.getName()
+                + " e where e.time <= :removeBefore")
+                .setParameter("removeBefore", new DateTime()
+                        .minusDays(MessageLogProperties.getKeepArchiveEntriesForDays()).getMillis())
+                .executeUpdate();
+
+        @SuppressWarnings("unchecked")
+        List<String> archiveFiles = session.createQuery("select distinct e.archiveFile from "
+                + ArchiveEntry.class.getName() + " e where e.archiveFile is not null").list();
+
+        for (String archiveFile : archiveFiles) {
+            if (!LogArchiveReader.isAvailable(archiveFile)) {
+                removed += session.createQuery("delete " + ArchiveEntry.class.getName()
+                        + " e where e.archiveFile = :archiveFile")
+                        .setParameter("archiveFile", archiveFile)
+                        .executeUpdate();
+            }
         }
+
+        return removed;
+    }
+
+    private static Long getFirstArchivedRecord(Session session) {
+        return (Long) session.createQuery("select min(r.id) from " + AbstractLogRecord.class.getName()
+                + " r where r.archived = true").uniqueResult();
+    }
+
+    private static long getRemoveBefore() {
+        return new DateTime().minusDays(MessageLogProperties.getKeepRecordsForDays()).getMillis();
     }
 }
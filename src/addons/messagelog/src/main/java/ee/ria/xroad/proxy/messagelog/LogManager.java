@@ -34,6 +34,7 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
+import ee.ria.xroad.common.messagelog.LogMessage;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
@@ -60,6 +61,8 @@ import scala.concurrent.duration.FiniteDuration;
 import java.nio.file.Paths;
 import java.time.LocalTime;
 import java.util.Date;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_MLOG_TIMESTAMPER_FAILED;
@@ -95,6 +98,9 @@ public class LogManager extends AbstractLogManager {
 
     private final ActorRef timestamper;
 
+    // Saves message records in groups, null if group commit is disabled
+    private final MessageRecordBatchWriter batchWriter;
+
     // package private for testing
     final ActorRef taskQueueRef;
     final ActorRef logArchiver;
@@ -107,6 +113,16 @@ public class LogManager extends AbstractLogManager {
         timestamper  = createTimestamper();
         logArchiver  = createArchiver(jobManager);
         logCleaner   = createCleaner(jobManager);
+        batchWriter  = createBatchWriter();
+    }
+
+    private static MessageRecordBatchWriter createBatchWriter() {
+        if (!MessageLogProperties.isGroupCommitEnabled()) {
+            return null;
+        }
+
+        return new MessageRecordBatchWriter(MessageLogProperties.getGroupCommitQueueSize(),
+                MessageLogProperties.getGroupCommitBatchSize(), MessageLogProperties.getGroupCommitDelay());
     }
 
     private ActorRef createTaskQueue() {
@@ -188,8 +204,12 @@ public class LogManager extends AbstractLogManager {
         try {
             if (message instanceof String && CommonMessages.TIMESTAMP_STATUS.equals(message)) {
                 getSender().tell(statusMap, getSelf());
+            } else if (CommonMessages.TIMESTAMPING_BACKLOG.equals(message)) {
+                taskQueueRef.forward(message, getContext());
             } else if (message instanceof SetTimestampingStatusMessage) {
                 setTimestampingStatus((SetTimestampingStatusMessage) message);
+            } else if (message instanceof LogMessage && batchWriter != null && !shouldTimestampImmediately()) {
+                logInBatch((LogMessage) message);
             } else {
                 super.onReceive(message);
             }
@@ -198,6 +218,39 @@ public class LogManager extends AbstractLogManager {
         }
     }
 
+    @Override
+    public void postStop() throws Exception {
+        if (batchWriter != null) {
+            batchWriter.stop();
+        }
+
+        super.postStop();
+    }
+
+    /**
+     * Queues the message record for group commit without blocking the actor. The sender is answered once the
+     * record has been saved.
+     */
+    private void logInBatch(LogMessage message) throws Exception {
+        ActorRef sender = getSender();
+        ActorRef self = getSelf();
+
+        verifyCanLogMessage(false);
+
+        MessageRecord messageRecord = createMessageRecord(message.getMessage(), message.getSignature(),
+                message.isClientSide());
+
+        batchWriter.submit(messageRecord).whenComplete((saved, error) ->
+                sender.tell(error == null ? new Object() : toException(error), self));
+    }
+
+    private static Exception toException(Throwable error) {
+        Throwable cause = error instanceof CompletionException || error instanceof ExecutionException
+                ? error.getCause() : error;
+
+        return cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+    }
+
     // ------------------------------------------------------------------------
 
     protected Props getTaskQueueImpl() {
@@ -270,6 +323,14 @@ public class LogManager extends AbstractLogManager {
     }
 
     protected MessageRecord saveMessageRecord(MessageRecord messageRecord) throws Exception {
+        if (batchWriter != null) {
+            try {
+                return batchWriter.submit(messageRecord).get();
+            } catch (ExecutionException e) {
+                throw toException(e);
+            }
+        }
+
         LogRecordManager.saveMessageRecord(messageRecord);
 
         return messageRecord;
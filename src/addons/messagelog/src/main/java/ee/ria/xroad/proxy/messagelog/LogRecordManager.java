@@ -30,12 +30,17 @@ import ee.ria.xroad.common.messagelog.AbstractLogRecord;
 import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.common.messagelog.archive.ArchiveEntry;
 
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.Criteria;
 import org.hibernate.Session;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
+import org.hibernate.criterion.Subqueries;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -111,6 +116,39 @@ public final class LogRecordManager {
         return doInTransaction(session -> getMessageRecords(session, queryId, clientId, isResponse));
     }
 
+    /**
+     * Returns the archive entry for a given message Query Id and sender Client Id, if the message record has been
+     * archived and removed from the database.
+     * @param queryId the message query id.
+     * @param clientId the sender client id.
+     * @param isResponse whether the response entry should be retrieved.
+     * @return the archive entry or null, if archive entry is not found in database.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    public static ArchiveEntry getArchivedByQueryIdUnique(String queryId, ClientId clientId, boolean isResponse)
+            throws Exception {
+        log.trace("getArchivedByQueryId({}, {}, {})", queryId, clientId, isResponse);
+
+        return doInTransaction(session -> getArchiveEntry(session, queryId, clientId, isResponse));
+    }
+
+    /**
+     * Returns a list of archive entries for a given message Query Id and sender Client Id. Only the entries of the
+     * message records that have been removed from the database are returned, the rest are found with
+     * {@link #getByQueryId(String, ClientId, boolean)}.
+     * @param queryId the message query id.
+     * @param clientId the sender client id.
+     * @param isResponse whether the response entries should be retrieved.
+     * @return the archive entry list or empty list, if no archive entries were found in database.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    public static List<ArchiveEntry> getArchivedByQueryId(String queryId, ClientId clientId, boolean isResponse)
+            throws Exception {
+        log.trace("getArchivedByQueryId({}, {}, {})", queryId, clientId, isResponse);
+
+        return doInTransaction(session -> getArchiveEntries(session, queryId, clientId, isResponse));
+    }
+
     /**
      * Returns a log record for a given log record number.
      * @param number the log record number.
@@ -136,6 +174,20 @@ public final class LogRecordManager {
         });
     }
 
+    /**
+     * Saves the message records to database in one transaction. The inserts are sent to the database in JDBC
+     * batches of the configured size.
+     * @param messageRecords the message records to be saved.
+     * @throws Exception if an error occurs while communicating with database.
+     */
+    static void saveMessageRecords(List<MessageRecord> messageRecords) throws Exception {
+        doInTransaction(session -> {
+            messageRecords.forEach(messageRecord -> save(session, messageRecord));
+
+            return null;
+        });
+    }
+
     /**
      * Saves the message record in the database.
      * @param messageRecord the message record to be updated.
@@ -265,9 +317,42 @@ public final class LogRecordManager {
         return criteria.list();
     }
 
+    @SneakyThrows
+    private static ArchiveEntry getArchiveEntry(Session session, String queryId, ClientId clientId,
+            boolean isResponse) {
+        Criteria criteria = createArchiveEntryCriteria(session, queryId, clientId, isResponse);
+
+        return (ArchiveEntry) criteria.uniqueResult();
+    }
+
+    @SneakyThrows
+    @SuppressWarnings("unchecked")
+    private static List<ArchiveEntry> getArchiveEntries(Session session, String queryId, ClientId clientId,
+            boolean isResponse) {
+        Criteria criteria = createArchiveEntryCriteria(session, queryId, clientId, isResponse);
+        criteria.addOrder(Order.asc("time"));
+
+        return criteria.list();
+    }
+
+    private static Criteria createArchiveEntryCriteria(Session session, String queryId, ClientId clientId,
+            boolean isResponse) {
+        Criteria criteria = addClientRestrictions(session.createCriteria(ArchiveEntry.class, "e"), queryId, clientId,
+                isResponse);
+        criteria.add(Subqueries.notExists(DetachedCriteria.forClass(MessageRecord.class, "m")
+                .add(Restrictions.eqProperty("m.id", "e.logRecordId"))
+                .setProjection(Projections.id())));
+
+        return criteria;
+    }
+
     private static Criteria createRecordCriteria(Session session, String queryId, ClientId clientId,
             boolean isResponse) {
-        Criteria criteria = session.createCriteria(MessageRecord.class);
+        return addClientRestrictions(session.createCriteria(MessageRecord.class), queryId, clientId, isResponse);
+    }
+
+    private static Criteria addClientRestrictions(Criteria criteria, String queryId, ClientId clientId,
+            boolean isResponse) {
         criteria.add(Restrictions.eq("queryId", queryId));
         criteria.add(Restrictions.eq("memberClass", clientId.getMemberClass()));
         criteria.add(Restrictions.eq("memberCode", clientId.getMemberCode()));
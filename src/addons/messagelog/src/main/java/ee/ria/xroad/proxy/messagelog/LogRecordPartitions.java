@@ -0,0 +1,366 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+
+/**
+ * Manages the daily partitions of the log record table in PostgreSQL. A partition is a table inheriting from
+ * LOGRECORD. New records are routed to the current partition by an insert rule on LOGRECORD, so that Hibernate
+ * keeps reading and updating the records through the parent table.
+ *
+ * The partitions are rotated by the log cleaner. When a partition is closed, it gets a check constraint on the
+ * record time, which lets PostgreSQL skip it in queries limited by time. Closed partitions whose records are all
+ * archived and older than the retention period are dropped instead of deleting their records row by row.
+ *
+ * Partitioning is enabled when the LOGRECORD_PARTITION table has been created by the database migration. Other
+ * databases keep using the single LOGRECORD table.
+ */
+@Slf4j
+final class LogRecordPartitions {
+
+    static final String PARTITION_PREFIX = "logrecord_p";
+
+    // Maximum time between setting the time of a record and inserting it into the current partition
+    static final long INSERT_DELAY_MARGIN_MS = TimeUnit.HOURS.toMillis(1);
+
+    private static final String INSERT_RULE = "logrecord_insert";
+
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE.withZone(ZoneOffset.UTC);
+
+    @Value
+    static final class Partition {
+        private final String name;
+        private final long startTime;
+        private final Long endTime;
+        private final boolean archived;
+
+        boolean isClosed() {
+            return endTime != null;
+        }
+    }
+
+    private static volatile Boolean enabled;
+    private static volatile boolean parentArchived;
+
+    // Time before which all the log records have been archived, 0 if not known
+    private static volatile long activeSince;
+
+    private LogRecordPartitions() {
+    }
+
+    /**
+     * Forgets whether partitioning is enabled and the archiving state, so that they are read again from the
+     * database on the next maintenance run. Called when the log cleaner starts.
+     */
+    static void reset() {
+        enabled = null;
+        parentArchived = false;
+        activeSince = 0;
+    }
+
+    /**
+     * @return the time before which all the log records have been archived. Queries for records that are not yet
+     * time-stamped or archived can be limited to records not older than this, which confines them to the recent
+     * partitions. 0 if partitioning is not enabled.
+     */
+    static long getActiveSince() {
+        return activeSince;
+    }
+
+    /**
+     * Opens a new partition if the current one was opened on an earlier day and closes the previous one. Drops the
+     * archived partitions with records not newer than the given time and updates the time returned by
+     * {@link #getActiveSince()}.
+     * @param now the current time
+     * @param removeBefore time of the newest record that may be removed
+     * @throws Exception if an error occurs while communicating with database
+     */
+    static void maintain(long now, long removeBefore) throws Exception {
+        if (!doInTransaction(LogRecordPartitions::isEnabled)) {
+            return;
+        }
+
+        doInTransaction(session -> {
+            session.doWork(connection -> open(connection, getPartitionName(now), now));
+
+            return null;
+        });
+
+        for (Partition partition : getPreviousOpen(doInTransaction(session ->
+                session.doReturningWork(LogRecordPartitions::getPartitions)))) {
+            close(partition.getName());
+        }
+
+        List<Partition> partitions = doInTransaction(session -> session.doReturningWork(connection -> {
+            markArchived(connection);
+
+            return getPartitions(connection);
+        }));
+
+        for (Partition partition : getExpired(partitions, removeBefore)) {
+            doInTransaction(session -> {
+                session.doWork(connection -> drop(connection, partition.getName()));
+
+                return null;
+            });
+        }
+
+        if (!parentArchived) {
+            parentArchived = doInTransaction(session ->
+                    session.doReturningWork(LogRecordPartitions::isParentArchived));
+        }
+
+        activeSince = parentArchived ? getActiveSince(partitions) : 0;
+    }
+
+    /**
+     * @return the open partitions except the current one, that is, the one opened last
+     */
+    static List<Partition> getPreviousOpen(List<Partition> partitions) {
+        List<Partition> open = new ArrayList<>();
+
+        for (Partition partition : partitions) {
+            if (!partition.isClosed()) {
+                open.add(partition);
+            }
+        }
+
+        return open.isEmpty() ? open : open.subList(0, open.size() - 1);
+    }
+
+    static String getPartitionName(long time) {
+        return PARTITION_PREFIX + DAY_FORMAT.format(Instant.ofEpochMilli(time));
+    }
+
+    /**
+     * @return the closed and archived partitions, in the order of time, that contain no records newer than the
+     * given time
+     */
+    static List<Partition> getExpired(List<Partition> partitions, long removeBefore) {
+        List<Partition> expired = new ArrayList<>();
+
+        for (Partition partition : partitions) {
+            if (!partition.isClosed() || !partition.isArchived() || partition.getEndTime() > removeBefore) {
+                break;
+            }
+
+            expired.add(partition);
+        }
+
+        return expired;
+    }
+
+    /**
+     * @return the time of the oldest record that may not be archived yet, given the partitions in the order of time
+     */
+    static long getActiveSince(List<Partition> partitions) {
+        for (Partition partition : partitions) {
+            if (!partition.isArchived()) {
+                // The current partition is started with the rotation time, its records may be a bit older
+                return partition.isClosed() ? partition.getStartTime()
+                        : Math.max(0, partition.getStartTime() - INSERT_DELAY_MARGIN_MS);
+            }
+        }
+
+        return 0;
+    }
+
+    private static boolean isEnabled(Session session) {
+        if (enabled == null) {
+            enabled = session.doReturningWork(connection -> "PostgreSQL".equals(
+                    connection.getMetaData().getDatabaseProductName())
+                    && hasTable(connection, "logrecord_partition"));
+
+            log.info("Message log partitioning {}", enabled ? "enabled" : "disabled");
+        }
+
+        return enabled;
+    }
+
+    private static boolean hasTable(Connection connection, String table) throws SQLException {
+        try (ResultSet tables = connection.getMetaData().getTables(null, null, table, null)) {
+            return tables.next();
+        }
+    }
+
+    private static void open(Connection connection, String name, long now) throws SQLException {
+        try (PreparedStatement stmt = connection.prepareStatement("SELECT 1 FROM logrecord_partition WHERE name = ?")) {
+            stmt.setString(1, name);
+
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (rs.next()) {
+                    return;
+                }
+            }
+        }
+
+        log.info("Opening message log partition {}", name);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("CREATE TABLE " + name + " (LIKE logrecord INCLUDING ALL)");
+            stmt.execute("ALTER TABLE " + name + " INHERIT logrecord");
+            stmt.execute("CREATE OR REPLACE RULE " + INSERT_RULE + " AS ON INSERT TO logrecord DO INSTEAD"
+                    + " INSERT INTO " + name + " VALUES (NEW.*)");
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement(
+                "INSERT INTO logrecord_partition (name, starttime, archived) VALUES (?, ?, false)")) {
+            stmt.setString(1, name);
+            stmt.setLong(2, now);
+            stmt.executeUpdate();
+        }
+    }
+
+    /**
+     * Adds the time constraint to a partition that no longer receives records. The constraint is validated in a
+     * separate transaction, so that the partition is not locked while it is scanned.
+     */
+    private static void close(String name) throws Exception {
+        boolean empty = doInTransaction(session -> session.doReturningWork(connection -> {
+            Long minTime = null;
+            long maxTime = 0;
+
+            try (Statement stmt = connection.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT MIN(time), MAX(time) FROM " + name)) {
+                if (rs.next()) {
+                    minTime = rs.getObject(1) != null ? rs.getLong(1) : null;
+                    maxTime = rs.getLong(2);
+                }
+            }
+
+            if (minTime == null) {
+                drop(connection, name);
+
+                return true;
+            }
+
+            log.info("Closing message log partition {}", name);
+
+            try (Statement stmt = connection.createStatement()) {
+                stmt.execute("ALTER TABLE " + name + " ADD CONSTRAINT " + name + "_time CHECK (time >= " + minTime
+                        + " AND time <= " + maxTime + ") NOT VALID");
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "UPDATE logrecord_partition SET starttime = ?, endtime = ? WHERE name = ?")) {
+                stmt.setLong(1, minTime);
+                stmt.setLong(2, maxTime);
+                stmt.setString(3, name);
+                stmt.executeUpdate();
+            }
+
+            return false;
+        }));
+
+        if (!empty) {
+            doInTransaction(session -> {
+                session.doWork(connection -> {
+                    try (Statement stmt = connection.createStatement()) {
+                        stmt.execute("ALTER TABLE " + name + " VALIDATE CONSTRAINT " + name + "_time");
+                    }
+                });
+
+                return null;
+            });
+        }
+    }
+
+    private static void markArchived(Connection connection) throws SQLException {
+        for (Partition partition : getPartitions(connection)) {
+            if (!partition.isClosed() || partition.isArchived()) {
+                continue;
+            }
+
+            try (Statement stmt = connection.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT 1 FROM " + partition.getName()
+                            + " WHERE archived IS NOT TRUE LIMIT 1")) {
+                if (rs.next()) {
+                    // Partitions are archived in the order of time
+                    return;
+                }
+            }
+
+            try (PreparedStatement stmt = connection.prepareStatement(
+                    "UPDATE logrecord_partition SET archived = true WHERE name = ?")) {
+                stmt.setString(1, partition.getName());
+                stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static boolean isParentArchived(Connection connection) throws SQLException {
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT 1 FROM ONLY logrecord WHERE archived IS NOT TRUE LIMIT 1")) {
+            return !rs.next();
+        }
+    }
+
+    private static void drop(Connection connection, String name) throws SQLException {
+        log.info("Dropping message log partition {}", name);
+
+        try (Statement stmt = connection.createStatement()) {
+            stmt.execute("DROP TABLE " + name);
+        }
+
+        try (PreparedStatement stmt = connection.prepareStatement("DELETE FROM logrecord_partition WHERE name = ?")) {
+            stmt.setString(1, name);
+            stmt.executeUpdate();
+        }
+    }
+
+    private static List<Partition> getPartitions(Connection connection) throws SQLException {
+        List<Partition> partitions = new ArrayList<>();
+
+        try (Statement stmt = connection.createStatement();
+                ResultSet rs = stmt.executeQuery(
+                        "SELECT name, starttime, endtime, archived FROM logrecord_partition ORDER BY starttime")) {
+            while (rs.next()) {
+                long endTime = rs.getLong(3);
+
+                partitions.add(new Partition(rs.getString(1), rs.getLong(2), rs.wasNull() ? null : endTime,
+                        rs.getBoolean(4)));
+            }
+        }
+
+        return partitions;
+    }
+}
@@ -0,0 +1,207 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
+
+/**
+ * Saves message records to the database in groups. Records submitted by
+ * concurrent callers are collected into a bounded queue and saved by a single
+ * writer thread, one transaction per batch. The future returned for each
+ * record is completed once the transaction containing it has been committed.
+ */
+@Slf4j
+class MessageRecordBatchWriter {
+
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private static final long STOP_TIMEOUT_MS = 10000;
+
+    private final BlockingQueue<PendingRecord> queue;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    /**
+     * Creates and starts the writer.
+     * @param queueSize maximum number of records waiting to be saved
+     * @param maxBatchSize maximum number of records saved in one transaction
+     * @param maxDelayMillis time to wait for more records before saving a
+     * batch that is not full
+     */
+    MessageRecordBatchWriter(int queueSize, int maxBatchSize, long maxDelayMillis) {
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+
+        writer = new Thread(this::run, "messagelog-batch-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queues the message record for saving. Blocks if the queue is full.
+     * @param messageRecord the message record
+     * @return future that is completed with the record when it has been saved
+     * @throws InterruptedException if interrupted while waiting for space in
+     * the queue
+     */
+    CompletableFuture<MessageRecord> submit(MessageRecord messageRecord) throws InterruptedException {
+        if (!running) {
+            throw new CodedException(X_INTERNAL_ERROR, "Message record writer has been stopped");
+        }
+
+        PendingRecord pending = new PendingRecord(messageRecord);
+        queue.put(pending);
+
+        return pending.future;
+    }
+
+    /**
+     * Stops the writer after the batch being saved has been committed. Records
+     * still waiting in the queue are failed.
+     * @throws InterruptedException if interrupted while waiting for the writer
+     */
+    void stop() throws InterruptedException {
+        running = false;
+
+        writer.join(STOP_TIMEOUT_MS);
+
+        List<PendingRecord> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+
+        fail(remaining, new CodedException(X_INTERNAL_ERROR, "Message record writer has been stopped"));
+    }
+
+    private void run() {
+        List<PendingRecord> batch = new ArrayList<>(maxBatchSize);
+
+        try {
+            while (running) {
+                PendingRecord first = queue.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+
+                if (first != null) {
+                    batch.add(first);
+                    collectBatch(batch);
+                    save(batch);
+                    batch.clear();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            fail(batch, e);
+        }
+    }
+
+    private void collectBatch(List<PendingRecord> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + maxDelayNanos;
+
+        queue.drainTo(batch, maxBatchSize - batch.size());
+
+        while (batch.size() < maxBatchSize) {
+            long remaining = deadline - System.nanoTime();
+
+            PendingRecord next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+
+            if (next == null) {
+                return;
+            }
+
+            batch.add(next);
+            queue.drainTo(batch, maxBatchSize - batch.size());
+        }
+    }
+
+    private void save(List<PendingRecord> batch) {
+        log.trace("save({})", batch.size());
+
+        try {
+            saveBatch(batch.stream().map(p -> p.record).collect(Collectors.toList()));
+            batch.forEach(PendingRecord::complete);
+        } catch (Exception e) {
+            if (batch.size() == 1) {
+                fail(batch, e);
+            } else {
+                log.warn("Saving {} message records failed, saving them one by one", batch.size(), e);
+
+                // A single failing record must not fail the records it happened to be grouped with
+                batch.forEach(MessageRecordBatchWriter::saveSingle);
+            }
+        }
+    }
+
+    /**
+     * Saves the message records in one transaction.
+     * @param records the message records
+     * @throws Exception if an error occurs while communicating with database
+     */
+    void saveBatch(List<MessageRecord> records) throws Exception {
+        LogRecordManager.saveMessageRecords(records);
+    }
+
+    private static void saveSingle(PendingRecord pending) {
+        try {
+            pending.record.setId(null);
+
+            LogRecordManager.saveMessageRecord(pending.record);
+            pending.complete();
+        } catch (Exception e) {
+            pending.future.completeExceptionally(e);
+        }
+    }
+
+    private static void fail(List<PendingRecord> batch, Throwable cause) {
+        batch.forEach(p -> p.future.completeExceptionally(cause));
+    }
+
+    private static final class PendingRecord {
+        private final MessageRecord record;
+        private final CompletableFuture<MessageRecord> future = new CompletableFuture<>();
+
+        PendingRecord(MessageRecord record) {
+            this.record = record;
+        }
+
+        void complete() {
+            future.complete(record);
+        }
+    }
+}
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.proxy.messagelog;
 
+import ee.ria.xroad.common.CommonMessages;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampSucceeded;
@@ -35,10 +36,12 @@ import akka.actor.UntypedActor;
 import lombok.AccessLevel;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Query;
 import org.hibernate.Session;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.proxy.messagelog.LogManager.TIMESTAMPER_NAME;
 import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
@@ -53,12 +56,23 @@ public class TaskQueue extends UntypedActor {
     static final String START_TIMESTAMPING = "StartTimestamping";
     static final double TIMESTAMPED_RECORDS_RATIO_THRESHOLD = 0.7;
 
+    // A batch without a result in this time is no longer counted as in flight
+    private static final long BATCH_TIMEOUT_MS = 2L * (MessageLogProperties.getTimestamperClientConnectTimeout()
+            + MessageLogProperties.getTimestamperClientReadTimeout());
+
+    private final TimestampBatchController batchController = new TimestampBatchController(
+            Runtime.getRuntime().availableProcessors(),
+            TimeUnit.SECONDS.toMillis(MessageLogProperties.getAcceptableTimestampFailurePeriodSeconds()),
+            BATCH_TIMEOUT_MS);
+
     @Override
     public void onReceive(Object message) throws Exception {
         log.trace("onReceive({})", message);
 
         if (message.equals(START_TIMESTAMPING)) {
             handleStartTimestamping();
+        } else if (message.equals(CommonMessages.TIMESTAMPING_BACKLOG)) {
+            handleTimestampingBacklog();
         } else if (message instanceof Timestamper.TimestampSucceeded) {
             handleTimestampSucceeded((Timestamper.TimestampSucceeded) message);
         } else if (message instanceof Timestamper.TimestampFailed) {
@@ -75,6 +89,8 @@ public class TaskQueue extends UntypedActor {
             log.trace("Time-stamped message records {}", Arrays.toString(message.getMessageRecords()));
         }
 
+        batchController.succeeded(message.getMessageRecords(), System.currentTimeMillis());
+
         boolean succeeded = true;
 
         try {
@@ -86,11 +102,10 @@ public class TaskQueue extends UntypedActor {
         } finally {
             if (succeeded) {
                 indicateSuccess();
-                // If time-stamped records count equals to time-stamp records limit, there are probably
-                // still records to be time-stamped. Init another another time-stamping round to prevent
-                // messagelog records to begin to bloat.
-                if (message.getMessageRecords().length == MessageLogProperties.getTimestampRecordsLimit()) {
-                    log.info("Time-stamped records count equaled to time-stamp records limit");
+                // If the last round could not submit all the records, init another time-stamping round
+                // to prevent messagelog records to begin to bloat.
+                if (batchController.isBacklogRemaining()) {
+                    log.info("Time-stamping backlog remaining, starting another round");
                     handleStartTimestamping();
                 }
             } else {
@@ -130,14 +145,34 @@ public class TaskQueue extends UntypedActor {
     protected void handleTimestampFailed(TimestampFailed message) {
         log.trace("handleTimestampFailed");
 
+        batchController.failed(message.getMessageRecords());
+
         indicateFailure();
     }
 
     protected void handleStartTimestamping() {
+        long now = System.currentTimeMillis();
+        int recordsLimit = MessageLogProperties.getTimestampRecordsLimit();
+
+        TimestampBatchController.Round round;
         List<Task> timestampTasks;
 
         try {
-            timestampTasks = doInTransaction(this::getTimestampTasks);
+            Object[] backlog = doInTransaction(TaskQueue::getBacklog);
+
+            round = batchController.nextRound(getRecordCount(backlog), getOldestRecordTime(backlog), recordsLimit,
+                    now);
+
+            if (round.getBatches() == 0) {
+                log.trace("Nothing to time-stamp, task queue is empty or all batches are in flight");
+
+                return;
+            }
+
+            List<TimestampBatchController.RecordRange> inFlight = batchController.getRecordRangesInFlight();
+            int maxResults = round.getBatches() * round.getBatchSize();
+
+            timestampTasks = doInTransaction(session -> getTimestampTasks(session, inFlight, maxResults));
         } catch (Exception e) {
             log.error("Error getting time-stamp tasks", e);
 
@@ -152,15 +187,33 @@ public class TaskQueue extends UntypedActor {
 
         int timestampTasksSize = timestampTasks.size();
 
-        log.info("Start time-stamping {} message records", timestampTasksSize);
+        log.info("Start time-stamping {} message records in {} batches", timestampTasksSize, round.getBatches());
 
-        if (timestampTasksSize / (double) MessageLogProperties.getTimestampRecordsLimit()
-                >= TIMESTAMPED_RECORDS_RATIO_THRESHOLD) {
+        if (round.getBatchSize() / (double) recordsLimit >= TIMESTAMPED_RECORDS_RATIO_THRESHOLD) {
             log.warn("Number of time-stamped records is over {} % of 'timestamp-records-limit' value",
                     TIMESTAMPED_RECORDS_RATIO_THRESHOLD * 100);
         }
 
-        sendToTimestamper(createTimestampTask(timestampTasks));
+        for (int from = 0; from < timestampTasksSize; from += round.getBatchSize()) {
+            TimestampTask timestampTask = createTimestampTask(
+                    timestampTasks.subList(from, Math.min(timestampTasksSize, from + round.getBatchSize())));
+
+            batchController.submitted(timestampTask.getMessageRecords(), now);
+            sendToTimestamper(timestampTask);
+        }
+    }
+
+    private void handleTimestampingBacklog() {
+        try {
+            Object[] backlog = doInTransaction(TaskQueue::getBacklog);
+
+            getSender().tell(batchController.getBacklog(getRecordCount(backlog), getOldestRecordTime(backlog),
+                    System.currentTimeMillis()), getSelf());
+        } catch (Exception e) {
+            log.error("Could not read time-stamping backlog", e);
+
+            getSender().tell(e, getSelf());
+        }
     }
 
     private void sendToTimestamper(TimestampTask timestampTask) {
@@ -191,9 +244,42 @@ public class TaskQueue extends UntypedActor {
     }
 
     @SuppressWarnings("unchecked")
-    private List<Task> getTimestampTasks(Session session) {
-        return session.createQuery(getTaskQueueQuery()).setMaxResults(
-                MessageLogProperties.getTimestampRecordsLimit()).list();
+    private static List<Task> getTimestampTasks(Session session, List<TimestampBatchController.RecordRange> inFlight,
+            int maxResults) {
+        Query query = session.createQuery(getTaskQueueQuery() + getRecordsNotInFlightCondition(inFlight.size())
+                + " and m.time >= :activeSince order by m.id");
+
+        for (int i = 0; i < inFlight.size(); i++) {
+            query.setParameter("first" + i, inFlight.get(i).getFirst());
+            query.setParameter("last" + i, inFlight.get(i).getLast());
+        }
+
+        return query.setParameter("activeSince", LogRecordPartitions.getActiveSince())
+                .setMaxResults(maxResults).list();
+    }
+
+    private static String getRecordsNotInFlightCondition(int batchesInFlight) {
+        StringBuilder condition = new StringBuilder();
+
+        for (int i = 0; i < batchesInFlight; i++) {
+            condition.append(" and m.id not between :first").append(i).append(" and :last").append(i);
+        }
+
+        return condition.toString();
+    }
+
+    private static Object[] getBacklog(Session session) {
+        return (Object[]) session.createQuery(getBacklogQuery())
+                .setParameter("activeSince", LogRecordPartitions.getActiveSince())
+                .uniqueResult();
+    }
+
+    private static long getRecordCount(Object[] backlog) {
+        return backlog[0] != null ? ((Number) backlog[0]).longValue() : 0;
+    }
+
+    private static long getOldestRecordTime(Object[] backlog) {
+        return backlog[1] != null ? ((Number) backlog[1]).longValue() : System.currentTimeMillis();
     }
 
     @SuppressWarnings("unchecked")
@@ -206,6 +292,11 @@ public class TaskQueue extends UntypedActor {
                 + "from MessageRecord m where m.signatureHash is not null";
     }
 
+    private static String getBacklogQuery() {
+        return "select COUNT(*), MIN(m.time) from MessageRecord m where m.signatureHash is not null"
+                + " and m.time >= :activeSince";
+    }
+
     private static String getTaskQueueSizeQuery() {
         return "select COUNT(*) from MessageRecord m where m.signatureHash is not null";
     }
@@ -0,0 +1,208 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.TimestampingBacklog;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides how many time-stamping batches to start and how large they are. The whole backlog is submitted in one
+ * round if it fits into a single batch. Otherwise the number of parallel batches grows with the number of
+ * round-trips to the TSP that would be needed to time-stamp the backlog one batch at a time, compared to the time
+ * left until the oldest record exceeds the target lag. The target lag is derived from the acceptable time-stamp
+ * failure period.
+ *
+ * Only the number of batches adapts to the round-trip time and the target lag. The batch size is fixed on purpose:
+ * a batch is time-stamped with one request, whose round-trip time hardly depends on the number of records, so a
+ * smaller batch would only leave more records waiting. Batches are full ('timestamp-records-limit' records) while
+ * the backlog is larger than the batches of the round, otherwise the backlog is split evenly between them.
+ *
+ * The records of a batch in flight are excluded from the next rounds by the id range of the batch, so that records
+ * outside the ranges, e.g. the records of a failed batch, are submitted again while other batches are in flight.
+ *
+ * Not thread safe, used by the task queue actor only.
+ */
+final class TimestampBatchController {
+
+    @Value
+    static final class Round {
+        private final int batches;
+        private final int batchSize;
+    }
+
+    static final Round NO_ROUND = new Round(0, 0);
+
+    /**
+     * Message record ids from first to last, inclusive.
+     */
+    @Value
+    static final class RecordRange {
+        private final long first;
+        private final long last;
+    }
+
+    // Fraction of the acceptable time-stamp failure period used as the target time-stamping lag
+    private static final int TARGET_LAG_DIVISOR = 10;
+    private static final long DEFAULT_TARGET_LAG_MS = 600000;
+    private static final double EWMA_WEIGHT = 0.2;
+
+    @Value
+    private static final class Batch {
+        private final long startTime;
+        private final int size;
+        private final RecordRange records;
+    }
+
+    private final int maxBatchesInFlight;
+    private final long targetLag;
+    private final long batchTimeout;
+
+    private final Map<Long, Batch> inFlight = new HashMap<>();
+    private int recordsInFlight;
+    private long roundTripTime;
+    private boolean backlogRemaining;
+
+    TimestampBatchController(int maxBatchesInFlight, long failurePeriodMs, long batchTimeoutMs) {
+        this.maxBatchesInFlight = Math.max(1, maxBatchesInFlight);
+        this.targetLag = failurePeriodMs > 0 ? failurePeriodMs / TARGET_LAG_DIVISOR : DEFAULT_TARGET_LAG_MS;
+        this.batchTimeout = batchTimeoutMs;
+    }
+
+    /**
+     * @param recordCount number of records waiting for a time-stamp, including the ones in flight
+     * @param oldestRecordTime time of the oldest record waiting for a time-stamp
+     * @param maxBatchSize maximum number of records in one batch
+     * @param now current time
+     * @return the batches to start now
+     */
+    Round nextRound(long recordCount, long oldestRecordTime, int maxBatchSize, long now) {
+        expireBatches(now);
+
+        long unsubmitted = recordCount - recordsInFlight;
+        int freeSlots = maxBatchesInFlight - inFlight.size();
+
+        backlogRemaining = unsubmitted > 0;
+
+        if (unsubmitted <= 0 || freeSlots <= 0 || maxBatchSize <= 0) {
+            return NO_ROUND;
+        }
+
+        long fullBatches = (unsubmitted + maxBatchSize - 1) / maxBatchSize;
+
+        long roundTrip = Math.max(roundTripTime, 1);
+        long remaining = Math.max(targetLag - (now - oldestRecordTime), roundTrip);
+        long affordableRounds = remaining / roundTrip;
+
+        int batches = (int) Math.min(Math.min(fullBatches, freeSlots),
+                Math.max(1, (fullBatches + affordableRounds - 1) / affordableRounds));
+
+        long records = Math.min(unsubmitted, (long) batches * maxBatchSize);
+
+        backlogRemaining = records < unsubmitted;
+
+        return new Round(batches, (int) ((records + batches - 1) / batches));
+    }
+
+    /**
+     * @return the id ranges of the batches in flight, the records in them must not be submitted again
+     */
+    List<RecordRange> getRecordRangesInFlight() {
+        List<RecordRange> ranges = new ArrayList<>(inFlight.size());
+
+        for (Batch batch : inFlight.values()) {
+            ranges.add(batch.getRecords());
+        }
+
+        return ranges;
+    }
+
+    void submitted(Long[] records, long now) {
+        long first = records[0];
+        long last = records[0];
+
+        for (Long record : records) {
+            first = Math.min(first, record);
+            last = Math.max(last, record);
+        }
+
+        inFlight.put(records[0], new Batch(now, records.length, new RecordRange(first, last)));
+        recordsInFlight += records.length;
+    }
+
+    void succeeded(Long[] records, long now) {
+        Batch batch = complete(records);
+
+        if (batch != null) {
+            long latency = now - batch.getStartTime();
+
+            roundTripTime = roundTripTime == 0 ? latency
+                    : (long) (EWMA_WEIGHT * latency + (1 - EWMA_WEIGHT) * roundTripTime);
+        }
+    }
+
+    void failed(Long[] records) {
+        complete(records);
+    }
+
+    /**
+     * @return true if the last round left records that were not submitted
+     */
+    boolean isBacklogRemaining() {
+        return backlogRemaining;
+    }
+
+    TimestampingBacklog getBacklog(long recordCount, long oldestRecordTime, long now) {
+        return new TimestampingBacklog(recordCount, recordCount == 0 ? 0 : now - oldestRecordTime,
+                inFlight.size(), roundTripTime);
+    }
+
+    private Batch complete(Long[] records) {
+        Batch batch = records.length == 0 ? null : inFlight.remove(records[0]);
+
+        if (batch != null) {
+            recordsInFlight -= batch.getSize();
+        }
+
+        return batch;
+    }
+
+    private void expireBatches(long now) {
+        for (Iterator<Batch> it = inFlight.values().iterator(); it.hasNext();) {
+            Batch batch = it.next();
+
+            if (now - batch.getStartTime() > batchTimeout) {
+                it.remove();
+                recordsInFlight -= batch.getSize();
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends time-stamp requests to the TSPs in the order of their observed latency and success rate. If the preferred
+ * TSP has not answered within the configured percentile of its latencies, the request is also sent to the next TSP
+ * and the first valid response is used. Failing TSPs are tried last for an exponentially growing period.
+ */
+@Slf4j
+final class TimestamperClient {
+
+    /**
+     * A single time-stamping attempt against one TSP. The attempt must fail if the response is not valid, so that
+     * an invalid response never wins over a slower valid one.
+     * @param <T> type of the attempt result
+     */
+    interface Attempt<T> {
+        T call(String url) throws Exception;
+    }
+
+    private static final int LATENCY_SAMPLES = 64;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final int MAX_BACKOFF_SHIFT = 20;
+    private static final double EWMA_WEIGHT = 0.2;
+    private static final double MIN_SUCCESS_RATE = 0.05;
+
+    private final int hedgePercentile;
+    private final long hedgeDelay;
+    private final long maxBackoff;
+    private final LongSupplier clock;
+
+    private final Map<String, TspStats> stats = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "TimestamperClient");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    TimestamperClient(int hedgePercentile, long hedgeDelay, long maxBackoff, LongSupplier clock) {
+        this.hedgePercentile = hedgePercentile;
+        this.hedgeDelay = hedgeDelay;
+        this.maxBackoff = maxBackoff;
+        this.clock = clock;
+    }
+
+    static TimestamperClient getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Executes the attempt against the given TSPs, best first, hedging slow attempts with the next TSP.
+     * @param tspUrls the configured TSP URLs
+     * @param attempt the attempt to execute against a single TSP
+     * @param <T> type of the attempt result
+     * @return the result of the first successful attempt
+     * @throws Exception if all the attempts failed
+     */
+    <T> T execute(List<String> tspUrls, Attempt<T> attempt) throws Exception {
+        List<String> urls = order(tspUrls);
+
+        CompletionService<T> completionService = new ExecutorCompletionService<>(executor);
+        List<Future<T>> pending = new ArrayList<>();
+        List<Exception> failures = new ArrayList<>();
+
+        int next = 0;
+        String hedgedUrl = null;
+
+        try {
+            while (next < urls.size() || failures.size() < pending.size()) {
+                if (failures.size() == pending.size()) {
+                    hedgedUrl = urls.get(next++);
+                    pending.add(submit(completionService, hedgedUrl, attempt));
+                }
+
+                Future<T> done = next < urls.size()
+                        ? completionService.poll(getHedgeDelay(hedgedUrl), TimeUnit.MILLISECONDS)
+                        : completionService.take();
+
+                if (done == null) {
+                    log.debug("No time-stamp response from {} yet, sending request also to next TSP", hedgedUrl);
+
+                    hedgedUrl = urls.get(next++);
+                    pending.add(submit(completionService, hedgedUrl, attempt));
+                } else {
+                    try {
+                        return done.get();
+                    } catch (ExecutionException e) {
+                        failures.add(e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+                    }
+                }
+            }
+        } finally {
+            pending.forEach(f -> f.cancel(true));
+        }
+
+        RuntimeException e = new RuntimeException("Failed to get time stamp from any time-stamping providers");
+        failures.forEach(e::addSuppressed);
+
+        throw e;
+    }
+
+    List<String> order(List<String> tspUrls) {
+        long now = clock.getAsLong();
+
+        List<String> urls = new ArrayList<>(tspUrls);
+        urls.sort(Comparator.comparing((String url) -> getStats(url).isBackedOff(now))
+                .thenComparingDouble(url -> getStats(url).getScore()));
+
+        return urls;
+    }
+
+    long getHedgeDelay(String url) {
+        if (hedgePercentile <= 0) {
+            return Long.MAX_VALUE;
+        }
+
+        long latency = getStats(url).getLatencyPercentile(hedgePercentile);
+
+        return latency < 0 ? hedgeDelay : latency;
+    }
+
+    private <T> Future<T> submit(CompletionService<T> completionService, String url, Attempt<T> attempt) {
+        TspStats tspStats = getStats(url);
+
+        return completionService.submit(() -> {
+            log.debug("Sending time-stamp request to {}", url);
+
+            long start = clock.getAsLong();
+
+            try {
+                T result = attempt.call(url);
+
+                tspStats.success(clock.getAsLong() - start);
+
+                return result;
+            } catch (Exception e) {
+                log.error("Failed to get time stamp from " + url, e);
+
+                tspStats.failure(clock.getAsLong());
+
+                throw e;
+            }
+        });
+    }
+
+    private TspStats getStats(String url) {
+        return stats.computeIfAbsent(url, u -> new TspStats());
+    }
+
+    private final class TspStats {
+        private final long[] latencies = new long[LATENCY_SAMPLES];
+        private int latencyCount;
+        private double averageLatency;
+        private double successRate = 1;
+        private int consecutiveFailures;
+        private long backedOffUntil;
+
+        synchronized void success(long latency) {
+            latencies[latencyCount++ % LATENCY_SAMPLES] = latency;
+            averageLatency = latencyCount == 1 ? latency
+                    : EWMA_WEIGHT * latency + (1 - EWMA_WEIGHT) * averageLatency;
+            successRate = EWMA_WEIGHT + (1 - EWMA_WEIGHT) * successRate;
+            consecutiveFailures = 0;
+            backedOffUntil = 0;
+        }
+
+        synchronized void failure(long now) {
+            successRate = (1 - EWMA_WEIGHT) * successRate;
+            consecutiveFailures++;
+
+            long backoff = MIN_BACKOFF_MS << Math.min(consecutiveFailures - 1, MAX_BACKOFF_SHIFT);
+            backedOffUntil = now + Math.min(backoff, maxBackoff);
+        }
+
+        synchronized boolean isBackedOff(long now) {
+            return now < backedOffUntil;
+        }
+
+        synchronized double getScore() {
+            return averageLatency / Math.max(successRate, MIN_SUCCESS_RATE);
+        }
+
+        /** @return the given percentile of the recent latencies or -1 if there are none */
+        synchronized long getLatencyPercentile(int percentile) {
+            int count = Math.min(latencyCount, LATENCY_SAMPLES);
+
+            if (count == 0) {
+                return -1;
+            }
+
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+
+            return sorted[Math.min(count - 1, (int) Math.ceil(count * Math.min(percentile, 100) / 100.0) - 1)];
+        }
+    }
+
+    private static final class InstanceHolder {
+        private static final TimestamperClient INSTANCE = new TimestamperClient(
+                MessageLogProperties.getTimestamperHedgePercentile(),
+                MessageLogProperties.getTimestamperHedgeDelay(),
+                MessageLogProperties.getTimestamperFailureBackoff(),
+                System::currentTimeMillis);
+    }
+}
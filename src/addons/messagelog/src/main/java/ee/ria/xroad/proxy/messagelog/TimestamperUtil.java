@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
 import org.bouncycastle.asn1.ASN1InputStream;
 import org.bouncycastle.asn1.cmp.PKIFreeText;
 import org.bouncycastle.asn1.cmp.PKIStatus;
@@ -37,6 +38,7 @@ import org.bouncycastle.tsp.TimeStampRequest;
 import org.bouncycastle.tsp.TimeStampResponse;
 import org.bouncycastle.tsp.TimeStampToken;
 
+import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
@@ -65,6 +67,10 @@ final class TimestamperUtil {
                 new JcaCertStore(collection), cms.getAttributeCertificates(), cms.getCRLs()));
     }
 
+    /**
+     * Sends the time-stamp request to the TSP and reads the whole response, so that the connection is returned to
+     * the keep-alive cache and reused by the next request to the same TSP.
+     */
     static InputStream makeTsRequest(TimeStampRequest req, String tspUrl) throws Exception {
         byte[] request = req.getEncoded();
 
@@ -77,18 +83,26 @@ final class TimestamperUtil {
         con.setReadTimeout(MessageLogProperties.getTimestamperClientReadTimeout());
         con.setRequestMethod("POST");
         con.setRequestProperty("Content-type", "application/timestamp-query");
-        con.setRequestProperty("Content-length", String.valueOf(request.length));
+        con.setFixedLengthStreamingMode(request.length);
 
-        OutputStream out = con.getOutputStream();
-        out.write(request);
-        out.flush();
+        try (OutputStream out = con.getOutputStream()) {
+            out.write(request);
+        }
 
         if (con.getResponseCode() != HttpURLConnection.HTTP_OK) {
+            try (InputStream err = con.getErrorStream()) {
+                if (err != null) {
+                    IOUtils.toByteArray(err);
+                }
+            }
+
             throw new RuntimeException("Received HTTP error: " + con.getResponseCode() + " - "
                     + con.getResponseMessage());
         }
 
-        return con.getInputStream();
+        try (InputStream in = con.getInputStream()) {
+            return new ByteArrayInputStream(IOUtils.toByteArray(in));
+        }
     }
 
     static TimeStampResponse getTimestampResponse(InputStream in) throws Exception {
@@ -0,0 +1,280 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.messagelog.AbstractLogRecord;
+import ee.ria.xroad.common.messagelog.TimestampRecord;
+
+import com.opentable.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static ee.ria.xroad.proxy.messagelog.LogRecordPartitions.getPartitionName;
+import static ee.ria.xroad.proxy.messagelog.MessageLogDatabaseCtx.doInTransaction;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the message log partition maintenance against an embedded PostgreSQL database.
+ */
+public class LogRecordPartitionsPostgresTest {
+
+    private static final long DAY = 86400000L;
+    private static final long HOUR = 3600000L;
+    private static final long DAY_1 = 17532 * DAY;
+    private static final long DAY_2 = DAY_1 + DAY;
+    private static final long DAY_3 = DAY_2 + DAY;
+    private static final long DAY_4 = DAY_3 + DAY;
+
+    private static final String[] DATABASE_PROPERTIES = {
+        "messagelog.hibernate.dialect", "messagelog.hibernate.connection.driver_class",
+        "messagelog.hibernate.connection.url", "messagelog.hibernate.connection.username",
+        "messagelog.hibernate.connection.password", "messagelog.hibernate.hbm2ddl.auto"
+    };
+
+    private static EmbeddedPostgres postgres;
+
+    /**
+     * Starts the database and points the message log database context to it.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void startDatabase() throws Exception {
+        postgres = EmbeddedPostgres.start();
+
+        MessageLogDatabaseCtx.get().closeSessionFactory();
+
+        System.setProperty("messagelog.hibernate.dialect", "org.hibernate.dialect.PostgreSQL9Dialect");
+        System.setProperty("messagelog.hibernate.connection.driver_class", "org.postgresql.Driver");
+        System.setProperty("messagelog.hibernate.connection.url", postgres.getJdbcUrl("postgres", "postgres"));
+        System.setProperty("messagelog.hibernate.connection.username", "postgres");
+        System.setProperty("messagelog.hibernate.connection.password", "postgres");
+        System.setProperty("messagelog.hibernate.hbm2ddl.auto", "create");
+    }
+
+    /**
+     * Restores the message log database context of the other tests and stops the database.
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void stopDatabase() throws Exception {
+        MessageLogDatabaseCtx.get().closeSessionFactory();
+
+        for (String property : DATABASE_PROPERTIES) {
+            System.clearProperty(property);
+        }
+
+        LogRecordPartitions.reset();
+
+        postgres.close();
+    }
+
+    /**
+     * Creates the partition metadata table, as the 6-partitioning changeset does, and removes the partitions of
+     * the previous test.
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void setUp() throws Exception {
+        LogRecordPartitions.reset();
+
+        execute("DROP RULE IF EXISTS logrecord_insert ON logrecord",
+                "DO $$ DECLARE p text; BEGIN"
+                        + " FOR p IN SELECT relname FROM pg_class WHERE relname LIKE 'logrecord_p2%' AND relkind = 'r'"
+                        + " LOOP EXECUTE 'DROP TABLE ' || p; END LOOP; END $$",
+                "DO $$ DECLARE c text; BEGIN"
+                        + " FOR c IN SELECT conname FROM pg_constraint"
+                        + " WHERE conrelid = 'logrecord'::regclass AND contype = 'f'"
+                        + " LOOP EXECUTE 'ALTER TABLE logrecord DROP CONSTRAINT ' || c; END LOOP; END $$",
+                "DROP TABLE IF EXISTS logrecord_partition",
+                "CREATE TABLE logrecord_partition (name VARCHAR(255) PRIMARY KEY, starttime BIGINT NOT NULL,"
+                        + " endtime BIGINT, archived BOOLEAN NOT NULL DEFAULT false)",
+                "DELETE FROM logrecord");
+    }
+
+    /**
+     * Test that new records are routed to the current partition and read through the parent table.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void insertRoutedToCurrentPartition() throws Exception {
+        LogRecordPartitions.maintain(DAY_1 + HOUR, 0);
+
+        assertEquals(1, countPartitions());
+
+        Long id = save(DAY_1 + 2 * HOUR);
+
+        assertEquals(0, count("SELECT COUNT(*) FROM ONLY logrecord"));
+        assertEquals(1, count("SELECT COUNT(*) FROM " + getPartitionName(DAY_1)));
+
+        AbstractLogRecord record = doInTransaction(session -> (AbstractLogRecord) session
+                .get(AbstractLogRecord.class, id));
+
+        assertNotNull(record);
+        assertEquals(Long.valueOf(DAY_1 + 2 * HOUR), record.getTime());
+
+        LogRecordPartitions.maintain(DAY_2 + HOUR, 0);
+
+        save(DAY_2 + 2 * HOUR);
+
+        assertEquals(1, count("SELECT COUNT(*) FROM " + getPartitionName(DAY_1)));
+        assertEquals(1, count("SELECT COUNT(*) FROM " + getPartitionName(DAY_2)));
+        assertEquals(2, count("SELECT COUNT(*) FROM logrecord"));
+    }
+
+    /**
+     * Test that a closed partition gets a validated time constraint and limits the queries for active records.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void closedPartitionConstrainedByTime() throws Exception {
+        LogRecordPartitions.maintain(DAY_1 + HOUR, 0);
+
+        save(DAY_1 + 2 * HOUR);
+        save(DAY_1 + 3 * HOUR);
+
+        LogRecordPartitions.maintain(DAY_2 + HOUR, 0);
+
+        String closed = getPartitionName(DAY_1);
+
+        assertEquals(1, count("SELECT COUNT(*) FROM pg_constraint WHERE conname = '" + closed + "_time'"
+                + " AND convalidated"));
+        assertEquals(1, count("SELECT COUNT(*) FROM logrecord_partition WHERE name = '" + closed + "'"
+                + " AND starttime = " + (DAY_1 + 2 * HOUR) + " AND endtime = " + (DAY_1 + 3 * HOUR)));
+
+        // the closed partition may still contain records that are not archived
+        assertEquals(DAY_1 + 2 * HOUR, LogRecordPartitions.getActiveSince());
+
+        execute("UPDATE logrecord SET archived = true");
+
+        LogRecordPartitions.maintain(DAY_2 + 2 * HOUR, 0);
+
+        assertEquals(DAY_2 + HOUR - LogRecordPartitions.INSERT_DELAY_MARGIN_MS, LogRecordPartitions.getActiveSince());
+        assertFalse(explain("SELECT id FROM logrecord WHERE archived = false AND time >= "
+                + LogRecordPartitions.getActiveSince()).contains(closed));
+        assertTrue(explain("SELECT id FROM logrecord WHERE archived = false").contains(closed));
+    }
+
+    /**
+     * Test that archived partitions are dropped after the retention period and empty ones when closed.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void expiredPartitionsDropped() throws Exception {
+        LogRecordPartitions.maintain(DAY_1 + HOUR, 0);
+
+        save(DAY_1 + 2 * HOUR);
+
+        LogRecordPartitions.maintain(DAY_2 + HOUR, 0);
+
+        execute("UPDATE logrecord SET archived = true");
+
+        // archived, but not older than the retention period
+        LogRecordPartitions.maintain(DAY_3 + HOUR, DAY_1 + HOUR);
+
+        assertTrue(hasTable(getPartitionName(DAY_1)));
+        assertEquals(1, count("SELECT COUNT(*) FROM logrecord_partition WHERE archived"));
+
+        // the partition of the second day had no records
+        assertFalse(hasTable(getPartitionName(DAY_2)));
+
+        LogRecordPartitions.maintain(DAY_4 + HOUR, DAY_1 + 2 * HOUR);
+
+        assertFalse(hasTable(getPartitionName(DAY_1)));
+        assertEquals(0, count("SELECT COUNT(*) FROM logrecord"));
+        assertEquals(1, countPartitions());
+        assertTrue(hasTable(getPartitionName(DAY_4)));
+    }
+
+    private static Long save(long time) throws Exception {
+        TimestampRecord record = new TimestampRecord();
+        record.setTime(time);
+        record.setTimestamp("timestamp");
+        record.setHashChainResult("hashChainResult");
+
+        return doInTransaction(session -> (Long) session.save(record));
+    }
+
+    private static int countPartitions() throws Exception {
+        return (int) count("SELECT COUNT(*) FROM logrecord_partition");
+    }
+
+    private static boolean hasTable(String name) throws Exception {
+        return count("SELECT COUNT(*) FROM pg_class WHERE relname = '" + name + "'") > 0;
+    }
+
+    private static long count(String query) throws Exception {
+        return doInTransaction(session -> session.doReturningWork(connection -> {
+            try (Statement stmt = connection.createStatement(); ResultSet rs = stmt.executeQuery(query)) {
+                rs.next();
+
+                return rs.getLong(1);
+            }
+        }));
+    }
+
+    private static String explain(String query) throws Exception {
+        return doInTransaction(session -> session.doReturningWork(connection -> {
+            List<String> plan = new ArrayList<>();
+
+            try (PreparedStatement stmt = connection.prepareStatement("EXPLAIN " + query);
+                    ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    plan.add(rs.getString(1));
+                }
+            }
+
+            return String.join("\n", plan);
+        }));
+    }
+
+    private static void execute(String... statements) throws Exception {
+        doInTransaction(session -> {
+            session.doWork(connection -> executeAll(connection, statements));
+
+            return null;
+        });
+    }
+
+    private static void executeAll(Connection connection, String... statements) throws SQLException {
+        try (Statement stmt = connection.createStatement()) {
+            for (String statement : statements) {
+                stmt.execute(statement);
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.proxy.messagelog.LogRecordPartitions.Partition;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static ee.ria.xroad.proxy.messagelog.LogRecordPartitions.INSERT_DELAY_MARGIN_MS;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the selection of message log partitions to close and drop.
+ */
+public class LogRecordPartitionsTest {
+
+    private static final long DAY = 86400000L;
+    private static final long START = 17532 * DAY;
+
+    private static final Partition ARCHIVED_1 = new Partition("logrecord_p20180101", START, START + DAY - 1, true);
+    private static final Partition ARCHIVED_2 = new Partition("logrecord_p20180102", START + DAY,
+            START + 2 * DAY - 1, true);
+    private static final Partition CLOSED = new Partition("logrecord_p20180103", START + 2 * DAY,
+            START + 3 * DAY - 1, false);
+    private static final Partition CURRENT = new Partition("logrecord_p20180104", START + 3 * DAY, null, false);
+
+    /**
+     * Test that partitions are named by the day in UTC.
+     */
+    @Test
+    public void partitionNamedByDay() {
+        assertEquals("logrecord_p20180101", LogRecordPartitions.getPartitionName(START));
+        assertEquals("logrecord_p20180101", LogRecordPartitions.getPartitionName(START + DAY - 1));
+        assertEquals("logrecord_p20180102", LogRecordPartitions.getPartitionName(START + DAY));
+    }
+
+    /**
+     * Test that only archived partitions older than the retention period are dropped, oldest first.
+     */
+    @Test
+    public void expiredPartitions() {
+        List<Partition> partitions = Arrays.asList(ARCHIVED_1, ARCHIVED_2, CLOSED, CURRENT);
+
+        assertEquals(Collections.emptyList(), LogRecordPartitions.getExpired(partitions, START));
+        assertEquals(Collections.singletonList(ARCHIVED_1),
+                LogRecordPartitions.getExpired(partitions, START + DAY));
+        assertEquals(Arrays.asList(ARCHIVED_1, ARCHIVED_2),
+                LogRecordPartitions.getExpired(partitions, START + 10 * DAY));
+    }
+
+    /**
+     * Test that queries are limited to the partitions that may contain records not yet archived.
+     */
+    @Test
+    public void activeSince() {
+        assertEquals(CLOSED.getStartTime(),
+                LogRecordPartitions.getActiveSince(Arrays.asList(ARCHIVED_1, ARCHIVED_2, CLOSED, CURRENT)));
+        assertEquals(CURRENT.getStartTime() - INSERT_DELAY_MARGIN_MS,
+                LogRecordPartitions.getActiveSince(Arrays.asList(ARCHIVED_1, ARCHIVED_2, CURRENT)));
+        assertEquals(0, LogRecordPartitions.getActiveSince(Collections.emptyList()));
+    }
+
+    /**
+     * Test that all open partitions but the last one are closed.
+     */
+    @Test
+    public void previousOpenPartitions() {
+        Partition previous = new Partition("logrecord_p20180103", START + 2 * DAY, null, false);
+
+        assertEquals(Collections.singletonList(previous),
+                LogRecordPartitions.getPreviousOpen(Arrays.asList(ARCHIVED_1, previous, CURRENT)));
+        assertEquals(Collections.emptyList(), LogRecordPartitions.getPreviousOpen(Arrays.asList(ARCHIVED_1, CURRENT)));
+    }
+}
@@ -0,0 +1,146 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.message.SoapMessageImpl;
+import ee.ria.xroad.common.messagelog.MessageLogProperties;
+import ee.ria.xroad.common.signature.SignatureData;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createMessage;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.createSignature;
+
+/**
+ * Messagelog load test. Measures message records saved per second with 1, 8 and 64 concurrent senders,
+ * with and without group commit. Not run by the default build, run with
+ * 'gradle :addons:messagelog:groupCommitPerformanceTest'.
+ */
+@Slf4j
+public class MessageLogGroupCommitPerformanceTest extends AbstractMessageLogTest {
+
+    // number of messages logged in each measurement, divided between senders
+    private static final int NUM_MESSAGES = 6400;
+
+    private static final int[] NUM_SENDERS = {1, 8, 64};
+
+    private static final AtomicInteger QUERY_ID = new AtomicInteger();
+
+    /**
+     * Measures the throughput with one transaction per message record.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void groupCommitDisabled() throws Exception {
+        run(false);
+    }
+
+    /**
+     * Measures the throughput with the message records of concurrent senders committed together.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void groupCommitEnabled() throws Exception {
+        run(true);
+    }
+
+    /**
+     * Cleanup test environment for other tests.
+     * @throws Exception in case of any errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        testTearDown();
+
+        System.clearProperty(MessageLogProperties.GROUP_COMMIT);
+    }
+
+    @Override
+    protected void testSetUp(boolean timestampImmediately) throws Exception {
+        TestUtil.initForTest();
+
+        super.testSetUp(timestampImmediately);
+
+        initLogManager();
+    }
+
+    private void run(boolean groupCommit) throws Exception {
+        System.setProperty(MessageLogProperties.GROUP_COMMIT, Boolean.toString(groupCommit));
+
+        testSetUp(false);
+
+        // warm up
+        measure(NUM_SENDERS[NUM_SENDERS.length - 1]);
+
+        for (int senders : NUM_SENDERS) {
+            log.info("Group commit {}, {} senders: {} messages/s", groupCommit ? "enabled" : "disabled",
+                    senders, measure(senders));
+        }
+    }
+
+    private long measure(int senders) throws Exception {
+        CountDownLatch done = new CountDownLatch(senders);
+        List<Exception> errors = new ArrayList<>();
+
+        long start = System.nanoTime();
+
+        for (int i = 0; i < senders; i++) {
+            new Thread(() -> {
+                try {
+                    SignatureData signature = createSignature();
+
+                    for (int j = 0; j < NUM_MESSAGES / senders; j++) {
+                        SoapMessageImpl message = createMessage(Integer.toString(QUERY_ID.incrementAndGet()));
+
+                        log(message, signature);
+                    }
+                } catch (Exception e) {
+                    synchronized (errors) {
+                        errors.add(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        done.await();
+
+        long elapsedNanos = System.nanoTime() - start;
+
+        if (!errors.isEmpty()) {
+            throw errors.get(0);
+        }
+
+        return NUM_MESSAGES * 1_000_000_000L / elapsedNanos;
+    }
+}
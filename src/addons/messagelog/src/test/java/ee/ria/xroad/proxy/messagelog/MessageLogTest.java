@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.messagelog;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.ExpectedCodedException;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.message.SoapMessageImpl;
 import ee.ria.xroad.common.messagelog.AbstractLogManager;
 import ee.ria.xroad.common.messagelog.AbstractLogRecord;
@@ -34,7 +35,9 @@ import ee.ria.xroad.common.messagelog.LogRecord;
 import ee.ria.xroad.common.messagelog.MessageLogProperties;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 import ee.ria.xroad.common.messagelog.TimestampRecord;
+import ee.ria.xroad.common.messagelog.archive.ArchiveEntry;
 import ee.ria.xroad.common.messagelog.archive.DigestEntry;
+import ee.ria.xroad.common.messagelog.archive.LogArchiveReader;
 import ee.ria.xroad.common.signature.SignatureData;
 import ee.ria.xroad.common.util.JobManager;
 import ee.ria.xroad.proxy.messagelog.Timestamper.TimestampFailed;
@@ -59,6 +62,7 @@ import java.io.FileFilter;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
@@ -82,6 +86,7 @@ import static org.junit.Assert.fail;
 public class MessageLogTest extends AbstractMessageLogTest {
     private static final String LAST_LOG_ARCHIVE_FILE = "mlog-20150520112233-20150520123344-asdlfjlasa.zip";
     private static final String LAST_DIGEST = "123567890abcdef";
+    private static final ClientId CLIENT = ClientId.create("EE", "BUSINESS", "consumer");
 
     static Date logRecordTime;
 
@@ -231,7 +236,8 @@ public class MessageLogTest extends AbstractMessageLogTest {
     }
 
     /**
-     * Logs messages, time-stamps them. Then archives the messages and cleans the database.
+     * Logs messages, time-stamps them. Then archives the messages and cleans the database. The cleaned messages
+     * must still be found through their archive entries.
      * @throws Exception in case of any unexpected errors
      *
      * FUTURE As this test is quite expensive in terms of time and usable resources (in addition depends on external
@@ -259,14 +265,53 @@ public class MessageLogTest extends AbstractMessageLogTest {
         TestLogArchiver.waitForArchiveSuccessful();
 
         assertEquals(4, getNumberOfRecords(true));
+        assertTrue(LogRecordManager.getArchivedByQueryId("123456789", CLIENT, false).isEmpty());
 
         startCleaning();
         TestLogCleaner.waitForCleanSuccessful();
         assertEquals(0, getNumberOfRecords(true));
 
+        List<ArchiveEntry> archived = LogRecordManager.getArchivedByQueryId("123456789", CLIENT, false);
+        assertEquals(3, archived.size());
+
+        for (ArchiveEntry entry : archived) {
+            assertTrue(LogArchiveReader.readContainer(entry).length > 0);
+        }
+
         assertArchiveHashChain();
     }
 
+    /**
+     * Archive entries older than the retention period and entries of log archives that are no longer in the archive
+     * directory must be removed by the log cleaner.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void cleanArchiveEntries() throws Exception {
+        System.setProperty(MessageLogProperties.KEEP_ARCHIVE_ENTRIES_FOR, "10");
+
+        File archiveFile = new File("build/", "archive-entries-test.zip");
+        archiveFile.createNewFile();
+
+        try {
+            long now = System.currentTimeMillis();
+
+            saveArchiveEntry(archiveFile.getName(), new DateTime(now).minusDays(11).getMillis());
+            saveArchiveEntry(archiveFile.getName(), now);
+            saveArchiveEntry("missing-archive.zip", now);
+
+            assertEquals(2, (int) doInTransaction(LogCleaner::handleCleanArchiveEntries));
+
+            List<ArchiveEntry> archived = LogRecordManager.getArchivedByQueryId("123456789", CLIENT, false);
+            assertEquals(1, archived.size());
+            assertEquals(archiveFile.getName(), archived.get(0).getArchiveFile());
+            assertEquals(now, (long) archived.get(0).getTime());
+        } finally {
+            System.clearProperty(MessageLogProperties.KEEP_ARCHIVE_ENTRIES_FOR);
+            archiveFile.delete();
+        }
+    }
+
     /**
      * Logs 3 messages, time-stamping fails. Task queue must have 3 tasks. Logs 1 more message, task queue must
      * have 4 tasks.
@@ -539,6 +584,18 @@ public class MessageLogTest extends AbstractMessageLogTest {
         return latestModifiedZip.getPath();
     }
 
+    private static void saveArchiveEntry(String archiveFile, long time) throws Exception {
+        ArchiveEntry entry = new ArchiveEntry();
+        entry.setQueryId("123456789");
+        entry.setMemberClass(CLIENT.getMemberClass());
+        entry.setMemberCode(CLIENT.getMemberCode());
+        entry.setTime(time);
+        entry.setArchiveFile(archiveFile);
+        entry.setEntryName("entry-" + time + ".asice");
+
+        doInTransaction(session -> session.save(entry));
+    }
+
     private static boolean changesLatestModified(File former, File candidate) {
         return former == null || former.lastModified() < candidate.lastModified();
     }
@@ -0,0 +1,170 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.proxy.messagelog.TestUtil.cleanUpDatabase;
+import static ee.ria.xroad.proxy.messagelog.TestUtil.initForTest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Tests saving message records with group commit.
+ */
+public class MessageRecordBatchWriterTest {
+
+    private static final int NUM_SENDERS = 8;
+    private static final int NUM_MESSAGES_PER_SENDER = 25;
+    private static final int NUM_QUEUED_MESSAGES = 5;
+
+    private MessageRecordBatchWriter writer;
+
+    /**
+     * Initializes the database and the writer.
+     */
+    @Before
+    public void setUp() {
+        initForTest();
+
+        writer = new MessageRecordBatchWriter(NUM_SENDERS, 10, 1);
+    }
+
+    /**
+     * Stops the writer and cleans up the database.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        writer.stop();
+
+        cleanUpDatabase();
+    }
+
+    /**
+     * Records submitted concurrently are all saved and can be read back.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void saveRecordsSubmittedConcurrently() throws Exception {
+        ExecutorService senders = Executors.newFixedThreadPool(NUM_SENDERS);
+        List<Future<List<MessageRecord>>> results = new ArrayList<>();
+
+        for (int i = 0; i < NUM_SENDERS; i++) {
+            int sender = i;
+
+            results.add(senders.submit(() -> {
+                List<MessageRecord> saved = new ArrayList<>();
+
+                for (int j = 0; j < NUM_MESSAGES_PER_SENDER; j++) {
+                    saved.add(writer.submit(createMessageRecord(sender + "-" + j)).get());
+                }
+
+                return saved;
+            }));
+        }
+
+        int savedCount = 0;
+
+        for (Future<List<MessageRecord>> result : results) {
+            for (MessageRecord record : result.get(30, TimeUnit.SECONDS)) {
+                assertNotNull(record.getId());
+                assertEquals(record.getQueryId(),
+                        ((MessageRecord) LogRecordManager.get(record.getId())).getQueryId());
+
+                savedCount++;
+            }
+        }
+
+        senders.shutdown();
+
+        assertEquals(NUM_SENDERS * NUM_MESSAGES_PER_SENDER, savedCount);
+    }
+
+    /**
+     * Records queued while the writer waits for more are committed in one transaction.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void commitQueuedRecordsInOneTransaction() throws Exception {
+        writer.stop();
+
+        List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<>());
+
+        writer = new MessageRecordBatchWriter(NUM_SENDERS, 10, 1000) {
+            @Override
+            void saveBatch(List<MessageRecord> records) throws Exception {
+                batchSizes.add(records.size());
+
+                super.saveBatch(records);
+            }
+        };
+
+        List<CompletableFuture<MessageRecord>> saved = new ArrayList<>();
+
+        for (int i = 0; i < NUM_QUEUED_MESSAGES; i++) {
+            saved.add(writer.submit(createMessageRecord("queued-" + i)));
+        }
+
+        for (CompletableFuture<MessageRecord> record : saved) {
+            assertNotNull(record.get(10, TimeUnit.SECONDS).getId());
+        }
+
+        assertEquals(Collections.singletonList(NUM_QUEUED_MESSAGES), batchSizes);
+    }
+
+    /**
+     * Records cannot be submitted once the writer has been stopped.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = RuntimeException.class)
+    public void rejectRecordsAfterStop() throws Exception {
+        writer.stop();
+
+        writer.submit(createMessageRecord("stopped"));
+    }
+
+    private static MessageRecord createMessageRecord(String queryId) {
+        MessageRecord record = new MessageRecord(queryId, "message", "signature", false,
+                ClientId.create("EE", "memberClass", "memberCode"));
+        record.setTime(System.currentTimeMillis());
+
+        return record;
+    }
+}
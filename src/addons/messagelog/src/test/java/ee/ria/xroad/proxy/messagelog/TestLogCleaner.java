@@ -42,9 +42,11 @@ class TestLogCleaner extends LogCleaner {
     }
 
     @Override
-    protected void handleClean(Session session) {
-        super.handleClean(session);
-
-        gate.countDown();
+    protected int handleClean(Session session) {
+        try {
+            return super.handleClean(session);
+        } finally {
+            gate.countDown();
+        }
     }
 }
@@ -0,0 +1,167 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import ee.ria.xroad.proxy.messagelog.TimestampBatchController.RecordRange;
+import ee.ria.xroad.proxy.messagelog.TimestampBatchController.Round;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests sizing of time-stamping batches.
+ */
+public class TimestampBatchControllerTest {
+
+    private static final int MAX_BATCHES = 4;
+    private static final long FAILURE_PERIOD = 14400000;
+    private static final long TIMEOUT = 160000;
+    private static final int LIMIT = 10000;
+    private static final long NOW = 1000000000;
+
+    private TimestampBatchController controller;
+
+    /**
+     * Creates the controller.
+     */
+    @Before
+    public void setUp() {
+        controller = new TimestampBatchController(MAX_BATCHES, FAILURE_PERIOD, TIMEOUT);
+    }
+
+    /**
+     * Test that a small backlog is time-stamped in one batch.
+     */
+    @Test
+    public void smallBacklogInOneBatch() {
+        assertEquals(new Round(1, 5), controller.nextRound(5, NOW - 1000, LIMIT, NOW));
+        assertFalse(controller.isBacklogRemaining());
+    }
+
+    /**
+     * Test that batches are time-stamped one at a time while the backlog can be cleared in time.
+     */
+    @Test
+    public void freshBacklogInOneBatch() {
+        assertEquals(new Round(1, LIMIT), controller.nextRound(25000, NOW - 1000, LIMIT, NOW));
+        assertTrue(controller.isBacklogRemaining());
+    }
+
+    /**
+     * Test that several batches are started when the backlog cannot be cleared one batch at a time.
+     */
+    @Test
+    public void slowTspAndLargeBacklogInParallel() {
+        controller.submitted(new Long[] {1L}, NOW - 60000);
+        controller.succeeded(new Long[] {1L}, NOW);
+
+        // 20 full batches, 4 round-trips of 60 seconds left until the oldest record is 24 minutes old
+        assertEquals(new Round(MAX_BATCHES, LIMIT), controller.nextRound(200000, NOW - 1200000, LIMIT, NOW));
+
+        // close to the target lag, the backlog is split evenly over parallel batches
+        assertEquals(new Round(2, 7500), controller.nextRound(15000, NOW - 1430000, LIMIT, NOW));
+    }
+
+    /**
+     * Test that the records in flight are not submitted again.
+     */
+    @Test
+    public void recordsInFlightNotSubmittedAgain() {
+        controller.submitted(new Long[] {1L, 2L, 3L}, NOW);
+
+        assertEquals(Collections.singletonList(new RecordRange(1, 3)), controller.getRecordRangesInFlight());
+        assertEquals(new Round(1, 2), controller.nextRound(5, NOW, LIMIT, NOW));
+        assertEquals(TimestampBatchController.NO_ROUND, controller.nextRound(3, NOW, LIMIT, NOW));
+
+        controller.failed(new Long[] {1L, 2L, 3L});
+
+        assertTrue(controller.getRecordRangesInFlight().isEmpty());
+        assertEquals(new Round(1, 3), controller.nextRound(3, NOW, LIMIT, NOW));
+    }
+
+    /**
+     * Test that the records of a failed batch are no longer excluded while a batch with higher record ids
+     * is still in flight.
+     */
+    @Test
+    public void failedBatchSubmittedAgainWhileOthersInFlight() {
+        controller.submitted(new Long[] {1L, 2L, 3L}, NOW);
+        controller.submitted(new Long[] {5L, 7L, 8L}, NOW);
+
+        assertEquals(new HashSet<>(Arrays.asList(new RecordRange(1, 3), new RecordRange(5, 8))),
+                new HashSet<>(controller.getRecordRangesInFlight()));
+
+        controller.failed(new Long[] {1L, 2L, 3L});
+
+        assertEquals(Collections.singletonList(new RecordRange(5, 8)), controller.getRecordRangesInFlight());
+        assertEquals(new Round(1, 4), controller.nextRound(7, NOW, LIMIT, NOW));
+    }
+
+    /**
+     * Test that batches are full while the backlog is larger than the batches of the round, so that
+     * only the number of batches adapts.
+     */
+    @Test
+    public void fullBatchesWhileBacklogExceedsRound() {
+        controller.submitted(new Long[] {1L}, NOW - 60000);
+        controller.succeeded(new Long[] {1L}, NOW);
+
+        // 4 full batches, 2 round-trips of 60 seconds left until the oldest record exceeds the target lag
+        assertEquals(new Round(2, LIMIT), controller.nextRound(40000, NOW - 1300000, LIMIT, NOW));
+        assertTrue(controller.isBacklogRemaining());
+    }
+
+    /**
+     * Test that no batches are started while all the slots are in flight, until the batches time out.
+     */
+    @Test
+    public void batchesInFlightLimited() {
+        for (long i = 1; i <= MAX_BATCHES; i++) {
+            controller.submitted(new Long[] {i}, NOW);
+        }
+
+        assertEquals(TimestampBatchController.NO_ROUND, controller.nextRound(10, NOW, LIMIT, NOW));
+        assertTrue(controller.isBacklogRemaining());
+
+        assertEquals(new Round(1, 10), controller.nextRound(10, NOW, LIMIT, NOW + TIMEOUT + 1));
+    }
+
+    /**
+     * Test that the backlog age is reported from the oldest record.
+     */
+    @Test
+    public void backlogAge() {
+        assertEquals(5000, controller.getBacklog(10, NOW - 5000, NOW).getOldestRecordAge());
+        assertEquals(0, controller.getBacklog(0, NOW, NOW).getOldestRecordAge());
+    }
+}
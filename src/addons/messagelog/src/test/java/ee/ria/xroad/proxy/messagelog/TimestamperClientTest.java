@@ -0,0 +1,213 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.messagelog;
+
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.tsp.TimeStampRequest;
+import org.bouncycastle.tsp.TimeStampRequestGenerator;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.proxy.messagelog.TimestamperUtil.getTimestampResponse;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests sending time-stamp requests to several TSPs, using in-process TSP stand-ins with injected latency.
+ */
+public class TimestamperClientTest {
+
+    private static final int SLOW = 3000;
+    private static final int HEDGE_DELAY = 100;
+
+    private final TimeStampRequest request = new TimeStampRequestGenerator()
+            .generate(NISTObjectIdentifiers.id_sha256, new byte[32]);
+
+    private DummyTsp first;
+    private DummyTsp second;
+
+    /**
+     * Starts the TSP stand-ins.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Before
+    public void setUp() throws Exception {
+        first = new DummyTsp();
+        second = new DummyTsp();
+    }
+
+    /**
+     * Stops the TSP stand-ins.
+     * @throws Exception in case of any unexpected errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        first.stop();
+        second.stop();
+    }
+
+    /**
+     * Test that a hedged request to the next TSP is answered while the preferred TSP is still slow.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void hedgedRequestWinsOverSlowTsp() throws Exception {
+        first.latency = SLOW;
+
+        long start = System.currentTimeMillis();
+
+        assertEquals(second.url(), timestamp(createClient(95), first.url(), second.url()));
+        assertTrue(System.currentTimeMillis() - start < SLOW);
+        assertEquals(1, first.hits.get());
+    }
+
+    /**
+     * Test that an invalid response does not win over a slower valid one.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void invalidResponseIsNotUsed() throws Exception {
+        first.invalid = true;
+        second.latency = HEDGE_DELAY * 2;
+
+        assertEquals(second.url(), timestamp(createClient(95), first.url(), second.url()));
+    }
+
+    /**
+     * Test that a failing TSP is tried last until its backoff expires.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void failingTspIsBackedOff() throws Exception {
+        first.status = HttpServletResponse.SC_SERVICE_UNAVAILABLE;
+
+        TimestamperClient client = createClient(0);
+
+        assertEquals(second.url(), timestamp(client, first.url(), second.url()));
+        assertEquals(second.url(), timestamp(client, first.url(), second.url()));
+        assertEquals(1, first.hits.get());
+        assertEquals(Arrays.asList(second.url(), first.url()), client.order(Arrays.asList(first.url(), second.url())));
+    }
+
+    /**
+     * Test that the TSP with lower latency is preferred once its latency is known.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void fasterTspIsPreferred() throws Exception {
+        first.latency = HEDGE_DELAY * 2;
+
+        TimestamperClient client = createClient(0);
+
+        for (int i = 0; i < 3; i++) {
+            timestamp(client, first.url(), second.url());
+        }
+
+        assertEquals(1, first.hits.get());
+        assertEquals(2, second.hits.get());
+    }
+
+    /**
+     * Test that the request fails when no TSP gives a valid response.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test(expected = RuntimeException.class)
+    public void failsWhenAllTspsFail() throws Exception {
+        first.invalid = true;
+        second.status = HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+
+        timestamp(createClient(95), first.url(), second.url());
+    }
+
+    private static TimestamperClient createClient(int hedgePercentile) {
+        return new TimestamperClient(hedgePercentile, HEDGE_DELAY, 60000, System::currentTimeMillis);
+    }
+
+    private String timestamp(TimestamperClient client, String... urls) throws Exception {
+        List<String> tspUrls = Arrays.asList(urls);
+
+        return client.execute(tspUrls, url -> {
+            getTimestampResponse(TimestamperUtil.makeTsRequest(request, url));
+
+            return url;
+        });
+    }
+
+    private static final class DummyTsp extends Server {
+        private final byte[] response = Files.readAllBytes(Paths.get("src/test/resources/tsp.response"));
+        private final AtomicInteger hits = new AtomicInteger();
+        private final ServerConnector connector;
+
+        private volatile int latency;
+        private volatile int status = HttpServletResponse.SC_OK;
+        private volatile boolean invalid;
+
+        DummyTsp() throws Exception {
+            connector = new ServerConnector(this);
+            connector.setHost("127.0.0.1");
+            addConnector(connector);
+
+            setHandler(new AbstractHandler() {
+                @Override
+                public void handle(String target, Request baseRequest, HttpServletRequest req,
+                        HttpServletResponse resp) {
+                    hits.incrementAndGet();
+
+                    try {
+                        Thread.sleep(latency);
+
+                        resp.setStatus(status);
+                        resp.setContentType("application/timestamp-reply");
+                        resp.getOutputStream().write(invalid ? new byte[] {1, 2, 3} : response);
+                    } catch (Exception e) {
+                        resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                    }
+
+                    baseRequest.setHandled(true);
+                }
+            });
+
+            start();
+        }
+
+        String url() {
+            return "http://127.0.0.1:" + connector.getLocalPort() + "/";
+        }
+    }
+}
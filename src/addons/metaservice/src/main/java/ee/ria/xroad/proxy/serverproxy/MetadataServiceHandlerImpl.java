@@ -96,7 +96,7 @@ import static ee.ria.xroad.common.metadata.MetadataRequests.GET_WSDL;
 import static ee.ria.xroad.common.metadata.MetadataRequests.LIST_METHODS;
 
 @Slf4j
-class MetadataServiceHandlerImpl implements ServiceHandler {
+public class MetadataServiceHandlerImpl implements ServiceHandler {
 
     static final JAXBContext JAXB_CTX = initJaxbCtx();
     static final ObjectFactory OBJECT_FACTORY = new ObjectFactory();
@@ -43,11 +43,14 @@ import org.apache.commons.io.IOUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
 import scala.concurrent.duration.FiniteDuration;
 
+import java.io.IOException;
 import java.net.NetworkInterface;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static java.net.NetworkInterface.getNetworkInterfaces;
@@ -57,6 +60,10 @@ import static java.util.Collections.list;
  * Operational monitoring buffer. This buffer is used for gathering
  * operational data and for periodically sending the data to the operational
  * monitoring daemon (using OpMonitoringDaemonSender).
+ *
+ * <p>The records are kept in an OpMonitoringBufferStore until the daemon has
+ * acknowledged them. Each segment of the store is sent as one message, up to
+ * the configured number of messages concurrently.
  */
 @Slf4j
 public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
@@ -65,10 +72,17 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
     private static final String NO_ADDRESS_FOUND = "No suitable IP address is bound to the network interface ";
     private static final String NO_INTERFACE_FOUND = "No non-loopback network interface found";
 
-    private static final long MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
+    private static final int MAX_BUFFER_SIZE = OpMonitoringSystemProperties.getOpMonitorBufferSize();
 
     private static final int MAX_RECORDS_IN_MESSAGE =
             OpMonitoringSystemProperties.getOpMonitorBufferMaxRecordsInMessage();
+
+    private static final int MAX_MESSAGES_IN_FLIGHT = Math.max(1,
+            OpMonitoringSystemProperties.getOpMonitorBufferMaxMessagesInFlight());
+
+    // An overflow removes one segment, i.e. at most a tenth of the records in the buffer.
+    private static final int MIN_SEGMENTS_IN_BUFFER = 10;
+
     private static final long SENDING_INTERVAL_SECONDS =
             OpMonitoringSystemProperties.getOpMonitorBufferSendingIntervalSeconds();
 
@@ -82,27 +96,13 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     private Cancellable tick;
 
-    final Map<Long, OpMonitoringData> buffer =
-            new LinkedHashMap<Long, OpMonitoringData>() {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry eldest) {
-                    boolean overflow = size() > MAX_BUFFER_SIZE;
+    final OpMonitoringBufferStore buffer;
 
-                    if (overflow) {
-                        log.warn("Operational monitoring buffer overflow, removing eldest record: {}", eldest.getKey());
-                    }
-
-                    return overflow;
-                }
-            };
-
-    private long bufferIndex = 0;
-
-    private final Set<Long> processedBufferIndices = new HashSet<>();
+    private final Map<ActorRef, Long> batchesInFlight = new HashMap<>();
 
     private final CloseableHttpClient httpClient;
 
-    private final ActorRef sender;
+    private final List<ActorRef> senders;
 
     private static String ipAddress;
 
@@ -114,22 +114,38 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (ignoreOpMonitoringData()) {
             log.info("Operational monitoring buffer is switched off, no operational monitoring data is stored");
 
+            buffer = null;
             httpClient = null;
-            sender = null;
+            senders = Collections.emptyList();
         } else {
+            buffer = createStore();
             httpClient = createHttpClient();
-            sender = createSender();
+            senders = createSenders();
         }
     }
 
+    OpMonitoringBufferStore createStore() throws IOException {
+        int recordsPerSegment = Math.max(1, Math.min(MAX_RECORDS_IN_MESSAGE,
+                MAX_BUFFER_SIZE / MIN_SEGMENTS_IN_BUFFER));
+
+        return new OpMonitoringBufferStore(Paths.get(OpMonitoringSystemProperties.getOpMonitorBufferPath()),
+                MAX_BUFFER_SIZE, recordsPerSegment);
+    }
+
     CloseableHttpClient createHttpClient() throws Exception {
-        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), 1, 1,
-                CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
+        return OpMonitoringDaemonHttpClient.createHttpClient(ServerConf.getSSLKey(), MAX_MESSAGES_IN_FLIGHT,
+                MAX_MESSAGES_IN_FLIGHT, CLIENT_CONNECTION_TIMEOUT_MILLISECONDS, CLIENT_SOCKET_TIMEOUT_MILLISECONDS);
     }
 
-    ActorRef createSender() {
-        return getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
-                OP_MONITORING_DAEMON_SENDER);
+    List<ActorRef> createSenders() {
+        List<ActorRef> result = new ArrayList<>();
+
+        for (int i = 0; i < MAX_MESSAGES_IN_FLIGHT; i++) {
+            result.add(getContext().system().actorOf(Props.create(OpMonitoringDaemonSender.class, httpClient),
+                    OP_MONITORING_DAEMON_SENDER + i));
+        }
+
+        return result;
     }
 
     @Override
@@ -140,37 +156,39 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
         data.setSecurityServerInternalIp(getIpAddress());
 
-        buffer.put(getNextBufferIndex(), data);
+        buffer.append(data.getData());
 
         send();
     }
 
+    /**
+     * Hands the sealed segments to the idle senders. The segment still being
+     * appended to is sealed and sent only when no message is in flight, so
+     * that the records are sent without delay under a light load and in full
+     * messages under a heavy load.
+     */
     @Override
     protected void send() throws Exception {
-        if (!canSend()) {
-            return;
-        }
+        for (ActorRef sender : senders) {
+            if (batchesInFlight.containsKey(sender)) {
+                continue;
+            }
 
-        String json = prepareMonitoringMessage();
+            OpMonitoringBufferStore.Batch batch = buffer.nextBatch(batchesInFlight.isEmpty());
 
-        sender.tell(json, getSelf());
-    }
+            if (batch == null) {
+                break;
+            }
 
-    private boolean canSend() {
-        return !buffer.isEmpty() && processedBufferIndices.isEmpty();
+            batchesInFlight.put(sender, batch.getId());
+            sender.tell(prepareMonitoringMessage(batch), getSelf());
+        }
     }
 
-    private String prepareMonitoringMessage() {
+    private String prepareMonitoringMessage(OpMonitoringBufferStore.Batch batch) {
         StoreOpMonitoringDataRequest request = new StoreOpMonitoringDataRequest();
 
-        for (Map.Entry<Long, OpMonitoringData> entry : buffer.entrySet()) {
-            processedBufferIndices.add(entry.getKey());
-            request.addRecord(entry.getValue().getData());
-
-            if (request.getRecords().size() == MAX_RECORDS_IN_MESSAGE) {
-                break;
-            }
-        }
+        batch.getRecords().forEach(request::addRecord);
 
         log.debug("Op monitoring buffer records count: {}", buffer.size());
 
@@ -179,25 +197,24 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
 
     @Override
     protected void sendingSuccess() throws Exception {
-        processedBufferIndices.forEach(buffer::remove);
-        processedBufferIndices.clear();
+        Long batchId = batchesInFlight.remove(getSender());
 
-        if (canSend()) {
-            send();
+        if (batchId != null) {
+            buffer.acknowledge(batchId);
         }
+
+        send();
     }
 
     @Override
     protected void sendingFailure() throws Exception {
-        processedBufferIndices.clear();
-
-        // Do not worry, scheduled sending retries..
-    }
+        Long batchId = batchesInFlight.remove(getSender());
 
-    long getNextBufferIndex() {
-        bufferIndex = bufferIndex == Long.MAX_VALUE ? 0 : bufferIndex + 1;
+        if (batchId != null) {
+            buffer.release(batchId);
+        }
 
-        return bufferIndex;
+        // Do not worry, scheduled sending retries..
     }
 
     private void scheduleSendMonitoringData() {
@@ -225,6 +242,10 @@ public class OpMonitoringBuffer extends AbstractOpMonitoringBuffer {
         if (httpClient != null) {
             IOUtils.closeQuietly(httpClient);
         }
+
+        if (buffer != null) {
+            IOUtils.closeQuietly(buffer);
+        }
     }
 
     private boolean ignoreOpMonitoringData() {
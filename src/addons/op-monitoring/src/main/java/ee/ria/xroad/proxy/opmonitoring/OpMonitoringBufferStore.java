@@ -0,0 +1,537 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Bounded, append-only store of the operational monitoring buffer. The records are appended to segment files in the
+ * buffer directory, so that they survive restarts of the proxy. A segment is sent to the operational monitoring
+ * daemon as one message and deleted when the daemon has acknowledged it.
+ *
+ * <p>A segment file starts with a header, followed by records framed by their length and CRC-32 checksum. The fields
+ * of the records are encoded in binary and each field name is written only once per segment. When the store is
+ * opened, a segment torn by a crash is truncated after its last intact record.
+ *
+ * <p>When the store is full, the oldest segment that is not being sent is removed. The store is not thread safe.
+ */
+@Slf4j
+class OpMonitoringBufferStore implements Closeable {
+
+    private static final int SEGMENT_MAGIC = 0x4f504d42; // "OPMB"
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_LONG = 2;
+    private static final byte TYPE_INTEGER = 3;
+    private static final byte TYPE_BOOLEAN = 4;
+
+    private final Path directory;
+    private final int maxRecords;
+    private final int recordsPerSegment;
+
+    private final Deque<Segment> sealedSegments = new ArrayDeque<>();
+    private Segment activeSegment;
+
+    private long nextSegmentId;
+    private int size;
+
+    /**
+     * A message of records read from one segment.
+     */
+    @Value
+    static class Batch {
+        long id;
+        List<Map<String, Object>> records;
+    }
+
+    /**
+     * Opens the store in the given directory and recovers the records left there.
+     * @param directory directory of the segment files, created if it does not exist
+     * @param maxRecords maximum number of records in the store
+     * @param recordsPerSegment number of records after which a segment is sealed
+     * @throws IOException if the directory cannot be used
+     */
+    OpMonitoringBufferStore(Path directory, int maxRecords, int recordsPerSegment) throws IOException {
+        this.directory = directory;
+        this.maxRecords = maxRecords;
+        this.recordsPerSegment = recordsPerSegment;
+
+        Files.createDirectories(directory);
+
+        recover();
+    }
+
+    /**
+     * @return the number of records that have not been acknowledged
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Appends the record to the active segment and removes the oldest records if the store is full.
+     * @param record fields of the record
+     * @throws IOException if writing the record fails
+     */
+    void append(Map<String, Object> record) throws IOException {
+        if (activeSegment == null) {
+            activeSegment = createSegment();
+        }
+
+        write(activeSegment, record);
+        size++;
+
+        if (activeSegment.records >= recordsPerSegment) {
+            sealActiveSegment();
+        }
+
+        removeOverflow();
+    }
+
+    /**
+     * Returns the oldest sealed segment that is not being sent and marks it as being sent.
+     * @param sealActive whether the active segment may be sealed, if there is no such segment
+     * @return the batch or null, if there is nothing to send
+     * @throws IOException if sealing the active segment fails
+     */
+    Batch nextBatch(boolean sealActive) throws IOException {
+        Batch batch = nextSealedBatch();
+
+        if (batch == null && sealActive && activeSegment != null) {
+            sealActiveSegment();
+
+            batch = nextSealedBatch();
+        }
+
+        return batch;
+    }
+
+    /**
+     * Deletes the segment of the batch, the daemon has stored its records.
+     * @param batchId id of the batch
+     */
+    void acknowledge(long batchId) {
+        Iterator<Segment> it = sealedSegments.iterator();
+
+        while (it.hasNext()) {
+            Segment segment = it.next();
+
+            if (segment.id == batchId) {
+                it.remove();
+                delete(segment);
+
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the segment of the batch to the segments waiting to be sent.
+     * @param batchId id of the batch
+     */
+    void release(long batchId) {
+        sealedSegments.stream()
+                .filter(segment -> segment.id == batchId)
+                .forEach(segment -> segment.inFlight = false);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (activeSegment != null) {
+            activeSegment.channel.close();
+            activeSegment = null;
+        }
+    }
+
+    private Batch nextSealedBatch() {
+        Iterator<Segment> it = sealedSegments.iterator();
+
+        while (it.hasNext()) {
+            Segment segment = it.next();
+
+            if (segment.inFlight) {
+                continue;
+            }
+
+            try {
+                List<Map<String, Object>> records = read(segment.file);
+                segment.inFlight = true;
+
+                return new Batch(segment.id, records);
+            } catch (IOException e) {
+                log.error("Removing unreadable operational monitoring buffer segment {}", segment.file, e);
+
+                it.remove();
+                delete(segment);
+            }
+        }
+
+        return null;
+    }
+
+    private void recover() throws IOException {
+        List<Path> files = new ArrayList<>();
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+            stream.forEach(files::add);
+        }
+
+        Collections.sort(files);
+
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            long id;
+
+            try {
+                id = Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring unknown file {} in operational monitoring buffer", file);
+
+                continue;
+            }
+
+            nextSegmentId = Math.max(nextSegmentId, id + 1);
+
+            Segment segment = new Segment(id, file);
+            segment.records = recover(file);
+
+            if (segment.records > 0) {
+                sealedSegments.add(segment);
+                size += segment.records;
+            } else {
+                Files.delete(file);
+            }
+        }
+
+        if (size > 0) {
+            log.info("Recovered {} operational monitoring records from {} segments", size, sealedSegments.size());
+        }
+
+        removeOverflow();
+    }
+
+    private static int recover(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        List<byte[]> payloads = new ArrayList<>();
+
+        int end = scan(bytes, payloads);
+
+        if (end < bytes.length && end > 0) {
+            log.warn("Truncating torn operational monitoring buffer segment {} from {} to {} bytes", file,
+                    bytes.length, end);
+
+            try (FileChannel channel = FileChannel.open(file, WRITE)) {
+                channel.truncate(end);
+            }
+        }
+
+        return payloads.size();
+    }
+
+    /**
+     * Collects the payloads of the intact records of the segment.
+     * @return the length of the intact part of the segment, or 0 if the header is invalid
+     */
+    private static int scan(byte[] segment, List<byte[]> payloads) {
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+
+        if (buffer.remaining() < SEGMENT_HEADER_SIZE || buffer.getInt() != SEGMENT_MAGIC
+                || buffer.getInt() != SEGMENT_VERSION) {
+            return 0;
+        }
+
+        int end = buffer.position();
+
+        while (buffer.remaining() >= FRAME_HEADER_SIZE) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+
+            if (length < 0 || length > buffer.remaining()) {
+                break;
+            }
+
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+
+            if (crc(payload) != checksum) {
+                break;
+            }
+
+            payloads.add(payload);
+            end = buffer.position();
+        }
+
+        return end;
+    }
+
+    private static List<Map<String, Object>> read(Path file) throws IOException {
+        List<byte[]> payloads = new ArrayList<>();
+        scan(Files.readAllBytes(file), payloads);
+
+        List<String> names = new ArrayList<>();
+        List<Map<String, Object>> records = new ArrayList<>(payloads.size());
+
+        for (byte[] payload : payloads) {
+            records.add(decode(payload, names));
+        }
+
+        return records;
+    }
+
+    private Segment createSegment() throws IOException {
+        long id = nextSegmentId++;
+        Segment segment = new Segment(id, directory.resolve(String.format("%019d%s", id, SEGMENT_SUFFIX)));
+
+        segment.channel = FileChannel.open(segment.file, CREATE_NEW, WRITE);
+        segment.names = new HashMap<>();
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC);
+        header.putInt(SEGMENT_VERSION);
+        header.flip();
+
+        writeFully(segment.channel, header);
+        segment.length = SEGMENT_HEADER_SIZE;
+
+        return segment;
+    }
+
+    private static void write(Segment segment, Map<String, Object> record) throws IOException {
+        int knownNames = segment.names.size();
+        byte[] payload = encode(record, segment.names);
+
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER_SIZE + payload.length);
+        frame.putInt(payload.length);
+        frame.putInt(crc(payload));
+        frame.put(payload);
+        frame.flip();
+
+        try {
+            writeFully(segment.channel, frame);
+        } catch (IOException e) {
+            // Forget the partially written record, so that the following records can be read
+            segment.names.values().removeIf(index -> index >= knownNames);
+            segment.channel.truncate(segment.length);
+
+            throw e;
+        }
+
+        segment.length += frame.limit();
+        segment.records++;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void sealActiveSegment() throws IOException {
+        Segment segment = activeSegment;
+        activeSegment = null;
+
+        segment.channel.close();
+        segment.channel = null;
+        segment.names = null;
+
+        sealedSegments.add(segment);
+    }
+
+    private void removeOverflow() {
+        Iterator<Segment> it = sealedSegments.iterator();
+
+        while (size > maxRecords && it.hasNext()) {
+            Segment segment = it.next();
+
+            if (!segment.inFlight) {
+                log.warn("Operational monitoring buffer overflow, removing {} eldest records", segment.records);
+
+                it.remove();
+                delete(segment);
+            }
+        }
+    }
+
+    private void delete(Segment segment) {
+        size -= segment.records;
+
+        try {
+            Files.deleteIfExists(segment.file);
+        } catch (IOException e) {
+            log.error("Failed to delete operational monitoring buffer segment {}", segment.file, e);
+        }
+    }
+
+    private static byte[] encode(Map<String, Object> record, Map<String, Integer> names) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeShort(record.size());
+
+            for (Map.Entry<String, Object> field : record.entrySet()) {
+                Integer index = names.get(field.getKey());
+
+                if (index == null) {
+                    // A new name is written after its index, the reader assigns the indices in the same order
+                    out.writeShort(names.size());
+                    out.writeUTF(field.getKey());
+                    names.put(field.getKey(), names.size());
+                } else {
+                    out.writeShort(index);
+                }
+
+                writeValue(out, field.getValue());
+            }
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TYPE_NULL);
+        } else if (value instanceof Long) {
+            out.writeByte(TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(TYPE_INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TYPE_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else {
+            byte[] string = value.toString().getBytes(StandardCharsets.UTF_8);
+
+            out.writeByte(TYPE_STRING);
+            out.writeInt(string.length);
+            out.write(string);
+        }
+    }
+
+    private static Map<String, Object> decode(byte[] payload, List<String> names) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            int fieldCount = in.readUnsignedShort();
+            Map<String, Object> record = new LinkedHashMap<>();
+
+            for (int i = 0; i < fieldCount; i++) {
+                int index = in.readUnsignedShort();
+
+                if (index == names.size()) {
+                    names.add(in.readUTF());
+                } else if (index > names.size()) {
+                    throw new IOException("Invalid field name index " + index);
+                }
+
+                record.put(names.get(index), readValue(in));
+            }
+
+            return record;
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte type = in.readByte();
+
+        switch (type) {
+            case TYPE_NULL:
+                return null;
+            case TYPE_LONG:
+                return in.readLong();
+            case TYPE_INTEGER:
+                return in.readInt();
+            case TYPE_BOOLEAN:
+                return in.readBoolean();
+            case TYPE_STRING:
+                return readString(in);
+            default:
+                throw new IOException("Invalid field type " + type);
+        }
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] string = new byte[in.readInt()];
+        in.readFully(string);
+
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        return (int) crc.getValue();
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+
+        private int records;
+        private boolean inFlight;
+
+        // Set for the active segment only
+        private FileChannel channel;
+        private Map<String, Integer> names;
+        private long length;
+
+        Segment(long id, Path file) {
+            this.id = id;
+            this.file = file;
+        }
+    }
+}
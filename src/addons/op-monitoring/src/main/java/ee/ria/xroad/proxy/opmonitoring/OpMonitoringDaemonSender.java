@@ -34,7 +34,6 @@ import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.TimeUtils;
 
-import akka.actor.ActorRef;
 import akka.actor.UntypedActor;
 import com.google.gson.Gson;
 import lombok.extern.slf4j.Slf4j;
@@ -50,7 +49,8 @@ import static ee.ria.xroad.common.opmonitoring.StoreOpMonitoringDataResponse.STA
 
 /**
  * Actor for sending operational data to the operational monitoring daemon. This actor is used by the
- * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer.
+ * OpMonitoringBuffer class for periodically forwarding operational data gathered in the buffer. The buffer uses
+ * several senders to have more than one message in flight, and identifies the message of a reply by its sender.
  */
 @Slf4j
 public class OpMonitoringDaemonSender extends UntypedActor {
@@ -90,11 +90,11 @@ public class OpMonitoringDaemonSender extends UntypedActor {
     }
 
     private void success() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_SUCCESS, getSelf());
     }
 
     private void failure() {
-        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, ActorRef.noSender());
+        getSender().tell(AbstractOpMonitoringBuffer.SENDING_FAILURE, getSelf());
     }
 
     private void send(String json) throws Exception {
@@ -0,0 +1,183 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.opmonitoring;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the segment file store of the operational monitoring buffer.
+ */
+public class OpMonitoringBufferStoreTest {
+
+    private static final Path STORE_PATH = Paths.get("build/op-monitor-buffer-store");
+
+    private OpMonitoringBufferStore store;
+
+    @Before
+    public void beforeTest() throws Exception {
+        FileUtils.deleteQuietly(STORE_PATH.toFile());
+    }
+
+    @After
+    public void afterTest() throws Exception {
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void sendSealedSegmentsAndAcknowledge() throws Exception {
+        store = new OpMonitoringBufferStore(STORE_PATH, 10, 2);
+
+        store.append(createRecord(1));
+        store.append(createRecord(2));
+        store.append(createRecord(3));
+
+        OpMonitoringBufferStore.Batch first = store.nextBatch(false);
+        assertEquals(2, first.getRecords().size());
+        assertEquals(createRecord(1), first.getRecords().get(0));
+        assertEquals(createRecord(2), first.getRecords().get(1));
+
+        // The active segment is sent only when allowed
+        assertNull(store.nextBatch(false));
+
+        OpMonitoringBufferStore.Batch second = store.nextBatch(true);
+        assertEquals(1, second.getRecords().size());
+        assertEquals(createRecord(3), second.getRecords().get(0));
+
+        store.acknowledge(first.getId());
+
+        assertEquals(1, store.size());
+        assertEquals(1, getSegmentFiles().length);
+    }
+
+    @Test
+    public void sendReleasedSegmentAgain() throws Exception {
+        store = new OpMonitoringBufferStore(STORE_PATH, 10, 1);
+
+        store.append(createRecord(1));
+
+        OpMonitoringBufferStore.Batch batch = store.nextBatch(false);
+        assertNull(store.nextBatch(false));
+
+        store.release(batch.getId());
+
+        assertEquals(batch, store.nextBatch(false));
+    }
+
+    @Test
+    public void recoverRecordsAfterRestart() throws Exception {
+        store = new OpMonitoringBufferStore(STORE_PATH, 10, 2);
+
+        store.append(createRecord(1));
+        store.append(createRecord(2));
+        store.append(createRecord(3));
+        store.close();
+
+        store = new OpMonitoringBufferStore(STORE_PATH, 10, 2);
+
+        assertEquals(3, store.size());
+        assertEquals(createRecord(1), store.nextBatch(false).getRecords().get(0));
+        assertEquals(createRecord(3), store.nextBatch(false).getRecords().get(0));
+    }
+
+    @Test
+    public void truncateTornSegment() throws Exception {
+        store = new OpMonitoringBufferStore(STORE_PATH, 10, 2);
+
+        store.append(createRecord(1));
+        store.append(createRecord(2));
+        store.close();
+
+        File segment = getSegmentFiles()[0];
+
+        try (FileChannel channel = FileChannel.open(segment.toPath(), WRITE)) {
+            channel.truncate(segment.length() - 1);
+        }
+
+        store = new OpMonitoringBufferStore(STORE_PATH, 10, 2);
+
+        assertEquals(1, store.size());
+        assertEquals(createRecord(1), store.nextBatch(false).getRecords().get(0));
+
+        store.append(createRecord(3));
+        assertNotNull(store.nextBatch(true));
+    }
+
+    @Test
+    public void removeEldestSegmentsOnOverflow() throws Exception {
+        store = new OpMonitoringBufferStore(STORE_PATH, 4, 2);
+
+        store.append(createRecord(1));
+        store.append(createRecord(2));
+
+        // A segment being sent is not removed
+        OpMonitoringBufferStore.Batch inFlight = store.nextBatch(false);
+
+        for (int i = 3; i <= 8; i++) {
+            store.append(createRecord(i));
+        }
+
+        assertEquals(4, store.size());
+
+        List<Map<String, Object>> records = store.nextBatch(false).getRecords();
+        assertEquals(createRecord(7), records.get(0));
+
+        store.acknowledge(inFlight.getId());
+
+        assertEquals(2, store.size());
+    }
+
+    private static File[] getSegmentFiles() {
+        return STORE_PATH.toFile().listFiles((dir, name) -> name.endsWith(".seg"));
+    }
+
+    private static Map<String, Object> createRecord(int index) {
+        Map<String, Object> record = new HashMap<>();
+        record.put("messageId", "message" + index);
+        record.put("requestInTs", 1000L + index);
+        record.put("requestAttachmentCount", index);
+        record.put("succeeded", index % 2 == 0);
+        record.put("clientSubsystemCode", null);
+
+        return record;
+    }
+}
@@ -30,9 +30,18 @@ import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
 import akka.actor.Props;
 import akka.testkit.TestActorRef;
+import org.apache.commons.io.FileUtils;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.Assert.assertEquals;
 
 /**
@@ -40,6 +49,7 @@ import static org.junit.Assert.assertEquals;
  */
 public class OpMonitoringBufferTest {
     private static final ActorSystem ACTOR_SYSTEM = ActorSystem.create();
+    private static final Path BUFFER_PATH = Paths.get("build/op-monitor-buffer");
 
     private static class TestOpMonitoringBuffer extends OpMonitoringBuffer {
         TestOpMonitoringBuffer() throws Exception {
@@ -52,16 +62,26 @@ public class OpMonitoringBufferTest {
         }
 
         @Override
-        ActorRef createSender() {
-            return null;
+        OpMonitoringBufferStore createStore() throws IOException {
+            return new OpMonitoringBufferStore(BUFFER_PATH, 2, 1);
+        }
+
+        @Override
+        List<ActorRef> createSenders() {
+            return Collections.emptyList();
         }
 
         @Override
         protected void store(OpMonitoringData data) throws Exception {
-            buffer.put(getNextBufferIndex(), data);
+            buffer.append(data.getData());
         }
     }
 
+    @Before
+    public void beforeTest() {
+        FileUtils.deleteQuietly(BUFFER_PATH.toFile());
+    }
+
     @Test
     public void bufferOverflow() throws Exception {
         System.setProperty("xroad.op-monitor-buffer.size", "2");
@@ -73,15 +93,18 @@ public class OpMonitoringBufferTest {
         TestOpMonitoringBuffer opMonitoringBuffer =
                 testActorRef.underlyingActor();
 
-        OpMonitoringData opMonitoringData = new OpMonitoringData(
-                OpMonitoringData.SecurityServerType.CLIENT, 100);
-
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
-        opMonitoringBuffer.store(opMonitoringData);
+        opMonitoringBuffer.store(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 100));
+        opMonitoringBuffer.store(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 200));
+        opMonitoringBuffer.store(new OpMonitoringData(OpMonitoringData.SecurityServerType.CLIENT, 300));
 
         assertEquals(2, opMonitoringBuffer.buffer.size());
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(2L));
-        assertEquals(true, opMonitoringBuffer.buffer.containsKey(3L));
+        assertEquals(200L, getRequestInTs(opMonitoringBuffer.buffer.nextBatch(false)));
+        assertEquals(300L, getRequestInTs(opMonitoringBuffer.buffer.nextBatch(false)));
+    }
+
+    private static Object getRequestInTs(OpMonitoringBufferStore.Batch batch) {
+        Map<String, Object> record = batch.getRecords().get(0);
+
+        return record.get("requestInTs");
     }
 }
@@ -43,6 +43,8 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_KEEP_RECORDS_FOR = 30;
 
+    private static final int DEFAULT_KEEP_ARCHIVE_ENTRIES_FOR = 365;
+
     private static final int DEFAULT_ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD = 14400;
 
     private static final int DEFAULT_TIMESTAMP_RECORDS_LIMIT = 10000;
@@ -51,8 +53,20 @@ public final class MessageLogProperties {
 
     private static final int DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT = 60000;
 
+    private static final int DEFAULT_TIMESTAMPER_HEDGE_PERCENTILE = 95;
+
+    private static final int DEFAULT_TIMESTAMPER_HEDGE_DELAY = 1000;
+
+    private static final int DEFAULT_TIMESTAMPER_FAILURE_BACKOFF = 60000;
+
     private static final int DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE = 10000;
 
+    private static final int DEFAULT_ARCHIVE_PAGE_SIZE = 500;
+
+    private static final int DEFAULT_GROUP_COMMIT_BATCH_SIZE = 100;
+
+    private static final int DEFAULT_GROUP_COMMIT_QUEUE_SIZE = 10000;
+
     private static final String PREFIX = "xroad.message-log.";
 
     /** Property name of the timestamper client connect timeout (milliseconds). */
@@ -61,6 +75,15 @@ public final class MessageLogProperties {
     /** Property name of the timestamper client read timeout (milliseconds). */
     public static final String TIMESTAMPER_CLIENT_READ_TIMEOUT = PREFIX + "timestamper-client-read-timeout";
 
+    /** Property name of the latency percentile after which the next TSP is tried in parallel. */
+    public static final String TIMESTAMPER_HEDGE_PERCENTILE = PREFIX + "timestamper-hedge-percentile";
+
+    /** Property name of the hedge delay used until a TSP has latency history (milliseconds). */
+    public static final String TIMESTAMPER_HEDGE_DELAY = PREFIX + "timestamper-hedge-delay";
+
+    /** Property name of the maximum time a failing TSP is skipped (milliseconds). */
+    public static final String TIMESTAMPER_FAILURE_BACKOFF = PREFIX + "timestamper-failure-backoff";
+
     public static final String TIMESTAMP_IMMEDIATELY = PREFIX + "timestamp-immediately";
 
     public static final String TIMESTAMP_RECORDS_LIMIT = PREFIX + "timestamp-records-limit";
@@ -69,6 +92,8 @@ public final class MessageLogProperties {
 
     public static final String KEEP_RECORDS_FOR = PREFIX + "keep-records-for";
 
+    public static final String KEEP_ARCHIVE_ENTRIES_FOR = PREFIX + "keep-archive-entries-for";
+
     public static final String ARCHIVE_MAX_FILESIZE = PREFIX + "archive-max-filesize";
 
     public static final String ARCHIVE_INTERVAL = PREFIX + "archive-interval";
@@ -77,6 +102,20 @@ public final class MessageLogProperties {
 
     public static final String ARCHIVE_TRANSACTION_BATCH = PREFIX + "archive-transaction-batch";
 
+    public static final String ARCHIVE_STREAMING = PREFIX + "archive-streaming";
+
+    public static final String ARCHIVE_PAGE_SIZE = PREFIX + "archive-page-size";
+
+    public static final String ARCHIVE_WORKER_COUNT = PREFIX + "archive-worker-count";
+
+    public static final String GROUP_COMMIT = PREFIX + "group-commit";
+
+    public static final String GROUP_COMMIT_BATCH_SIZE = PREFIX + "group-commit-batch-size";
+
+    public static final String GROUP_COMMIT_DELAY = PREFIX + "group-commit-delay";
+
+    public static final String GROUP_COMMIT_QUEUE_SIZE = PREFIX + "group-commit-queue-size";
+
     public static final String CLEAN_INTERVAL = PREFIX + "clean-interval";
 
     public static final String HASH_ALGO_ID = PREFIX + "hash-algo-id";
@@ -125,6 +164,29 @@ public final class MessageLogProperties {
                 DEFAULT_TIMESTAMPER_CLIENT_READ_TIMEOUT);
     }
 
+    /**
+     * @return the percentile of the observed latencies of a TSP after which a time-stamp request is also sent to
+     * the next TSP. Zero disables hedged requests. '95' by default.
+     */
+    public static int getTimestamperHedgePercentile() {
+        return getInt(System.getProperty(TIMESTAMPER_HEDGE_PERCENTILE), DEFAULT_TIMESTAMPER_HEDGE_PERCENTILE);
+    }
+
+    /**
+     * @return the time in milliseconds to wait for a TSP without latency history before a time-stamp request is
+     * also sent to the next TSP, '1000' by default.
+     */
+    public static int getTimestamperHedgeDelay() {
+        return getInt(System.getProperty(TIMESTAMPER_HEDGE_DELAY), DEFAULT_TIMESTAMPER_HEDGE_DELAY);
+    }
+
+    /**
+     * @return the maximum time in milliseconds a TSP is tried last after consecutive failures, '60000' by default.
+     */
+    public static int getTimestamperFailureBackoff() {
+        return getInt(System.getProperty(TIMESTAMPER_FAILURE_BACKOFF), DEFAULT_TIMESTAMPER_FAILURE_BACKOFF);
+    }
+
     /**
      * @return true if the time-stamp is created synchronously for each request message. This is a security policy to
      * guarantee the time-stamp at the time of logging the message.
@@ -149,6 +211,36 @@ public final class MessageLogProperties {
                 DEFAULT_ACCEPTABLE_TIMESTAMP_FAILURE_PERIOD);
     }
 
+    /**
+     * @return true if message records are saved to the database in batches by a separate writer thread. Defaults
+     * to false.
+     */
+    public static boolean isGroupCommitEnabled() {
+        return Boolean.parseBoolean(System.getProperty(GROUP_COMMIT, "false"));
+    }
+
+    /**
+     * @return the maximum number of message records saved in one group commit transaction. Defaults to 100.
+     */
+    public static int getGroupCommitBatchSize() {
+        return getInt(System.getProperty(GROUP_COMMIT_BATCH_SIZE), DEFAULT_GROUP_COMMIT_BATCH_SIZE);
+    }
+
+    /**
+     * @return the time in milliseconds a group commit waits for more message records before saving a batch that
+     * is not full. Defaults to 0.
+     */
+    public static int getGroupCommitDelay() {
+        return getInt(System.getProperty(GROUP_COMMIT_DELAY), 0);
+    }
+
+    /**
+     * @return the maximum number of message records waiting to be saved by group commit. Defaults to 10000.
+     */
+    public static int getGroupCommitQueueSize() {
+        return getInt(System.getProperty(GROUP_COMMIT_QUEUE_SIZE), DEFAULT_GROUP_COMMIT_QUEUE_SIZE);
+    }
+
     /**
      * @return the time interval as Cron expression for archiving time-stamped records.
      */
@@ -163,6 +255,29 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(ARCHIVE_TRANSACTION_BATCH), DEFAULT_ARCHIVE_TRANSACTION_BATCH_SIZE);
     }
 
+    /**
+     * @return number of message records fetched from the database at a time for archiving. Defaults to 500.
+     */
+    public static int getArchivePageSize() {
+        return getInt(System.getProperty(ARCHIVE_PAGE_SIZE), DEFAULT_ARCHIVE_PAGE_SIZE);
+    }
+
+    /**
+     * @return number of threads generating ASiC containers for archiving. Defaults to the number of available
+     * processors.
+     */
+    public static int getArchiveWorkerCount() {
+        return getInt(System.getProperty(ARCHIVE_WORKER_COUNT), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return true if ASiC containers are streamed directly into the archive file instead of being cached in the
+     * working directory first. Defaults to true.
+     */
+    public static boolean isArchiveStreamingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ARCHIVE_STREAMING, "true"));
+    }
+
     /**
      * @return the time interval as Cron expression for cleaning archived records from online database.
      */
@@ -177,6 +292,14 @@ public final class MessageLogProperties {
         return getInt(System.getProperty(KEEP_RECORDS_FOR), DEFAULT_KEEP_RECORDS_FOR);
     }
 
+    /**
+     * @return the time in days to keep the archive entries used for finding archived ASiC containers in the
+     * database.
+     */
+    public static int getKeepArchiveEntriesForDays() {
+        return getInt(System.getProperty(KEEP_ARCHIVE_ENTRIES_FOR), DEFAULT_KEEP_ARCHIVE_ENTRIES_FOR);
+    }
+
     /**
      * @return the maximum size for archived files in bytes. Defaults to 32 MB.
      */
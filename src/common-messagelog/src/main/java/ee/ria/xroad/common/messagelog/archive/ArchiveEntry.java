@@ -0,0 +1,63 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import ee.ria.xroad.common.messagelog.MessageRecord;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Index entry of an ASiC container stored in a log archive. Maps the query id, sender client and time of a message
+ * record to the archive file and the name of the container in it, so that the container can be found after the
+ * message record has been removed from the database.
+ */
+@Data
+@NoArgsConstructor
+public class ArchiveEntry {
+    private Long id;
+
+    private String queryId;
+    private String memberClass;
+    private String memberCode;
+    private String subsystemCode;
+    private boolean response;
+    private Long time;
+
+    private Long logRecordId;
+    private String archiveFile;
+    private String entryName;
+
+    ArchiveEntry(MessageRecord record, String entryName) {
+        this.queryId = record.getQueryId();
+        this.memberClass = record.getMemberClass();
+        this.memberCode = record.getMemberCode();
+        this.subsystemCode = record.getSubsystemCode();
+        this.response = record.isResponse();
+        this.time = record.getTime();
+        this.logRecordId = record.getId();
+        this.entryName = entryName;
+    }
+}
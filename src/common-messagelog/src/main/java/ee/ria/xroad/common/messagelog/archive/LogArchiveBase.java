@@ -26,6 +26,8 @@ package ee.ria.xroad.common.messagelog.archive;
 
 import ee.ria.xroad.common.messagelog.LogRecord;
 
+import java.util.List;
+
 /**
  * Interface for accessing message log database for archive-related purposes.
  */
@@ -38,6 +40,14 @@ public interface LogArchiveBase {
      */
     void markArchiveCreated(DigestEntry lastArchive) throws Exception;
 
+    /**
+     * Saves the index entries of the ASiC containers written to the created log archive.
+     *
+     * @param entries the archive entries.
+     * @throws Exception if saving the entries fails.
+     */
+    void markArchiveEntriesCreated(List<ArchiveEntry> entries) throws Exception;
+
     /**
      * Marks log record (either message or timestamp) as archived.
      *
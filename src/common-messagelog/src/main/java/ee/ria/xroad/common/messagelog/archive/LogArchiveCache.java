@@ -24,15 +24,14 @@
  */
 package ee.ria.xroad.common.messagelog.archive;
 
-import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.asic.AsicContainerNameGenerator;
 import ee.ria.xroad.common.messagelog.MessageRecord;
 
 import lombok.SneakyThrows;
-import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
@@ -52,14 +51,16 @@ import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
-import static ee.ria.xroad.common.ErrorCodes.X_IO_ERROR;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchiveMaxFilesize;
 import static ee.ria.xroad.common.messagelog.archive.LogArchiveWriter.MAX_RANDOM_GEN_ATTEMPTS;
 
 /**
  * Encapsulates logic of creating log archive from ASiC containers.
+ *
+ * <p>If an archive stream has been started with {@link #startArchive(OutputStream)}, containers are written
+ * directly into it as they are added. Otherwise they are cached as separate files in the working directory
+ * and zipped together by {@link #getArchiveFile()}.
  */
-@Slf4j
 class LogArchiveCache implements Closeable {
 
     private enum State {
@@ -78,7 +79,11 @@ class LogArchiveCache implements Closeable {
     private File archiveContentDir;
     private File tempArchive;
 
+    private ZipOutputStream archiveStream;
+    private OutputStream archiveStreamOutput;
+
     private List<String> archiveFileNames;
+    private List<ArchiveEntry> archiveEntries;
     private Set<Date> creationTimes;
     private long archivesTotalSize;
 
@@ -92,16 +97,55 @@ class LogArchiveCache implements Closeable {
     }
 
     void add(MessageRecord messageRecord) throws Exception {
+        add(messageRecord, null);
+    }
+
+    /**
+     * Adds a message record whose ASiC container has already been generated. If the container bytes are
+     * null, the container is generated from the record.
+     */
+    void add(MessageRecord messageRecord, byte[] containerBytes) throws Exception {
         try {
             validateMessageRecord(messageRecord);
             handleRotation();
-            cacheRecord(messageRecord);
+            cacheRecord(messageRecord, containerBytes);
             updateState();
         } catch (Exception e) {
             handleCacheError(e);
         }
     }
 
+    /**
+     * Starts a new archive that is written directly to the given output. Any previously cached state is
+     * discarded.
+     */
+    void startArchive(OutputStream out) {
+        reset();
+
+        archiveStreamOutput = out;
+        archiveStream = new ZipOutputStream(new BufferedOutputStream(out));
+    }
+
+    /**
+     * Appends the linking info to the archive started with {@link #startArchive(OutputStream)} and closes it,
+     * including the underlying output.
+     */
+    void finishArchive() throws IOException {
+        if (archiveStream == null) {
+            throw new IOException("No archive has been started");
+        }
+
+        try {
+            addLinkingInfoToArchive(archiveStream);
+            archiveStream.close();
+        } catch (Exception e) {
+            handleCacheError(e);
+        } finally {
+            archiveStream = null;
+            archiveStreamOutput = null;
+        }
+    }
+
     InputStream getArchiveFile() throws IOException {
         tempArchive = File.createTempFile(
                 "xroad-log-archive-zip", ".tmp", workingDir.toFile());
@@ -117,6 +161,7 @@ class LogArchiveCache implements Closeable {
 
     @SneakyThrows
     private void handleCacheError(Exception e) {
+        abortArchiveStream();
         deleteArchiveArtifacts();
 
         throw e;
@@ -161,8 +206,13 @@ class LogArchiveCache implements Closeable {
         return (Date) creationTimes.toArray()[creationTimes.size() - 1];
     }
 
+    List<ArchiveEntry> getArchiveEntries() {
+        return archiveEntries;
+    }
+
     @Override
     public void close() throws IOException {
+        abortArchiveStream();
         deleteArchiveArtifacts();
     }
 
@@ -182,10 +232,11 @@ class LogArchiveCache implements Closeable {
         reset();
     }
 
-    private void cacheRecord(MessageRecord messageRecord) throws Exception {
+    private void cacheRecord(MessageRecord messageRecord, byte[] containerBytes) throws Exception {
         creationTimes.add(new Date(messageRecord.getTime()));
 
-        addContainerToArchive(messageRecord);
+        addContainerToArchive(messageRecord,
+                containerBytes != null ? containerBytes : messageRecord.toAsicContainer().getBytes());
     }
 
     private void updateState() {
@@ -196,9 +247,7 @@ class LogArchiveCache implements Closeable {
         return archivesTotalSize > getArchiveMaxFilesize();
     }
 
-    private void addContainerToArchive(MessageRecord record) throws Exception {
-        byte[] containerBytes = record.toAsicContainer().getBytes();
-
+    private void addContainerToArchive(MessageRecord record, byte[] containerBytes) throws Exception {
         String archiveFilename =
                 nameGenerator.getArchiveFilename(record.getQueryId(),
                         record.isResponse() ? AsicContainerNameGenerator.TYPE_RESPONSE
@@ -206,8 +255,20 @@ class LogArchiveCache implements Closeable {
 
         linkingInfoBuilder.addNextFile(archiveFilename, containerBytes);
         archiveFileNames.add(archiveFilename);
+        archiveEntries.add(new ArchiveEntry(record, archiveFilename));
         archivesTotalSize += containerBytes.length;
 
+        if (archiveStream != null) {
+            archiveStream.putNextEntry(new ZipEntry(archiveFilename));
+            archiveStream.write(containerBytes);
+            archiveStream.closeEntry();
+            return;
+        }
+
+        if (archiveContentDir == null) {
+            archiveContentDir = Files.createTempDirectory(workingDir, "xroad-log-archive").toFile();
+        }
+
         try (OutputStream os =
                 Files.newOutputStream(createTempAsicPath(archiveFilename))) {
             os.write(containerBytes);
@@ -219,34 +280,36 @@ class LogArchiveCache implements Closeable {
     }
 
     private void reset() {
-        try {
-            resetArchive();
-            resetCacheState();
-        } catch (IOException e) {
-            log.error("Resetting log archive cache failed, cause:", e);
-            throw new CodedException(X_IO_ERROR,
-                    "Failed to reset log archive cache");
-        }
-    }
-
-    private void resetArchive() throws IOException {
+        abortArchiveStream();
         deleteArchiveArtifacts();
+        resetCacheState();
 
-        archiveContentDir = Files.createTempDirectory(
-                    workingDir,
-                    "xroad-log-archive"
-                ).toFile();
+        archiveContentDir = null;
+    }
+
+    /**
+     * Closes the output of an unfinished archive stream without writing the end of the zip file, so that a
+     * partial archive is never mistaken for a complete one.
+     */
+    private void abortArchiveStream() {
+        IOUtils.closeQuietly(archiveStreamOutput);
+        archiveStream = null;
+        archiveStreamOutput = null;
     }
 
     private void deleteArchiveArtifacts() {
         FileUtils.deleteQuietly(archiveContentDir);
         FileUtils.deleteQuietly(tempArchive);
+
+        tempArchive = null;
     }
 
     private void resetCacheState() {
         archiveFileNames = new ArrayList<>();
+        archiveEntries = new ArrayList<>();
         creationTimes = new TreeSet<>();
         archivesTotalSize = 0;
+        state = State.NEW;
 
         nameGenerator = new AsicContainerNameGenerator(randomGenerator,
                         MAX_RANDOM_GEN_ATTEMPTS);
@@ -0,0 +1,95 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.messagelog.archive;
+
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchivePath;
+
+/**
+ * Reads ASiC containers from the log archives in the archive directory.
+ */
+public final class LogArchiveReader {
+
+    private LogArchiveReader() {
+    }
+
+    /**
+     * Returns whether the log archive of the given entry is present in the archive directory. Archives that have
+     * been moved elsewhere by the archive transfer command are not.
+     *
+     * @param entry the archive entry.
+     * @return true if the archive file exists.
+     */
+    public static boolean isAvailable(ArchiveEntry entry) {
+        return isAvailable(entry.getArchiveFile());
+    }
+
+    /**
+     * Returns whether the log archive with the given name is present in the archive directory.
+     *
+     * @param archiveFile the name of the archive file.
+     * @return true if the archive file exists.
+     */
+    public static boolean isAvailable(String archiveFile) {
+        return Files.isRegularFile(Paths.get(getArchivePath(), archiveFile));
+    }
+
+    /**
+     * Reads the ASiC container of the given entry. Only the requested entry is read from the archive, using the
+     * central directory of the zip file.
+     *
+     * @param entry the archive entry.
+     * @return bytes of the ASiC container.
+     * @throws IOException if the archive or the container in it cannot be read.
+     */
+    public static byte[] readContainer(ArchiveEntry entry) throws IOException {
+        Path archiveFile = getArchiveFile(entry);
+
+        try (ZipFile archive = new ZipFile(archiveFile.toFile())) {
+            ZipEntry container = archive.getEntry(entry.getEntryName());
+
+            if (container == null) {
+                throw new IOException("Log archive " + archiveFile + " does not contain " + entry.getEntryName());
+            }
+
+            try (InputStream in = archive.getInputStream(container)) {
+                return IOUtils.toByteArray(in);
+            }
+        }
+    }
+
+    private static Path getArchiveFile(ArchiveEntry entry) {
+        return Paths.get(getArchivePath(), entry.getArchiveFile());
+    }
+}
@@ -42,6 +42,7 @@ import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.SimpleDateFormat;
+import java.util.List;
 
 import static ee.ria.xroad.common.DefaultFilepaths.createTempFile;
 import static ee.ria.xroad.common.messagelog.MessageLogProperties.getArchivePath;
@@ -71,6 +72,7 @@ public class LogArchiveWriter implements Closeable {
 
     private final LinkingInfoBuilder linkingInfoBuilder;
     private final LogArchiveCache logArchiveCache;
+    private final boolean streaming;
 
     private WritableByteChannel archiveOut;
     private Path archiveTmp;
@@ -78,7 +80,7 @@ public class LogArchiveWriter implements Closeable {
      * Creates new LogArchiveWriter
      *
      * @param outputPath  directory where the log archive is created.
-     * @param workingPath directory where the temporary files are stored
+     * @param workingPath directory where the temporary files are stored when archive streaming is disabled
      * @param archiveBase interface to archive database.
      */
     public LogArchiveWriter(Path outputPath, Path workingPath,
@@ -96,6 +98,8 @@ public class LogArchiveWriter implements Closeable {
                 linkingInfoBuilder,
                 workingPath
         );
+
+        this.streaming = MessageLogProperties.isArchiveStreamingEnabled();
     }
 
     /**
@@ -106,6 +110,30 @@ public class LogArchiveWriter implements Closeable {
      * @throws Exception in case of any errors
      */
     public boolean write(LogRecord logRecord) throws Exception {
+        return doWrite(logRecord, null);
+    }
+
+    /**
+     * Write a message log record whose ASiC container has already been
+     * generated, e.g. by a separate worker thread.
+     *
+     * @param messageRecord the message record
+     * @param asicContainer bytes of the ASiC container of the record
+     * @return true if the a archive file was rotated
+     * @throws Exception in case of any errors
+     */
+    public boolean write(MessageRecord messageRecord, byte[] asicContainer)
+            throws Exception {
+        if (asicContainer == null) {
+            throw new IllegalArgumentException(
+                    "ASiC container must not be null");
+        }
+
+        return doWrite(messageRecord, asicContainer);
+    }
+
+    private boolean doWrite(LogRecord logRecord, byte[] asicContainer)
+            throws Exception {
         if (logRecord == null) {
             throw new IllegalArgumentException("log record must not be null");
         }
@@ -117,7 +145,13 @@ public class LogArchiveWriter implements Closeable {
         log.trace("write({})", logRecord.getId());
 
         if (logRecord instanceof MessageRecord) {
-            logArchiveCache.add((MessageRecord) logRecord);
+            try {
+                logArchiveCache.add((MessageRecord) logRecord, asicContainer);
+            } catch (Exception e) {
+                // the cache has discarded the archive, start a new one with the next record
+                abortOutput();
+                throw e;
+            }
         }
 
         archiveBase.markRecordArchived(logRecord);
@@ -165,7 +199,10 @@ public class LogArchiveWriter implements Closeable {
 
     protected void rotate() throws Exception {
         log.trace("rotate()");
-        archiveAsicContainers();
+        if (!archiveAsicContainers()) {
+            abortOutput();
+            throw new IOException("Failed to create log archive");
+        }
 
         closeOutputs();
         archiveOut = null;
@@ -180,6 +217,17 @@ public class LogArchiveWriter implements Closeable {
             return false;
         }
 
+        if (streaming) {
+            try {
+                logArchiveCache.finishArchive();
+            } catch (IOException e) {
+                log.error("Failed to finish log archive due to IO error", e);
+                return false;
+            }
+
+            return true;
+        }
+
         try (InputStream input = logArchiveCache.getArchiveFile();
              OutputStream output = Channels.newOutputStream(archiveOut)) {
             IOUtils.copy(input, output);
@@ -191,6 +239,13 @@ public class LogArchiveWriter implements Closeable {
         return true;
     }
 
+    private void abortOutput() {
+        IOUtils.closeQuietly(archiveOut);
+        archiveOut = null;
+
+        clearTempArchive();
+    }
+
     private void closeOutputs() throws IOException {
         if (archiveOut != null) {
             archiveOut.close();
@@ -207,6 +262,10 @@ public class LogArchiveWriter implements Closeable {
         }
 
         archiveOut = createArchiveOutput();
+
+        if (streaming) {
+            logArchiveCache.startArchive(Channels.newOutputStream(archiveOut));
+        }
     }
 
     private void saveArchive() throws IOException {
@@ -229,6 +288,9 @@ public class LogArchiveWriter implements Closeable {
 
     private void setArchivedInDatabase(String archiveFilename)
             throws IOException {
+        List<ArchiveEntry> archiveEntries = logArchiveCache.getArchiveEntries();
+        archiveEntries.forEach(entry -> entry.setArchiveFile(archiveFilename));
+
         try {
             archiveBase.markArchiveCreated(
                     new DigestEntry(
@@ -236,6 +298,7 @@ public class LogArchiveWriter implements Closeable {
                             archiveFilename
                     )
             );
+            archiveBase.markArchiveEntriesCreated(archiveEntries);
         } catch (Exception e) {
             throw new IOException(e);
         }
@@ -41,13 +41,16 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
+import java.util.Random;
 import java.util.function.Supplier;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -205,6 +208,96 @@ public class LogArchiveCacheTest {
         assertZip(expectedConflictingEntryNames(), getArchiveBytes());
     }
 
+    /**
+     * Test to ensure containers are written directly to the started archive stream and linking info is
+     * appended when the archive is finished.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void streamRecordsToStartedArchive() throws Exception {
+        setMaxArchiveSizeDefault();
+
+        ByteArrayOutputStream archiveOut = new ByteArrayOutputStream();
+        cache.startArchive(archiveOut);
+
+        cache.add(createRequestRecordTooLarge());
+        cache.add(createRequestRecordNormal());
+        assertFalse(cache.isRotating());
+
+        cache.finishArchive();
+
+        assertZip(expectedNormalAndLargeRequestEntryNames(), archiveOut.toByteArray());
+        assertEquals(largeRequestCreationTime(), cache.getStartTime());
+        assertEquals(normalRequestCreationTime(), cache.getEndTime());
+    }
+
+    /**
+     * Test to ensure a new archive stream starts with a clean state after rotation.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void startNewArchiveStreamAfterRotation() throws Exception {
+        setMaxArchiveSizeSmall();
+
+        ByteArrayOutputStream firstArchiveOut = new ByteArrayOutputStream();
+        cache.startArchive(firstArchiveOut);
+        cache.add(createRequestRecordTooLarge());
+        assertTrue(cache.isRotating());
+        cache.finishArchive();
+
+        ByteArrayOutputStream secondArchiveOut = new ByteArrayOutputStream();
+        cache.startArchive(secondArchiveOut);
+        cache.add(createResponseRecordNormal());
+        cache.finishArchive();
+
+        assertZip(expectedLargeSizeRequestEntryName(), firstArchiveOut.toByteArray());
+        assertZip(expectedNormalSizeResponseEntryName(), secondArchiveOut.toByteArray());
+        assertEquals(normalResponseCreationTime(), cache.getStartTime());
+    }
+
+    /**
+     * Test to ensure an archive cannot be finished unless it has been started.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void doNotFinishArchiveThatIsNotStarted() throws Exception {
+        thrown.expect(IOException.class);
+
+        cache.finishArchive();
+    }
+
+    /**
+     * Test to ensure an archive stream that fails is closed without writing the end of the zip file and no
+     * longer used.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void abortArchiveStreamOnError() throws Exception {
+        setMaxArchiveSizeDefault();
+
+        FailingOutputStream archiveOut = new FailingOutputStream();
+        cache.startArchive(archiveOut);
+        archiveOut.failNextWrite = true;
+
+        // incompressible, so that it does not fit in the buffers of the archive stream
+        byte[] container = new byte[TOO_LARGE_CONTAINER_SIZE * 2];
+        new Random(0).nextBytes(container);
+
+        try {
+            cache.add(createRequestRecordNormal(), container);
+            fail("Should fail to write to the archive stream");
+        } catch (IOException expected) {
+            // expected
+        }
+
+        assertTrue(archiveOut.closed);
+        assertEquals(0, archiveOut.written.size());
+
+        thrown.expect(IOException.class);
+
+        cache.finishArchive();
+    }
+
     private byte[] getArchiveBytes() throws IOException {
         return IOUtils.toByteArray(cache.getArchiveFile());
     }
@@ -390,6 +483,33 @@ public class LogArchiveCacheTest {
         );
     }
 
+    private static class FailingOutputStream extends OutputStream {
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+        private boolean failNextWrite;
+        private boolean closed;
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (failNextWrite) {
+                failNextWrite = false;
+                throw new IOException("No space left on device");
+            }
+
+            written.write(b, off, len);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
     @RequiredArgsConstructor
     private static class StringInListMatcher extends TypeSafeMatcher<String> {
 
@@ -38,7 +38,11 @@ import org.junit.Rule;
 import org.junit.Test;
 
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -52,6 +56,7 @@ public class LogArchiveTest {
 
     private static boolean rotated;
     private long recordNo;
+    private List<ArchiveEntry> archiveEntries;
 
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
@@ -65,10 +70,13 @@ public class LogArchiveTest {
     public void beforeTest() throws Exception {
         recordNo = 0;
         rotated = false;
+        archiveEntries = new ArrayList<>();
     }
 
     @After
     public void afterTest() {
+        System.clearProperty(MessageLogProperties.ARCHIVE_STREAMING);
+        System.clearProperty(MessageLogProperties.ARCHIVE_PATH);
         FileUtils.deleteQuietly(Paths.get("build/slog").toFile());
     }
 
@@ -87,6 +95,46 @@ public class LogArchiveTest {
         assertTrue(rotated);
     }
 
+    /**
+     * Writes many records and rotates to new file, caching the containers in
+     * the working directory instead of streaming them to the archive.
+     *
+     * @throws Exception - when cannot either write or rotate
+     */
+    @Test
+    public void writeAndRotateWithoutStreaming() throws Exception {
+        System.setProperty(MessageLogProperties.ARCHIVE_MAX_FILESIZE, "50");
+        System.setProperty(MessageLogProperties.ARCHIVE_STREAMING, "false");
+
+        writeRecordsToLog(false);
+        assertTrue(rotated);
+    }
+
+    /**
+     * Writes many records with pre-generated ASiC containers and rotates to
+     * new file.
+     *
+     * @throws Exception - when cannot either write or rotate
+     */
+    @Test
+    public void writeGeneratedContainersAndRotate() throws Exception {
+        System.setProperty(MessageLogProperties.ARCHIVE_MAX_FILESIZE, "50");
+
+        try (LogArchiveWriter writer = getWriter()) {
+            TimestampRecord ts = nextTimestampRecord();
+            for (int i = 0; i < NUM_RECORDS_PER_TIMESTAMP; i++) {
+                MessageRecord messageRecord = nextMessageRecord();
+                messageRecord.setTimestampRecord(ts);
+                messageRecord.setTimestampHashChain("foo");
+
+                writer.write(messageRecord,
+                        messageRecord.toAsicContainer().getBytes());
+            }
+        }
+
+        assertTrue(rotated);
+    }
+
     /**
      * Writes records, simulates a situation where archving is finished just after rotate.
      * (XRDDEV-85)
@@ -98,6 +146,28 @@ public class LogArchiveTest {
         assertTrue(rotated);
     }
 
+    /**
+     * Writes records and reads their ASiC containers back from the archives
+     * using the saved archive entries.
+     *
+     * @throws Exception - when cannot either write or read the archives
+     */
+    @Test
+    public void readArchivedContainers() throws Exception {
+        System.setProperty(MessageLogProperties.ARCHIVE_MAX_FILESIZE, "3000");
+        System.setProperty(MessageLogProperties.ARCHIVE_PATH, "build/slog");
+
+        writeRecordsToLog(false);
+        assertEquals(NUM_TIMESTAMPS * NUM_RECORDS_PER_TIMESTAMP,
+                archiveEntries.size());
+
+        for (ArchiveEntry entry : archiveEntries) {
+            assertNotNull(entry.getArchiveFile());
+            assertTrue(LogArchiveReader.isAvailable(entry));
+            assertTrue(LogArchiveReader.readContainer(entry).length > 0);
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     private void writeRecordsToLog(boolean finishAfterRotate) throws Exception {
@@ -139,6 +209,11 @@ public class LogArchiveTest {
                 // Do nothing.
             }
 
+            @Override
+            public void markArchiveEntriesCreated(List<ArchiveEntry> entries) {
+                archiveEntries.addAll(entries);
+            }
+
             @Override
             public void markRecordArchived(LogRecord logRecord)
                     throws Exception {
@@ -73,6 +73,19 @@ public final class OpMonitoringSystemProperties {
     private static final String OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS =
             PREFIX + "op-monitor-buffer.connection-timeout-seconds";
 
+    /**
+     * Property name of the directory where the operational monitoring buffer stores the records.
+     */
+    private static final String OP_MONITOR_BUFFER_PATH =
+            PREFIX + "op-monitor-buffer.path";
+
+    /**
+     * Property name of the maximum number of messages the operational monitoring buffer sends to the operational
+     * monitoring daemon concurrently.
+     */
+    private static final String OP_MONITOR_BUFFER_MAX_MESSAGES_IN_FLIGHT =
+            PREFIX + "op-monitor-buffer.max-messages-in-flight";
+
     // Operational monitoring service ---------------------------------------//
 
     /**
@@ -192,6 +205,21 @@ public final class OpMonitoringSystemProperties {
         return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_CONNECTION_TIMEOUT_SECONDS, "30"));
     }
 
+    /**
+     * @return the directory where the operational monitoring buffer stores the records until they have been sent to
+     * the operational monitoring daemon, '/var/lib/xroad/op-monitor-buffer' by default.
+     */
+    public static String getOpMonitorBufferPath() {
+        return System.getProperty(OP_MONITOR_BUFFER_PATH, "/var/lib/xroad/op-monitor-buffer");
+    }
+
+    /**
+     * @return max messages sent to the operational monitoring daemon concurrently, '4' by default.
+     */
+    public static int getOpMonitorBufferMaxMessagesInFlight() {
+        return Integer.parseInt(System.getProperty(OP_MONITOR_BUFFER_MAX_MESSAGES_IN_FLIGHT, "4"));
+    }
+
     /**
      * @return the operational monitoring service HTTP client SO_TIMEOUT in seconds, '60' by default.
      */
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.message;
+
+import ee.ria.xroad.common.util.MimeTypes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link SaxSoapParserImpl} with 1 KB, 100 KB and 10 MB messages, both when the raw XML is returned
+ * and when the message is re-encoded. Run with 'gradle :common-util:jmh', the GC profiler reports the
+ * allocated bytes per message (gc.alloc.rate.norm).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SaxSoapParserBenchmark {
+
+    private static final String ENVELOPE_START = "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n"
+            + "<SOAP-ENV:Envelope xmlns:SOAP-ENV=\"http://schemas.xmlsoap.org/soap/envelope/\"\n"
+            + "        xmlns:xroad=\"http://x-road.eu/xsd/xroad.xsd\"\n"
+            + "        xmlns:id=\"http://x-road.eu/xsd/identifiers\">\n"
+            + "    <SOAP-ENV:Header>\n"
+            + "        <xroad:client id:objectType=\"MEMBER\">\n"
+            + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+            + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+            + "            <id:memberCode>consumer</id:memberCode>\n"
+            + "        </xroad:client>\n"
+            + "        <xroad:service id:objectType=\"SERVICE\">\n"
+            + "            <id:xRoadInstance>EE</id:xRoadInstance>\n"
+            + "            <id:memberClass>BUSINESS</id:memberClass>\n"
+            + "            <id:memberCode>producer</id:memberCode>\n"
+            + "            <id:serviceCode>testQuery</id:serviceCode>\n"
+            + "        </xroad:service>\n"
+            + "        <xroad:userId>EE37702211234</xroad:userId>\n"
+            + "        <xroad:id>1234567890</xroad:id>\n"
+            + "        <xroad:protocolVersion>4.0</xroad:protocolVersion>\n"
+            + "    </SOAP-ENV:Header>\n"
+            + "    <SOAP-ENV:Body>\n"
+            + "        <ns1:testQuery xmlns:ns1=\"http://consumer.ee.x-road.eu\">\n";
+
+    private static final String ENVELOPE_END = "        </ns1:testQuery>\n"
+            + "    </SOAP-ENV:Body>\n"
+            + "</SOAP-ENV:Envelope>\n";
+
+    private static final String BODY_ITEM = "            <item type=\"text\"><name>foo &amp; bar</name>"
+            + "<value>1234567890</value></item>\n";
+
+    @Param({"1024", "102400", "10485760"})
+    private int messageSize;
+
+    private byte[] message;
+
+    private final SaxSoapParserImpl rawXmlParser = new SaxSoapParserImpl();
+
+    private final SaxSoapParserImpl processedXmlParser = new SaxSoapParserImpl() {
+        @Override
+        protected boolean isProcessedXmlRequired() {
+            return true;
+        }
+    };
+
+    /**
+     * Creates a SOAP message of the requested size.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        StringBuilder xml = new StringBuilder(messageSize + BODY_ITEM.length()).append(ENVELOPE_START);
+
+        while (xml.length() + ENVELOPE_END.length() < messageSize) {
+            xml.append(BODY_ITEM);
+        }
+
+        message = xml.append(ENVELOPE_END).toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return the parsed message, containing the raw XML
+     */
+    @Benchmark
+    public Soap parseRawXml() {
+        return rawXmlParser.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(message));
+    }
+
+    /**
+     * @return the parsed message, containing the re-encoded XML
+     */
+    @Benchmark
+    public Soap parseProcessedXml() {
+        return processedXmlParser.parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(message));
+    }
+}
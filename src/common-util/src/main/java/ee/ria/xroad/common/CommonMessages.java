@@ -33,4 +33,6 @@ public final class CommonMessages {
     }
 
     public static final String TIMESTAMP_STATUS = "TimestampStatus";
+
+    public static final String TIMESTAMPING_BACKLOG = "TimestampingBacklog";
 }
@@ -166,6 +166,14 @@ public final class SystemProperties {
     public static final String SERVER_CONF_CACHE_PERIOD =
             PREFIX + "proxy.server-conf-cache-period";
 
+    /** Property name of the interval at which the proxy checks the server conf for changes, in milliseconds */
+    public static final String PROXY_SERVER_CONF_CHANGE_CHECK_INTERVAL =
+            PREFIX + "proxy.server-conf-change-check-interval";
+
+    /** Property name of the interval of the fallback poll for key configuration changes, in seconds */
+    private static final String PROXY_KEY_CONF_POLL_INTERVAL =
+            PREFIX + "proxy.key-conf-poll-interval";
+
     /** Property name of the idle time that connections to the ServerProxy Connector are allowed, in milliseconds */
     private static final String SERVERPROXY_CONNECTOR_MAX_IDLE_TIME =
             PREFIX + "proxy.server-connector-max-idle-time";
@@ -221,6 +229,30 @@ public final class SystemProperties {
     private static final String CLIENTPROXY_POOL_REUSE_CONNECTIONS =
             PREFIX + "proxy.pool-enable-connection-reuse";
 
+    /** Property name of the on/off switch for processing client requests asynchronously */
+    private static final String CLIENTPROXY_ASYNC_PROCESSING =
+            PREFIX + "proxy.client-async-processing";
+
+    /** Property name of the number of worker threads processing asynchronous client requests */
+    private static final String CLIENTPROXY_ASYNC_WORKER_COUNT =
+            PREFIX + "proxy.client-async-worker-count";
+
+    /** Property name of the maximum number of received client requests waiting for a worker thread */
+    private static final String CLIENTPROXY_ASYNC_QUEUE_SIZE =
+            PREFIX + "proxy.client-async-queue-size";
+
+    /** Property name of the maximum number of signing requests signed in one batch */
+    private static final String PROXY_BATCH_SIGNING_MAX_BATCH_SIZE =
+            PREFIX + "proxy.batch-signing-max-batch-size";
+
+    /** Property name of the time in milliseconds a batch waits for more signing requests */
+    private static final String PROXY_BATCH_SIGNING_LINGER_TIME =
+            PREFIX + "proxy.batch-signing-linger-time";
+
+    /** Property name of the maximum number of concurrent signing operations per signing key */
+    private static final String PROXY_BATCH_SIGNING_MAX_CONCURRENT_OPERATIONS =
+            PREFIX + "proxy.batch-signing-max-concurrent-operations";
+
     private static final String PROXY_HEALTH_CHECK_INTERFACE = PREFIX + "proxy.health-check-interface";
 
     private static final String PROXY_HEALTH_CHECK_PORT = PREFIX + "proxy.health-check-port";
@@ -273,6 +305,22 @@ public final class SystemProperties {
 
     private static final String DEFAULT_PROXY_HEALTH_CHECK_PORT = "0";
 
+    private static final String DEFAULT_PROXY_KEY_CONF_POLL_INTERVAL = "60";
+
+    private static final String DEFAULT_PROXY_SERVER_CONF_CHANGE_CHECK_INTERVAL = "1000";
+
+    private static final String DEFAULT_CLIENTPROXY_ASYNC_PROCESSING = "false";
+
+    private static final String DEFAULT_CLIENTPROXY_ASYNC_WORKER_COUNT = "200";
+
+    private static final String DEFAULT_CLIENTPROXY_ASYNC_QUEUE_SIZE = "10000";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNING_MAX_BATCH_SIZE = "1000";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNING_LINGER_TIME = "0";
+
+    private static final String DEFAULT_PROXY_BATCH_SIGNING_MAX_CONCURRENT_OPERATIONS = "1";
+
     public static final String DEFAULT_SIGNER_ENFORCE_TOKEN_PIN_POLICY = "false";
 
     public static final String DEFAULT_ALLOW_GET_WSDL_REQUEST = "false";
@@ -316,6 +364,17 @@ public final class SystemProperties {
     public static final int MIN_SIGNER_KEY_LENGTH = 2048;
     public static final int DEFAULT_SIGNER_KEY_LENGTH = MIN_SIGNER_KEY_LENGTH;
 
+    /** Property name of the algorithm of the keys generated on the software token. */
+    public static final String SIGNER_KEY_ALGORITHM =
+            PREFIX + "signer.key-algorithm";
+
+    /** Property name of the curve of the EC keys generated on the software token. */
+    public static final String SIGNER_KEY_EC_CURVE =
+            PREFIX + "signer.key-ec-curve";
+
+    public static final String DEFAULT_SIGNER_KEY_ALGORITHM = "RSA";
+    public static final String DEFAULT_SIGNER_KEY_EC_CURVE = "secp256r1";
+
     public static final String DEFAULT_SIGNER_CLIENT_TIMEOUT = "60000";
 
     public static final String SIGNER_CSR_SIGNATURE_DIGEST_ALGORITHM =
@@ -329,6 +388,24 @@ public final class SystemProperties {
 
     private static final String DEFAULT_SIGNER_OCSP_RETRY_DELAY = "60";
 
+    /** Property name of the maximum number of concurrent requests sent to a single OCSP responder */
+    public static final String SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS =
+            PREFIX + "signer.ocsp-responder-max-concurrent-requests";
+
+    /** Property name of the number of consecutive failures after which an OCSP responder is skipped */
+    public static final String SIGNER_OCSP_RESPONDER_FAILURE_THRESHOLD =
+            PREFIX + "signer.ocsp-responder-failure-threshold";
+
+    /** Property name of the time in seconds a failing OCSP responder is skipped before it is tried again */
+    public static final String SIGNER_OCSP_RESPONDER_RETRY_INTERVAL =
+            PREFIX + "signer.ocsp-responder-retry-interval";
+
+    public static final int DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS = 4;
+
+    public static final int DEFAULT_SIGNER_OCSP_RESPONDER_FAILURE_THRESHOLD = 3;
+
+    public static final int DEFAULT_SIGNER_OCSP_RESPONDER_RETRY_INTERVAL = 60;
+
     public static final String SIGNER_MODULE_MANAGER_UPDATE_INTERVAL =
             PREFIX + "signer.module-manager-update-interval";
 
@@ -356,6 +433,10 @@ public final class SystemProperties {
     public static final String ANTIDOS_MAX_HEAP_USAGE =
             PREFIX + "anti-dos.max-heap-usage";
 
+    /** Property name of the interval for sampling the system resource usage */
+    public static final String ANTIDOS_RESOURCE_SAMPLING_INTERVAL =
+            PREFIX + "anti-dos.resource-sampling-interval";
+
     // Configuration client ---------------------------------------------------
 
     public static final String CONFIGURATION_CLIENT_PORT =
@@ -796,6 +877,21 @@ public final class SystemProperties {
         return Math.max(MIN_SIGNER_KEY_LENGTH, Integer.getInteger(SIGNER_KEY_LENGTH, DEFAULT_SIGNER_KEY_LENGTH));
     }
 
+    /**
+     * @return algorithm of the keys generated on the software token, 'RSA' or 'EC', 'RSA' by default.
+     */
+    public static String getSignerKeyAlgorithm() {
+        return System.getProperty(SIGNER_KEY_ALGORITHM, DEFAULT_SIGNER_KEY_ALGORITHM);
+    }
+
+    /**
+     * @return curve of the EC keys generated on the software token, 'secp256r1' or 'secp384r1',
+     * 'secp256r1' by default.
+     */
+    public static String getSignerKeyEcCurve() {
+        return System.getProperty(SIGNER_KEY_EC_CURVE, DEFAULT_SIGNER_KEY_EC_CURVE);
+    }
+
     /**
      * Get CSR signature digest algorithm, SHA-256 by default.
      *
@@ -821,6 +917,30 @@ public final class SystemProperties {
                 DEFAULT_SIGNER_OCSP_RETRY_DELAY));
     }
 
+    /**
+     * @return the maximum number of concurrent requests the signer sends to a single OCSP responder, 4 by default
+     */
+    public static int getOcspResponderMaxConcurrentRequests() {
+        return Math.max(1, Integer.getInteger(SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS,
+                DEFAULT_SIGNER_OCSP_RESPONDER_MAX_CONCURRENT_REQUESTS));
+    }
+
+    /**
+     * @return the number of consecutive failures after which the signer stops querying an OCSP responder
+     * for the retry interval, 3 by default
+     */
+    public static int getOcspResponderFailureThreshold() {
+        return Math.max(1, Integer.getInteger(SIGNER_OCSP_RESPONDER_FAILURE_THRESHOLD,
+                DEFAULT_SIGNER_OCSP_RESPONDER_FAILURE_THRESHOLD));
+    }
+
+    /**
+     * @return the time in seconds a failing OCSP responder is skipped before it is queried again, 60 by default
+     */
+    public static int getOcspResponderRetryInterval() {
+        return Integer.getInteger(SIGNER_OCSP_RESPONDER_RETRY_INTERVAL, DEFAULT_SIGNER_OCSP_RESPONDER_RETRY_INTERVAL);
+    }
+
     /**
      * @return the module manager update interval in seconds that should be set for signer, 60 by default
      *
@@ -1128,6 +1248,15 @@ public final class SystemProperties {
         return Double.parseDouble(System.getProperty(ANTIDOS_MAX_HEAP_USAGE, "1.1"));
     }
 
+    /**
+     * @return the interval in milliseconds at which Anti-Dos samples the
+     * system resource usage and refreshes the known member addresses,
+     * '100' by default.
+     */
+    public static long getAntiDosResourceSamplingInterval() {
+        return Long.parseLong(System.getProperty(ANTIDOS_RESOURCE_SAMPLING_INTERVAL, "100"));
+    }
+
     /**
      * @return whether Anti-Dos should be used, 'true' by default.
      */
@@ -1201,6 +1330,24 @@ public final class SystemProperties {
         return Integer.parseInt(System.getProperty(SERVER_CONF_CACHE_PERIOD, "60"));
     }
 
+    /**
+     * @return the interval in milliseconds at which the proxy checks the server conf for changes, '1000' by
+     * default. 0 disables the check.
+     */
+    public static long getServerConfChangeCheckInterval() {
+        return Long.parseLong(System.getProperty(PROXY_SERVER_CONF_CHANGE_CHECK_INTERVAL,
+                DEFAULT_PROXY_SERVER_CONF_CHANGE_CHECK_INTERVAL));
+    }
+
+    /**
+     * @return the interval in seconds at which the proxy polls the key configuration file for changes that the
+     * file watcher might have missed, '60' by default. 0 disables polling.
+     */
+    public static int getKeyConfPollInterval() {
+        return Integer.parseInt(System.getProperty(PROXY_KEY_CONF_POLL_INTERVAL,
+                DEFAULT_PROXY_KEY_CONF_POLL_INTERVAL));
+    }
+
     /**
      *
      * @return the interval in seconds at which verifier caches results.
@@ -1293,6 +1440,57 @@ public final class SystemProperties {
                 DEFAULT_CLIENTPROXY_POOL_REUSE_CONNECTIONS));
     }
 
+    /**
+     * @return true if the client proxy reads client requests without blocking and processes them on a bounded
+     * pool of worker threads, 'false' by default
+     */
+    public static boolean isClientProxyAsyncProcessingEnabled() {
+        return Boolean.parseBoolean(System.getProperty(CLIENTPROXY_ASYNC_PROCESSING,
+                DEFAULT_CLIENTPROXY_ASYNC_PROCESSING));
+    }
+
+    /**
+     * @return the number of worker threads processing asynchronous client requests, '200' by default
+     */
+    public static int getClientProxyAsyncWorkerCount() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_ASYNC_WORKER_COUNT,
+                DEFAULT_CLIENTPROXY_ASYNC_WORKER_COUNT));
+    }
+
+    /**
+     * @return the maximum number of received client requests waiting for a worker thread, '10000' by default
+     */
+    public static int getClientProxyAsyncQueueSize() {
+        return Integer.parseInt(System.getProperty(CLIENTPROXY_ASYNC_QUEUE_SIZE,
+                DEFAULT_CLIENTPROXY_ASYNC_QUEUE_SIZE));
+    }
+
+    /**
+     * @return the maximum number of signing requests signed in one batch, '1000' by default
+     */
+    public static int getProxyBatchSigningMaxBatchSize() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNING_MAX_BATCH_SIZE,
+                DEFAULT_PROXY_BATCH_SIGNING_MAX_BATCH_SIZE)));
+    }
+
+    /**
+     * @return the time in milliseconds a signing request may wait for other requests to be signed in the
+     * same batch, '0' by default
+     */
+    public static int getProxyBatchSigningLingerTime() {
+        return Math.max(0, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNING_LINGER_TIME,
+                DEFAULT_PROXY_BATCH_SIGNING_LINGER_TIME)));
+    }
+
+    /**
+     * @return the maximum number of signing operations per signing key that are sent to the signer
+     * concurrently, '1' by default
+     */
+    public static int getProxyBatchSigningMaxConcurrentOperations() {
+        return Math.max(1, Integer.parseInt(System.getProperty(PROXY_BATCH_SIGNING_MAX_CONCURRENT_OPERATIONS,
+                DEFAULT_PROXY_BATCH_SIGNING_MAX_CONCURRENT_OPERATIONS)));
+    }
+
     public static boolean isServerProxySupportClientsPooledConnections() {
         return Boolean.parseBoolean(System.getProperty(SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS,
                 DEFAULT_SERVERPROXY_SUPPORT_CLIENTS_POOLED_CONNECTIONS));
@@ -1317,7 +1515,8 @@ public final class SystemProperties {
     }
 
     /**
-     * @return period in seconds the fastest provider uri should be cached, or 0 to disable
+     * @return period in seconds the fastest provider uri is used before all provider addresses are probed again,
+     * or 0 to disable
      */
     public static int getClientProxyFastestConnectingSslUriCachePeriod() {
         return Integer.parseInt(System.getProperty(CLIENTPROXY_FASTEST_CONNECTING_SSL_URI_CACHE_PERIOD,
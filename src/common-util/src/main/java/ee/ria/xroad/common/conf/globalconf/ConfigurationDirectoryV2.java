@@ -75,6 +75,9 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
     private Map<String, PrivateParametersV2> privateParameters = new HashMap<>();
     private Map<String, SharedParametersV2> sharedParameters = new HashMap<>();
 
+    // Incremented whenever parameters are loaded from a new or changed file, or an instance disappears
+    private long version;
+
     // ------------------------------------------------------------------------
 
     /**
@@ -112,6 +115,17 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
         return instanceIdentifier;
     }
 
+    /**
+     * Returns the version of the loaded parameters. The version changes whenever parameters are loaded from a
+     * new or changed file or the parameters of an instance are removed, and stays the same when a reload does
+     * not find any changes.
+     *
+     * @return the version of the loaded parameters
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
     /**
      * Reloads the configuration directory. Only files that are new or have changed, are actually loaded.
      *
@@ -141,6 +155,11 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             }
         }
 
+        if (!privateParams.keySet().equals(privateParameters.keySet())
+                || !sharedParams.keySet().equals(sharedParameters.keySet())) {
+            version++;
+        }
+
         privateParameters = privateParams;
         sharedParameters = sharedParams;
     }
@@ -165,6 +184,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         if (parameters != null && parameters.hasChanged()) {
             parameters.reload();
+            version++;
         } else if (parameters == null) {
             // Parameters not cached, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
@@ -194,6 +214,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
         if (parameters != null && parameters.hasChanged()) {
             parameters.reload();
+            version++;
         } else if (parameters == null) {
             // Parameters not cached, attempt to load it from disk.
             Path instanceDir = Paths.get(path.toString(), safeInstanceId);
@@ -375,7 +396,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
 
     // Loads the parameters from file if the file has changed.
     // Returns the parameters or null if the file does not exist.
-    private static <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
+    private <T extends ConfProvider> T loadParameters(Path path, Class<T> clazz, T existingInstance)
             throws Exception {
         T params = existingInstance != null ? existingInstance : (T) clazz.newInstance();
 
@@ -383,6 +404,7 @@ public class ConfigurationDirectoryV2 implements ConfigurationDirectory {
             log.trace("Loading {} from {}", clazz.getSimpleName(), path);
 
             params.load(path.toString());
+            version++;
         }
 
         return params;
@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedCATypeV2;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedTSAType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.CaInfoType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.GlobalGroupType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.MemberType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.OcspInfoType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SecurityServerType;
+import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.SubsystemType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+import org.bouncycastle.asn1.x500.X500Name;
+
+import javax.xml.bind.JAXBElement;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
+
+/**
+ * Lookup structures derived from the shared parameters of a configuration instance. The index is immutable and
+ * built once per loaded version of the shared parameters, so that certificates are parsed and collections are
+ * hashed at load time instead of on every lookup.
+ */
+@Getter(AccessLevel.PACKAGE)
+final class SharedParametersIndex {
+
+    static final SharedParametersIndex EMPTY = new SharedParametersIndex();
+
+    private final Map<X500Name, X509Certificate> subjectsAndCaCerts;
+    private final Map<X509Certificate, String> caCertsAndCertProfiles;
+    private final Map<X509Certificate, List<OcspInfoType>> caCertsAndOcspData;
+    private final Map<X509Certificate, Set<X509Certificate>> caCertsAndOcspResponderCerts;
+    private final List<X509Certificate> ocspResponderCerts;
+    private final List<X509Certificate> verificationCaCerts;
+    private final List<X509Certificate> tspCerts;
+    private final Map<ClientId, Set<String>> memberAddresses;
+    // Base64 encoded authentication certificate hashes
+    private final Map<ClientId, Set<String>> memberAuthCerts;
+    private final Map<String, SecurityServerType> serverByAuthCert;
+    private final Map<String, SecurityServerId> serverIdByAuthCert;
+    private final Map<SecurityServerId, Set<ClientId>> securityServerClients;
+    private final Map<SecurityServerId, SecurityServerType> securityServersById;
+    private final Set<String> knownAddresses;
+    private final Map<String, GlobalGroupType> globalGroupsByCode;
+    private final Map<String, Set<ClientId>> globalGroupMembers;
+
+    private SharedParametersIndex() {
+        subjectsAndCaCerts = Collections.emptyMap();
+        caCertsAndCertProfiles = Collections.emptyMap();
+        caCertsAndOcspData = Collections.emptyMap();
+        caCertsAndOcspResponderCerts = Collections.emptyMap();
+        ocspResponderCerts = Collections.emptyList();
+        verificationCaCerts = Collections.emptyList();
+        tspCerts = Collections.emptyList();
+        memberAddresses = Collections.emptyMap();
+        memberAuthCerts = Collections.emptyMap();
+        serverByAuthCert = Collections.emptyMap();
+        serverIdByAuthCert = Collections.emptyMap();
+        securityServerClients = Collections.emptyMap();
+        securityServersById = Collections.emptyMap();
+        knownAddresses = Collections.emptySet();
+        globalGroupsByCode = Collections.emptyMap();
+        globalGroupMembers = Collections.emptyMap();
+    }
+
+    SharedParametersIndex(SharedParametersV2 parameters) throws Exception {
+        Map<X500Name, X509Certificate> subjects = new HashMap<>();
+        Map<X509Certificate, String> certProfiles = new HashMap<>();
+        Map<X509Certificate, List<OcspInfoType>> ocspData = new HashMap<>();
+        Map<X509Certificate, Set<X509Certificate>> ocspResponders = new HashMap<>();
+        List<X509Certificate> verificationCas = new ArrayList<>();
+
+        for (ApprovedCATypeV2 caType : parameters.getApprovedCAs()) {
+            List<CaInfoType> caInfos = new ArrayList<>();
+            caInfos.add(caType.getTopCA());
+            caInfos.addAll(caType.getIntermediateCA());
+
+            List<X509Certificate> pkiCaCerts = new ArrayList<>();
+
+            for (CaInfoType caInfo : caInfos) {
+                X509Certificate caCert = readCertificate(caInfo.getCert());
+                pkiCaCerts.add(caCert);
+
+                ocspData.put(caCert, Collections.unmodifiableList(new ArrayList<>(caInfo.getOcsp())));
+                ocspResponders.put(caCert, Collections.unmodifiableSet(caInfo.getOcsp().stream()
+                        .map(OcspInfoType::getCert)
+                        .filter(Objects::nonNull)
+                        .map(c -> readCertificate(c))
+                        .collect(Collectors.toSet())));
+            }
+
+            Boolean authenticationOnly = caType.isAuthenticationOnly();
+            if (authenticationOnly == null || !authenticationOnly) {
+                verificationCas.addAll(pkiCaCerts);
+            }
+
+            for (X509Certificate pkiCaCert : pkiCaCerts) {
+                certProfiles.put(pkiCaCert, caType.getCertificateProfileInfo());
+                subjects.put(getSubject(pkiCaCert), pkiCaCert);
+            }
+        }
+
+        subjectsAndCaCerts = Collections.unmodifiableMap(subjects);
+        caCertsAndCertProfiles = Collections.unmodifiableMap(certProfiles);
+        caCertsAndOcspData = Collections.unmodifiableMap(ocspData);
+        caCertsAndOcspResponderCerts = Collections.unmodifiableMap(ocspResponders);
+        ocspResponderCerts = Collections.unmodifiableList(ocspResponders.values().stream()
+                .flatMap(Set::stream)
+                .collect(Collectors.toList()));
+        verificationCaCerts = Collections.unmodifiableList(verificationCas);
+
+        tspCerts = Collections.unmodifiableList(parameters.getApprovedTSAs().stream()
+                .map(ApprovedTSAType::getCert)
+                .filter(Objects::nonNull)
+                .map(c -> readCertificate(c))
+                .collect(Collectors.toList()));
+
+        Map<ClientId, Set<String>> addresses = new HashMap<>();
+        Map<ClientId, Set<String>> authCerts = new HashMap<>();
+        Map<String, SecurityServerType> serversByAuthCert = new HashMap<>();
+        Map<String, SecurityServerId> serverIdsByAuthCert = new HashMap<>();
+        Map<SecurityServerId, Set<ClientId>> serverClients = new HashMap<>();
+        Map<SecurityServerId, SecurityServerType> serversById = new HashMap<>();
+
+        // Map of XML ID fields mapped to client IDs
+        Map<String, ClientId> clientIds = getClientIds(parameters);
+
+        for (SecurityServerType securityServer : parameters.getSecurityServers()) {
+            MemberType owner = SharedParametersV2.getOwner(securityServer);
+            SecurityServerId securityServerId = SecurityServerId.create(parameters.getInstanceIdentifier(),
+                    owner.getMemberClass().getCode(), owner.getMemberCode(), securityServer.getServerCode());
+
+            List<String> serverAuthCerts = securityServer.getAuthCertHash().stream()
+                    .map(h -> encodeBase64(h))
+                    .collect(Collectors.toList());
+
+            // Cache the server.
+            for (String certHash : serverAuthCerts) {
+                serversByAuthCert.put(certHash, securityServer);
+                serverIdsByAuthCert.put(certHash, securityServerId);
+            }
+
+            serversById.put(securityServerId, securityServer);
+
+            // Owner and clients of the security server.
+            List<ClientId> clients = new ArrayList<>();
+            clients.add(parameters.createMemberId(owner));
+
+            for (JAXBElement<?> client : securityServer.getClient()) {
+                Object val = client.getValue();
+
+                if (val instanceof MemberType) {
+                    clients.add(parameters.createMemberId((MemberType) val));
+                } else if (val instanceof SubsystemType) {
+                    clients.add(clientIds.get(((SubsystemType) val).getId()));
+                }
+            }
+
+            for (ClientId client : clients) {
+                // Add the mapping from client to security server address.
+                if (isNotBlank(securityServer.getAddress())) {
+                    addToMap(addresses, client, securityServer.getAddress());
+                }
+
+                // Add the mapping from client to authentication certificate.
+                for (String certHash : serverAuthCerts) {
+                    addToMap(authCerts, client, certHash);
+                }
+
+                addToMap(serverClients, securityServerId, client);
+            }
+        }
+
+        memberAddresses = unmodifiable(addresses);
+        memberAuthCerts = unmodifiable(authCerts);
+        serverByAuthCert = Collections.unmodifiableMap(serversByAuthCert);
+        serverIdByAuthCert = Collections.unmodifiableMap(serverIdsByAuthCert);
+        securityServerClients = unmodifiable(serverClients);
+        securityServersById = Collections.unmodifiableMap(serversById);
+
+        knownAddresses = Collections.unmodifiableSet(parameters.getSecurityServers().stream()
+                .map(SecurityServerType::getAddress)
+                .filter(StringUtils::isNotBlank)
+                .collect(Collectors.toSet()));
+
+        globalGroupsByCode = Collections.unmodifiableMap(parameters.getGlobalGroups().stream()
+                .collect(Collectors.toMap(GlobalGroupType::getGroupCode, Function.identity(), (a, b) -> a)));
+        globalGroupMembers = Collections.unmodifiableMap(globalGroupsByCode.values().stream()
+                .collect(Collectors.toMap(GlobalGroupType::getGroupCode,
+                        g -> Collections.unmodifiableSet(new HashSet<>(g.getGroupMember())))));
+    }
+
+    /**
+     * @param issuer the issuer name of a certificate
+     * @return the CA certificate with the given subject name or null if there is none
+     */
+    X509Certificate getCaCertForIssuer(X500Name issuer) {
+        return subjectsAndCaCerts.get(issuer);
+    }
+
+    static X500Name getSubject(X509Certificate cert) {
+        return X500Name.getInstance(cert.getSubjectX500Principal().getEncoded());
+    }
+
+    static X500Name getIssuer(X509Certificate cert) {
+        return X500Name.getInstance(cert.getIssuerX500Principal().getEncoded());
+    }
+
+    private static Map<String, ClientId> getClientIds(SharedParametersV2 parameters) {
+        Map<String, ClientId> ret = new HashMap<>();
+
+        for (MemberType member : parameters.getMembers()) {
+            ret.put(member.getId(), parameters.createMemberId(member));
+
+            for (SubsystemType subsystem : member.getSubsystem()) {
+                ret.put(subsystem.getId(), parameters.createSubsystemId(member, subsystem));
+            }
+        }
+
+        return ret;
+    }
+
+    private static <K, V> void addToMap(Map<K, Set<V>> map, K key, V value) {
+        map.computeIfAbsent(key, k -> new HashSet<>()).add(value);
+    }
+
+    private static <K, V> Map<K, Set<V>> unmodifiable(Map<K, Set<V>> map) {
+        map.replaceAll((k, v) -> Collections.unmodifiableSet(v));
+
+        return Collections.unmodifiableMap(map);
+    }
+}
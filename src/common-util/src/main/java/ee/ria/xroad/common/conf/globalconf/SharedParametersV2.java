@@ -27,7 +27,6 @@ package ee.ria.xroad.common.conf.globalconf;
 import ee.ria.xroad.common.conf.AbstractXmlConf;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedCATypeV2;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.ApprovedTSAType;
-import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.CaInfoType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.CentralServiceType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.GlobalGroupType;
 import ee.ria.xroad.common.conf.globalconf.sharedparameters.v2.GlobalSettingsType;
@@ -43,51 +42,23 @@ import ee.ria.xroad.common.identifier.SecurityServerId;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import org.apache.commons.lang3.StringUtils;
 import org.bouncycastle.asn1.x500.X500Name;
-import org.bouncycastle.cert.X509CertificateHolder;
 
-import javax.xml.bind.JAXBElement;
-
-import java.io.IOException;
-import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.stream.Collectors;
 
 import static ee.ria.xroad.common.ErrorCodes.translateException;
-import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
-import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
-import static org.apache.commons.lang3.StringUtils.isNotBlank;
 
 /**
  * Contains shared parameters of a configuration instance.
  */
-@Getter(AccessLevel.PACKAGE)
 public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2> {
 
-    // Cached items, filled at conf reload
-    private final Map<X500Name, X509Certificate> subjectsAndCaCerts =
-            new HashMap<>();
-    private final Map<X509Certificate, String> caCertsAndCertProfiles =
-            new HashMap<>();
-    private final Map<X509Certificate, List<OcspInfoType>> caCertsAndOcspData =
-            new HashMap<>();
-    private final Map<ClientId, Set<String>> memberAddresses = new HashMap<>();
-    private final Map<ClientId, Set<byte[]>> memberAuthCerts = new HashMap<>();
-    private final Map<String, SecurityServerType> serverByAuthCert =
-            new HashMap<>();
-    private final Map<SecurityServerId, Set<ClientId>> securityServerClients =
-            new HashMap<>();
-    private final List<X509Certificate> verificationCaCerts = new ArrayList<>();
-    private final Set<String> knownAddresses = new HashSet<>();
-    private final Map<SecurityServerId, SecurityServerType> securityServersById = new HashMap<>();
+    // Lookup structures, rebuilt at conf reload
+    @Getter(AccessLevel.PACKAGE)
+    private volatile SharedParametersIndex index = SharedParametersIndex.EMPTY;
 
     SharedParametersV2() {
         super(ObjectFactory.class, SharedParametersSchemaValidatorV2.class);
@@ -141,26 +112,70 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         return confType.getGlobalSettings();
     }
 
+    Map<X500Name, X509Certificate> getSubjectsAndCaCerts() {
+        return index.getSubjectsAndCaCerts();
+    }
+
+    Map<X509Certificate, String> getCaCertsAndCertProfiles() {
+        return index.getCaCertsAndCertProfiles();
+    }
+
+    Map<X509Certificate, List<OcspInfoType>> getCaCertsAndOcspData() {
+        return index.getCaCertsAndOcspData();
+    }
+
+    Map<ClientId, Set<String>> getMemberAddresses() {
+        return index.getMemberAddresses();
+    }
+
+    Map<SecurityServerId, Set<ClientId>> getSecurityServerClients() {
+        return index.getSecurityServerClients();
+    }
+
+    Map<SecurityServerId, SecurityServerType> getSecurityServersById() {
+        return index.getSecurityServersById();
+    }
+
+    List<X509Certificate> getVerificationCaCerts() {
+        return index.getVerificationCaCerts();
+    }
+
+    Set<String> getKnownAddresses() {
+        return index.getKnownAddresses();
+    }
+
     GlobalGroupType findGlobalGroup(GlobalGroupId groupId) {
         if (!groupId.getXRoadInstance().equals(
                 confType.getInstanceIdentifier())) {
             return null;
         }
 
-        return confType.getGlobalGroup().stream()
-                .filter(g -> g.getGroupCode().equals(groupId.getGroupCode()))
-                .findFirst().orElse(null);
+        return index.getGlobalGroupsByCode().get(groupId.getGroupCode());
+    }
+
+    /**
+     * @param groupId the global group
+     * @param subjectId the client
+     * @return true if the global group of this instance has the client as a member
+     */
+    boolean isGlobalGroupMember(GlobalGroupId groupId, ClientId subjectId) {
+        if (!groupId.getXRoadInstance().equals(
+                confType.getInstanceIdentifier())) {
+            return false;
+        }
+
+        Set<ClientId> members = index.getGlobalGroupMembers().get(groupId.getGroupCode());
+
+        return members != null && members.contains(subjectId);
     }
 
-    X509Certificate getCaCertForSubject(X509Certificate subject)
-            throws Exception {
-        X509CertificateHolder certHolder =
-                new X509CertificateHolder(subject.getEncoded());
-        if (certHolder.getSubject().equals(certHolder.getIssuer())) {
+    X509Certificate getCaCertForSubject(X509Certificate subject) {
+        X500Name issuer = SharedParametersIndex.getIssuer(subject);
+        if (SharedParametersIndex.getSubject(subject).equals(issuer)) {
             return null;
         }
 
-        return subjectsAndCaCerts.get(certHolder.getIssuer());
+        return index.getCaCertForIssuer(issuer);
     }
 
     @Override
@@ -172,10 +187,7 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
         }
 
         try {
-            clearCache();
-            cacheCaCerts();
-            cacheKnownAddresses();
-            cacheSecurityServers();
+            index = new SharedParametersIndex(this);
         } catch (Exception e) {
             throw translateException(e);
         }
@@ -188,157 +200,4 @@ public class SharedParametersV2 extends AbstractXmlConf<SharedParametersTypeV2>
 
         return (MemberType) serverType.getOwner();
     }
-
-    // ------------------------------------------------------------------------
-
-    private void clearCache() {
-        subjectsAndCaCerts.clear();
-        caCertsAndCertProfiles.clear();
-        caCertsAndOcspData.clear();
-        memberAddresses.clear();
-        memberAuthCerts.clear();
-        serverByAuthCert.clear();
-        securityServerClients.clear();
-        verificationCaCerts.clear();
-        knownAddresses.clear();
-        securityServersById.clear();
-    }
-
-    private void cacheCaCerts() throws CertificateException, IOException {
-        List<X509Certificate> allCaCerts = new ArrayList<>();
-
-        for (ApprovedCATypeV2 caType : confType.getApprovedCA()) {
-            List<CaInfoType> topCAs = Arrays.asList(caType.getTopCA());
-            List<CaInfoType> intermediateCAs = caType.getIntermediateCA();
-
-            cacheOcspData(topCAs);
-            cacheOcspData(intermediateCAs);
-
-            List<X509Certificate> pkiCaCerts = new ArrayList<>();
-
-            pkiCaCerts.addAll(getTopOrIntermediateCaCerts(topCAs));
-            pkiCaCerts.addAll(getTopOrIntermediateCaCerts(intermediateCAs));
-
-            Boolean authenticationOnly = caType.isAuthenticationOnly();
-            if (authenticationOnly == null || !authenticationOnly) {
-                verificationCaCerts.addAll(pkiCaCerts);
-            }
-
-            for (X509Certificate pkiCaCert : pkiCaCerts) {
-                caCertsAndCertProfiles.put(pkiCaCert,
-                        caType.getCertificateProfileInfo());
-            }
-            allCaCerts.addAll(pkiCaCerts);
-        }
-
-        for (X509Certificate cert : allCaCerts) {
-            X509CertificateHolder certHolder =
-                    new X509CertificateHolder(cert.getEncoded());
-            subjectsAndCaCerts.put(certHolder.getSubject(), cert);
-        }
-    }
-
-    private void cacheKnownAddresses() {
-        confType.getSecurityServer().stream().map(s -> s.getAddress())
-            .filter(StringUtils::isNotBlank)
-            .forEach(knownAddresses::add);
-    }
-
-    private void cacheSecurityServers() {
-        // Map of XML ID fields mapped to client IDs
-        Map<String, ClientId> clientIds = getClientIds();
-
-        for (SecurityServerType securityServer : confType.getSecurityServer()) {
-            // Cache the server.
-            for (byte[] certHash: securityServer.getAuthCertHash()) {
-                serverByAuthCert.put(encodeBase64(certHash),
-                        securityServer);
-            }
-
-            // Add owner of the security server.
-            MemberType owner = (MemberType) securityServer.getOwner();
-            addServerClient(createMemberId(owner), securityServer);
-
-            // cache security server information by serverId
-            SecurityServerId securityServerId = SecurityServerId.create(
-                    confType.getInstanceIdentifier(),
-                    owner.getMemberClass().getCode(),
-                    owner.getMemberCode(), securityServer.getServerCode());
-            securityServersById.put(securityServerId, securityServer);
-
-            // Add clients of the security server.
-            for (JAXBElement<?> client : securityServer.getClient()) {
-                Object val = client.getValue();
-
-                if (val instanceof MemberType) {
-                    addServerClient(createMemberId((MemberType) val),
-                            securityServer);
-                } else if (val instanceof SubsystemType) {
-                    addServerClient(
-                            clientIds.get(((SubsystemType) val).getId()),
-                            securityServer);
-                }
-            }
-        }
-    }
-
-    private void addServerClient(ClientId client, SecurityServerType server) {
-        // Add the mapping from client to security server address.
-        if (isNotBlank(server.getAddress())) {
-            addToMap(memberAddresses, client, server.getAddress());
-        }
-
-        // Add the mapping from client to authentication certificate.
-        for (byte[] authCert : server.getAuthCertHash()) {
-            addToMap(memberAuthCerts, client, authCert);
-        }
-
-        MemberType owner = getOwner(server);
-        SecurityServerId securityServerId = SecurityServerId.create(
-                confType.getInstanceIdentifier(),
-                owner.getMemberClass().getCode(),
-                owner.getMemberCode(), server.getServerCode());
-
-        addToMap(securityServerClients, securityServerId, client);
-    }
-
-    private Map<String, ClientId> getClientIds() {
-        Map<String, ClientId> ret = new HashMap<>();
-
-        for (MemberType member : confType.getMember()) {
-            ret.put(member.getId(), createMemberId(member));
-
-            for (SubsystemType subsystem : member.getSubsystem()) {
-                ret.put(subsystem.getId(),
-                        createSubsystemId(member, subsystem));
-            }
-        }
-
-        return ret;
-    }
-
-    private void cacheOcspData(List<CaInfoType> typesUnderCA)
-            throws CertificateException, IOException {
-        for (CaInfoType caType : typesUnderCA) {
-            X509Certificate cert = readCertificate(caType.getCert());
-            List<OcspInfoType> caOcspTypes = caType.getOcsp();
-            caCertsAndOcspData.put(cert, caOcspTypes);
-        }
-    }
-
-    private static <K, V> void addToMap(Map<K, Set<V>> map, K key, V value) {
-        Set<V> coll = map.get(key);
-        if (coll == null) {
-            coll = new HashSet<>();
-            map.put(key, coll);
-        }
-        coll.add(value);
-    }
-
-    private static List<X509Certificate> getTopOrIntermediateCaCerts(
-            List<CaInfoType> typesUnderCA) {
-        return typesUnderCA.stream()
-                .map(c -> readCertificate(c.getCert()))
-                .collect(Collectors.toList());
-    }
 }
@@ -30,6 +30,7 @@ import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.identifier.XRoadObjectType;
+import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.common.util.XmlUtils;
 
@@ -39,10 +40,13 @@ import lombok.Setter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.input.BOMInputStream;
-import org.apache.commons.io.input.TeeInputStream;
+import org.apache.commons.io.output.ByteArrayOutputStream;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.bouncycastle.operator.DigestCalculator;
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.SAXParseException;
 import org.xml.sax.XMLReader;
@@ -54,7 +58,8 @@ import javax.xml.parsers.SAXParserFactory;
 import javax.xml.soap.SOAPException;
 
 import java.io.BufferedWriter;
-import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
@@ -170,6 +175,12 @@ public class SaxSoapParserImpl implements SoapParser {
 
     private static final SAXParserFactory PARSER_FACTORY = createSaxParserFactory();
 
+    // XML readers are not thread safe, but can be reused for parsing several documents
+    private static final ThreadLocal<XMLReader> XML_READER = new ThreadLocal<>();
+
+    // Placeholder handler so that a pooled reader does not hold on to the buffers of the last parsed message
+    private static final DefaultHandler2 NO_OP_HANDLER = new DefaultHandler2();
+
     @Override
     public Soap parse(String contentType, InputStream is) {
         String mimeType = MimeUtils.getBaseContentType(contentType);
@@ -193,52 +204,83 @@ public class SaxSoapParserImpl implements SoapParser {
     private Soap parseMessage(InputStream is, String mimeType, String contentType, String charset) throws Exception {
         log.trace("parseMessage({}, {})", mimeType, charset);
 
-        ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
-        ByteArrayOutputStream processedXml = new ByteArrayOutputStream();
+        XRoadSoapHandler handler = new XRoadSoapHandler(charset);
 
-        InputStream proxyStream = excludeUtf8Bom(contentType, new TeeInputStream(is, rawXml));
-        Writer outputWriter = new OutputStreamWriter(processedXml, charset);
-        XRoadSoapHandler handler = handleSoap(outputWriter, proxyStream);
+        InputStream proxyStream = excludeUtf8Bom(contentType, handler.new RawXmlInputStream(is));
+        handleSoap(handler, proxyStream);
 
         CodedException fault = handler.getFault();
         if (fault != null) {
-            return createSoapFault(charset, rawXml, fault);
+            return createSoapFault(charset, handler.getRawXml(), fault);
         }
 
-        byte[] xmlBytes = isProcessedXmlRequired() ? processedXml.toByteArray() : rawXml.toByteArray();
-
-        return createSoapMessage(contentType, charset, handler, xmlBytes);
+        return createSoapMessage(contentType, charset, handler, handler.getMessageXml(), handler.getMessageHash());
     }
 
-    private XRoadSoapHandler handleSoap(Writer writer, InputStream inputStream)
-            throws Exception {
-        try (BufferedWriter out = new BufferedWriter(writer)) {
-            XRoadSoapHandler handler = new XRoadSoapHandler(out);
-            SAXParser saxParser = PARSER_FACTORY.newSAXParser();
-            XMLReader xmlReader = saxParser.getXMLReader();
+    private static void handleSoap(XRoadSoapHandler handler, InputStream inputStream) throws Exception {
+        XMLReader xmlReader = getXmlReader();
+        try {
+            xmlReader.setContentHandler(handler);
+            xmlReader.setErrorHandler(handler);
+            xmlReader.setEntityResolver(handler);
+            xmlReader.setDTDHandler(handler);
             xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, handler);
-            // ensure both builtin entities and character entities are reported to the parser
-            xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-char-refs", true);
-            xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-builtin-refs", true);
 
-            saxParser.parse(inputStream, handler);
-            return handler;
+            xmlReader.parse(new InputSource(inputStream));
         } catch (SAXException ex) {
+            // do not reuse a reader that may have been left in an inconsistent state
+            XML_READER.remove();
             throw new SOAPException(ex);
+        } catch (Exception ex) {
+            XML_READER.remove();
+            throw ex;
+        } finally {
+            releaseXmlReader(xmlReader);
+            handler.closeProcessedXml();
         }
     }
 
+    private static XMLReader getXmlReader() throws Exception {
+        XMLReader xmlReader = XML_READER.get();
+        if (xmlReader == null) {
+            xmlReader = createXmlReader();
+            XML_READER.set(xmlReader);
+        }
+        return xmlReader;
+    }
+
+    private static XMLReader createXmlReader() throws Exception {
+        SAXParser saxParser = PARSER_FACTORY.newSAXParser();
+        XMLReader xmlReader = saxParser.getXMLReader();
+        // ensure both builtin entities and character entities are reported to the parser
+        xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-char-refs", true);
+        xmlReader.setFeature("http://apache.org/xml/features/scanner/notify-builtin-refs", true);
+        return xmlReader;
+    }
+
+    private static void releaseXmlReader(XMLReader xmlReader) throws Exception {
+        xmlReader.setContentHandler(NO_OP_HANDLER);
+        xmlReader.setErrorHandler(NO_OP_HANDLER);
+        xmlReader.setEntityResolver(NO_OP_HANDLER);
+        xmlReader.setDTDHandler(NO_OP_HANDLER);
+        xmlReader.setProperty(LEXICAL_HANDLER_PROPERTY, NO_OP_HANDLER);
+    }
+
     private static Soap createSoapMessage(String contentType, String charset,
-            XRoadSoapHandler handler, byte[] xmlBytes) throws Exception {
-        return new SoapMessageImpl(xmlBytes, charset, handler.getHeader(),
+            XRoadSoapHandler handler, byte[] xmlBytes, byte[] hash) throws Exception {
+        return new SoapMessageImpl(xmlBytes, hash, charset, handler.getHeader(),
                 null, handler.getServiceName(), handler.isRpc(), contentType);
     }
 
-    private static Soap createSoapFault(String charset,
-            ByteArrayOutputStream rawXml, CodedException fault) {
+    @SneakyThrows
+    private static DigestCalculator createHashCalculator() {
+        return CryptoUtils.createDigestCalculator(SoapUtils.getHashAlgoId());
+    }
+
+    private static Soap createSoapFault(String charset, byte[] faultXml, CodedException fault) {
         return new SoapFault(fault.getFaultCode(), fault.getFaultString(),
                 fault.getFaultActor(), fault.getFaultDetail(),
-                rawXml.toByteArray(), charset);
+                faultXml, charset);
     }
 
     @SneakyThrows
@@ -256,7 +298,10 @@ public class SaxSoapParserImpl implements SoapParser {
 
     /**
      * Determines whether the raw XML of the SOAP message should be re-encoded
-     * or if the original should be used in the output.
+     * or if the original should be used in the output. The parser keeps both
+     * representations only until the first child element of the SOAP body,
+     * after that only the one selected by this method is buffered. Therefore
+     * the result must not change once the SOAP body has been reached.
      * @return false by default
      */
     protected boolean isProcessedXmlRequired() {
@@ -274,8 +319,8 @@ public class SaxSoapParserImpl implements SoapParser {
         String tag = StringUtils.isEmpty(prefix) ? localName : prefix + ":" + localName;
         writer.append(tag);
         for (int i = 0; i < attributes.getLength(); i++) {
-            String escapedAttrValue = StringEscapeUtils.escapeXml11(attributes.getValue(i));
-            writer.append(String.format(" %s=\"%s\"", attributes.getQName(i), escapedAttrValue));
+            writer.append(' ').append(attributes.getQName(i)).append("=\"")
+                    .append(StringEscapeUtils.escapeXml11(attributes.getValue(i))).append('"');
         }
         writer.append('>');
     }
@@ -304,7 +349,19 @@ public class SaxSoapParserImpl implements SoapParser {
 
         private static final String XML_VERSION_ENCODING = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>";
 
-        private final BufferedWriter out;
+        private final String charset;
+
+        // Copy of the input, dropped when processed XML is selected for the output
+        private ByteArrayOutputStream rawXml = new ByteArrayOutputStream();
+        private final DigestCalculator rawXmlHash = createHashCalculator();
+
+        // Re-encoded XML, created when processed XML is first required
+        private ByteArrayOutputStream processedXml;
+        private DigestCalculator processedXmlHash;
+        private BufferedWriter out;
+
+        // Which representation is used for the output, null until the SOAP body is reached
+        private Boolean processedXmlSelected;
 
         private char[] xmlEntity;
 
@@ -327,6 +384,100 @@ public class SaxSoapParserImpl implements SoapParser {
             return envelopeHandler != null ? envelopeHandler.getFault() : null;
         }
 
+        byte[] getMessageXml() {
+            return isProcessedXmlWritten() ? getProcessedXml() : getRawXml();
+        }
+
+        /**
+         * @return hash of the message XML calculated while parsing, null if not available
+         */
+        byte[] getMessageHash() {
+            if (isProcessedXmlWritten()) {
+                return processedXmlHash != null ? processedXmlHash.getDigest() : null;
+            }
+
+            return rawXml != null ? rawXmlHash.getDigest() : null;
+        }
+
+        byte[] getRawXml() {
+            return rawXml != null ? rawXml.toByteArray() : getProcessedXml();
+        }
+
+        private byte[] getProcessedXml() {
+            return processedXml != null ? processedXml.toByteArray() : new byte[0];
+        }
+
+        @SneakyThrows
+        void closeProcessedXml() {
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        private boolean isProcessedXmlWritten() {
+            return processedXmlSelected != null ? processedXmlSelected : isProcessedXmlRequired();
+        }
+
+        @SneakyThrows
+        private BufferedWriter out() {
+            if (out == null) {
+                processedXml = new ByteArrayOutputStream();
+                processedXmlHash = createHashCalculator();
+                out = new BufferedWriter(new OutputStreamWriter(
+                        new TeeOutputStream(processedXml, processedXmlHash.getOutputStream()), charset));
+            }
+            return out;
+        }
+
+        /**
+         * Called when the first child element of the SOAP body is encountered. Faults are always
+         * returned as raw XML, otherwise the representation that is not used for the output is dropped.
+         */
+        private void selectOutput(QName bodyChild) {
+            if (bodyChild.equals(QNAME_SOAP_FAULT)) {
+                return;
+            }
+            processedXmlSelected = isProcessedXmlRequired();
+            if (processedXmlSelected) {
+                rawXml = null;
+            } else {
+                closeProcessedXml();
+                out = null;
+                processedXml = null;
+                processedXmlHash = null;
+            }
+        }
+
+        /**
+         * Copies the bytes read by the parser to the raw XML buffer and its hash for as long as they are needed.
+         */
+        private class RawXmlInputStream extends FilterInputStream {
+
+            RawXmlInputStream(InputStream in) {
+                super(in);
+            }
+
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1 && rawXml != null) {
+                    rawXml.write(b);
+                    rawXmlHash.getOutputStream().write(b);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0 && rawXml != null) {
+                    rawXml.write(b, off, n);
+                    rawXmlHash.getOutputStream().write(b, off, n);
+                }
+                return n;
+            }
+        }
+
         private void reset() {
             envelopeHandler = null;
 
@@ -340,7 +491,7 @@ public class SaxSoapParserImpl implements SoapParser {
             log.trace("startDocument()");
             reset();
 
-            if (isProcessedXmlRequired()) {
+            if (isProcessedXmlWritten()) {
                 writeXmlDeclaration();
             }
         }
@@ -352,12 +503,15 @@ public class SaxSoapParserImpl implements SoapParser {
             if (elementHandlers.isEmpty()) {
                 handleRootElement(attributes, element);
             } else {
+                if (processedXmlSelected == null && elementHandlers.peek() instanceof SoapBodyHandler) {
+                    selectOutput(element);
+                }
                 handleElement(attributes, element);
             }
 
-            if (isProcessedXmlRequired()) {
+            if (isProcessedXmlWritten()) {
                 String prefix = findNamespacePrefix(qName);
-                writeStartElementXml(prefix, element, attributes, out);
+                writeStartElementXml(prefix, element, attributes, out());
             }
         }
 
@@ -385,46 +539,46 @@ public class SaxSoapParserImpl implements SoapParser {
             XmlElementHandler elementParser = elementHandlers.peek();
             elementParser.characters(ch, start, length);
 
-            if (isProcessedXmlRequired()) {
+            if (isProcessedXmlWritten()) {
                 // Make sure XML entities are not resolved in processed XML
                 if (xmlEntity != null) {
-                    writeCharactersXml(ENTITY_START, 0, 1, out);
-                    writeCharactersXml(xmlEntity, 0, xmlEntity.length, out);
-                    writeCharactersXml(ENTITY_END, 0, 1, out);
+                    writeCharactersXml(ENTITY_START, 0, 1, out());
+                    writeCharactersXml(xmlEntity, 0, xmlEntity.length, out());
+                    writeCharactersXml(ENTITY_END, 0, 1, out());
                     xmlEntity = null;
                 } else {
-                    writeCharactersXml(ch, start, length, out);
+                    writeCharactersXml(ch, start, length, out());
                 }
             }
         }
 
         @Override
         public void comment(char[] ch, int start, int length) {
-            if (isProcessedXmlRequired()) {
-                writeCharactersXml(COMMENT_START, 0, COMMENT_START.length, out);
-                writeCharactersXml(ch, start, length, out);
-                writeCharactersXml(COMMENT_END, 0, COMMENT_END.length, out);
+            if (isProcessedXmlWritten()) {
+                writeCharactersXml(COMMENT_START, 0, COMMENT_START.length, out());
+                writeCharactersXml(ch, start, length, out());
+                writeCharactersXml(COMMENT_END, 0, COMMENT_END.length, out());
             }
         }
 
         @Override
         public void startEntity(String name) {
-            if (isProcessedXmlRequired()) {
+            if (isProcessedXmlWritten()) {
                 xmlEntity = name.toCharArray();
             }
         }
 
         @Override
         public void startCDATA() {
-            if (isProcessedXmlRequired()) {
-                writeCharactersXml(CDATA_START, 0, CDATA_START.length, out);
+            if (isProcessedXmlWritten()) {
+                writeCharactersXml(CDATA_START, 0, CDATA_START.length, out());
             }
         }
 
         @Override
         public void endCDATA() {
-            if (isProcessedXmlRequired()) {
-                writeCharactersXml(CDATA_END, 0, CDATA_END.length, out);
+            if (isProcessedXmlWritten()) {
+                writeCharactersXml(CDATA_END, 0, CDATA_END.length, out());
             }
         }
 
@@ -435,17 +589,17 @@ public class SaxSoapParserImpl implements SoapParser {
             elementHandler.valueInternal();
             elementHandler.closeTag();
 
-            if (isProcessedXmlRequired()) {
+            if (isProcessedXmlWritten()) {
                 QName element = new QName(uri, localName);
                 String prefix = findNamespacePrefix(qName);
-                writeEndElementXml(prefix, element, attributes, out);
+                writeEndElementXml(prefix, element, attributes, out());
             }
         }
 
         @Override
         public void endDocument() {
             log.trace("endDocument()");
-            if (isProcessedXmlRequired()) {
+            if (isProcessedXmlWritten()) {
                 writeNewLine();
             }
         }
@@ -462,13 +616,13 @@ public class SaxSoapParserImpl implements SoapParser {
 
         @SneakyThrows
         private void writeNewLine() {
-            out.newLine();
+            out().newLine();
         }
 
         @SneakyThrows
         private void writeXmlDeclaration() {
-            out.append(XML_VERSION_ENCODING);
-            out.newLine();
+            out().append(XML_VERSION_ENCODING);
+            out().newLine();
         }
 
         private String findNamespacePrefix(String qName) {
@@ -46,13 +46,24 @@ public class SoapMessageImpl extends AbstractSoapMessage<SoapHeader> {
     SoapMessageImpl(byte[] rawXml, String charset, SoapHeader header,
             SOAPMessage soap, String serviceName, boolean isRpcEncoded,
             String originalContentType) throws Exception {
+        this(rawXml, null, charset, header, soap, serviceName, isRpcEncoded,
+                originalContentType);
+    }
+
+    SoapMessageImpl(byte[] rawXml, byte[] hash, String charset,
+            SoapHeader header, SOAPMessage soap, String serviceName,
+            boolean isRpcEncoded, String originalContentType) throws Exception {
         super(rawXml, charset, header, soap, isResponseMessage(serviceName),
                 isRpcEncoded, originalContentType);
+
+        this.hash = hash;
     }
 
     /**
-     * Lazy method to retrieve the hash of the message, will calculate it
-     * on the first invocation of the method.
+     * Returns the hash of the message calculated with the algorithm given
+     * by {@link SoapUtils#getHashAlgoId()}. The hash is calculated by the
+     * parser while reading the message if possible, otherwise on the first
+     * invocation of the method.
      * @return hash of the message
      */
     @SneakyThrows
@@ -29,8 +29,12 @@ import lombok.SneakyThrows;
 import org.apache.commons.io.IOUtils;
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
 import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Integer;
 import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
 import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -44,6 +48,7 @@ import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.util.BigIntegers;
 import org.bouncycastle.util.encoders.Hex;
 
 import javax.xml.bind.DatatypeConverter;
@@ -67,12 +72,16 @@ import java.security.Security;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
 import java.security.spec.RSAPublicKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256;
+import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA384;
+import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA512;
 import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA1;
 import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256;
 import static org.apache.xml.security.signature.XMLSignature.ALGO_ID_SIGNATURE_RSA_SHA256_MGF1;
@@ -92,6 +101,7 @@ public final class CryptoUtils {
 
             CERT_FACTORY = CertificateFactory.getInstance("X.509");
             KEY_FACTORY = KeyFactory.getInstance("RSA");
+            EC_KEY_FACTORY = KeyFactory.getInstance("EC");
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
@@ -133,10 +143,14 @@ public final class CryptoUtils {
     public static final String SHA256WITHRSAANDMGF1_ID = "SHA256withRSAandMGF1";
     public static final String SHA384WITHRSAANDMGF1_ID = "SHA384withRSAandMGF1";
     public static final String SHA512WITHRSAANDMGF1_ID = "SHA512withRSAandMGF1";
+    public static final String SHA256WITHECDSA_ID = "SHA256withECDSA";
+    public static final String SHA384WITHECDSA_ID = "SHA384withECDSA";
+    public static final String SHA512WITHECDSA_ID = "SHA512withECDSA";
 
     /** PKCS#11 sign mechanisms. */
     public static final String CKM_RSA_PKCS_NAME = "CKM_RSA_PKCS";
     public static final String CKM_RSA_PKCS_PSS_NAME = "CKM_RSA_PKCS_PSS";
+    public static final String CKM_ECDSA_NAME = "CKM_ECDSA";
 
     /** Digest provider instance. */
     public static final DigestCalculatorProvider DIGEST_PROVIDER = new BcDigestCalculatorProvider();
@@ -153,6 +167,9 @@ public final class CryptoUtils {
     /** Holds the RSA key factory instance. */
     public static final KeyFactory KEY_FACTORY;
 
+    /** Holds the EC key factory instance. */
+    public static final KeyFactory EC_KEY_FACTORY;
+
     /** A cache of BouncyCastle algorithm identifiers */
     private static final Map<String, AlgorithmIdentifier> ALGORITHM_IDENTIFIER_CACHE = new HashMap<>();
 
@@ -170,13 +187,16 @@ public final class CryptoUtils {
             case SHA1WITHRSA_ID:
                 return SHA1_ID;
             case SHA256WITHRSA_ID: // fall through
-            case SHA256WITHRSAANDMGF1_ID:
+            case SHA256WITHRSAANDMGF1_ID: // fall through
+            case SHA256WITHECDSA_ID:
                 return SHA256_ID;
             case SHA384WITHRSA_ID: // fall through
-            case SHA384WITHRSAANDMGF1_ID:
+            case SHA384WITHRSAANDMGF1_ID: // fall through
+            case SHA384WITHECDSA_ID:
                 return SHA384_ID;
             case SHA512WITHRSA_ID: // fall through
-            case SHA512WITHRSAANDMGF1_ID:
+            case SHA512WITHRSAANDMGF1_ID: // fall through
+            case SHA512WITHECDSA_ID:
                 return SHA512_ID;
             default:
                 throw new NoSuchAlgorithmException("Unkown signature algorithm id: " + signatureAlgorithm);
@@ -228,6 +248,12 @@ public final class CryptoUtils {
                 return ALGO_ID_SIGNATURE_RSA_SHA384_MGF1;
             case SHA512WITHRSAANDMGF1_ID:
                 return ALGO_ID_SIGNATURE_RSA_SHA512_MGF1;
+            case SHA256WITHECDSA_ID:
+                return ALGO_ID_SIGNATURE_ECDSA_SHA256;
+            case SHA384WITHECDSA_ID:
+                return ALGO_ID_SIGNATURE_ECDSA_SHA384;
+            case SHA512WITHECDSA_ID:
+                return ALGO_ID_SIGNATURE_ECDSA_SHA512;
             default:
                 throw new NoSuchAlgorithmException("Unknown algorithm id: " + algoId);
         }
@@ -265,6 +291,12 @@ public final class CryptoUtils {
                 return SHA384WITHRSAANDMGF1_ID;
             case ALGO_ID_SIGNATURE_RSA_SHA512_MGF1:
                 return SHA512WITHRSAANDMGF1_ID;
+            case ALGO_ID_SIGNATURE_ECDSA_SHA256:
+                return SHA256WITHECDSA_ID;
+            case ALGO_ID_SIGNATURE_ECDSA_SHA384:
+                return SHA384WITHECDSA_ID;
+            case ALGO_ID_SIGNATURE_ECDSA_SHA512:
+                return SHA512WITHECDSA_ID;
             default:
                 throw new NoSuchAlgorithmException("Unknown algorithm URI: " + algoURI);
         }
@@ -304,6 +336,17 @@ public final class CryptoUtils {
                     default:
                         throw new NoSuchAlgorithmException("Unknown digest algorithm id: " + digestAlgorithmId);
                 }
+            case CKM_ECDSA_NAME:
+                switch (digestAlgorithmId) {
+                    case SHA256_ID:
+                        return SHA256WITHECDSA_ID;
+                    case SHA384_ID:
+                        return SHA384WITHECDSA_ID;
+                    case SHA512_ID:
+                        return SHA512WITHECDSA_ID;
+                    default:
+                        throw new NoSuchAlgorithmException("Unknown digest algorithm id: " + digestAlgorithmId);
+                }
             default:
                 throw new NoSuchAlgorithmException("Unknown signing mechanism: " + signMechanismName);
         }
@@ -562,7 +605,54 @@ public final class CryptoUtils {
             throws Exception {
         X509EncodedKeySpec x509EncodedPublicKey =
                 new X509EncodedKeySpec(encoded);
-        return KEY_FACTORY.generatePublic(x509EncodedPublicKey);
+        KeyFactory keyFactory = isEcPublicKey(encoded) ? EC_KEY_FACTORY : KEY_FACTORY;
+        return keyFactory.generatePublic(x509EncodedPublicKey);
+    }
+
+    /**
+     * @param encoded X509 encoded public key
+     * @return true if the public key is an elliptic curve key
+     */
+    public static boolean isEcPublicKey(byte[] encoded) {
+        return X9ObjectIdentifiers.id_ecPublicKey.equals(
+                SubjectPublicKeyInfo.getInstance(encoded).getAlgorithm().getAlgorithm());
+    }
+
+    /**
+     * @param signatureAlgorithmId the signature algorithm id
+     * @return true if the signature algorithm is an ECDSA algorithm
+     */
+    public static boolean isEcdsaSignatureAlgorithm(String signatureAlgorithmId) {
+        switch (signatureAlgorithmId) {
+            case SHA256WITHECDSA_ID:
+            case SHA384WITHECDSA_ID:
+            case SHA512WITHECDSA_ID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Converts a DER encoded ECDSA signature value, as created by the signer and used in
+     * X.509 structures, to the fixed length concatenation of r and s used in XML signatures.
+     * @param derSignature the DER encoded signature value
+     * @param publicKey the public key of the signer, determines the length of r and s
+     * @return the XML signature value
+     * @throws IOException if the signature value cannot be decoded
+     */
+    public static byte[] toXmlDsigEcdsaSignature(byte[] derSignature, ECPublicKey publicKey) throws IOException {
+        int length = (publicKey.getParams().getOrder().bitLength() + 7) / 8;
+
+        ASN1Sequence sequence = ASN1Sequence.getInstance(toDERObject(derSignature));
+        BigInteger r = ASN1Integer.getInstance(sequence.getObjectAt(0)).getValue();
+        BigInteger s = ASN1Integer.getInstance(sequence.getObjectAt(1)).getValue();
+
+        byte[] result = new byte[2 * length];
+        System.arraycopy(BigIntegers.asUnsignedByteArray(length, r), 0, result, 0, length);
+        System.arraycopy(BigIntegers.asUnsignedByteArray(length, s), 0, result, length, length);
+
+        return result;
     }
 
     /**
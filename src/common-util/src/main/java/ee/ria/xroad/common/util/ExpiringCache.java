@@ -0,0 +1,131 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import lombok.Value;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Bounded cache in which every entry carries its own expiration time. The entries are kept in a concurrent
+ * map, so lookups from the request handling threads do not contend on a common lock. Expired entries are
+ * dropped on lookup and when the cache is full.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class ExpiringCache<K, V> {
+
+    @Value
+    private static class Entry<V> {
+        private V value;
+        private long expiresAt;
+    }
+
+    private final ConcurrentMap<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+    private final int maxSize;
+
+    /**
+     * Creates a cache holding at most the given number of entries.
+     * @param maxSize the maximum number of entries
+     */
+    public ExpiringCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key the key
+     * @param now the current time in milliseconds
+     * @return the cached value or null, if there is no valid entry for the key
+     */
+    public V get(K key, long now) {
+        Entry<V> entry = entries.get(key);
+
+        if (entry == null) {
+            return null;
+        }
+
+        if (entry.getExpiresAt() <= now) {
+            entries.remove(key, entry);
+
+            return null;
+        }
+
+        return entry.getValue();
+    }
+
+    /**
+     * Caches the value until the given expiration time. Values that have already expired are not cached.
+     * @param key the key
+     * @param value the value
+     * @param expiresAt the expiration time of the entry in milliseconds
+     * @param now the current time in milliseconds
+     */
+    public void put(K key, V value, long expiresAt, long now) {
+        if (expiresAt <= now) {
+            return;
+        }
+
+        if (entries.size() >= maxSize) {
+            evict(now);
+        }
+
+        entries.put(key, new Entry<>(value, expiresAt));
+    }
+
+    /**
+     * @return the number of entries, including the expired entries not dropped yet
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    private void evict(long now) {
+        entries.values().removeIf(entry -> entry.getExpiresAt() <= now);
+
+        // Still full of live entries, free a quarter of the cache so that the following puts do not
+        // have to evict again.
+        int target = maxSize - maxSize / 4;
+        Iterator<K> it = entries.keySet().iterator();
+
+        while (entries.size() >= target && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+}
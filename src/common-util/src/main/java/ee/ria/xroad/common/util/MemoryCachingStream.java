@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import org.apache.commons.io.output.ByteArrayOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Caches stuff in memory until the cached content grows beyond the given
+ * threshold, after which the content is moved to a {@link CachingStream}
+ * backed by a temporary file.
+ */
+public class MemoryCachingStream extends OutputStream {
+
+    public static final int DEFAULT_THRESHOLD = 1024 * 1024;
+
+    private final int threshold;
+
+    private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+    private CachingStream file;
+
+    private long size;
+
+    /**
+     * Constructs a new caching stream that keeps up to
+     * {@link #DEFAULT_THRESHOLD} bytes in memory.
+     */
+    public MemoryCachingStream() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Constructs a new caching stream.
+     * @param threshold maximum number of bytes kept in memory
+     */
+    public MemoryCachingStream(int threshold) {
+        this.threshold = threshold;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[] {(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (file == null && memory.size() + len > threshold) {
+            file = new CachingStream();
+            memory.writeTo(file);
+            memory = null;
+        }
+
+        if (file != null) {
+            file.write(b, off, len);
+        } else {
+            memory.write(b, off, len);
+        }
+
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (file != null) {
+            file.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the contents must remain readable after the stream is closed
+        flush();
+    }
+
+    /**
+     * @return number of bytes written to this stream
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return true if the contents are kept in memory
+     */
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * @return input stream that contains the cached contents.
+     * The caller is responsible for freeing the stream.
+     */
+    public InputStream getCachedContents() {
+        return file != null ? file.getCachedContents() : memory.toInputStream();
+    }
+
+    /**
+     * Releases the cached contents. Use to avoid file handle leaks.
+     */
+    public void consume() {
+        if (file != null) {
+            file.consume();
+        }
+
+        memory = null;
+    }
+}
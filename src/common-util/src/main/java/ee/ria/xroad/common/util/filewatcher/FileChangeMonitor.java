@@ -0,0 +1,263 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util.filewatcher;
+
+import ee.ria.xroad.common.util.FileContentChangeChecker;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Monitors a single file for content changes and notifies the attached {@link FileWatchListener} asynchronously.
+ * Changes are detected by a {@link FileWatcherRunner} and, as a fallback for missed watch events, by a poll
+ * that runs at a fixed (rate-limited) interval. The poll first compares the file modification time and size
+ * to the previously seen values and only compares file contents if those differ, so a poll that finds
+ * nothing changed does not read the file.
+ */
+@Slf4j
+public final class FileChangeMonitor {
+
+    private final Path file;
+    private final FileWatchListener listener;
+    private final long pollIntervalMs;
+
+    private final AtomicLong checks = new AtomicLong();
+    private final AtomicLong changes = new AtomicLong();
+
+    private FileWatcherRunner watcherRunner;
+    private ScheduledExecutorService poller;
+
+    private FileContentChangeChecker contentChecker;
+    private long lastModified;
+    private long lastSize;
+
+    private FileChangeMonitor(Path file, FileWatchListener listener, long pollIntervalMs) {
+        this.file = requireNonNull(file);
+        this.listener = requireNonNull(listener);
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    public static Builder create() {
+        return new Builder();
+    }
+
+    /**
+     * A builder to use when constructing a {@link FileChangeMonitor}.
+     */
+    public static final class Builder {
+        private Path file;
+        private FileWatchListener listener;
+        private long pollIntervalMs;
+
+        private Builder() {
+        }
+
+        /**
+         * @param path the file to monitor
+         * @return this builder
+         */
+        public Builder monitor(Path path) {
+            this.file = requireNonNull(path);
+            return this;
+        }
+
+        /**
+         * @param changeListener the listener to notify when the file contents change
+         * @return this builder
+         */
+        public Builder andOnChangeNotify(FileWatchListener changeListener) {
+            this.listener = requireNonNull(changeListener);
+            return this;
+        }
+
+        /**
+         * @param interval the interval of the fallback poll, 0 disables polling
+         * @param unit the time unit of the interval
+         * @return this builder
+         */
+        public Builder withFallbackPollInterval(long interval, TimeUnit unit) {
+            checkArgument(interval >= 0, "Poll interval must not be negative");
+            this.pollIntervalMs = unit.toMillis(interval);
+            return this;
+        }
+
+        /**
+         * Build the {@link FileChangeMonitor} and start watching the file.
+         * @return the running monitor that can be stopped
+         */
+        public FileChangeMonitor buildAndStart() {
+            return new FileChangeMonitor(file, listener, pollIntervalMs).start();
+        }
+    }
+
+    private FileChangeMonitor start() {
+        synchronized (this) {
+            readState();
+        }
+
+        watcherRunner = FileWatcherRunner.create()
+                .watchForChangesIn(file)
+                .listenToCreate().listenToModify().listenToDelete()
+                .andOnChangeNotify(() -> checkForChange(true))
+                .buildAndStartWatcher();
+
+        if (pollIntervalMs > 0) {
+            poller = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "FileChangeMonitor-" + file.getFileName());
+                t.setDaemon(true);
+                return t;
+            });
+            poller.scheduleWithFixedDelay(() -> checkForChange(false), pollIntervalMs, pollIntervalMs,
+                    TimeUnit.MILLISECONDS);
+        }
+
+        return this;
+    }
+
+    /**
+     * Stop watching and polling the file.
+     */
+    public void stop() {
+        if (watcherRunner != null) {
+            watcherRunner.stop();
+        }
+
+        if (poller != null) {
+            poller.shutdownNow();
+        }
+    }
+
+    /**
+     * Checks whether the file has changed since the previous check and notifies the listener if it has.
+     */
+    public void checkForChange() {
+        checkForChange(false);
+    }
+
+    private void checkForChange(boolean compareContents) {
+        boolean changed;
+
+        synchronized (this) {
+            checks.incrementAndGet();
+            changed = hasChanged(compareContents);
+        }
+
+        if (changed) {
+            changes.incrementAndGet();
+
+            log.debug("Detected a change in file {}", file);
+
+            try {
+                listener.fileModified();
+            } catch (Exception e) {
+                log.error("Change listener for file {} failed", file, e);
+            }
+        }
+    }
+
+    /**
+     * @return the number of checks made
+     */
+    public long getCheckCount() {
+        return checks.get();
+    }
+
+    /**
+     * @return the number of detected changes
+     */
+    public long getChangeCount() {
+        return changes.get();
+    }
+
+    private boolean hasChanged(boolean compareContents) {
+        long previousModified = lastModified;
+        long previousSize = lastSize;
+
+        readAttributes();
+
+        // the watch service already told us something happened to the file, but the modification time might
+        // have a coarse granularity, so the contents need to be compared in that case
+        if (!compareContents && lastModified == previousModified && lastSize == previousSize) {
+            return false;
+        }
+
+        if (contentChecker == null) {
+            readState();
+
+            return true;
+        }
+
+        try {
+            return contentChecker.hasChanged();
+        } catch (Exception e) {
+            log.warn("Failed to calculate checksum of file {}", file, e);
+
+            contentChecker = null;
+
+            return true;
+        }
+    }
+
+    private void readState() {
+        readAttributes();
+
+        try {
+            contentChecker = new FileContentChangeChecker(file.toString());
+        } catch (Exception e) {
+            log.warn("Failed to calculate checksum of file {}", file, e);
+
+            contentChecker = null;
+        }
+    }
+
+    private void readAttributes() {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+
+            lastModified = attributes.lastModifiedTime().toMillis();
+            lastSize = attributes.size();
+        } catch (NoSuchFileException e) {
+            lastModified = -1;
+            lastSize = -1;
+        } catch (IOException e) {
+            log.warn("Failed to read attributes of file {}", file, e);
+
+            lastModified = -1;
+            lastSize = -1;
+        }
+    }
+}
@@ -26,13 +26,18 @@ package ee.ria.xroad.common.conf.globalconf;
 
 import ee.ria.xroad.common.util.ExpectedCodedException;
 
+import org.apache.commons.io.FileUtils;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 
@@ -44,6 +49,9 @@ public class ConfigurationDirectoryTest {
     @Rule
     public ExpectedCodedException thrown = ExpectedCodedException.none();
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     /**
      * Test to ensure a correct configuration directory is read properly.
      *
@@ -108,4 +116,36 @@ public class ConfigurationDirectoryTest {
         ConfigurationDirectoryV2.verifyUpToDate(Paths.get("src/test/resources/globalconf_expired/foo/"
                 + ConfigurationDirectoryV2.PRIVATE_PARAMETERS_XML));
     }
+
+    /**
+     * Test to ensure that the version of the directory changes only when a reload finds changed or
+     * removed parameters.
+     *
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void reloadChangesVersionOnlyIfParametersChanged() throws Exception {
+        File confDir = tempFolder.newFolder("globalconf");
+        FileUtils.copyDirectory(new File("src/test/resources/globalconf_good_v2"), confDir);
+
+        ConfigurationDirectoryV2 dir = new ConfigurationDirectoryV2(confDir.getPath());
+        long version = dir.getVersion();
+
+        dir.reload();
+
+        assertEquals(version, dir.getVersion());
+
+        FileUtils.write(new File(confDir, "foo/" + ConfigurationDirectoryV2.SHARED_PARAMETERS_XML), "\n",
+                StandardCharsets.UTF_8, true);
+        dir.reload();
+
+        assertNotEquals(version, dir.getVersion());
+
+        version = dir.getVersion();
+        FileUtils.deleteDirectory(new File(confDir, "bar"));
+        dir.reload();
+
+        assertNotEquals(version, dir.getVersion());
+        assertNull(dir.getShared("bar"));
+    }
 }
@@ -24,9 +24,11 @@
  */
 package ee.ria.xroad.common.message;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.identifier.CentralServiceId;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.ExpectedCodedException;
 import ee.ria.xroad.common.util.MimeTypes;
 
@@ -41,6 +43,7 @@ import javax.xml.soap.SOAPException;
 
 import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_DUPLICATE_HEADER_FIELD;
@@ -60,8 +63,10 @@ import static ee.ria.xroad.common.message.SoapMessageTestUtil.fileToBytes;
 import static ee.ria.xroad.common.message.SoapMessageTestUtil.messageToBytes;
 import static ee.ria.xroad.common.message.SoapUtils.getChildElements;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * This class tests the basic functionality (parsing the soap message etc.) of the SoapMessage class.
@@ -242,6 +247,81 @@ public class SoapMessageTest {
         assertEquals("yyy", fault.getDetail());
     }
 
+    /**
+     * Tests that a parser requiring processed XML returns the re-encoded message but still returns faults as is.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void processedXmlMessage() throws Exception {
+        SaxSoapParserImpl parser = new SaxSoapParserImpl() {
+            @Override
+            protected boolean isProcessedXmlRequired() {
+                return true;
+            }
+        };
+
+        String query = new String(fileToBytes("simple.query"), StandardCharsets.UTF_8);
+        Soap message = parser.parse(MimeTypes.TEXT_XML_UTF8, IOUtils.toInputStream(query, StandardCharsets.UTF_8));
+
+        assertTrue(message instanceof SoapMessageImpl);
+        assertEquals("1234567890", ((SoapMessageImpl) message).getQueryId());
+        assertFalse(query.equals(message.getXml()));
+        assertTrue(message.getXml().startsWith("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"));
+        assertTrue(message.getXml().contains("<name>foo</name>"));
+
+        String soapFaultXml = SoapFault.createFaultXml("foo.bar", "baz", "xxx", "yyy");
+        Soap fault = parser.parse(MimeTypes.TEXT_XML_UTF8,
+                IOUtils.toInputStream(soapFaultXml, StandardCharsets.UTF_8));
+
+        assertTrue(fault instanceof SoapFault);
+        assertEquals(soapFaultXml, fault.getXml());
+    }
+
+    /**
+     * Tests that the hash calculated while parsing matches the hash of the message bytes, for both
+     * the raw and the processed XML.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void messageHashCalculatedWhileParsing() throws Exception {
+        SaxSoapParserImpl processedXmlParser = new SaxSoapParserImpl() {
+            @Override
+            protected boolean isProcessedXmlRequired() {
+                return true;
+            }
+        };
+
+        for (SaxSoapParserImpl parser : new SaxSoapParserImpl[] {new SaxSoapParserImpl(), processedXmlParser}) {
+            SoapMessageImpl message = (SoapMessageImpl) parser.parse(MimeTypes.TEXT_XML_UTF8,
+                    new ByteArrayInputStream(fileToBytes("simple.query")));
+
+            byte[] expectedHash = CryptoUtils.calculateDigest(SoapUtils.getHashAlgoId(), message.getBytes());
+
+            assertTrue(Arrays.areEqual(expectedHash, message.getHash()));
+        }
+    }
+
+    /**
+     * Tests that the parser of the current thread can be used again after a message fails to parse.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void parseAfterInvalidMessage() throws Exception {
+        try {
+            new SaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8,
+                    new ByteArrayInputStream(fileToBytes("malformed-body1.query")));
+            fail("Expected an invalid body error");
+        } catch (CodedException expected) {
+            assertEquals(X_INVALID_BODY, expected.getFaultCode());
+        }
+
+        byte[] in = fileToBytes("simple.query");
+        Soap message = new SaxSoapParserImpl().parse(MimeTypes.TEXT_XML_UTF8, new ByteArrayInputStream(in));
+
+        assertTrue(message instanceof SoapMessageImpl);
+        assertTrue(Arrays.areEqual(in, ((SoapMessageImpl) message).getBytes()));
+    }
+
     /**
      * Checks that inconsistencies between two messages are detected.
      * @throws Exception in case of any unexpected errors
@@ -0,0 +1,122 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util;
+
+import ee.ria.xroad.common.SystemProperties;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Unit tests for {@link MemoryCachingStream}
+ */
+public class MemoryCachingStreamTest {
+
+    private static final int THRESHOLD = 16;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private String originalTempFilesPath;
+
+    /**
+     * Directs temporary files to the test folder.
+     */
+    @Before
+    public void setUp() {
+        originalTempFilesPath = System.getProperty(SystemProperties.TEMP_FILES_PATH);
+        System.setProperty(SystemProperties.TEMP_FILES_PATH, tempFolder.getRoot().getAbsolutePath());
+    }
+
+    /**
+     * Restores the temporary file location.
+     */
+    @After
+    public void tearDown() {
+        if (originalTempFilesPath != null) {
+            System.setProperty(SystemProperties.TEMP_FILES_PATH, originalTempFilesPath);
+        } else {
+            System.clearProperty(SystemProperties.TEMP_FILES_PATH);
+        }
+    }
+
+    /**
+     * Content that fits under the threshold is kept in memory.
+     */
+    @Test
+    public void keepsSmallContentInMemory() throws Exception {
+        byte[] data = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+        MemoryCachingStream stream = new MemoryCachingStream(THRESHOLD);
+        stream.write(data);
+        stream.close();
+
+        assertTrue(stream.isInMemory());
+        assertEquals(data.length, stream.size());
+        assertArrayEquals(data, readContents(stream));
+        assertEquals(0, tempFolder.getRoot().list().length);
+
+        stream.consume();
+    }
+
+    /**
+     * Content that grows beyond the threshold is moved to a temporary file.
+     */
+    @Test
+    public void movesLargeContentToFile() throws Exception {
+        byte[] first = "0123456789".getBytes(StandardCharsets.UTF_8);
+        byte[] second = "abcdefghij".getBytes(StandardCharsets.UTF_8);
+
+        MemoryCachingStream stream = new MemoryCachingStream(THRESHOLD);
+        stream.write(first);
+        stream.write(second);
+        stream.write('!');
+        stream.close();
+
+        assertFalse(stream.isInMemory());
+        assertEquals(first.length + second.length + 1, stream.size());
+        assertArrayEquals("0123456789abcdefghij!".getBytes(StandardCharsets.UTF_8), readContents(stream));
+
+        stream.consume();
+    }
+
+    private static byte[] readContents(MemoryCachingStream stream) throws Exception {
+        try (InputStream in = stream.getCachedContents()) {
+            return IOUtils.toByteArray(in);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.util.filewatcher;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link FileChangeMonitor}
+ */
+public class FileChangeMonitorTest {
+
+    private static final int TIMEOUT = 1000;
+
+    private FileChangeMonitor monitor;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Before
+    public void setUp() {
+        monitor = null;
+    }
+
+    /**
+     * tear down tests
+     */
+    @After
+    public void tearDown() {
+        if (monitor != null) {
+            monitor.stop();
+        }
+    }
+
+    @Test
+    public void shouldNotNotifyWhenFileIsUnchanged() throws IOException {
+        File file = temporaryFolder.newFile("keyconf_1");
+        FileWatchListener listener = mock(FileWatchListener.class);
+
+        monitor = FileChangeMonitor.create()
+                .monitor(file.toPath())
+                .andOnChangeNotify(listener)
+                .buildAndStart();
+
+        monitor.checkForChange();
+        monitor.checkForChange();
+
+        verify(listener, never()).fileModified();
+        assertEquals(0, monitor.getChangeCount());
+    }
+
+    @Test
+    public void shouldNotifyWhenContentsChange() throws IOException {
+        File file = temporaryFolder.newFile("keyconf_2");
+        FileWatchListener listener = mock(FileWatchListener.class);
+
+        monitor = FileChangeMonitor.create()
+                .monitor(file.toPath())
+                .andOnChangeNotify(listener)
+                .buildAndStart();
+
+        Files.write(file.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+        monitor.checkForChange();
+
+        verify(listener, timeout(TIMEOUT).atLeastOnce()).fileModified();
+    }
+
+    @Test
+    public void shouldNotNotifyWhenOnlyModificationTimeChanges() throws IOException {
+        File file = temporaryFolder.newFile("keyconf_3");
+        FileWatchListener listener = mock(FileWatchListener.class);
+
+        monitor = FileChangeMonitor.create()
+                .monitor(file.toPath())
+                .andOnChangeNotify(listener)
+                .buildAndStart();
+
+        file.setLastModified(file.lastModified() - TimeUnit.HOURS.toMillis(1));
+        monitor.checkForChange();
+
+        verify(listener, never()).fileModified();
+    }
+
+    @Test
+    public void shouldDetectChangeWithFallbackPoll() throws IOException {
+        File file = temporaryFolder.newFile("keyconf_4");
+        FileWatchListener listener = mock(FileWatchListener.class);
+
+        monitor = FileChangeMonitor.create()
+                .monitor(file.toPath())
+                .withFallbackPollInterval(50, TimeUnit.MILLISECONDS)
+                .andOnChangeNotify(listener)
+                .buildAndStart();
+
+        Files.write(file.toPath(), "changed".getBytes(StandardCharsets.UTF_8));
+
+        verify(listener, timeout(TIMEOUT).atLeastOnce()).fileModified();
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.globalconf;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.SecurityServerId;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA1_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
+
+/**
+ * Measures the certificate and global group lookups of {@link GlobalConfImpl} against shared parameters of a
+ * federation scale instance with 10 000 members, security servers and global group members.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GlobalConfBenchmark {
+
+    private static final String GOOD_CONF_DIR = "../common-util/src/test/resources/globalconf_good_v2";
+    private static final String INSTANCE = "EE";
+    private static final String GROUP_CODE = "Test group";
+
+    private static final int MEMBER_COUNT = 10000;
+
+    private Path confDir;
+    private GlobalConfImpl globalConf;
+
+    private X509Certificate memberCert;
+    private X509Certificate caCert;
+    private X509Certificate ocspCert;
+
+    private ClientId lastMember;
+    private GlobalGroupId group;
+
+    /**
+     * Creates the configuration directory and loads the global configuration.
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        confDir = Files.createTempDirectory("globalconf-benchmark");
+        Path instanceDir = Files.createDirectory(confDir.resolve(INSTANCE));
+
+        Files.copy(Paths.get(GOOD_CONF_DIR, "instance-identifier"), confDir.resolve("instance-identifier"));
+        Files.copy(Paths.get(GOOD_CONF_DIR, INSTANCE, "shared-params.xml.metadata"),
+                instanceDir.resolve("shared-params.xml.metadata"));
+
+        String sharedParams = new String(Files.readAllBytes(Paths.get(GOOD_CONF_DIR, INSTANCE, "shared-params.xml")),
+                StandardCharsets.UTF_8);
+        Files.write(instanceDir.resolve("shared-params.xml"),
+                createFederationScaleParams(sharedParams).getBytes(StandardCharsets.UTF_8));
+
+        globalConf = new GlobalConfImpl(new ConfigurationDirectoryV2(confDir.toString()));
+
+        memberCert = TestCertUtil.getProducer().certChain[0];
+        caCert = TestCertUtil.getCaCert();
+        ocspCert = TestCertUtil.getOcspSigner().certChain[0];
+
+        lastMember = ClientId.create(INSTANCE, "BUSINESS", "benchmember" + (MEMBER_COUNT - 1));
+        group = GlobalGroupId.create(INSTANCE, GROUP_CODE);
+    }
+
+    /**
+     * Removes the configuration directory.
+     * @throws Exception if an error occurs
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        FileUtils.deleteDirectory(confDir.toFile());
+    }
+
+    /**
+     * @return the CA certificate of the member certificate
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public X509Certificate getCaCert() throws Exception {
+        return globalConf.getCaCert(INSTANCE, memberCert);
+    }
+
+    /**
+     * @return the approved TSA certificates
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public List<X509Certificate> getTspCertificates() throws Exception {
+        return globalConf.getTspCertificates();
+    }
+
+    /**
+     * @return whether the certificate belongs to an OCSP responder of the CA
+     */
+    @Benchmark
+    public boolean isOcspResponderCert() {
+        return globalConf.isOcspResponderCert(caCert, ocspCert);
+    }
+
+    /**
+     * @return whether the last added member belongs to the global group
+     */
+    @Benchmark
+    public boolean isSubjectInGlobalGroup() {
+        return globalConf.isSubjectInGlobalGroup(lastMember, group);
+    }
+
+    /**
+     * @return the security server of the authentication certificate
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public SecurityServerId getServerId() throws Exception {
+        return globalConf.getServerId(memberCert);
+    }
+
+    /**
+     * @return whether the authentication certificate belongs to the last added member
+     * @throws Exception if an error occurs
+     */
+    @Benchmark
+    public boolean authCertMatchesMember() throws Exception {
+        return globalConf.authCertMatchesMember(memberCert, lastMember);
+    }
+
+    private static String createFederationScaleParams(String sharedParams) throws Exception {
+        StringBuilder members = new StringBuilder();
+        StringBuilder servers = new StringBuilder();
+        StringBuilder groupMembers = new StringBuilder();
+
+        for (int i = 0; i < MEMBER_COUNT; i++) {
+            String memberCode = "benchmember" + i;
+            String authCertHash = encodeBase64(calculateDigest(SHA1_ID, memberCode.getBytes(StandardCharsets.UTF_8)));
+
+            members.append("    <member id=\"").append(memberCode).append("\">\n")
+                    .append("        <memberClass>\n")
+                    .append("            <code>BUSINESS</code>\n")
+                    .append("            <description>1</description>\n")
+                    .append("        </memberClass>\n")
+                    .append("        <memberCode>").append(memberCode).append("</memberCode>\n")
+                    .append("        <name>Benchmark member ").append(i).append("</name>\n")
+                    .append("    </member>\n");
+
+            servers.append("    <securityServer>\n")
+                    .append("        <owner>").append(memberCode).append("</owner>\n")
+                    .append("        <serverCode>server").append(i).append("</serverCode>\n")
+                    .append("        <address>10.1.").append(i / 256).append('.').append(i % 256)
+                    .append("</address>\n")
+                    .append("        <authCertHash>").append(authCertHash).append("</authCertHash>\n")
+                    .append("    </securityServer>\n");
+
+            groupMembers.append("        <groupMember id:objectType=\"MEMBER\">\n")
+                    .append("            <id:xRoadInstance>").append(INSTANCE).append("</id:xRoadInstance>\n")
+                    .append("            <id:memberClass>BUSINESS</id:memberClass>\n")
+                    .append("            <id:memberCode>").append(memberCode).append("</id:memberCode>\n")
+                    .append("        </groupMember>\n");
+        }
+
+        // The elements must follow the order of the schema
+        String result = insertBefore(sharedParams, "    <securityServer>", members);
+        result = insertBefore(result, "    <globalGroup>", servers);
+
+        return insertBefore(result, "    </globalGroup>", groupMembers);
+    }
+
+    private static String insertBefore(String xml, String element, CharSequence content) {
+        int index = xml.indexOf(element);
+        if (index < 0) {
+            throw new IllegalStateException("Element not found: " + element.trim());
+        }
+
+        return xml.substring(0, index) + content + xml.substring(index);
+    }
+}
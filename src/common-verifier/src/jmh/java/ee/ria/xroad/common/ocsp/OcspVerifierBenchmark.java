@@ -0,0 +1,143 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.ocsp;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Measures the throughput of {@link OcspVerifier#verifyValidityAndStatus} with 64 threads, when all threads
+ * verify the same OCSP response and when every thread verifies a distinct response. Both cases are served
+ * from the verification cache after the first call.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(64)
+@State(Scope.Benchmark)
+public class OcspVerifierBenchmark {
+
+    private static final AtomicInteger THREAD_COUNT = new AtomicInteger();
+
+    private static X509Certificate subject;
+    private static X509Certificate issuer;
+    private static PrivateKey issuerKey;
+
+    private OcspVerifier verifier;
+    private OCSPResp sharedResponse;
+
+    /**
+     * Response verified by a single benchmark thread.
+     */
+    @State(Scope.Thread)
+    public static class ThreadResponse {
+
+        private OCSPResp response;
+
+        /**
+         * Creates the response of this thread, the distinct thisUpdate makes the encoding unique.
+         * @param benchmark the benchmark state, initializes the certificates
+         * @throws Exception if an error occurs
+         */
+        @Setup(Level.Trial)
+        public void setUp(OcspVerifierBenchmark benchmark) throws Exception {
+            int index = THREAD_COUNT.incrementAndGet();
+            response = createResponse(new Date(System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(index)));
+        }
+    }
+
+    /**
+     * Loads the test certificates and creates the shared response.
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        issuer = TestCertUtil.getCertChainCert("root_ca.p12");
+        issuerKey = TestCertUtil.getCertChainKey("root_ca.p12");
+        subject = TestCertUtil.getCertChainCert("user_0.p12");
+
+        GlobalConf.reload(new EmptyGlobalConf() {
+            @Override
+            public List<X509Certificate> getOcspResponderCertificates() {
+                return Collections.singletonList(issuer);
+            }
+        });
+
+        verifier = new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true), new OcspVerifierOptions(true));
+        sharedResponse = createResponse(new Date());
+    }
+
+    /**
+     * @throws Exception if verification fails
+     */
+    @Benchmark
+    public void verifySameResponse() throws Exception {
+        verifier.verifyValidityAndStatus(sharedResponse, subject, issuer);
+    }
+
+    /**
+     * @param state the response of the calling thread
+     * @throws Exception if verification fails
+     */
+    @Benchmark
+    public void verifyDistinctResponses(ThreadResponse state) throws Exception {
+        verifier.verifyValidityAndStatus(state.response, subject, issuer);
+    }
+
+    private static OCSPResp createResponse(Date thisUpdate) throws Exception {
+        return OcspTestUtils.createOCSPResponse(subject, issuer, issuer, issuerKey, CertificateStatus.GOOD,
+                thisUpdate, null);
+    }
+}
@@ -88,15 +88,27 @@ public final class CertHelper {
      * @throws Exception if verification fails.
      */
     public static void verifyAuthCert(CertChain chain, List<OCSPResp> ocspResponses, ClientId member) throws Exception {
+        verifyAuthCertChain(chain, ocspResponses);
+        verifyAuthCertMember(chain.getEndEntityCert(), member);
+    }
+
+    /**
+     * Verifies that the end entity certificate of the chain is an
+     * authentication certificate and that the chain is valid with respect
+     * to the OCSP responses.
+     * @param chain the certificate chain
+     * @param ocspResponses OCSP responses used in the cert chain
+     * @throws Exception if verification fails.
+     */
+    public static void verifyAuthCertChain(CertChain chain, List<OCSPResp> ocspResponses) throws Exception {
         X509Certificate cert = chain.getEndEntityCert();
         if (!CertUtils.isAuthCert(cert)) {
             throw new CodedException(X_SSL_AUTH_FAILED,
                     "Peer certificate is not an authentication certificate");
         }
 
-        log.debug("verifyAuthCert({}: {}, {})",
-                new Object[] {cert.getSerialNumber(),
-                        cert.getSubjectX500Principal().getName(), member });
+        log.debug("verifyAuthCertChain({}: {})", cert.getSerialNumber(),
+                cert.getSubjectX500Principal().getName());
 
         // Verify certificate against CAs.
         try {
@@ -105,9 +117,20 @@ public final class CertHelper {
             // meaningful errors get SSL auth verification prefix
             throw e.withPrefix(X_SSL_AUTH_FAILED);
         }
+    }
+
+    /**
+     * Verifies (using GlobalConf) that the authentication certificate can be
+     * used to authenticate the member.
+     * @param cert the authentication certificate
+     * @param member the member
+     * @throws Exception if verification fails.
+     */
+    public static void verifyAuthCertMember(X509Certificate cert, ClientId member) throws Exception {
+        log.debug("verifyAuthCertMember({}: {}, {})",
+                new Object[] {cert.getSerialNumber(),
+                        cert.getSubjectX500Principal().getName(), member });
 
-        // Verify (using GlobalConf) that given certificate can be used
-        // to authenticate given member.
         if (!GlobalConf.authCertMatchesMember(cert, member)) {
             SecurityServerId serverId = GlobalConf.getServerId(cert);
             if (serverId != null) {
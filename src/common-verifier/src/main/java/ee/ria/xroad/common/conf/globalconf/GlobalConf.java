@@ -44,6 +44,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_OUTDATED_GLOBALCONF;
@@ -69,6 +70,12 @@ public final class GlobalConf {
 
     private static volatile GlobalConfProvider instance;
 
+    // Incremented whenever a reload changes the configuration
+    private static final AtomicLong LOAD_COUNT = new AtomicLong();
+
+    // Version of the instance at the last counted reload
+    private static long loadedVersion;
+
     private GlobalConf() {
     }
 
@@ -115,9 +122,15 @@ public final class GlobalConf {
             } catch (Exception e) {
                 throw translateException(e);
             }
+
+            if (instance.getVersion() != loadedVersion) {
+                countLoad();
+            }
         } else {
             log.trace("reload called, create new GlobalConfImpl");
             instance = instanceFactory.createInstance(true);
+
+            countLoad();
         }
     }
 
@@ -128,6 +141,10 @@ public final class GlobalConf {
     public static void reload(GlobalConfProvider conf) {
         log.trace("reload called with parameter class {}", conf.getClass());
         instance = conf;
+
+        synchronized (GlobalConf.class) {
+            countLoad();
+        }
     }
 
     /**
@@ -142,9 +159,29 @@ public final class GlobalConf {
             } catch (Exception e) {
                 throw translateException(e);
             }
+
+            if (instance.getVersion() != loadedVersion) {
+                countLoad();
+            }
         }
     }
 
+    /**
+     * Returns the number of times a reload has changed the configuration. Reloads that do not find any changed
+     * files do not change the count. Data derived from the configuration can use it to detect that the
+     * configuration may have changed.
+     * @return the load count
+     */
+    public static long getLoadCount() {
+        return LOAD_COUNT.get();
+    }
+
+    private static void countLoad() {
+        loadedVersion = instance != null ? instance.getVersion() : 0;
+
+        LOAD_COUNT.incrementAndGet();
+    }
+
     // ------------------------------------------------------------------------
 
     /**
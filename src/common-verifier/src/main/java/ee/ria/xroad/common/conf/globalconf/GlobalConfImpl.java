@@ -45,12 +45,11 @@ import ee.ria.xroad.common.identifier.SecurityCategoryId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
 import ee.ria.xroad.common.identifier.ServiceId;
 import ee.ria.xroad.common.util.CertUtils;
-import ee.ria.xroad.common.util.CryptoUtils;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.asn1.x500.X500Name;
 
 import java.io.OutputStream;
 import java.math.BigInteger;
@@ -325,13 +324,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
         List<X509Certificate> responderCerts = new ArrayList<>();
         try {
             for (SharedParametersV2 p : getSharedParameters()) {
-                for (List<OcspInfoType> ocspTypes
-                        : p.getCaCertsAndOcspData().values()) {
-                    ocspTypes.stream().map(OcspInfoType::getCert)
-                            .filter(Objects::nonNull)
-                            .map(CryptoUtils::readCertificate)
-                            .forEach(responderCerts::add);
-                }
+                responderCerts.addAll(p.getIndex().getOcspResponderCerts());
             }
         } catch (Exception e) {
             log.error("Error while getting OCSP responder certificates", e);
@@ -349,15 +342,14 @@ public class GlobalConfImpl implements GlobalConfProvider {
                     "Member certificate must be present to find CA cert!");
         }
 
-        X509CertificateHolder ch = new X509CertificateHolder(
-                memberCert.getEncoded());
+        X500Name issuer = SharedParametersIndex.getIssuer(memberCert);
 
         String[] instances = instanceIdentifier != null
                 ? new String[] {instanceIdentifier} : new String[] {};
 
         return getSharedParameters(instances)
                 .stream()
-                .map(p -> p.getSubjectsAndCaCerts().get(ch.getIssuer()))
+                .map(p -> p.getIndex().getCaCertForIssuer(issuer))
                 .filter(Objects::nonNull)
                 .findFirst()
                 .orElseThrow(
@@ -409,12 +401,8 @@ public class GlobalConfImpl implements GlobalConfProvider {
     public boolean isOcspResponderCert(X509Certificate ca,
             X509Certificate ocspCert) {
         return getSharedParameters().stream()
-                .map(p -> p.getCaCertsAndOcspData().get(ca))
-                .filter(Objects::nonNull).flatMap(o -> o.stream())
-                .map(OcspInfoType::getCert).filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
-                .filter(c -> c.equals(ocspCert))
-                .findFirst().isPresent();
+                .map(p -> p.getIndex().getCaCertsAndOcspResponderCerts().get(ca))
+                .anyMatch(c -> c != null && c.contains(ocspCert));
     }
 
     @Override
@@ -433,13 +421,9 @@ public class GlobalConfImpl implements GlobalConfProvider {
         String b64 = encodeBase64(certHash(cert));
 
         for (SharedParametersV2 p : getSharedParameters()) {
-            SecurityServerType serverType = p.getServerByAuthCert().get(b64);
-            if (serverType != null) {
-                MemberType owner = SharedParametersV2.getOwner(serverType);
-                return SecurityServerId.create(p.getInstanceIdentifier(),
-                        owner.getMemberClass().getCode(),
-                        owner.getMemberCode(),
-                        serverType.getServerCode());
+            SecurityServerId serverId = p.getIndex().getServerIdByAuthCert().get(b64);
+            if (serverId != null) {
+                return serverId;
             }
         }
 
@@ -462,12 +446,10 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public boolean authCertMatchesMember(X509Certificate cert,
             ClientId memberId) throws Exception {
-        byte[] inputCertHash = certHash(cert);
+        String inputCertHash = encodeBase64(certHash(cert));
         return getSharedParameters().stream()
-                .map(p -> p.getMemberAuthCerts().get(memberId))
-                .filter(Objects::nonNull).flatMap(h -> h.stream())
-                .filter(h -> Arrays.equals(inputCertHash, h)).findFirst()
-                .isPresent();
+                .map(p -> p.getIndex().getMemberAuthCerts().get(memberId))
+                .anyMatch(h -> h != null && h.contains(inputCertHash));
     }
 
     @Override
@@ -538,10 +520,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
     @Override
     public List<X509Certificate> getTspCertificates() throws Exception {
         return getSharedParameters().stream()
-                .flatMap(p -> p.getApprovedTSAs().stream())
-                .map(ApprovedTSAType::getCert)
-                .filter(Objects::nonNull)
-                .map(CryptoUtils::readCertificate)
+                .flatMap(p -> p.getIndex().getTspCerts().stream())
                 .collect(Collectors.toList());
     }
 
@@ -568,13 +547,7 @@ public class GlobalConfImpl implements GlobalConfProvider {
             return false;
         }
 
-        GlobalGroupType group = p.findGlobalGroup(groupId);
-        if (group == null) {
-            return false;
-        }
-
-        return group.getGroupMember().stream().filter(m -> m.equals(subjectId))
-                .findFirst().isPresent();
+        return p.isGlobalGroupMember(groupId, subjectId);
     }
 
     @Override
@@ -642,6 +615,11 @@ public class GlobalConfImpl implements GlobalConfProvider {
 
     // ------------------------------------------------------------------------
 
+    @Override
+    public long getVersion() {
+        return confDir.getVersion();
+    }
+
     @Override
     public boolean hasChanged() {
         return false;
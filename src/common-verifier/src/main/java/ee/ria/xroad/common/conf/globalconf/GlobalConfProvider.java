@@ -55,6 +55,15 @@ public interface GlobalConfProvider extends ConfProvider {
      */
     boolean isValid();
 
+    /**
+     * Returns the version of the loaded configuration. The version must change whenever loading the
+     * configuration finds changes, and stay the same otherwise.
+     * @return the version of the loaded configuration
+     */
+    default long getVersion() {
+        return 0;
+    }
+
     /**
      * @return the instance identifier for this configuration source
      */
@@ -27,7 +27,6 @@ package ee.ria.xroad.common.ocsp;
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
-import ee.ria.xroad.common.conf.globalconf.TimeBasedObjectCache;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.xml.security.algorithms.MessageDigestAlgorithm;
@@ -52,10 +51,12 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CERT_VALIDATION;
 import static ee.ria.xroad.common.ErrorCodes.X_INCORRECT_VALIDATION_INFO;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA1_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
 import static ee.ria.xroad.common.util.CryptoUtils.createCertId;
 import static ee.ria.xroad.common.util.CryptoUtils.createDefaultContentVerifier;
@@ -68,16 +69,14 @@ public final class OcspVerifier {
 
     private static final String ID_KP_OCSPSIGNING = "1.3.6.1.5.5.7.3.9";
 
-    private static final String SINGLE_RESP = "single_resp";
-    private static final String SIGNATURE = "signature";
-    private static final String CERTIFICATE = "certificate";
-
     private final int ocspFreshnessSeconds;
 
     private final OcspVerifierOptions options;
 
-    private static final TimeBasedObjectCache CACHE = new TimeBasedObjectCache(SystemProperties
-            .getOcspVerifierCachePeriod());;
+    private static final long CACHE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getOcspVerifierCachePeriod());
+
+    private static final OcspVerifierCache CACHE = new OcspVerifierCache(OcspVerifierCache.DEFAULT_MAX_SIZE);
 
     /**
      * Constructor
@@ -182,15 +181,43 @@ public final class OcspVerifier {
         }
     }
 
-    private synchronized SingleResp verifyResponseValidityCached(OCSPResp response, X509Certificate subject,
-                                                                 X509Certificate issuer)
+    private SingleResp verifyResponseValidityCached(OCSPResp response, X509Certificate subject,
+                                                    X509Certificate issuer)
             throws Exception {
-        String key = SINGLE_RESP + response.hashCode() + subject.hashCode() + issuer.hashCode();
-        if (!CACHE.isValid(key)) {
-            CACHE.setValue(key, verifyResponseValidity(response, subject, issuer));
+        OcspVerifierCache.Key key = new OcspVerifierCache.Key(calculateDigest(SHA256_ID, response.getEncoded()),
+                subject, issuer);
+        long now = System.currentTimeMillis();
+
+        SingleResp singleResp = CACHE.get(key, now);
+        if (singleResp == null) {
+            singleResp = verifyResponseValidity(response, subject, issuer);
+            CACHE.put(key, singleResp, getCacheExpiry(singleResp, now), now);
         }
 
-        return (SingleResp) CACHE.getValue(key);
+        return singleResp;
+    }
+
+    /**
+     * The verification result is not reused after the response has become too old to pass
+     * the freshness and nextUpdate checks anyway.
+     */
+    private long getCacheExpiry(SingleResp singleResp, long now) {
+        long expiresAt = now + CACHE_PERIOD_MILLIS;
+
+        if (singleResp.getNextUpdate() != null) {
+            expiresAt = Math.min(expiresAt, singleResp.getNextUpdate().getTime());
+        }
+
+        long freshUntil = singleResp.getThisUpdate().getTime() + TimeUnit.SECONDS.toMillis(ocspFreshnessSeconds);
+
+        return Math.min(expiresAt, freshUntil);
+    }
+
+    /**
+     * Clears the cached verification results.
+     */
+    static void clearCache() {
+        CACHE.clear();
     }
 
     private SingleResp verifyResponseValidity(OCSPResp response, X509Certificate subject, X509Certificate issuer)
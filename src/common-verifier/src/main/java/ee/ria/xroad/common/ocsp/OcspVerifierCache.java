@@ -0,0 +1,87 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.ocsp;
+
+import ee.ria.xroad.common.util.ExpiringCache;
+
+import lombok.Value;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import java.security.cert.X509Certificate;
+
+/**
+ * Bounded cache of successful OCSP response verifications. The entries are kept in an {@link ExpiringCache},
+ * so lookups from the request handling threads do not contend on a common lock. Every entry carries its own
+ * expiration time.
+ */
+final class OcspVerifierCache {
+
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    /**
+     * Identifies a verification: the digest of the encoded OCSP response together with the subject
+     * and issuer certificates the response was verified against.
+     */
+    @Value
+    static class Key {
+        private byte[] responseHash;
+        private X509Certificate subject;
+        private X509Certificate issuer;
+    }
+
+    private final ExpiringCache<Key, SingleResp> entries;
+
+    OcspVerifierCache(int maxSize) {
+        entries = new ExpiringCache<>(maxSize);
+    }
+
+    /**
+     * @param key the verification key
+     * @param now the current time in milliseconds
+     * @return the cached single response or null, if there is no valid entry for the key
+     */
+    SingleResp get(Key key, long now) {
+        return entries.get(key, now);
+    }
+
+    /**
+     * Caches the verified single response until the given expiration time.
+     * @param key the verification key
+     * @param singleResp the verified single response
+     * @param expiresAt the expiration time of the entry in milliseconds
+     * @param now the current time in milliseconds
+     */
+    void put(Key key, SingleResp singleResp, long expiresAt, long now) {
+        entries.put(key, singleResp, expiresAt, now);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+}
@@ -464,6 +464,33 @@ public class GlobalConfTest {
         assertEquals(5, cas.size());
     }
 
+    /**
+     * Tests that reloading an unchanged configuration keeps the load count, so that data derived from
+     * the configuration stays valid across reloads.
+     */
+    @Test
+    public void reloadWithoutChangesKeepsLoadCount() {
+        long loadCount = GlobalConf.getLoadCount();
+
+        GlobalConf.reloadIfChanged();
+
+        assertEquals(loadCount, GlobalConf.getLoadCount());
+    }
+
+    /**
+     * Tests that replacing the configuration increments the load count.
+     *
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void reloadWithNewConfigurationIncrementsLoadCount() throws Exception {
+        long loadCount = GlobalConf.getLoadCount();
+
+        GlobalConf.reload(new GlobalConfImpl(new ConfigurationDirectoryV2(getConfigurationPath())));
+
+        assertEquals(loadCount + 1, GlobalConf.getLoadCount());
+    }
+
     private static ClientId newClientId(String name) {
         return ClientId.create("EE", "BUSINESS", name);
     }
@@ -0,0 +1,129 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.ocsp;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link OcspVerifierCache}.
+ */
+public class OcspVerifierCacheTest {
+
+    private static X509Certificate subject;
+    private static X509Certificate issuer;
+    private static SingleResp singleResp;
+
+    /**
+     * Creates the OCSP response whose single response is cached in the tests.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void createResponse() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        issuer = TestCertUtil.getCertChainCert("root_ca.p12");
+        subject = TestCertUtil.getCertChainCert("user_0.p12");
+
+        BasicOCSPResp basicResp = (BasicOCSPResp) OcspTestUtils.createOCSPResponse(subject, issuer, issuer,
+                TestCertUtil.getCertChainKey("root_ca.p12"), CertificateStatus.GOOD).getResponseObject();
+        singleResp = basicResp.getResponses()[0];
+    }
+
+    /**
+     * Test that entries are looked up by value and dropped when expired.
+     */
+    @Test
+    public void expireEntries() {
+        OcspVerifierCache cache = new OcspVerifierCache(10);
+
+        cache.put(key(1), singleResp, 2000, 1000);
+
+        assertSame(singleResp, cache.get(key(1), 1999));
+        assertNull(cache.get(key(2), 1999));
+        assertNull(cache.get(new OcspVerifierCache.Key(new byte[] {1}, subject, subject), 1999));
+
+        assertNull(cache.get(key(1), 2000));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test that an already expired verification is not cached.
+     */
+    @Test
+    public void doNotCacheExpiredEntries() {
+        OcspVerifierCache cache = new OcspVerifierCache(10);
+
+        cache.put(key(1), singleResp, 1000, 1000);
+
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test that the cache does not grow over the maximum size.
+     */
+    @Test
+    public void evictEntriesWhenFull() {
+        OcspVerifierCache cache = new OcspVerifierCache(8);
+
+        for (int i = 0; i < 8; i++) {
+            cache.put(key(i), singleResp, i < 4 ? 2000 : 5000, 1000);
+        }
+
+        assertEquals(8, cache.size());
+
+        // Expired entries are evicted first.
+        cache.put(key(8), singleResp, 5000, 3000);
+
+        assertEquals(5, cache.size());
+        assertNull(cache.get(key(0), 3000));
+        assertSame(singleResp, cache.get(key(4), 3000));
+
+        for (int i = 9; i < 100; i++) {
+            cache.put(key(i), singleResp, 5000, 3000);
+        }
+
+        assertSame(singleResp, cache.get(key(99), 3000));
+        assertTrue(cache.size() <= 8);
+    }
+
+    private static OcspVerifierCache.Key key(int responseHash) {
+        return new OcspVerifierCache.Key(new byte[] {(byte) responseHash}, subject, issuer);
+    }
+}
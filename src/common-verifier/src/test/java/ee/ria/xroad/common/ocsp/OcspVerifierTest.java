@@ -84,6 +84,24 @@ public class OcspVerifierTest {
         verifier.verifyValidityAndStatus(ocsp, subject, subject);
     }
 
+    /**
+     * Test that a cached verification result is not reused for another issuer certificate.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void errorCertMismatchAfterCachedVerification() throws Exception {
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+        OCSPResp ocsp = OcspTestUtils.createOCSPResponse(subject, issuer,
+                signer, signerKey, CertificateStatus.GOOD, thisUpdate, null);
+
+        OcspVerifier verifier =
+                new OcspVerifier(GlobalConf.getOcspFreshnessSeconds(true), new OcspVerifierOptions(true));
+        verifier.verifyValidityAndStatus(ocsp, subject, issuer);
+
+        thrown.expectError(X_INCORRECT_VALIDATION_INFO);
+        verifier.verifyValidityAndStatus(ocsp, subject, subject);
+    }
+
     /**
      * Test that verifying OCSP response against an invalid response signature
      * fails.
@@ -245,6 +263,7 @@ public class OcspVerifierTest {
     @Before
     public void loadCerts() throws Exception {
         GlobalConf.reload(new TestGlobalConf());
+        OcspVerifier.clearCache();
 
         if (issuer == null) {
             issuer = TestCertUtil.getCertChainCert("root_ca.p12");
@@ -24,7 +24,6 @@
 #
 
 
-require 'base64'
 require 'java'
 
 java_import Java::ee.ria.xroad.common.conf.globalconf.ConfigurationAnchorV2
@@ -358,14 +357,14 @@ class SysparamsController < ApplicationController
         certs = GlobalConf::all_ca_certs(GlobalConf::instanceIdentifier())
         response = SignerClient::execute(GetOcspResponses.new(CertUtils::getCertHashes(certs)))
 
-        certs.zip(response.base64EncodedResponses).each do |cert, base64_response|
+        certs.zip(response.ocspResponses).each do |cert, ocsp_bytes|
           cert_object = CommonUi::CertUtils.cert_object(cert.encoded)
           subject = cert_object.subject.to_s;
           approved_cas[subject] = {
               :subject => subject,
               :issuer => cert_object.issuer.to_s,
               :expires => cert_object.not_after.strftime("%F"),
-              :resp => ocsp_response(base64_response),
+              :resp => ocsp_response(ocsp_bytes),
               :expired => Time.now > cert_object.not_after,
               :top_ca => true
           }
@@ -399,9 +398,9 @@ class SysparamsController < ApplicationController
     path.join(":")
   end
 
-  def ocsp_response(base64_response)
-    return "not available" unless base64_response
-    status = OCSPResp.new(Base64.decode64(base64_response).to_java_bytes).responseObject.responses[0].certStatus
+  def ocsp_response(ocsp_bytes)
+    return "not available" unless ocsp_bytes
+    status = OCSPResp.new(ocsp_bytes).responseObject.responses[0].certStatus
     case status
     when nil
       #nil is good (see org.bouncycastle.cert.ocsp.SingleResp)
@@ -33,22 +33,25 @@ import ee.ria.xroad.signer.protocol.message.SignResponse;
 
 import akka.actor.ActorRef;
 import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
 import akka.actor.Props;
+import akka.actor.ReceiveTimeout;
 import akka.actor.UntypedActor;
-import akka.actor.UntypedActorWithStash;
 import akka.pattern.Patterns;
 import akka.util.Timeout;
 import lombok.Data;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
-import org.bouncycastle.operator.OperatorCreationException;
 import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
 
-import java.io.IOException;
-import java.security.NoSuchAlgorithmException;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.ErrorCodes.SIGNER_X;
@@ -69,7 +72,10 @@ import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
  *
  * The batch signer is an Akka actor, it creates child actors per
  * signing certificate, which means there is essentially one batch signer
- * per signing certificate.
+ * per signing certificate. Every worker queues the incoming requests and
+ * sends them to the signer in batches of at most the configured size. A batch
+ * may wait up to the configured linger time for more requests, and up to the
+ * configured number of batches per key are signed concurrently.
  */
 @Slf4j
 public class BatchSigner extends UntypedActor {
@@ -77,9 +83,38 @@ public class BatchSigner extends UntypedActor {
     private static final int TIMEOUT_MILLIS = SystemProperties.getSignerClientTimeout();
     private static final Timeout DEFAULT_TIMEOUT = new Timeout(TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
 
+    private static final BatchSignerMetrics METRICS = new BatchSignerMetrics();
+
+    private static final SignerConnection SIGNER_CLIENT = new SignerConnection() {
+        @Override
+        public Boolean isBatchSigningEnabled(String keyId) throws Exception {
+            return SignerClient.execute(new GetTokenBatchSigningEnabled(keyId));
+        }
+
+        @Override
+        public void sign(Sign message, ActorRef receiver) {
+            SignerClient.execute(message, receiver);
+        }
+    };
+
     // Holds the actor instance, which sends and receives messages.
     private static ActorRef instance;
 
+    // Signing workers by signing certificate, the cert hash is only calculated when creating the worker.
+    private final Map<X509Certificate, ActorRef> workers = new HashMap<>();
+
+    private final Config config;
+
+    BatchSigner() {
+        this(new Config(SystemProperties.getProxyBatchSigningMaxBatchSize(),
+                SystemProperties.getProxyBatchSigningLingerTime(),
+                SystemProperties.getProxyBatchSigningMaxConcurrentOperations(), SIGNER_CLIENT));
+    }
+
+    BatchSigner(Config config) {
+        this.config = config;
+    }
+
     /**
      * Initializes the batch signer with the given actor system.
      *
@@ -112,6 +147,13 @@ public class BatchSigner extends UntypedActor {
                 DEFAULT_TIMEOUT.duration()));
     }
 
+    /**
+     * @return the batch signing statistics of all signing keys
+     */
+    public static BatchSignerMetrics getMetrics() {
+        return METRICS;
+    }
+
     @Override
     public void onReceive(Object message) throws Exception {
         try {
@@ -140,15 +182,21 @@ public class BatchSigner extends UntypedActor {
     }
 
     private ActorRef getWorker(SigningRequestWrapper signRequest) throws Exception {
-        // Signing worker based on cert hash.
-        String name = calculateCertHexHash(signRequest.getSigningCert());
-
-        ActorRef worker = getContext().getChild(name);
+        ActorRef worker = workers.get(signRequest.getSigningCert());
 
         if (worker == null) {
-            log.trace("Creating new worker for cert '{}'", name);
+            // Signing worker based on cert hash.
+            String name = calculateCertHexHash(signRequest.getSigningCert());
+
+            worker = getContext().getChild(name);
+
+            if (worker == null) {
+                log.trace("Creating new worker for cert '{}'", name);
 
-            worker = getContext().actorOf(Props.create(WorkerImpl.class), name);
+                worker = getContext().actorOf(Props.create(WorkerImpl.class, config), name);
+            }
+
+            workers.put(signRequest.getSigningCert(), worker);
         }
 
         return worker;
@@ -157,35 +205,49 @@ public class BatchSigner extends UntypedActor {
     /**
      * This is the worker that does the heavy lifting.
      */
-    private static class WorkerImpl extends UntypedActorWithStash {
+    private static class WorkerImpl extends UntypedActor {
+
+        private static final Object LINGER_EXPIRED = new Object();
 
-        // The currently active signing ctx.
-        private BatchSignatureCtx workingSigningCtx;
+        private final Config config;
 
-        // The next signing ctx, if batch signing.
-        private BatchSignatureCtx nextSigningCtx;
+        // Signing requests waiting to be sent to the signer.
+        private final Deque<PendingRequest> queue = new ArrayDeque<>();
 
-        private long signStartTime;
-        private boolean workerBusy;
+        // Signing contexts sent to the signer, by the operation actor waiting for the signature.
+        private final Map<ActorRef, BatchSignatureCtx> operations = new HashMap<>();
+
+        private Cancellable lingerTimer;
 
         private Boolean batchSigningEnabled;
 
+        WorkerImpl(Config config) {
+            this.config = config;
+        }
+
+        @Override
+        public void postStop() {
+            cancelLingerTimer();
+        }
+
         @Override
         public void onReceive(Object message) throws Exception {
             log.trace("onReceive({})", message);
 
             if (message instanceof SigningRequestWrapper) {
                 handleSignRequest((SigningRequestWrapper) message);
-            } else if (message instanceof SignResponse) {
-                handleSignResponse((SignResponse) message);
-            } else if (message instanceof Exception) {
-                handleException((Exception) message);
+            } else if (message instanceof SignatureResult) {
+                handleSignatureResult(((SignatureResult) message).getResult());
+            } else if (message == LINGER_EXPIRED) {
+                lingerTimer = null;
+
+                startBatchSigning();
             } else {
                 unhandled(message);
             }
         }
 
-        private void handleSignRequest(SigningRequestWrapper signRequest) throws Exception {
+        private void handleSignRequest(SigningRequestWrapper signRequest) {
             log.trace("handleSignRequest()");
 
             // If we do not know whether batch signing is enabled for the token,
@@ -195,140 +257,136 @@ public class BatchSigner extends UntypedActor {
                 queryBatchSigningEnabled(signRequest.getKeyId());
             }
 
-            // Handle incoming sign request. If the token worker is currently
-            // busy (signing, generating key, etc...) and batch signing is
-            // enabled then create signing context and collect all following
-            // sign requests to be signed in batch. Otherwise just sign the
-            // data straight away.
-            if (isWorkerBusy()) {
-                if (batchSigningEnabled) {
-                    doBatchSign(signRequest);
-                } else {
-                    log.trace("Batch signing not enabled, stashing request");
-                    // Batch signing not enabled, but currently busy,
-                    // so stash this message for future.
-                    stash();
-                }
-            } else {
-                doSign(signRequest);
-            }
+            queue.add(new PendingRequest(signRequest, getSender(), System.currentTimeMillis()));
+
+            startBatchSigning();
         }
 
         private void queryBatchSigningEnabled(String keyId) {
             try {
-                batchSigningEnabled = SignerClient.execute(new GetTokenBatchSigningEnabled(keyId));
+                batchSigningEnabled = config.getSigner().isBatchSigningEnabled(keyId);
             } catch (Exception e) {
                 log.error("Failed to query if batch signing is enabled for token with key {}", keyId, e);
             }
         }
 
-        private void doBatchSign(SigningRequestWrapper wrapper) {
-            log.trace("doBatchSign()");
+        private int getMaxBatchSize() {
+            return Boolean.TRUE.equals(batchSigningEnabled) ? config.getMaxBatchSize() : 1;
+        }
 
-            if (nextSigningCtx == null) {
-                nextSigningCtx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            }
+        private void handleSignatureResult(Object result) {
+            log.trace("handleSignatureResult()");
 
-            nextSigningCtx.add(getSender(), wrapper.getRequest());
-        }
+            BatchSignatureCtx ctx = operations.remove(getSender());
 
-        private void doSign(SigningRequestWrapper wrapper) throws Exception {
-            log.trace("doSign()");
+            if (ctx == null) {
+                log.warn("Received signature result for unknown signing operation");
 
-            BatchSignatureCtx ctx = new BatchSignatureCtx(wrapper.getKeyId(), wrapper.getSignatureAlgorithmId());
-            ctx.add(getSender(), wrapper.getRequest());
+                return;
+            }
 
-            workingSigningCtx = ctx;
+            if (result instanceof SignResponse) {
+                try {
+                    sendSignatureResponse(ctx, ((SignResponse) result).getSignature());
+                } catch (Exception e) {
+                    sendResponse(ctx, translateException(e));
+                }
+            } else {
+                sendResponse(ctx, result);
+            }
 
-            doCalculateSignature(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), ctx.getDataToBeSigned());
+            // Start the next batch signing (if any).
+            startBatchSigning();
         }
 
-        private void handleSignResponse(SignResponse signResponse) {
-            log.trace("handleSignResponse()");
+        private void startBatchSigning() {
+            while (!queue.isEmpty() && operations.size() < config.getMaxConcurrentOperations()) {
+                if (shouldLinger()) {
+                    scheduleLingerTimer();
 
-            workerBusy = false;
+                    return;
+                }
 
-            // Handle the (successful) signature calculation result that came
-            // from Signer -- send the signature to the clients.
-            sendResponse(signResponse);
+                startSigning(takeBatch());
+            }
+        }
 
-            // If batch signing is not enabled, then start signing the next
-            // stashed messages.
-            if (!batchSigningEnabled) {
-                unstashAll();
-            } else if (nextSigningCtx != null) {
-                // Start the next batch signing (if any).
-                startNextBatchSigning();
+        // Waits for more requests while the oldest request has not lingered long enough and the batch is not full.
+        private boolean shouldLinger() {
+            if (config.getLingerTimeMillis() == 0 || queue.size() >= getMaxBatchSize()) {
+                return false;
             }
+
+            return System.currentTimeMillis() - queue.peek().getReceivedAt() < config.getLingerTimeMillis();
         }
 
-        private void handleException(Exception exception) {
-            log.trace("handleException()");
+        private void scheduleLingerTimer() {
+            if (lingerTimer == null) {
+                long delay = config.getLingerTimeMillis()
+                        - (System.currentTimeMillis() - queue.peek().getReceivedAt());
 
-            workerBusy = false;
+                lingerTimer = getContext().system().scheduler().scheduleOnce(
+                        Duration.create(Math.max(delay, 1), TimeUnit.MILLISECONDS), getSelf(), LINGER_EXPIRED,
+                        getContext().dispatcher(), ActorRef.noSender());
+            }
+        }
 
-            sendResponse(exception);
+        private void cancelLingerTimer() {
+            if (lingerTimer != null) {
+                lingerTimer.cancel();
+                lingerTimer = null;
+            }
         }
 
-        private void startNextBatchSigning() {
-            log.trace("startNextBatchSigning()");
+        // Takes the requests of the next batch, all requests in a batch use the same key and algorithm.
+        private BatchSignatureCtx takeBatch() {
+            SigningRequestWrapper first = queue.peek().getRequest();
+            BatchSignatureCtx ctx = new BatchSignatureCtx(first.getKeyId(), first.getSignatureAlgorithmId());
 
-            workingSigningCtx = nextSigningCtx;
-            nextSigningCtx = null;
+            long now = System.currentTimeMillis();
+            long totalWait = 0;
+            long maxWait = 0;
 
-            try {
-                doCalculateSignature(workingSigningCtx.getKeyId(), workingSigningCtx.getSignatureAlgorithmId(),
-                        workingSigningCtx.getDataToBeSigned());
-            } catch (Exception e) {
-                sendResponse(workingSigningCtx, translateException(e));
+            while (!queue.isEmpty() && ctx.getClients().size() < getMaxBatchSize()
+                    && isSameBatch(ctx, queue.peek().getRequest())) {
+                PendingRequest pending = queue.poll();
+                long wait = now - pending.getReceivedAt();
 
-                workerBusy = true;
-                workingSigningCtx = null;
+                ctx.add(pending.getClient(), pending.getRequest().getRequest());
+
+                totalWait += wait;
+                maxWait = Math.max(maxWait, wait);
             }
-        }
 
-        private boolean isWorkerBusy() {
-            if (isSignatureCreationTimedOut()) {
-                workerBusy = false;
+            METRICS.recordBatch(ctx.getClients().size(), totalWait, maxWait);
 
-                throw new CodedException(X_INTERNAL_ERROR, "Signature creation timed out");
-            }
+            log.trace("Signing batch of {} requests", ctx.getClients().size());
 
-            return workerBusy;
+            return ctx;
         }
 
-        private boolean isSignatureCreationTimedOut() {
-            return workerBusy && System.currentTimeMillis() - signStartTime >= DEFAULT_TIMEOUT.duration().length();
+        private static boolean isSameBatch(BatchSignatureCtx ctx, SigningRequestWrapper request) {
+            return ctx.getKeyId().equals(request.getKeyId())
+                    && ctx.getSignatureAlgorithmId().equals(request.getSignatureAlgorithmId());
         }
 
-        private void doCalculateSignature(String keyId, String signatureAlgorithmId, byte[] data)
-                throws NoSuchAlgorithmException, IOException, OperatorCreationException {
-            workerBusy = true;
-            signStartTime = System.currentTimeMillis();
-
-            byte[] digest = calculateDigest(getDigestAlgorithmId(signatureAlgorithmId), data);
+        private void startSigning(BatchSignatureCtx ctx) {
+            log.trace("startSigning()");
 
-            // Proxy this request to the Signer.
-            SignerClient.execute(new Sign(keyId, signatureAlgorithmId, digest), getSelf());
-        }
+            cancelLingerTimer();
 
-        private void sendResponse(Object message) {
-            log.trace("sendResponse({})", message);
+            try {
+                byte[] digest = calculateDigest(getDigestAlgorithmId(ctx.getSignatureAlgorithmId()),
+                        ctx.getDataToBeSigned());
 
-            if (workingSigningCtx != null) {
-                try {
-                    if (message instanceof SignResponse) {
-                        sendSignatureResponse(workingSigningCtx, ((SignResponse) message).getSignature());
-                    } else {
-                        sendResponse(workingSigningCtx, message);
-                    }
-                } catch (Exception e) {
-                    sendResponse(workingSigningCtx, e);
-                }
+                // The operation actor receives the response from the Signer and relays it back to this worker.
+                ActorRef operation = getContext().actorOf(Props.create(SigningOperation.class));
+                operations.put(operation, ctx);
 
-                workingSigningCtx = null;
-            } else {
-                throw new RuntimeException("No signing context");
+                // Proxy this request to the Signer.
+                config.getSigner().sign(new Sign(ctx.getKeyId(), ctx.getSignatureAlgorithmId(), digest), operation);
+            } catch (Exception e) {
+                sendResponse(ctx, translateException(e));
             }
         }
 
@@ -344,6 +402,8 @@ public class BatchSigner extends UntypedActor {
         }
 
         private void sendResponse(BatchSignatureCtx ctx, Object message) {
+            log.trace("sendResponse({})", message);
+
             for (ActorRef client : ctx.getClients()) {
                 sendResponse(client, message);
             }
@@ -360,12 +420,86 @@ public class BatchSigner extends UntypedActor {
         }
     }
 
+    /**
+     * Waits for the response of a single signing operation and relays it to the worker.
+     */
+    private static class SigningOperation extends UntypedActor {
+
+        @Override
+        public void preStart() {
+            getContext().setReceiveTimeout(DEFAULT_TIMEOUT.duration());
+        }
+
+        @Override
+        public void onReceive(Object message) throws Exception {
+            if (message instanceof ReceiveTimeout) {
+                reply(new CodedException(X_INTERNAL_ERROR, "Signature creation timed out"));
+            } else {
+                reply(message);
+            }
+        }
+
+        private void reply(Object result) {
+            getContext().parent().tell(new SignatureResult(result), getSelf());
+            getContext().stop(getSelf());
+        }
+    }
+
+    /**
+     * Sends the requests of the signing workers to the signer.
+     */
+    interface SignerConnection {
+
+        /**
+         * @param keyId the signing key
+         * @return whether the token of the key supports batch signing
+         * @throws Exception in case of any errors
+         */
+        Boolean isBatchSigningEnabled(String keyId) throws Exception;
+
+        /**
+         * Sends the signing request to the signer, the response is sent to the receiver.
+         * @param message the signing request
+         * @param receiver the actor receiving the signature
+         */
+        void sign(Sign message, ActorRef receiver);
+    }
+
+    /**
+     * Batching parameters of the signing workers.
+     */
+    @Data
+    static class Config {
+        private final int maxBatchSize;
+        private final int lingerTimeMillis;
+        private final int maxConcurrentOperations;
+        private final SignerConnection signer;
+    }
+
+    /**
+     * Signature or error received from the signer.
+     */
+    @Data
+    private static class SignatureResult {
+        private final Object result;
+    }
+
+    /**
+     * Signing request waiting to be sent to the signer.
+     */
+    @Data
+    private static class PendingRequest {
+        private final SigningRequestWrapper request;
+        private final ActorRef client;
+        private final long receivedAt;
+    }
+
     /**
      * Convenience class that wraps the request along with the keyId
      * and algorithm id.
      */
     @Data
-    private static class SigningRequestWrapper {
+    static class SigningRequestWrapper {
         private final String keyId;
         private final String signatureAlgorithmId;
         private final SigningRequest request;
@@ -0,0 +1,136 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects batch signing statistics of all signing keys: the distribution of batch sizes and the time
+ * the signing requests wait in the queue before their batch is sent to the signer.
+ */
+public final class BatchSignerMetrics {
+
+    // Batch sizes are counted in power of two buckets, bucket i contains sizes [2^i, 2^(i+1)).
+    private static final int BUCKET_COUNT = Integer.SIZE;
+
+    private final AtomicLongArray batchSizeBuckets = new AtomicLongArray(BUCKET_COUNT);
+
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder requestCount = new LongAdder();
+    private final LongAdder totalQueueWaitMillis = new LongAdder();
+    private final AtomicLong maxQueueWaitMillis = new AtomicLong();
+
+    /**
+     * Batch signing statistics at one point in time.
+     */
+    @Value
+    public static class Snapshot {
+        private long batchCount;
+        private long requestCount;
+        private SortedMap<Integer, Long> batchSizeDistribution;
+        private double averageQueueWaitMillis;
+        private long maxQueueWaitMillis;
+    }
+
+    BatchSignerMetrics() {
+    }
+
+    void recordBatch(int batchSize, long totalWaitMillis, long maxWaitMillis) {
+        batchSizeBuckets.incrementAndGet(BUCKET_COUNT - 1 - Integer.numberOfLeadingZeros(batchSize));
+        batchCount.increment();
+        requestCount.add(batchSize);
+        totalQueueWaitMillis.add(totalWaitMillis);
+        maxQueueWaitMillis.accumulateAndGet(maxWaitMillis, Math::max);
+    }
+
+    /**
+     * @return the number of batches sent to the signer
+     */
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    /**
+     * @return the number of signing requests sent to the signer
+     */
+    public long getRequestCount() {
+        return requestCount.sum();
+    }
+
+    /**
+     * @return the number of batches by the lower bound of the batch size bucket, the buckets are powers of two
+     */
+    public SortedMap<Integer, Long> getBatchSizeDistribution() {
+        SortedMap<Integer, Long> distribution = new TreeMap<>();
+
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = batchSizeBuckets.get(i);
+
+            if (count > 0) {
+                distribution.put(1 << i, count);
+            }
+        }
+
+        return Collections.unmodifiableSortedMap(distribution);
+    }
+
+    /**
+     * @return the average time in milliseconds a signing request waited for its batch to be sent
+     */
+    public double getAverageQueueWaitMillis() {
+        long requests = requestCount.sum();
+
+        return requests == 0 ? 0 : (double) totalQueueWaitMillis.sum() / requests;
+    }
+
+    /**
+     * @return the longest time in milliseconds a signing request waited for its batch to be sent
+     */
+    public long getMaxQueueWaitMillis() {
+        return maxQueueWaitMillis.get();
+    }
+
+    /**
+     * @return the current values of the statistics
+     */
+    public Snapshot getSnapshot() {
+        return new Snapshot(getBatchCount(), getRequestCount(), getBatchSizeDistribution(),
+                getAverageQueueWaitMillis(), getMaxQueueWaitMillis());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("batches: %d, requests: %d, batch sizes: %s, average queue wait: %.1f ms, "
+                + "max queue wait: %d ms", getBatchCount(), getRequestCount(), getBatchSizeDistribution(),
+                getAverageQueueWaitMillis(), getMaxQueueWaitMillis());
+    }
+}
@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.common.signature;
 
+import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MessageFileNames;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.XmlUtils;
@@ -45,6 +46,7 @@ import javax.xml.crypto.dsig.DigestMethod;
 
 import java.io.IOException;
 import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.List;
@@ -173,7 +175,7 @@ final class SignatureXmlBuilder {
             signatureValueElement.removeChild(signatureValueElement.getFirstChild());
         }
 
-        String base64codedValue = Base64.encode(signatureValue);
+        String base64codedValue = Base64.encode(toXmlSignatureValue(signatureValue));
 
         if (base64codedValue.length() > MAX_LINE_LENGTH && !org.apache.xml.security.utils.XMLUtils.ignoreLineBreaks()) {
             base64codedValue = "\n" + base64codedValue + "\n";
@@ -187,6 +189,15 @@ final class SignatureXmlBuilder {
         return XmlUtils.toXml(document);
     }
 
+    private byte[] toXmlSignatureValue(byte[] signatureValue) throws IOException {
+        // The signer returns DER encoded ECDSA signatures, XML signatures use the concatenation of r and s
+        if (signingCert.getPublicKey() instanceof ECPublicKey) {
+            return CryptoUtils.toXmlDsigEcdsaSignature(signatureValue, (ECPublicKey) signingCert.getPublicKey());
+        }
+
+        return signatureValue;
+    }
+
     private String getHashAlgorithmId() {
         return hashAlgorithmId;
     }
@@ -43,6 +43,8 @@ import ee.ria.xroad.common.util.StartStop;
 import ee.ria.xroad.common.util.healthcheck.HealthCheckPort;
 import ee.ria.xroad.proxy.addon.AddOn;
 import ee.ria.xroad.proxy.clientproxy.ClientProxy;
+import ee.ria.xroad.proxy.conf.KeyConf;
+import ee.ria.xroad.proxy.conf.OcspResponseCache;
 import ee.ria.xroad.proxy.messagelog.MessageLog;
 import ee.ria.xroad.proxy.opmonitoring.OpMonitoring;
 import ee.ria.xroad.proxy.serverproxy.ServerProxy;
@@ -178,6 +180,7 @@ public final class ProxyMain {
 
         MonitorAgent.init(actorSystem);
         SignerClient.init(actorSystem);
+        OcspResponseCache.init(actorSystem);
         BatchSigner.init(actorSystem);
         MessageLog.init(actorSystem, jobManager);
         OpMonitoring.init(actorSystem);
@@ -217,8 +220,16 @@ public final class ProxyMain {
 
         addTimestampStatusHandler(adminPort);
 
+        addTimestampingBacklogHandler(adminPort);
+
         addMaintenanceHandler(adminPort);
 
+        addAddressMetricsHandler(adminPort);
+
+        addKeyConfMetricsHandler(adminPort);
+
+        addBatchSignerMetricsHandler(adminPort);
+
         return adminPort;
     }
 
@@ -244,6 +255,69 @@ public final class ProxyMain {
         });
     }
 
+    /**
+     * Connect latency and failure statistics of the service provider security server addresses the client proxy
+     * has connected to.
+     */
+    private static void addAddressMetricsHandler(AdminPort adminPort) {
+        adminPort.addHandler("/addressmetrics", new AdminPort.SynchronousCallback() {
+            @Override
+            public void handle(HttpServletRequest request, HttpServletResponse response) {
+                log.trace("/addressmetrics");
+
+                try {
+                    response.setCharacterEncoding("UTF8");
+                    JsonUtils.getSerializer().toJson(ClientProxy.getAddressMetrics(), response.getWriter());
+                } catch (IOException e) {
+                    log.error("Unable to write to provided response, delegated request handling failed, response may"
+                            + " be malformed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Cache statistics of the signing keys and the authentication key read from the signer, and the number of cache
+     * invalidations caused by key configuration changes.
+     */
+    private static void addKeyConfMetricsHandler(AdminPort adminPort) {
+        adminPort.addHandler("/keyconfmetrics", new AdminPort.SynchronousCallback() {
+            @Override
+            public void handle(HttpServletRequest request, HttpServletResponse response) {
+                log.trace("/keyconfmetrics");
+
+                try {
+                    response.setCharacterEncoding("UTF8");
+                    JsonUtils.getSerializer().toJson(KeyConf.getCacheMetrics(), response.getWriter());
+                } catch (IOException e) {
+                    log.error("Unable to write to provided response, delegated request handling failed, response may"
+                            + " be malformed", e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Batch signing statistics: the distribution of batch sizes and the time the signing requests wait in the
+     * queue before their batch is sent to the signer.
+     */
+    private static void addBatchSignerMetricsHandler(AdminPort adminPort) {
+        adminPort.addHandler("/batchsignermetrics", new AdminPort.SynchronousCallback() {
+            @Override
+            public void handle(HttpServletRequest request, HttpServletResponse response) {
+                log.trace("/batchsignermetrics");
+
+                try {
+                    response.setCharacterEncoding("UTF8");
+                    JsonUtils.getSerializer().toJson(BatchSigner.getMetrics().getSnapshot(), response.getWriter());
+                } catch (IOException e) {
+                    log.error("Unable to write to provided response, delegated request handling failed, response may"
+                            + " be malformed", e);
+                }
+            }
+        });
+    }
+
     /**
      * Diganostics for timestamping.
      * First check the connection to timestamp server. If OK, check the status of the previous timestamp request.
@@ -307,6 +381,45 @@ public final class ProxyMain {
         });
     }
 
+    /**
+     * Number and age of the message records waiting for a time-stamp, as reported by the LogManager.
+     */
+    private static void addTimestampingBacklogHandler(AdminPort adminPort) {
+        adminPort.addHandler("/timestampingbacklog", new AdminPort.SynchronousCallback() {
+            @Override
+            public void handle(HttpServletRequest request, HttpServletResponse response) {
+                log.trace("/timestampingbacklog");
+
+                ActorSelection logManagerSelection = actorSystem.actorSelection("/user/LogManager");
+
+                Timeout timeout = new Timeout(DIAGNOSTICS_CONNECTION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                Object result;
+
+                try {
+                    result = Await.result(Patterns.ask(logManagerSelection, CommonMessages.TIMESTAMPING_BACKLOG,
+                            timeout), timeout.duration());
+                } catch (Exception e) {
+                    log.error("Unable to get time-stamping backlog from LogManager", e);
+
+                    result = null;
+                }
+
+                try {
+                    response.setCharacterEncoding("UTF8");
+
+                    if (result == null || result instanceof Exception) {
+                        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                    } else {
+                        JsonUtils.getSerializer().toJson(result, response.getWriter());
+                    }
+                } catch (IOException e) {
+                    log.error("Unable to write to provided response, delegated request handling failed, response may"
+                            + " be malformed", e);
+                }
+            }
+        });
+    }
+
     private static void addShutdownHook(AdminPort adminPort) {
         adminPort.addShutdownHook(() -> {
             log.info("Proxy shutting down...");
@@ -58,4 +58,12 @@ class AntiDosConfiguration {
     double getMaxHeapUsage() {
         return SystemProperties.getAntiDosMaxHeapUsage();
     }
+
+    /**
+     * @return the interval in milliseconds at which the system resource
+     * usage and the known member addresses are refreshed
+     */
+    long getResourceSamplingInterval() {
+        return SystemProperties.getAntiDosResourceSamplingInterval();
+    }
 }
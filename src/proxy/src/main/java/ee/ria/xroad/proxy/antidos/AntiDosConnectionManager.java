@@ -27,6 +27,7 @@ package ee.ria.xroad.proxy.antidos;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.SystemMetrics;
 
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
@@ -35,11 +36,19 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Manages the incoming connections and prevents system resource exhaustion.
+ *
+ * Admission is lock-free: the known member addresses and the system resource
+ * usage are refreshed by a background ticker, so that accepting a connection
+ * only needs a map lookup and a queue insertion.
  */
 @Slf4j
 class AntiDosConnectionManager<T extends SocketChannelWrapper> {
@@ -47,6 +56,17 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Tiny wrapper class for active connections of a partner
     private class HostData {
         final Deque<T> connections = new LinkedBlockingDeque<>();
+
+        // Set while the partner is in the buffer of active partners
+        final AtomicBoolean active = new AtomicBoolean();
+    }
+
+    // Snapshot of the system resource usage
+    @Value
+    private static class ResourceUsage {
+        long freeFileDescriptorCount;
+        double cpuLoad;
+        double heapUsage;
     }
 
     // The IP used for unknown members
@@ -55,16 +75,19 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     // Holds the configuration
     protected final AntiDosConfiguration configuration;
 
-    // IP to HostData mapping
-    protected Map<String, HostData> database = new HashMap<>();
+    // IP to HostData mapping. Never modified after publishing, the whole
+    // map is replaced when the set of known addresses changes.
+    protected volatile Map<String, HostData> database;
 
     // Buffer of partners with waiting connections
-    protected LinkedBlockingQueue<HostData> activePartners =
+    protected final LinkedBlockingQueue<HostData> activePartners =
             new LinkedBlockingQueue<>();
 
-    // Holds a cache of previously known member IPs.
-    // Used to determine if should sync the database when conf changed.
-    private Set<String> previousKnownOrganizations = new HashSet<>();
+    // Latest sample of the system resource usage
+    private volatile ResourceUsage resourceUsage;
+
+    // Refreshes the resource usage and known addresses in the background
+    private ScheduledExecutorService ticker;
 
     AntiDosConnectionManager(AntiDosConfiguration configuration) {
         if (configuration == null) {
@@ -72,8 +95,10 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         }
 
         this.configuration = configuration;
-        this.previousKnownOrganizations.add(UNKNOWN_ORG_IP);
-        this.database.put(UNKNOWN_ORG_IP, new HostData());
+
+        Map<String, HostData> initialDatabase = new HashMap<>();
+        initialDatabase.put(UNKNOWN_ORG_IP, new HostData());
+        this.database = initialDatabase;
     }
 
     void init() throws Exception {
@@ -81,12 +106,42 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         syncDatabase();
     }
 
+    /**
+     * Starts the background ticker that samples the resource usage and
+     * synchronizes the database with the known member addresses.
+     */
+    synchronized void start() {
+        if (ticker != null) {
+            return;
+        }
+
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "AntiDosTicker");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = configuration.getResourceSamplingInterval();
+        ticker.scheduleWithFixedDelay(this::tick, 0, interval,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background ticker.
+     */
+    synchronized void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+            ticker = null;
+        }
+    }
+
     /**
      * Checks if we can accept the incoming connection. Basically verify that
      * we have at least one free file handle.
      */
     boolean canAccept() {
-        long freeFileHandles = getFreeFileDescriptorCount();
+        long freeFileHandles = getResourceUsage().getFreeFileDescriptorCount();
         log.trace("canAccept({})", freeFileHandles);
         return freeFileHandles > 0;
     }
@@ -94,10 +149,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     /**
      * Adds the connection into the partner's connection queue.
      */
-    synchronized void accept(T connection) {
-        // We need to synchronize the database with the existing members.
-        syncDatabase();
-
+    void accept(T connection) {
         // Find the host data for the incoming connection and register
         // the new connection to this host data
         HostData currentPartner = getHostData(connection.getHostAddress());
@@ -105,7 +157,7 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         // If the host data is not for an active partner,
         // add it to the connection buffer as the newest partner.
-        if (!activePartners.contains(currentPartner)) {
+        if (currentPartner.active.compareAndSet(false, true)) {
             activePartners.add(currentPartner);
         }
     }
@@ -114,18 +166,29 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
      * Returns the next connection or blocks until next connection is available.
      */
     T takeNextConnection() throws InterruptedException {
-        while (true) {
-            T next = getNextConnection();
-            if (next != null) {
-                return next;
-            }
-        }
+        T next;
+        do {
+            // Blocks on the buffer of active partners, returns null only
+            // if the connection was closed due to insufficient resources.
+            next = getNextConnection();
+        } while (next == null);
+
+        return next;
     }
 
     void closeConnection(T sock) throws IOException {
         sock.close();
     }
 
+    /**
+     * Samples the system resource usage. Called periodically by the
+     * background ticker.
+     */
+    void sampleResources() {
+        resourceUsage = new ResourceUsage(getFreeFileDescriptorCount(),
+                getCpuLoad(), getHeapUsage());
+    }
+
     /**
      * Retrieves the next connection to be processed. First, it checks that
      * there are sufficient resources available (free file handles etc.).
@@ -137,14 +200,24 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
 
         // Take the oldest connection.
         T sock = oldestPartner.connections.pollLast();
-        if (sock == null) {
-            return null;
-        }
 
         // If there are more connections left for this partner, add the partner
         // back to the buffer as the first partner.
         if (!oldestPartner.connections.isEmpty()) {
             activePartners.add(oldestPartner);
+        } else {
+            oldestPartner.active.set(false);
+
+            // A connection may have been added after the emptiness check
+            // but before the partner was marked inactive.
+            if (!oldestPartner.connections.isEmpty()
+                    && oldestPartner.active.compareAndSet(false, true)) {
+                activePartners.add(oldestPartner);
+            }
+        }
+
+        if (sock == null) {
+            return null;
         }
 
         // Processing a connection consumes file handles and other resources
@@ -181,14 +254,40 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     }
 
     private HostData getHostData(String ip) {
-        return database.containsKey(ip)
-                ? database.get(ip) : database.get(UNKNOWN_ORG_IP);
+        Map<String, HostData> currentDatabase = database;
+        HostData hostData = currentDatabase.get(ip);
+
+        return hostData != null
+                ? hostData : currentDatabase.get(UNKNOWN_ORG_IP);
+    }
+
+    private void tick() {
+        try {
+            sampleResources();
+            syncDatabase();
+        } catch (Exception e) {
+            // Must not propagate, otherwise the ticker would be cancelled
+            log.error("Error refreshing Anti-Dos state", e);
+        }
+    }
+
+    private ResourceUsage getResourceUsage() {
+        ResourceUsage usage = resourceUsage;
+        if (usage == null) {
+            // Not yet sampled by the ticker
+            sampleResources();
+            usage = resourceUsage;
+        }
+
+        return usage;
     }
 
     private void syncDatabase() {
         Set<String> knownAddresses = getAllAddresses();
+        Map<String, HostData> currentDatabase = database;
 
-        if (previousKnownOrganizations.equals(knownAddresses)) {
+        if (knownAddresses == null
+                || currentDatabase.keySet().equals(knownAddresses)) {
             // Nothing has changed, do not sync.
             return;
         }
@@ -196,18 +295,17 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         Map<String, HostData> newDatabase = new HashMap<>();
 
         // Retain existing members connections
-        database.keySet().stream()
+        currentDatabase.keySet().stream()
                 .filter(knownAddresses::contains)
                 .forEach(existingAddress -> newDatabase.put(
-                        existingAddress, database.get(existingAddress)));
+                        existingAddress, currentDatabase.get(existingAddress)));
 
         // Add new members
         knownAddresses.stream()
-                .filter(knownAddress -> !database.containsKey(knownAddress))
+                .filter(knownAddress -> !currentDatabase.containsKey(knownAddress))
                 .forEach(knownAddress ->
                         registerHostData(newDatabase, knownAddress));
 
-        previousKnownOrganizations = knownAddresses;
         database = newDatabase;
     }
 
@@ -218,11 +316,12 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
     }
 
     private boolean hasSufficientResources() {
-        long freeFileDescriptorCount = getFreeFileDescriptorCount();
+        ResourceUsage usage = getResourceUsage();
+        long freeFileDescriptorCount = usage.getFreeFileDescriptorCount();
         int minFreeFileHandles = configuration.getMinFreeFileHandles();
-        double cpuLoad = getCpuLoad();
+        double cpuLoad = usage.getCpuLoad();
         double maxCpuLoad = configuration.getMaxCpuLoad();
-        double heapUsage = getHeapUsage();
+        double heapUsage = usage.getHeapUsage();
         double maxHeapUsage = configuration.getMaxHeapUsage();
 
         log.trace("Resource usage when considering connection:\n"
@@ -241,11 +340,12 @@ class AntiDosConnectionManager<T extends SocketChannelWrapper> {
         Set<String> addresses = new HashSet<>();
         try {
             addresses.addAll(GlobalConf.getKnownAddresses());
-        } catch (Exception ignored) {
-            // In case the conf was invalid, we do not sync. We should not
-            // log this exception, since this method might be
-            // called very frequently.
-            ignored.getClass(); //dummy code
+        } catch (Exception e) {
+            // In case the conf was invalid, we do not sync and keep using
+            // the previously known addresses.
+            log.trace("Could not get known addresses", e);
+
+            return null;
         }
 
         addresses.add(UNKNOWN_ORG_IP);
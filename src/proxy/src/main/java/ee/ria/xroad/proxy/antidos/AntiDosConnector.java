@@ -97,10 +97,18 @@ public class AntiDosConnector extends ServerConnector {
         super.doStart();
 
         manager.init();
+        manager.start();
 
         getExecutor().execute(new QueueManager());
     }
 
+    @Override
+    protected void doStop() throws Exception {
+        manager.stop();
+
+        super.doStop();
+    }
+
     @Override
     public void accept(int acceptorID) throws IOException {
         if (manager.canAccept()) {
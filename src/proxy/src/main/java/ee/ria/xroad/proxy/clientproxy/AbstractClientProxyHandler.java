@@ -77,6 +77,26 @@ abstract class AbstractClientProxyHandler extends HandlerBase {
             return;
         }
 
+        // If processing fails with an exception, the request has been handled
+        boolean handled = true;
+
+        try {
+            handled = handleRequest(target, request, response);
+        } finally {
+            baseRequest.setHandled(handled);
+        }
+    }
+
+    /**
+     * Processes the request and sends the response or the SOAP fault.
+     * @param target the target of the request
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @return true if this handler processed the request
+     * @throws IOException if sending the fault failed
+     */
+    protected boolean handleRequest(String target, HttpServletRequest request, HttpServletResponse response)
+            throws IOException {
         boolean handled = false;
         OpMonitoringData opMonitoringData = storeOpMonitoringData
                 ? new OpMonitoringData(CLIENT, getEpochMillisecond()) : null;
@@ -144,8 +164,6 @@ abstract class AbstractClientProxyHandler extends HandlerBase {
 
             failure(processor, response, cex);
         } finally {
-            baseRequest.setHandled(handled);
-
             if (handled) {
                 if (storeOpMonitoringData) {
                     opMonitoringData.setResponseOutTs(getEpochMillisecond());
@@ -155,6 +173,8 @@ abstract class AbstractClientProxyHandler extends HandlerBase {
                 logPerformanceEnd(start);
             }
         }
+
+        return handled;
     }
 
     protected static void success(MessageProcessorBase processor, long start,
@@ -0,0 +1,237 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactory.CacheKey;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps track of the connect latency and the failures of the security server addresses the client proxy
+ * connects to.
+ *
+ * The connect latency of an address is an exponentially weighted moving average. An address that fails to
+ * connect is skipped for a backoff period that doubles with every consecutive failure. For a target (the set of
+ * addresses of a service provider) the healthy address with the lowest latency is used directly. All addresses
+ * of the target are probed again when the probe interval has passed or when no address is known to be healthy.
+ */
+@Slf4j
+public final class AddressHealthTable {
+
+    /** Weight of the latest sample in the connect latency average */
+    static final double LATENCY_WEIGHT = 0.3;
+
+    static final long MIN_BACKOFF_MILLIS = 1000;
+    static final long MAX_BACKOFF_MILLIS = 300000;
+
+    private static final int MAXIMUM_SIZE = FastestConnectionSelectingSSLSocketFactory.CACHE_MAXIMUM_SIZE;
+
+    private static final AddressHealthTable INSTANCE = new AddressHealthTable(
+            SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS,
+            Ticker.systemTicker());
+
+    private final long probeIntervalNanos;
+    private final Ticker ticker;
+
+    // the time of the next probe by target
+    private final Cache<CacheKey, AtomicLong> targets;
+    private final Cache<URI, AddressHealth> addresses;
+
+    /**
+     * Connect statistics of an address.
+     */
+    @Value
+    public static class AddressMetrics {
+        private final URI address;
+        private final double averageConnectMillis;
+        private final long connects;
+        private final long failures;
+        private final int consecutiveFailures;
+        private final long backoffRemainingMillis;
+    }
+
+    AddressHealthTable(long probeInterval, TimeUnit unit, Ticker ticker) {
+        this.probeIntervalNanos = unit.toNanos(probeInterval);
+        this.ticker = ticker;
+        this.targets = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterAccess(probeInterval, unit)
+                .ticker(ticker)
+                .build();
+        this.addresses = CacheBuilder.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterAccess(Math.max(probeIntervalNanos, TimeUnit.MILLISECONDS.toNanos(MAX_BACKOFF_MILLIS)),
+                        TimeUnit.NANOSECONDS)
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * @return the address health table shared by the client proxy
+     */
+    static AddressHealthTable getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return current time of the table in nanoseconds, used for measuring the connect latency
+     */
+    long now() {
+        return ticker.read();
+    }
+
+    /**
+     * Selects the address to connect to.
+     * @param targetAddresses the addresses of the target
+     * @return the healthy address with the lowest connect latency, or null if all addresses should be probed
+     */
+    URI selectBest(URI[] targetAddresses) {
+        long now = now();
+
+        AtomicLong nextProbe = getNextProbe(new CacheKey(targetAddresses), now);
+        long probeAt = nextProbe.get();
+
+        // only one of the concurrent requests probes, the others keep using the best known address
+        if (now - probeAt >= 0 && nextProbe.compareAndSet(probeAt, now + probeIntervalNanos)) {
+            log.trace("Probing all addresses {}", (Object) targetAddresses);
+
+            return null;
+        }
+
+        URI best = null;
+        double bestLatency = Double.MAX_VALUE;
+
+        for (URI address : targetAddresses) {
+            AddressHealth health = addresses.getIfPresent(address);
+
+            if (health != null && health.isAvailable(now) && health.getAverageConnectNanos() < bestLatency) {
+                best = address;
+                bestLatency = health.getAverageConnectNanos();
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Records a successful connection.
+     * @param address the address
+     * @param latencyNanos the time it took to connect in nanoseconds
+     */
+    void recordConnect(URI address, long latencyNanos) {
+        getHealth(address).recordConnect(latencyNanos);
+    }
+
+    /**
+     * Records a failed connection attempt.
+     * @param address the address
+     */
+    void recordFailure(URI address) {
+        getHealth(address).recordFailure(now());
+    }
+
+    /**
+     * @return connect statistics of the known addresses
+     */
+    List<AddressMetrics> getMetrics() {
+        long now = now();
+        List<AddressMetrics> metrics = new ArrayList<>();
+
+        addresses.asMap().forEach((address, health) -> metrics.add(health.getMetrics(address, now)));
+
+        return metrics;
+    }
+
+    private AtomicLong getNextProbe(CacheKey key, long now) {
+        try {
+            return targets.get(key, () -> new AtomicLong(now));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private AddressHealth getHealth(URI address) {
+        try {
+            return addresses.get(address, AddressHealth::new);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static final class AddressHealth {
+
+        // guarded by this
+        private double averageConnectNanos;
+        private long connects;
+        private long failures;
+        private int consecutiveFailures;
+        private long backoffUntil;
+
+        synchronized void recordConnect(long latencyNanos) {
+            averageConnectNanos = connects == 0 ? latencyNanos
+                    : LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * averageConnectNanos;
+            connects++;
+            consecutiveFailures = 0;
+        }
+
+        synchronized void recordFailure(long now) {
+            failures++;
+            consecutiveFailures++;
+
+            long backoffMillis = MIN_BACKOFF_MILLIS << Math.min(consecutiveFailures - 1, 20);
+
+            backoffUntil = now + TimeUnit.MILLISECONDS.toNanos(Math.min(backoffMillis, MAX_BACKOFF_MILLIS));
+        }
+
+        /**
+         * @return true if the address has connected and is not backing off after a failure
+         */
+        synchronized boolean isAvailable(long now) {
+            return connects > 0 && (consecutiveFailures == 0 || now - backoffUntil >= 0);
+        }
+
+        synchronized double getAverageConnectNanos() {
+            return averageConnectNanos;
+        }
+
+        synchronized AddressMetrics getMetrics(URI address, long now) {
+            return new AddressMetrics(address, averageConnectNanos / TimeUnit.MILLISECONDS.toNanos(1), connects,
+                    failures, consecutiveFailures,
+                    consecutiveFailures > 0 ? Math.max(0, TimeUnit.NANOSECONDS.toMillis(backoffUntil - now)) : 0);
+        }
+    }
+}
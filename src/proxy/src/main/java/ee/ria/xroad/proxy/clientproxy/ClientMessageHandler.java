@@ -33,10 +33,14 @@ import ee.ria.xroad.proxy.conf.KeyConf;
 import ee.ria.xroad.proxy.util.MessageProcessorBase;
 
 import org.apache.http.client.HttpClient;
+import org.eclipse.jetty.server.Request;
 
+import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.IOException;
+
 import static ee.ria.xroad.common.ErrorCodes.X_INVALID_HTTP_METHOD;
 import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
 
@@ -48,8 +52,40 @@ import static ee.ria.xroad.common.ErrorCodes.X_SSL_AUTH_FAILED;
  */
 class ClientMessageHandler extends AbstractClientProxyHandler {
 
+    private final ClientRequestPipeline pipeline;
+
     ClientMessageHandler(HttpClient client) {
         super(client, true);
+
+        pipeline = SystemProperties.isClientProxyAsyncProcessingEnabled()
+                ? new ClientRequestPipeline(SystemProperties.getClientProxyAsyncWorkerCount(),
+                        SystemProperties.getClientProxyAsyncQueueSize())
+                : null;
+    }
+
+    @Override
+    public void handle(String target, Request baseRequest,
+            HttpServletRequest request, HttpServletResponse response)
+                    throws IOException, ServletException {
+        if (pipeline == null || baseRequest.isHandled() || !isPostRequest(request)) {
+            super.handle(target, baseRequest, request, response);
+
+            return;
+        }
+
+        // This is the last handler, the pipeline completes the request
+        baseRequest.setHandled(true);
+
+        pipeline.submit(request, response, (req, resp) -> handleRequest(target, req, resp));
+    }
+
+    @Override
+    protected void doStop() throws Exception {
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+
+        super.doStop();
     }
 
     @Override
@@ -59,7 +95,7 @@ class ClientMessageHandler extends AbstractClientProxyHandler {
         verifyCanProcess(request);
 
         return new ClientMessageProcessor(request, response, client,
-                getIsAuthenticationData(request), opMonitoringData);
+                getIsAuthenticationData(request), opMonitoringData, pipeline != null);
     }
 
     private void verifyCanProcess(HttpServletRequest request) {
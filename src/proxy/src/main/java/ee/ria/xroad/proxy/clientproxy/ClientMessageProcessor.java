@@ -49,6 +49,7 @@ import ee.ria.xroad.common.monitoring.MessageInfo.Origin;
 import ee.ria.xroad.common.monitoring.MonitorAgent;
 import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.HttpSender;
+import ee.ria.xroad.common.util.MemoryCachingStream;
 import ee.ria.xroad.common.util.MimeUtils;
 import ee.ria.xroad.proxy.ProxyMain;
 import ee.ria.xroad.proxy.conf.KeyConf;
@@ -74,6 +75,7 @@ import javax.servlet.http.HttpServletResponse;
 import javax.xml.namespace.QName;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Writer;
@@ -151,10 +153,16 @@ class ClientMessageProcessor extends MessageProcessorBase {
     private volatile CodedException executionException;
 
     /** Holds the proxy message output stream and associated info. */
-    private PipedInputStream reqIns;
-    private volatile PipedOutputStream reqOuts;
+    private InputStream reqIns;
+    private volatile OutputStream reqOuts;
     private volatile String outputContentType;
 
+    /**
+     * Holds the encoded proxy message if the client request has already been
+     * read completely, null if the request is read while it is being sent.
+     */
+    private final MemoryCachingStream reqCache;
+
     /** Holds the request to the server proxy. */
     private ProxyMessageEncoder request;
 
@@ -182,12 +190,32 @@ class ClientMessageProcessor extends MessageProcessorBase {
     ClientMessageProcessor(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
             HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData)
             throws Exception {
+        this(servletRequest, servletResponse, httpClient, clientCert, opMonitoringData, false);
+    }
+
+    /**
+     * @param requestCached true if the request body has already been read into memory or a temporary file. In that
+     * case the request is encoded on the processing thread before it is sent, instead of on a separate thread that
+     * writes to a pipe while the request is being sent.
+     */
+    ClientMessageProcessor(HttpServletRequest servletRequest, HttpServletResponse servletResponse,
+            HttpClient httpClient, IsAuthenticationData clientCert, OpMonitoringData opMonitoringData,
+            boolean requestCached) throws Exception {
         super(servletRequest, servletResponse, httpClient);
 
         this.clientCert = clientCert;
         this.opMonitoringData = opMonitoringData;
-        this.reqIns = new PipedInputStream();
-        this.reqOuts = new PipedOutputStream(reqIns);
+
+        if (requestCached) {
+            this.reqCache = new MemoryCachingStream();
+            this.reqOuts = reqCache;
+        } else {
+            PipedInputStream pipedInput = new PipedInputStream();
+
+            this.reqCache = null;
+            this.reqIns = pipedInput;
+            this.reqOuts = new PipedOutputStream(pipedInput);
+        }
     }
 
     @Override
@@ -196,7 +224,16 @@ class ClientMessageProcessor extends MessageProcessorBase {
 
         updateOpMonitoringClientSecurityServerAddress();
 
-        Future<?> soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
+        Future<?> soapHandler = null;
+
+        if (reqCache != null) {
+            // Reading the cached request does not block, so the request is
+            // encoded before it is sent.
+            handleSoap();
+            reqIns = reqCache.getCachedContents();
+        } else {
+            soapHandler = SOAP_HANDLER_EXECUTOR.submit(this::handleSoap);
+        }
 
         try {
             // Wait for the request SOAP message to be parsed before we can
@@ -206,12 +243,6 @@ class ClientMessageProcessor extends MessageProcessorBase {
             // If the handler thread excepted, do not continue.
             checkError();
 
-            // Verify that the client is registered
-            verifyClientStatus();
-
-            // Check client authentication mode
-            verifyClientAuthentication();
-
             processRequest();
 
             if (response != null) {
@@ -224,13 +255,19 @@ class ClientMessageProcessor extends MessageProcessorBase {
 
             // Let's interrupt the handler thread so that it won't
             // block forever waiting for us to do something.
-            soapHandler.cancel(true);
+            if (soapHandler != null) {
+                soapHandler.cancel(true);
+            }
 
             throw e;
         } finally {
             if (response != null) {
                 response.consume();
             }
+
+            if (reqCache != null) {
+                reqCache.consume();
+            }
         }
     }
 
@@ -274,10 +311,10 @@ class ClientMessageProcessor extends MessageProcessorBase {
 
             // Start sending the request to server proxies. The underlying
             // SSLConnectionSocketFactory will select the fastest address
-            // (socket that connects first) from the provided addresses.
-            List<URI> tmp = getServiceAddresses(requestServiceId, requestSoap.getSecurityServer());
-            Collections.shuffle(tmp);
-            URI[] addresses = tmp.toArray(new URI[0]);
+            // (socket that connects first or has the lowest connect latency)
+            // from the provided addresses.
+            URI[] addresses = getServiceAddresses(requestServiceId, requestSoap.getSecurityServer())
+                    .toArray(new URI[0]);
 
             updateOpMonitoringServiceSecurityServerAddress(addresses, httpSender);
 
@@ -305,7 +342,8 @@ class ClientMessageProcessor extends MessageProcessorBase {
 
             try {
                 opMonitoringData.setRequestOutTs(getEpochMillisecond());
-                httpSender.doPost(getServiceAddress(addresses), reqIns, CHUNKED_LENGTH, outputContentType);
+                httpSender.doPost(getServiceAddress(addresses), reqIns,
+                        reqCache != null ? reqCache.size() : CHUNKED_LENGTH, outputContentType);
                 opMonitoringData.setResponseInTs(getEpochMillisecond());
             } catch (Exception e) {
                 // Failed to connect to server proxy
@@ -639,6 +677,10 @@ class ClientMessageProcessor extends MessageProcessorBase {
 
             updateOpMonitoringDataBySoapMessage(opMonitoringData, requestSoap);
 
+            // The client must be verified before the request is signed and
+            // logged, which happens while the request is being decoded.
+            verifyClient();
+
             if (request == null) {
                 request = new ProxyMessageEncoder(reqOuts, SoapUtils.getHashAlgoId());
                 outputContentType = request.getContentType();
@@ -656,6 +698,21 @@ class ClientMessageProcessor extends MessageProcessorBase {
             request.soap(requestSoap, headers);
         }
 
+        private void verifyClient() throws Exception {
+            try {
+                // Verify that the client is registered
+                verifyClientStatus();
+
+                // Check client authentication mode
+                verifyClientAuthentication();
+            } catch (Exception e) {
+                // Record the error as is, before the decoder failure wraps it
+                setError(e);
+
+                throw e;
+            }
+        }
+
         @Override
         public void attachment(String contentType, InputStream content, Map<String, String> additionalHeaders)
                 throws Exception {
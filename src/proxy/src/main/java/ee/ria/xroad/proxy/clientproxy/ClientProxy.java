@@ -108,6 +108,14 @@ public class ClientProxy implements StartStop {
         createHandlers();
     }
 
+    /**
+     * @return connect statistics of the service provider security server addresses, empty if the addresses with
+     * the lowest connect latency are not remembered
+     */
+    public static List<AddressHealthTable.AddressMetrics> getAddressMetrics() {
+        return FastestConnectionSelectingSSLSocketFactory.getAddressMetrics();
+    }
+
     private void configureServer() throws Exception {
         log.trace("configureServer()");
 
@@ -0,0 +1,385 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.common.util.MemoryCachingStream;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static ee.ria.xroad.common.util.HandlerBase.sendPlainTextErrorResponse;
+
+/**
+ * Processes client requests in stages without dedicating a thread to a
+ * request for its whole lifetime. The request body is read with non-blocking
+ * I/O, the received request is processed on a bounded pool of worker threads
+ * and the response is written with non-blocking I/O. Request and response
+ * bodies are cached in memory and moved to temporary files when they grow
+ * large. When all the workers are busy and the queue is full, requests are
+ * rejected with HTTP status 503.
+ */
+@Slf4j
+class ClientRequestPipeline {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final String OVERLOADED_MESSAGE = "Client proxy is overloaded, try again later";
+
+    /**
+     * Processes a request whose body has been read completely.
+     */
+    @FunctionalInterface
+    interface RequestProcessor {
+        /**
+         * @param request request with the cached request body
+         * @param response response that caches the response body
+         * @throws Exception in case of any errors
+         */
+        void process(HttpServletRequest request, HttpServletResponse response) throws Exception;
+    }
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Creates a new pipeline.
+     * @param workerCount number of worker threads
+     * @param queueSize maximum number of received requests waiting for a worker thread
+     */
+    ClientRequestPipeline(int workerCount, int queueSize) {
+        AtomicInteger threadCount = new AtomicInteger();
+
+        executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread worker = new Thread(r, "clientproxy-worker-" + threadCount.incrementAndGet());
+                    worker.setDaemon(true);
+
+                    return worker;
+                });
+    }
+
+    /**
+     * Starts processing the request asynchronously. The request is completed
+     * by the pipeline, the calling thread returns immediately.
+     * @param request the HTTP servlet request
+     * @param response the HTTP servlet response
+     * @param processor processor that handles the request after it has been read
+     * @throws IOException if reading the request could not be started
+     */
+    void submit(HttpServletRequest request, HttpServletResponse response, RequestProcessor processor)
+            throws IOException {
+        AsyncContext asyncContext = request.startAsync(request, response);
+        // The connector idle timeout and the HTTP client timeouts limit the duration of the request
+        asyncContext.setTimeout(0);
+
+        new PipelineRequest(asyncContext, request, response, processor).start();
+    }
+
+    /**
+     * @return number of requests that are being processed by worker threads
+     */
+    int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    /**
+     * @return number of received requests waiting for a worker thread
+     */
+    int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Stops accepting requests for processing.
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    private final class PipelineRequest implements ReadListener, WriteListener {
+        private final AsyncContext asyncContext;
+        private final HttpServletRequest request;
+        private final HttpServletResponse response;
+        private final RequestProcessor processor;
+
+        private final MemoryCachingStream requestContent = new MemoryCachingStream();
+        private final MemoryCachingStream responseContent = new MemoryCachingStream();
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        private final AtomicBoolean completed = new AtomicBoolean();
+
+        private InputStream responseInput;
+
+        PipelineRequest(AsyncContext asyncContext, HttpServletRequest request, HttpServletResponse response,
+                RequestProcessor processor) {
+            this.asyncContext = asyncContext;
+            this.request = request;
+            this.response = response;
+            this.processor = processor;
+        }
+
+        void start() throws IOException {
+            request.getInputStream().setReadListener(this);
+        }
+
+        @Override
+        public void onDataAvailable() throws IOException {
+            ServletInputStream in = request.getInputStream();
+            int count;
+
+            while (in.isReady() && (count = in.read(buffer)) != -1) {
+                requestContent.write(buffer, 0, count);
+            }
+        }
+
+        @Override
+        public void onAllDataRead() throws IOException {
+            log.trace("Read request of {} bytes", requestContent.size());
+
+            try {
+                executor.execute(this::process);
+            } catch (RejectedExecutionException e) {
+                log.warn("Rejecting request from {}, all workers are busy", request.getRemoteAddr());
+
+                sendPlainTextErrorResponse(new CachedResponse(response, responseContent),
+                        HttpServletResponse.SC_SERVICE_UNAVAILABLE, OVERLOADED_MESSAGE);
+                writeResponse();
+            }
+        }
+
+        private void process() {
+            CachedResponse cachedResponse = new CachedResponse(response, responseContent);
+
+            try {
+                processor.process(new CachedRequest(request, requestContent), cachedResponse);
+                cachedResponse.flushWriter();
+
+                writeResponse();
+            } catch (Throwable e) { // We want to catch serious errors as well
+                log.error("Request processing failed", e);
+
+                response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                complete();
+            } finally {
+                requestContent.consume();
+            }
+        }
+
+        private void writeResponse() throws IOException {
+            response.setContentLengthLong(responseContent.size());
+            responseInput = responseContent.getCachedContents();
+
+            response.getOutputStream().setWriteListener(this);
+        }
+
+        @Override
+        public void onWritePossible() throws IOException {
+            ServletOutputStream out = response.getOutputStream();
+
+            while (out.isReady()) {
+                int count = responseInput.read(buffer);
+
+                if (count == -1) {
+                    complete();
+
+                    return;
+                }
+
+                out.write(buffer, 0, count);
+            }
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            log.warn("Error while communicating with client {}", request.getRemoteAddr(), t);
+
+            complete();
+        }
+
+        private void complete() {
+            if (completed.compareAndSet(false, true)) {
+                IOUtils.closeQuietly(responseInput);
+
+                requestContent.consume();
+                responseContent.consume();
+
+                asyncContext.complete();
+            }
+        }
+    }
+
+    /**
+     * Request that reads the body from the cache.
+     */
+    private static final class CachedRequest extends HttpServletRequestWrapper {
+        private final ServletInputStream inputStream;
+
+        CachedRequest(HttpServletRequest request, MemoryCachingStream content) {
+            super(request);
+
+            this.inputStream = new CachedServletInputStream(content.getCachedContents());
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            return inputStream;
+        }
+    }
+
+    /**
+     * Response that writes the body to the cache, the status and the headers
+     * are set on the wrapped response.
+     */
+    private static final class CachedResponse extends HttpServletResponseWrapper {
+        private final ServletOutputStream outputStream;
+
+        private PrintWriter writer;
+
+        CachedResponse(HttpServletResponse response, MemoryCachingStream content) {
+            super(response);
+
+            this.outputStream = new CachedServletOutputStream(content);
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return outputStream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(outputStream, getCharacterEncoding()));
+            }
+
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() {
+            // the response is committed when the pipeline starts writing it
+        }
+
+        void flushWriter() {
+            if (writer != null) {
+                writer.flush();
+            }
+        }
+    }
+
+    private static final class CachedServletInputStream extends ServletInputStream {
+        private final InputStream content;
+
+        private boolean finished;
+
+        CachedServletInputStream(InputStream content) {
+            this.content = content;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return updateFinished(content.read());
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            return updateFinished(content.read(b, off, len));
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            throw new IllegalStateException("Request has already been read");
+        }
+
+        @Override
+        public void close() throws IOException {
+            content.close();
+        }
+
+        private int updateFinished(int result) {
+            finished = result == -1;
+
+            return result;
+        }
+    }
+
+    private static final class CachedServletOutputStream extends ServletOutputStream {
+        private final MemoryCachingStream content;
+
+        CachedServletOutputStream(MemoryCachingStream content) {
+            this.content = content;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            content.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            content.write(b, off, len);
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new IllegalStateException("Response is written by the client request pipeline");
+        }
+    }
+}
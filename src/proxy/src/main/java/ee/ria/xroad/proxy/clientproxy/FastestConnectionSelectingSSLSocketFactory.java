@@ -30,8 +30,6 @@ import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 import org.apache.http.HttpHost;
@@ -49,7 +47,8 @@ import java.net.SocketException;
 import java.net.URI;
 import java.nio.channels.UnresolvedAddressException;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
+import java.util.Collections;
+import java.util.List;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_NETWORK_ERROR;
@@ -62,8 +61,11 @@ import static ee.ria.xroad.proxy.clientproxy.AuthTrustVerifier.verify;
  * The fastest target address is selected by initializing socket connection
  * to all provided addresses and choosing the first one to respond.
  *
- * If an SSL session already exists to one of the provided addresses, then
- * that address is selected immediately without previous selection algorithm.
+ * The connect latency and failures of the addresses are kept in the
+ * {@link AddressHealthTable}. Once the addresses of a target have been probed,
+ * the healthy address with the lowest latency is connected to directly, and
+ * all addresses are probed again only periodically or when the connection
+ * to the selected address fails.
  */
 @Slf4j
 class FastestConnectionSelectingSSLSocketFactory
@@ -83,17 +85,27 @@ class FastestConnectionSelectingSSLSocketFactory
 
     private final javax.net.ssl.SSLSocketFactory socketfactory;
 
-    private final Cache<CacheKey, URI> selectedHosts;
-    private final boolean cachingEnabled;
+    // null if the selected addresses are not remembered
+    private final AddressHealthTable healthTable;
 
     FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext) {
+        this(sslContext, SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0
+                ? AddressHealthTable.getInstance() : null);
+    }
+
+    FastestConnectionSelectingSSLSocketFactory(SSLContext sslContext, AddressHealthTable healthTable) {
         super(sslContext, null, SystemProperties.getXroadTLSCipherSuites(), (HostnameVerifier) null);
         this.socketfactory = sslContext.getSocketFactory();
-        this.selectedHosts = CacheBuilder.newBuilder()
-                .expireAfterWrite(SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod(), TimeUnit.SECONDS)
-                .maximumSize(CACHE_MAXIMUM_SIZE)
-                .build();
-        this.cachingEnabled = SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0;
+        this.healthTable = healthTable;
+    }
+
+    /**
+     * @return connect statistics of the security server addresses, empty if the selected addresses are not
+     * remembered
+     */
+    static List<AddressHealthTable.AddressMetrics> getAddressMetrics() {
+        return SystemProperties.getClientProxyFastestConnectingSslUriCachePeriod() > 0
+                ? AddressHealthTable.getInstance().getMetrics() : Collections.emptyList();
     }
 
     @Override
@@ -107,44 +119,34 @@ class FastestConnectionSelectingSSLSocketFactory
                                 InetSocketAddress remoteAddress, InetSocketAddress localAddress,
                                 HttpContext context) throws IOException {
         // Read target addresses from the context.
-        final URI[] addressesFromContext = getAddressesFromContext(context);
-        final boolean useCache = (addressesFromContext.length > 1) && cachingEnabled;
-
-        URI[] addresses = addressesFromContext;
-
-        CacheKey cacheKey = null;
-        URI cachedURI = null;
+        final URI[] addresses = getAddressesFromContext(context);
 
         if (log.isTraceEnabled()) {
-            log.trace("addresses from context {} current thread id {}", addressesFromContext,
+            log.trace("addresses from context {} current thread id {}", addresses,
                     Thread.currentThread().getId());
         }
 
+        SocketInfo selectedSocket = null;
+
         /*
-        If URI cache is enabled, check for a previously selected host, avoiding the selection process.
+        If the address health table is enabled, connect to the best known address directly, avoiding the
+        selection process.
         */
-        if (useCache) {
-            cacheKey = new CacheKey(addresses);
-            cachedURI = selectedHosts.getIfPresent(cacheKey);
-            if (cachedURI != null) {
-                log.trace("Use cached URI {}", cachedURI);
-                addresses = new URI[] {cachedURI};
+        URI bestURI = addresses.length > 1 && healthTable != null ? healthTable.selectBest(addresses) : null;
+
+        if (bestURI != null) {
+            log.trace("Use best known URI {}", bestURI);
+            selectedSocket = connectAndRecord(bestURI, context);
+            if (selectedSocket == null) {
+                log.trace("Could not connect to {}, continue connecting to all providers {}", bestURI,
+                        addresses);
             }
         }
 
         // Select the fastest address if more than one address is provided.
-        SocketInfo selectedSocket = connect(addresses, context, cachedURI == null ? timeout : CACHED_TIMEOUT);
         if (selectedSocket == null) {
-            if (cachedURI != null) {
-                log.trace("Could not connect to {}, removing from cache", cachedURI);
-                selectedHosts.invalidate(cacheKey);
-                cachedURI = null;
-                log.trace("Continue connecting to all providers {}", (Object) addressesFromContext);
-                selectedSocket = connect(addressesFromContext, context, timeout);
-                if (selectedSocket == null) {
-                    throw couldNotConnectException(addresses);
-                }
-            } else {
+            selectedSocket = connect(addresses, context, timeout);
+            if (selectedSocket == null) {
                 throw couldNotConnectException(addresses);
             }
         }
@@ -158,11 +160,6 @@ class FastestConnectionSelectingSSLSocketFactory
         SSLSocket sslSocket = wrapToSSLSocket(selectedSocket.getSocket());
         prepareAndVerify(sslSocket, selectedSocket.getUri(), context);
 
-        if (useCache && cachedURI == null) {
-            log.trace("Store the fastest provider URI to cache {}", selectedSocket.getUri());
-            selectedHosts.put(cacheKey, selectedSocket.getUri());
-        }
-
         return sslSocket;
     }
 
@@ -218,9 +215,37 @@ class FastestConnectionSelectingSSLSocketFactory
         log.trace("Connecting to hosts {} with timeout {}", Arrays.toString(addresses), timeout);
         if (addresses.length == 1) { // only one host, no need to select fastest
             return connect(addresses[0], context, timeout);
-        } else {
+        } else if (healthTable == null) {
             return new FastestSocketSelector(addresses, timeout).select();
         }
+
+        long start = healthTable.now();
+
+        FastestSocketSelector selector = new FastestSocketSelector(addresses, timeout);
+        SocketInfo selectedSocket = selector.select();
+
+        if (selectedSocket != null) {
+            healthTable.recordConnect(selectedSocket.getUri(), healthTable.now() - start);
+            selector.getFailedAddresses().forEach(healthTable::recordFailure);
+        } else {
+            Arrays.stream(addresses).forEach(healthTable::recordFailure);
+        }
+
+        return selectedSocket;
+    }
+
+    private SocketInfo connectAndRecord(URI address, HttpContext context) throws IOException {
+        long start = healthTable.now();
+
+        SocketInfo selectedSocket = connect(address, context, CACHED_TIMEOUT);
+
+        if (selectedSocket != null) {
+            healthTable.recordConnect(address, healthTable.now() - start);
+        } else {
+            healthTable.recordFailure(address);
+        }
+
+        return selectedSocket;
     }
 
     private SocketInfo connect(URI address, HttpContext context, int timeout)
@@ -26,6 +26,7 @@ package ee.ria.xroad.proxy.clientproxy;
 
 import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
@@ -37,7 +38,9 @@ import java.net.URI;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 
 import static org.apache.commons.io.IOUtils.closeQuietly;
 
@@ -45,7 +48,8 @@ import static org.apache.commons.io.IOUtils.closeQuietly;
  * Given a list of addresses, selects the first one to respond.
  * More specifically, we initiate a connection to all specified addresses and
  * wait for any connection events using Selector. We return the first address
- * from the selector or null, if no connections can be made.
+ * from the selector or null, if no connections can be made. The addresses that
+ * failed to connect before the selection was made are recorded.
  */
 @Slf4j
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
@@ -60,6 +64,9 @@ class FastestSocketSelector {
     private final URI[] addresses;
     private final int connectTimeout;
 
+    @Getter(AccessLevel.PACKAGE)
+    private final List<URI> failedAddresses = new ArrayList<>();
+
     SocketInfo select() throws IOException {
         log.trace("select()");
         Selector selector = Selector.open();
@@ -111,6 +118,7 @@ class FastestSocketSelector {
             } catch (Exception e) {
                 key.cancel();
                 closeQuietly(channel);
+                failedAddresses.add((URI) key.attachment());
                 log.trace("Error connecting socket channel: {}", e);
             }
         }
@@ -141,6 +149,7 @@ class FastestSocketSelector {
                     key.cancel();
                 }
                 closeQuietly(channel);
+                failedAddresses.add(target);
                 log.trace("Error connecting to '{}': {}", target, e);
             }
         }
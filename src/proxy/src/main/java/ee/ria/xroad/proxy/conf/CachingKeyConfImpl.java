@@ -31,7 +31,7 @@ import ee.ria.xroad.common.conf.globalconf.AuthKey;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.identifier.ClientId;
 import ee.ria.xroad.common.identifier.SecurityServerId;
-import ee.ria.xroad.common.util.FileContentChangeChecker;
+import ee.ria.xroad.common.util.filewatcher.FileChangeMonitor;
 import ee.ria.xroad.signer.protocol.SignerClient;
 import ee.ria.xroad.signer.protocol.dto.MemberSigningInfo;
 import ee.ria.xroad.signer.protocol.message.GetAuthKey;
@@ -39,21 +39,25 @@ import ee.ria.xroad.signer.protocol.message.GetMemberSigningInfo;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import lombok.extern.slf4j.Slf4j;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
+import java.nio.file.Paths;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 
 /**
- * Encapsulates KeyConf related functionality.
+ * Encapsulates KeyConf related functionality. The cached signing infos and the authentication key are invalidated
+ * asynchronously when the key configuration file changes, so reading them does not involve any file I/O.
  */
 @Slf4j
 class CachingKeyConfImpl extends KeyConfImpl {
@@ -61,12 +65,13 @@ class CachingKeyConfImpl extends KeyConfImpl {
     // Specifies how long data is cached
     private static final int CACHE_PERIOD_SECONDS = 300;
 
-    private final FileContentChangeChecker keyConfChangeChecker;
+    private static final AtomicLong INVALIDATIONS = new AtomicLong();
 
     private static final Cache<ClientId, SigningInfo> SIGNING_INFO_CACHE;
     static {
         SIGNING_INFO_CACHE = CacheBuilder.newBuilder()
                 .expireAfterWrite(CACHE_PERIOD_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
                 .build();
     }
 
@@ -76,23 +81,41 @@ class CachingKeyConfImpl extends KeyConfImpl {
         AUTH_KEY_CACHE = CacheBuilder.newBuilder()
                 .maximumSize(1)
                 .expireAfterWrite(CACHE_PERIOD_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
                 .build();
     }
 
+    private FileChangeMonitor keyConfChangeMonitor;
+
     CachingKeyConfImpl() throws Exception {
-        keyConfChangeChecker = getKeyConfChangeChecker();
+        startKeyConfChangeMonitor();
     }
 
-    protected FileContentChangeChecker getKeyConfChangeChecker() throws Exception {
-        return new FileContentChangeChecker(SystemProperties.getKeyConfFile());
+    /**
+     * Starts monitoring the key configuration file for changes. The monitor is stopped by {@link #close()} when
+     * this instance is replaced.
+     */
+    protected synchronized void startKeyConfChangeMonitor() {
+        keyConfChangeMonitor = FileChangeMonitor.create()
+                .monitor(Paths.get(SystemProperties.getKeyConfFile()))
+                .withFallbackPollInterval(SystemProperties.getKeyConfPollInterval(), TimeUnit.SECONDS)
+                .andOnChangeNotify(CachingKeyConfImpl::keyConfChanged)
+                .buildAndStart();
+    }
+
+    /**
+     * Stops monitoring the key configuration file.
+     */
+    synchronized void close() {
+        if (keyConfChangeMonitor != null) {
+            keyConfChangeMonitor.stop();
+            keyConfChangeMonitor = null;
+        }
     }
 
     @Override
     public SigningCtx getSigningCtx(ClientId clientId) {
         try {
-            if (keyConfHasChanged()) {
-                CachingKeyConfImpl.invalidateCaches();
-            }
             SigningInfo signingInfo = SIGNING_INFO_CACHE.get(clientId, () -> getSigningInfo(clientId));
             if (!signingInfo.verifyValidity(new Date())) {
                 SIGNING_INFO_CACHE.invalidate(clientId);
@@ -114,14 +137,32 @@ class CachingKeyConfImpl extends KeyConfImpl {
         SIGNING_INFO_CACHE.invalidateAll();
     }
 
+    /**
+     * Called when the key configuration file has changed.
+     */
+    static void keyConfChanged() {
+        long count = INVALIDATIONS.incrementAndGet();
 
+        log.debug("KeyConf has changed, invalidating caches (invalidation #{}, signing info cache hit ratio {})",
+                count, SIGNING_INFO_CACHE.stats().hitRate());
+
+        invalidateCaches();
+    }
+
+    /**
+     * @return the number of cache invalidations caused by key configuration changes and the cache statistics
+     */
+    static KeyConf.CacheMetrics getCacheMetrics() {
+        CacheStats signingInfoStats = SIGNING_INFO_CACHE.stats();
+        CacheStats authKeyStats = AUTH_KEY_CACHE.stats();
+
+        return new KeyConf.CacheMetrics(INVALIDATIONS.get(), signingInfoStats.hitCount(),
+                signingInfoStats.missCount(), authKeyStats.hitCount(), authKeyStats.missCount());
+    }
 
     @Override
     public AuthKey getAuthKey() {
         try {
-            if (keyConfHasChanged()) {
-                CachingKeyConfImpl.invalidateCaches();
-            }
             AuthKeyInfo info = AUTH_KEY_CACHE.get(AUTH_CACHE_SINGLETON_KEY,
                     () -> getAuthKeyInfo());
             if (!info.verifyValidity(new Date())) {
@@ -137,20 +178,6 @@ class CachingKeyConfImpl extends KeyConfImpl {
         }
     }
 
-    boolean keyConfHasChanged() {
-        try {
-            boolean changed = keyConfChangeChecker.hasChanged();
-
-            log.trace("KeyConf has{} changed!", !changed ? " not" : "");
-
-            return changed;
-        } catch (Exception e) {
-            log.error("Failed to check if key conf has changed", e);
-
-            return true;
-        }
-    }
-
     protected AuthKeyInfo getAuthKeyInfo() throws Exception {
         log.debug("getAuthKeyInfo");
         SecurityServerId serverId = ServerConf.getIdentifier();
@@ -28,6 +28,7 @@ import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.conf.globalconf.AuthKey;
 import ee.ria.xroad.common.identifier.ClientId;
 
+import lombok.Value;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -58,6 +59,18 @@ public final class KeyConf {
     // If this error is not null, getInstance will throw it.
     private static volatile CodedException initializationError = null;
 
+    /**
+     * Statistics of the signing info and authentication key caches.
+     */
+    @Value
+    public static class CacheMetrics {
+        private final long invalidations;
+        private final long signingInfoHits;
+        private final long signingInfoMisses;
+        private final long authKeyHits;
+        private final long authKeyMisses;
+    }
+
     private KeyConf() {
     }
 
@@ -108,10 +121,22 @@ public final class KeyConf {
      * Reloads the configuration with given configuration instance.
      * @param conf the new key configuration provider
      */
-    public static void reload(KeyConfProvider conf) {
+    public static synchronized void reload(KeyConfProvider conf) {
         LOG.trace("reload({})", conf.getClass());
 
+        KeyConfProvider previous = instance;
+
         instance = conf;
+
+        closeReplaced(previous);
+    }
+
+    /**
+     * @return statistics of the key configuration caches, the caches are invalidated when the key configuration
+     * file changes
+     */
+    public static CacheMetrics getCacheMetrics() {
+        return CachingKeyConfImpl.getCacheMetrics();
     }
 
     /**
@@ -215,7 +240,9 @@ public final class KeyConf {
 
     // ------------------------------------------------------------------------
 
-    private static void initInstance() {
+    private static synchronized void initInstance() {
+        KeyConfProvider previous = instance;
+
         instance = null;
         try {
             instance = new CachingKeyConfImpl();
@@ -223,6 +250,15 @@ public final class KeyConf {
         } catch (Exception ex) {
             initializationError = translateWithPrefix(X_MALFORMED_KEYCONF, ex);
             throw initializationError;
+        } finally {
+            closeReplaced(previous);
+        }
+    }
+
+    // Stops the key configuration file monitor of the replaced instance.
+    private static void closeReplaced(KeyConfProvider previous) {
+        if (previous instanceof CachingKeyConfImpl && previous != instance) {
+            ((CachingKeyConfImpl) previous).close();
         }
     }
 }
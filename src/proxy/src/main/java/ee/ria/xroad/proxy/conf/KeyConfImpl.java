@@ -54,8 +54,6 @@ import java.util.List;
 import static ee.ria.xroad.common.ErrorCodes.X_CANNOT_CREATE_SIGNATURE;
 import static ee.ria.xroad.common.util.CertUtils.getCertHashes;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
-import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
-import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.loadPkcs12KeyStore;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 
@@ -119,31 +117,41 @@ class KeyConfImpl implements KeyConfProvider {
 
     @Override
     public OCSPResp getOcspResponse(String certHash) throws Exception {
-        GetOcspResponsesResponse response =
-                SignerClient.execute(
-                        new GetOcspResponses(new String[] {certHash}));
+        OCSPResp response = OcspResponseCache.get(certHash);
 
-        for (String base64Encoded : response.getBase64EncodedResponses()) {
-            return base64Encoded != null
-                    ? new OCSPResp(decodeBase64(base64Encoded)) : null;
+        if (response == null) {
+            response = getOcspResponsesFromSigner(new String[] {certHash})[0];
         }
 
-        return null;
+        return response;
     }
 
     @Override
     public List<OCSPResp> getOcspResponses(List<X509Certificate> certs)
             throws Exception {
-        GetOcspResponsesResponse response =
-                SignerClient.execute(
-                        new GetOcspResponses(getCertHashes(certs)));
-
-        List<OCSPResp> ocspResponses = new ArrayList<>();
-        for (String base64Encoded : response.getBase64EncodedResponses()) {
-            if (base64Encoded != null) {
-                ocspResponses.add(new OCSPResp(decodeBase64(base64Encoded)));
-            } else {
-                ocspResponses.add(null);
+        String[] certHashes = getCertHashes(certs);
+        List<OCSPResp> ocspResponses = new ArrayList<>(certHashes.length);
+        List<String> missingHashes = new ArrayList<>();
+
+        for (String certHash : certHashes) {
+            OCSPResp response = OcspResponseCache.get(certHash);
+
+            if (response == null) {
+                missingHashes.add(certHash);
+            }
+
+            ocspResponses.add(response);
+        }
+
+        if (!missingHashes.isEmpty()) {
+            // only the responses the signer has not pushed to the cache yet are queried
+            OCSPResp[] missingResponses = getOcspResponsesFromSigner(
+                    missingHashes.toArray(new String[missingHashes.size()]));
+
+            for (int i = 0, j = 0; i < ocspResponses.size(); i++) {
+                if (ocspResponses.get(i) == null) {
+                    ocspResponses.set(i, missingResponses[j++]);
+                }
             }
         }
 
@@ -153,15 +161,40 @@ class KeyConfImpl implements KeyConfProvider {
     @Override
     public void setOcspResponses(List<X509Certificate> certs,
             List<OCSPResp> responses) throws Exception {
-        String[] base64EncodedResponses = new String[responses.size()];
+        String[] certHashes = getCertHashes(certs);
+        byte[][] encodedResponses = new byte[responses.size()][];
 
         for (int i = 0; i < responses.size(); i++) {
-            base64EncodedResponses[i] =
-                    encodeBase64(responses.get(i).getEncoded());
+            encodedResponses[i] = responses.get(i).getEncoded();
+            OcspResponseCache.put(certHashes[i], responses.get(i));
+        }
+
+        SignerClient.execute(new SetOcspResponses(certHashes,
+                encodedResponses));
+    }
+
+    private OCSPResp[] getOcspResponsesFromSigner(String[] certHashes)
+            throws Exception {
+        GetOcspResponsesResponse response =
+                requestOcspResponses(new GetOcspResponses(certHashes));
+
+        OCSPResp[] ocspResponses = new OCSPResp[certHashes.length];
+
+        for (int i = 0; i < certHashes.length; i++) {
+            byte[] encoded = response.getOcspResponses()[i];
+
+            if (encoded != null) {
+                ocspResponses[i] = new OCSPResp(encoded);
+                OcspResponseCache.put(certHashes[i], ocspResponses[i]);
+            }
         }
 
-        SignerClient.execute(new SetOcspResponses(getCertHashes(certs),
-                base64EncodedResponses));
+        return ocspResponses;
+    }
+
+    GetOcspResponsesResponse requestOcspResponses(GetOcspResponses message)
+            throws Exception {
+        return SignerClient.execute(message);
     }
 
     static SigningCtx createSigningCtx(ClientId subject, String keyId,
@@ -0,0 +1,185 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.ocsp.OcspCache;
+import ee.ria.xroad.signer.protocol.SignerClient;
+import ee.ria.xroad.signer.protocol.message.OcspResponsesUpdated;
+import ee.ria.xroad.signer.protocol.message.SubscribeOcspResponses;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Cancellable;
+import akka.actor.Props;
+import akka.actor.Terminated;
+import akka.actor.UntypedActor;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds the OCSP responses of the signer in the proxy. The signer pushes the responses to the cache whenever they
+ * change, so the proxy only asks the signer for responses it has not received yet. The cache is cleared and the
+ * subscription renewed if the signer goes away.
+ */
+@Slf4j
+public final class OcspResponseCache {
+
+    private static final FiniteDuration SUBSCRIBE_INTERVAL = Duration.create(30, TimeUnit.SECONDS);
+
+    private static final OcspCache CACHE = new OcspCache();
+
+    private static ActorRef subscriber;
+
+    private OcspResponseCache() {
+    }
+
+    /**
+     * Subscribes the cache to the OCSP response updates of the signer.
+     * @param actorSystem actor system the subscriber should use
+     */
+    public static void init(ActorSystem actorSystem) {
+        if (subscriber == null) {
+            subscriber = actorSystem.actorOf(Props.create(Subscriber.class));
+        }
+    }
+
+    /**
+     * @param certHash hash of the certificate
+     * @return the cached OCSP response or null if the response is not cached or has expired
+     */
+    static OCSPResp get(String certHash) {
+        return CACHE.get(certHash);
+    }
+
+    /**
+     * Caches the OCSP response of a certificate.
+     * @param certHash hash of the certificate
+     * @param response the OCSP response
+     */
+    static void put(String certHash, OCSPResp response) {
+        CACHE.put(certHash, response);
+    }
+
+    /**
+     * Removes all cached OCSP responses.
+     */
+    static void clear() {
+        CACHE.clear();
+    }
+
+    static class Subscriber extends UntypedActor {
+
+        private static final String SUBSCRIBE = "Subscribe";
+
+        private final FiniteDuration subscribeInterval;
+
+        private Cancellable subscribeTask;
+
+        // the OCSP response manager of the signer, null until the subscription is confirmed
+        private ActorRef publisher;
+
+        Subscriber() {
+            this(SUBSCRIBE_INTERVAL);
+        }
+
+        Subscriber(FiniteDuration subscribeInterval) {
+            this.subscribeInterval = subscribeInterval;
+        }
+
+        @Override
+        public void preStart() throws Exception {
+            subscribeTask = getContext().system().scheduler().schedule(Duration.Zero(), subscribeInterval,
+                    getSelf(), SUBSCRIBE, getContext().dispatcher(), ActorRef.noSender());
+        }
+
+        @Override
+        public void postStop() throws Exception {
+            if (subscribeTask != null) {
+                subscribeTask.cancel();
+            }
+        }
+
+        @Override
+        public void onReceive(Object message) throws Exception {
+            if (SUBSCRIBE.equals(message)) {
+                subscribe();
+            } else if (message instanceof OcspResponsesUpdated) {
+                handleUpdate((OcspResponsesUpdated) message);
+            } else if (message instanceof Terminated) {
+                handleTerminated((Terminated) message);
+            } else if (message instanceof Exception) {
+                log.warn("Failed to subscribe to OCSP response updates: {}", message);
+            } else {
+                unhandled(message);
+            }
+        }
+
+        private void subscribe() {
+            if (publisher == null) {
+                log.trace("Subscribing to OCSP response updates");
+
+                requestSubscription(new SubscribeOcspResponses());
+            }
+        }
+
+        void requestSubscription(SubscribeOcspResponses message) {
+            SignerClient.execute(message, getSelf());
+        }
+
+        private void handleUpdate(OcspResponsesUpdated message) {
+            if (publisher == null) {
+                publisher = getSender();
+                getContext().watch(publisher);
+
+                log.info("Subscribed to OCSP response updates");
+            }
+
+            for (int i = 0; i < message.getCertHashes().length; i++) {
+                try {
+                    CACHE.put(message.getCertHashes()[i], new OCSPResp(message.getOcspResponses()[i]));
+                } catch (Exception e) {
+                    log.error("Failed to parse OCSP response for certificate {}", message.getCertHashes()[i], e);
+                }
+            }
+
+            log.debug("Updated {} OCSP responses", message.getCertHashes().length);
+        }
+
+        private void handleTerminated(Terminated message) {
+            if (message.getActor().equals(publisher)) {
+                log.warn("Lost connection to the signer, clearing cached OCSP responses");
+
+                getContext().unwatch(publisher);
+                publisher = null;
+
+                clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.cert.CertChain;
+import ee.ria.xroad.common.cert.CertHelper;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconfextension.GlobalConfExtensions;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.util.ExpiringCache;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.ArrayUtils;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.SingleResp;
+
+import javax.net.ssl.SSLSession;
+import javax.servlet.http.HttpServletRequest;
+
+import java.io.ByteArrayOutputStream;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+
+/**
+ * Verifies the TLS client certificates of the server proxy and caches the successful chain verifications.
+ *
+ * The chain verification (certificate path validation and OCSP checks) is cached by the hash of the peer
+ * certificates, the trust anchor and the hash of the OCSP responses the client sent. The hash of the peer
+ * certificates is stored in the TLS session, so it is calculated only once per session. A cached result expires
+ * when any of the certificates or OCSP responses would no longer pass the verification, or after the OCSP
+ * verifier cache period at the latest. Cached results are not used after a reload has changed the global
+ * configuration, since the approved CAs and OCSP responders may have changed. The check that the certificate is
+ * registered for the member is done against the current global configuration on every request.
+ */
+@Slf4j
+final class AuthCertVerificationCache {
+
+    static final int DEFAULT_MAX_SIZE = 10000;
+
+    // Request attribute holding the TLS session (set by Jetty)
+    private static final String SSL_SESSION_ATTRIBUTE = "org.eclipse.jetty.servlet.request.ssl_session";
+
+    // TLS session value holding the hash of the peer certificates
+    private static final String PEER_CERT_HASH = AuthCertVerificationCache.class.getName() + ".peerCertHash";
+
+    private static final long CACHE_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(
+            SystemProperties.getOcspVerifierCachePeriod());
+
+    private static final AuthCertVerificationCache INSTANCE = new AuthCertVerificationCache(DEFAULT_MAX_SIZE);
+
+    /**
+     * Identifies a chain verification. Includes the global configuration load count and the global
+     * configuration parameters of the OCSP verification, so a changed configuration invalidates the cached
+     * results.
+     */
+    @Value
+    static class Key {
+        private long globalConfLoadCount;
+        private byte[] peerCertHash;
+        private X509Certificate trustAnchor;
+        private byte[] ocspResponseHash;
+        private int ocspFreshnessSeconds;
+        private boolean verifyOcspNextUpdate;
+    }
+
+    // The verified chains, the value is always true
+    private final ExpiringCache<Key, Boolean> entries;
+
+    AuthCertVerificationCache(int maxSize) {
+        entries = new ExpiringCache<>(maxSize);
+    }
+
+    /**
+     * Verifies that the TLS client certificate chain can be used for authenticating as the member.
+     * @param request the request the certificates were received with
+     * @param certs the peer certificates, starting from the authentication certificate
+     * @param trustAnchor the trust anchor of the chain
+     * @param instanceIdentifier the instance identifier of the member
+     * @param ocspResponses OCSP responses of the certificates
+     * @param member the member
+     * @throws Exception if verification fails
+     */
+    static void verify(HttpServletRequest request, X509Certificate[] certs, X509Certificate trustAnchor,
+            String instanceIdentifier, List<OCSPResp> ocspResponses, ClientId member) throws Exception {
+        int ocspFreshnessSeconds = GlobalConf.getOcspFreshnessSeconds(false);
+        boolean verifyOcspNextUpdate = GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate();
+
+        Key key = new Key(GlobalConf.getLoadCount(), getPeerCertHash(request, certs), trustAnchor,
+                hashOcspResponses(ocspResponses), ocspFreshnessSeconds, verifyOcspNextUpdate);
+        long now = System.currentTimeMillis();
+
+        if (INSTANCE.isVerified(key, now)) {
+            log.trace("TLS client certificate chain verification found in cache");
+        } else {
+            CertChain chain = CertChain.create(instanceIdentifier,
+                    (X509Certificate[]) ArrayUtils.add(certs, trustAnchor));
+            CertHelper.verifyAuthCertChain(chain, ocspResponses);
+
+            INSTANCE.put(key, getExpiry(certs, ocspResponses, ocspFreshnessSeconds, verifyOcspNextUpdate, now), now);
+        }
+
+        CertHelper.verifyAuthCertMember(certs[0], member);
+    }
+
+    /**
+     * @param key the verification key
+     * @param now the current time in milliseconds
+     * @return true if the chain has been verified and the result has not expired
+     */
+    boolean isVerified(Key key, long now) {
+        return entries.get(key, now) != null;
+    }
+
+    /**
+     * Records a successful chain verification until the given expiration time.
+     * @param key the verification key
+     * @param expiresAt the expiration time of the entry in milliseconds
+     * @param now the current time in milliseconds
+     */
+    void put(Key key, long expiresAt, long now) {
+        entries.put(key, Boolean.TRUE, expiresAt, now);
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    /**
+     * The verification result is not reused after any of the certificates has expired or any of the OCSP
+     * responses has become too old to pass the freshness and nextUpdate checks.
+     */
+    static long getExpiry(X509Certificate[] certs, List<OCSPResp> ocspResponses, int ocspFreshnessSeconds,
+            boolean verifyOcspNextUpdate, long now) throws Exception {
+        long expiresAt = now + CACHE_PERIOD_MILLIS;
+
+        for (X509Certificate cert : certs) {
+            expiresAt = Math.min(expiresAt, cert.getNotAfter().getTime());
+        }
+
+        for (OCSPResp response : ocspResponses) {
+            for (SingleResp singleResp : ((BasicOCSPResp) response.getResponseObject()).getResponses()) {
+                expiresAt = Math.min(expiresAt, singleResp.getThisUpdate().getTime()
+                        + TimeUnit.SECONDS.toMillis(ocspFreshnessSeconds));
+
+                if (verifyOcspNextUpdate && singleResp.getNextUpdate() != null) {
+                    expiresAt = Math.min(expiresAt, singleResp.getNextUpdate().getTime());
+                }
+            }
+        }
+
+        return expiresAt;
+    }
+
+    private static byte[] getPeerCertHash(HttpServletRequest request, X509Certificate[] certs) throws Exception {
+        Object session = request.getAttribute(SSL_SESSION_ATTRIBUTE);
+
+        if (!(session instanceof SSLSession)) {
+            return hashCertificates(certs);
+        }
+
+        SSLSession sslSession = (SSLSession) session;
+        Object hash = sslSession.getValue(PEER_CERT_HASH);
+
+        if (!(hash instanceof byte[])) {
+            hash = hashCertificates(certs);
+            sslSession.putValue(PEER_CERT_HASH, hash);
+        }
+
+        return (byte[]) hash;
+    }
+
+    private static byte[] hashCertificates(X509Certificate[] certs) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (X509Certificate cert : certs) {
+            out.write(cert.getEncoded());
+        }
+
+        return calculateDigest(SHA256_ID, out.toByteArray());
+    }
+
+    private static byte[] hashOcspResponses(List<OCSPResp> ocspResponses) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        for (OCSPResp response : ocspResponses) {
+            out.write(response.getEncoded());
+        }
+
+        return calculateDigest(SHA256_ID, out.toByteArray());
+    }
+}
@@ -26,8 +26,6 @@ package ee.ria.xroad.proxy.serverproxy;
 
 import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
-import ee.ria.xroad.common.cert.CertChain;
-import ee.ria.xroad.common.cert.CertHelper;
 import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.conf.serverconf.ServerConf;
 import ee.ria.xroad.common.conf.serverconf.model.ClientType;
@@ -72,9 +70,7 @@ import java.io.Writer;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.List;
 import java.util.Map;
 
 import static ee.ria.xroad.common.ErrorCodes.SERVER_SERVERPROXY_X;
@@ -105,12 +101,8 @@ import static ee.ria.xroad.common.util.TimeUtils.getEpochMillisecond;
 @Slf4j
 class ServerMessageProcessor extends MessageProcessorBase {
 
-    private static final String SERVERPROXY_SERVICE_HANDLERS = SystemProperties.PREFIX + "proxy.serverServiceHandlers";
-
     private final X509Certificate[] clientSslCerts;
 
-    private final List<ServiceHandler> handlers = new ArrayList<>();
-
     private String originalSoapAction;
     private ProxyMessage requestMessage;
     private ServiceId requestServiceId;
@@ -133,8 +125,6 @@ class ServerMessageProcessor extends MessageProcessorBase {
         this.clientSslCerts = clientSslCerts;
         this.opMonitorHttpClient = opMonitorHttpClient;
         this.opMonitoringData = opMonitoringData;
-
-        loadServiceHandlers();
     }
 
     @Override
@@ -201,28 +191,8 @@ class ServerMessageProcessor extends MessageProcessorBase {
         opMonitoringData.setSucceeded(true);
     }
 
-    private void loadServiceHandlers() {
-        String serviceHandlerNames = System.getProperty(SERVERPROXY_SERVICE_HANDLERS);
-
-        if (!StringUtils.isBlank(serviceHandlerNames)) {
-            for (String serviceHandlerName : serviceHandlerNames.split(",")) {
-                handlers.add(ServiceHandlerLoader.load(serviceHandlerName));
-
-                log.debug("Loaded service handler: " + serviceHandlerName);
-            }
-        }
-
-        handlers.add(new DefaultServiceHandlerImpl()); // default handler
-    }
-
     private ServiceHandler getServiceHandler(ProxyMessage request) {
-        for (ServiceHandler handler : handlers) {
-            if (handler.canHandle(requestServiceId, request)) {
-                return handler;
-            }
-        }
-
-        return null;
+        return ServiceHandlerRegistry.getInstance().getHandler(requestServiceId, request);
     }
 
     private void handleRequest() throws Exception {
@@ -339,9 +309,8 @@ class ServerMessageProcessor extends MessageProcessorBase {
         }
 
         try {
-            CertChain chain = CertChain.create(instanceIdentifier, (X509Certificate[]) ArrayUtils.add(clientSslCerts,
-                    trustAnchor));
-            CertHelper.verifyAuthCert(chain, requestMessage.getOcspResponses(), requestMessage.getSoap().getClient());
+            AuthCertVerificationCache.verify(servletRequest, clientSslCerts, trustAnchor, instanceIdentifier,
+                    requestMessage.getOcspResponses(), requestMessage.getSoap().getClient());
         } catch (Exception e) {
             throw new CodedException(X_SSL_AUTH_FAILED, e);
         }
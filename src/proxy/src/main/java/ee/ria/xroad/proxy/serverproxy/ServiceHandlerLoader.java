@@ -24,19 +24,57 @@
  */
 package ee.ria.xroad.proxy.serverproxy;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.function.Supplier;
+
 final class ServiceHandlerLoader {
 
     private ServiceHandlerLoader() {
     }
 
-    static ServiceHandler load(String className) {
+    /**
+     * Resolves the service handler class with the given name.
+     * @param className the name of the service handler class
+     * @return a factory creating new instances of the service handler
+     */
+    static Supplier<ServiceHandler> load(String className) {
         try {
-            Class<?> clazz = Class.forName(className);
-            return (ServiceHandler) clazz.newInstance();
+            return factoryFor(Class.forName(className).asSubclass(ServiceHandler.class));
         } catch (Exception e) {
             throw new RuntimeException("Failed to load service handler: "
                     + className, e);
         }
     }
 
+    /**
+     * Returns a factory for the given service handler class. The class
+     * lookup is done once, only the instantiation is done per call.
+     * @param clazz the service handler class
+     * @return a factory creating new instances of the service handler
+     */
+    static Supplier<ServiceHandler> factoryFor(
+            Class<? extends ServiceHandler> clazz) {
+        Constructor<? extends ServiceHandler> constructor;
+        try {
+            constructor = clazz.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to load service handler: "
+                    + clazz.getName(), e);
+        }
+
+        return () -> {
+            try {
+                return constructor.newInstance();
+            } catch (InvocationTargetException e) {
+                throw new RuntimeException("Failed to create service handler: "
+                        + clazz.getName(), e.getCause());
+            } catch (ReflectiveOperationException e) {
+                throw new RuntimeException("Failed to create service handler: "
+                        + clazz.getName(), e);
+            }
+        };
+    }
+
 }
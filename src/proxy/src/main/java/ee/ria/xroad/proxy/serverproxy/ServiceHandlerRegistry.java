@@ -0,0 +1,147 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Registry of the service handlers of the server proxy.
+ *
+ * The handler classes are resolved once. They are registered either through
+ * the {@code xroad.proxy.serverServiceHandlers} system property or as
+ * {@link ServiceLoader} providers of {@link ServiceHandler}. A new handler
+ * instance is created for every request, since the handlers keep per-request
+ * state. The handler selected for a service is cached, so that the other
+ * handlers need not be instantiated for the following requests.
+ */
+@Slf4j
+final class ServiceHandlerRegistry {
+
+    static final String SERVERPROXY_SERVICE_HANDLERS = SystemProperties.PREFIX + "proxy.serverServiceHandlers";
+
+    // Selection of a service that is handled by the default handler
+    private static final int DEFAULT_HANDLER = -1;
+
+    private static final int SELECTION_CACHE_MAXIMUM_SIZE = 10000;
+
+    // Bounds the time a selection depending on the server configuration
+    // (e.g. the owner of the security server) can be stale
+    private static final long SELECTION_CACHE_EXPIRE_SECONDS = 60;
+
+    private final List<Supplier<ServiceHandler>> factories;
+
+    private final Cache<ServiceId, Integer> selections = CacheBuilder.newBuilder()
+            .maximumSize(SELECTION_CACHE_MAXIMUM_SIZE)
+            .expireAfterWrite(SELECTION_CACHE_EXPIRE_SECONDS, TimeUnit.SECONDS)
+            .build();
+
+    ServiceHandlerRegistry(List<Supplier<ServiceHandler>> factories) {
+        this.factories = Collections.unmodifiableList(new ArrayList<>(factories));
+    }
+
+    /**
+     * @return the registry of the handlers registered in this proxy
+     */
+    static ServiceHandlerRegistry getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Returns a new instance of the handler that can handle the request.
+     * @param serviceId the requested service
+     * @param requestMessage the request message
+     * @return the handler, or null if the request should be handled by
+     * the default handler
+     */
+    ServiceHandler getHandler(ServiceId serviceId, ProxyMessage requestMessage) {
+        Integer selected = selections.getIfPresent(serviceId);
+
+        if (selected != null) {
+            if (selected == DEFAULT_HANDLER) {
+                return null;
+            }
+
+            ServiceHandler handler = factories.get(selected).get();
+            if (handler.canHandle(serviceId, requestMessage)) {
+                return handler;
+            }
+        }
+
+        for (int i = 0; i < factories.size(); i++) {
+            ServiceHandler handler = factories.get(i).get();
+            if (handler.canHandle(serviceId, requestMessage)) {
+                selections.put(serviceId, i);
+                return handler;
+            }
+        }
+
+        selections.put(serviceId, DEFAULT_HANDLER);
+        return null;
+    }
+
+    private static List<Supplier<ServiceHandler>> loadFactories() {
+        // Handler classes by name, to register each class only once
+        Map<String, Supplier<ServiceHandler>> factories = new LinkedHashMap<>();
+
+        String serviceHandlerNames = System.getProperty(SERVERPROXY_SERVICE_HANDLERS);
+
+        if (!StringUtils.isBlank(serviceHandlerNames)) {
+            for (String serviceHandlerName : serviceHandlerNames.split(",")) {
+                if (!StringUtils.isBlank(serviceHandlerName)) {
+                    factories.computeIfAbsent(serviceHandlerName.trim(), ServiceHandlerLoader::load);
+                }
+            }
+        }
+
+        for (ServiceHandler provider : ServiceLoader.load(ServiceHandler.class)) {
+            factories.computeIfAbsent(provider.getClass().getName(),
+                    name -> ServiceHandlerLoader.factoryFor(provider.getClass()));
+        }
+
+        factories.keySet().forEach(name -> log.debug("Loaded service handler: {}", name));
+
+        return new ArrayList<>(factories.values());
+    }
+
+    private static final class InstanceHolder {
+        private static final ServiceHandlerRegistry INSTANCE = new ServiceHandlerRegistry(loadFactories());
+    }
+}
@@ -0,0 +1,98 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.util.JsonUtils;
+
+import com.google.gson.JsonObject;
+import org.junit.Test;
+
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link BatchSignerMetrics}.
+ */
+public class BatchSignerMetricsTest {
+
+    /**
+     * Test that batch sizes are counted in power of two buckets.
+     */
+    @Test
+    public void batchSizeDistribution() {
+        BatchSignerMetrics metrics = new BatchSignerMetrics();
+
+        metrics.recordBatch(1, 0, 0);
+        metrics.recordBatch(2, 0, 0);
+        metrics.recordBatch(3, 0, 0);
+        metrics.recordBatch(64, 0, 0);
+        metrics.recordBatch(127, 0, 0);
+
+        SortedMap<Integer, Long> expected = new TreeMap<>();
+        expected.put(1, 1L);
+        expected.put(2, 2L);
+        expected.put(64, 2L);
+
+        assertEquals(expected, metrics.getBatchSizeDistribution());
+        assertEquals(5, metrics.getBatchCount());
+        assertEquals(197, metrics.getRequestCount());
+    }
+
+    /**
+     * Test that the queue wait is averaged over the signing requests.
+     */
+    @Test
+    public void queueWait() {
+        BatchSignerMetrics metrics = new BatchSignerMetrics();
+
+        assertEquals(0, metrics.getAverageQueueWaitMillis(), 0);
+
+        metrics.recordBatch(3, 30, 20);
+        metrics.recordBatch(1, 10, 10);
+
+        assertEquals(10, metrics.getAverageQueueWaitMillis(), 0);
+        assertEquals(20, metrics.getMaxQueueWaitMillis());
+    }
+
+    /**
+     * Test that the snapshot served on the admin port serializes the statistics.
+     */
+    @Test
+    public void snapshotToJson() {
+        BatchSignerMetrics metrics = new BatchSignerMetrics();
+
+        metrics.recordBatch(3, 30, 20);
+
+        JsonObject json = JsonUtils.getSerializer().toJsonTree(metrics.getSnapshot()).getAsJsonObject();
+
+        assertEquals(1, json.get("batchCount").getAsLong());
+        assertEquals(3, json.get("requestCount").getAsLong());
+        assertEquals(1, json.getAsJsonObject("batchSizeDistribution").get("2").getAsLong());
+        assertEquals(10, json.get("averageQueueWaitMillis").getAsDouble(), 0);
+        assertEquals(20, json.get("maxQueueWaitMillis").getAsLong());
+    }
+}
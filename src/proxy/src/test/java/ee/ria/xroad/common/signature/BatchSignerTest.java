@@ -0,0 +1,274 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.signature;
+
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.signature.BatchSigner.SigningRequestWrapper;
+import ee.ria.xroad.common.util.MessageFileNames;
+import ee.ria.xroad.signer.protocol.message.Sign;
+import ee.ria.xroad.signer.protocol.message.SignResponse;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.pattern.Patterns;
+import akka.testkit.TestProbe;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.Future;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.SHA512WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA512_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the batching of the signing requests with a fake signer.
+ */
+public class BatchSignerTest {
+
+    private static final String KEY_ID = "consumer";
+
+    private static final FiniteDuration TIMEOUT = Duration.create(5, TimeUnit.SECONDS);
+
+    private static final FiniteDuration NO_MESSAGE_TIMEOUT = Duration.create(300, TimeUnit.MILLISECONDS);
+
+    private static final byte[] SIGNATURE_VALUE = new byte[256];
+
+    private static ActorSystem actorSystem;
+
+    private static X509Certificate signingCert;
+
+    private TestProbe signer;
+
+    /**
+     * Test that a batch holds at most the maximum number of requests.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void boundBatchSize() throws Exception {
+        // the linger time is long, so the batches are sent only when they are full
+        ActorRef batchSigner = createBatchSigner(3, 60000, 1);
+
+        List<Future<Object>> results = sign(batchSigner, 7);
+
+        ActorRef operation = expectSign();
+        signer.expectNoMsg(NO_MESSAGE_TIMEOUT);
+        reply(operation);
+
+        assertBatch(results.subList(0, 3));
+
+        // the second batch is started as the first batch is completed
+        reply(expectSign());
+
+        assertBatch(results.subList(3, 6));
+
+        // the last request waits for more requests
+        signer.expectNoMsg(NO_MESSAGE_TIMEOUT);
+        assertFalse(results.get(6).isCompleted());
+    }
+
+    /**
+     * Test that a partial batch is signed once the oldest request has lingered for the linger time.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void flushPartialBatchAfterLingerTime() throws Exception {
+        ActorRef batchSigner = createBatchSigner(10, 500, 1);
+
+        long start = System.currentTimeMillis();
+        List<Future<Object>> results = sign(batchSigner, 2);
+
+        ActorRef operation = expectSign();
+
+        assertFalse(System.currentTimeMillis() - start < 500);
+
+        reply(operation);
+
+        assertBatch(results);
+    }
+
+    /**
+     * Test that requests are signed right away when there is no linger time.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void signWithoutLingerTime() throws Exception {
+        ActorRef batchSigner = createBatchSigner(10, 0, 1);
+
+        List<Future<Object>> results = sign(batchSigner, 1);
+
+        reply(expectSign());
+
+        SignatureData signatureData = (SignatureData) Await.result(results.get(0), TIMEOUT);
+
+        assertNotNull(signatureData.getSignatureXml());
+        assertNull(signatureData.getHashChain());
+    }
+
+    /**
+     * Test that at most the maximum number of batches are signed concurrently.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void limitConcurrentOperations() throws Exception {
+        ActorRef batchSigner = createBatchSigner(1, 0, 2);
+
+        List<Future<Object>> results = sign(batchSigner, 3);
+
+        ActorRef first = expectSign();
+        ActorRef second = expectSign();
+        signer.expectNoMsg(NO_MESSAGE_TIMEOUT);
+
+        reply(second);
+
+        // a completed operation frees a slot for the waiting request
+        ActorRef third = expectSign();
+
+        reply(first);
+        reply(third);
+
+        for (Future<Object> result : results) {
+            assertNull(((SignatureData) Await.result(result, TIMEOUT)).getHashChain());
+        }
+    }
+
+    private ActorRef createBatchSigner(int maxBatchSize, int lingerTimeMillis, int maxConcurrentOperations) {
+        BatchSigner.Config config = new BatchSigner.Config(maxBatchSize, lingerTimeMillis, maxConcurrentOperations,
+                new FakeSigner(signer.ref()));
+
+        return actorSystem.actorOf(Props.create(BatchSigner.class, config));
+    }
+
+    private static List<Future<Object>> sign(ActorRef batchSigner, int count) throws Exception {
+        List<Future<Object>> results = new ArrayList<>();
+
+        for (int i = 0; i < count; i++) {
+            byte[] message = ("message " + i).getBytes();
+            MessagePart part = new MessagePart(MessageFileNames.MESSAGE, SHA512_ID,
+                    calculateDigest(SHA512_ID, message), message);
+
+            SigningRequest request = new SigningRequest(signingCert, Collections.singletonList(part));
+
+            results.add(Patterns.ask(batchSigner, new SigningRequestWrapper(KEY_ID, SHA512WITHRSA_ID, request),
+                    TIMEOUT.toMillis()));
+        }
+
+        return results;
+    }
+
+    private ActorRef expectSign() {
+        signer.expectMsgClass(TIMEOUT, Sign.class);
+
+        return signer.lastSender();
+    }
+
+    private static void reply(ActorRef operation) {
+        operation.tell(new SignResponse(SIGNATURE_VALUE), ActorRef.noSender());
+    }
+
+    // All requests of the batch get the same signature with their own hash chain.
+    private static void assertBatch(List<Future<Object>> results) throws Exception {
+        String signatureXml = null;
+
+        for (Future<Object> result : results) {
+            SignatureData signatureData = (SignatureData) Await.result(result, TIMEOUT);
+
+            assertNotNull(signatureData.getHashChain());
+
+            if (signatureXml == null) {
+                signatureXml = signatureData.getSignatureXml();
+            } else {
+                assertEquals(signatureXml, signatureData.getSignatureXml());
+            }
+        }
+    }
+
+    /**
+     * Creates the fake signer.
+     */
+    @Before
+    public void startup() {
+        signer = new TestProbe(actorSystem);
+    }
+
+    /**
+     * Creates the actor system and loads the signing certificate.
+     */
+    @BeforeClass
+    public static void setUp() {
+        TestSecurityUtil.initSecurity();
+
+        signingCert = TestCertUtil.getConsumer().certChain[0];
+
+        actorSystem = ActorSystem.create();
+    }
+
+    /**
+     * Shuts down the actor system.
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void shutdown() throws Exception {
+        Await.ready(actorSystem.terminate(), Duration.Inf());
+    }
+
+    /**
+     * Signer that supports batch signing and relays the signing requests to the test probe.
+     */
+    private static class FakeSigner implements BatchSigner.SignerConnection {
+
+        private final ActorRef probe;
+
+        FakeSigner(ActorRef probe) {
+            this.probe = probe;
+        }
+
+        @Override
+        public Boolean isBatchSigningEnabled(String keyId) {
+            return Boolean.TRUE;
+        }
+
+        @Override
+        public void sign(Sign message, ActorRef receiver) {
+            probe.tell(message, receiver);
+        }
+    }
+}
@@ -31,19 +31,32 @@ import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MessageFileNames;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.xml.security.signature.XMLSignature;
+import org.apache.xml.security.signature.XMLSignatureInput;
+import org.apache.xml.security.utils.resolver.ResourceResolverContext;
+import org.apache.xml.security.utils.resolver.ResourceResolverSpi;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
 import org.bouncycastle.cert.ocsp.CertificateStatus;
 import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.joda.time.DateTime;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.FileInputStream;
 import java.io.InputStream;
+import java.math.BigInteger;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
@@ -51,8 +64,10 @@ import java.util.Date;
 import static java.nio.file.StandardOpenOption.CREATE;
 import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test to verify correct signature builder behavior.
@@ -167,4 +182,60 @@ public class SignatureBuilderTest {
                     data.getHashChain().getBytes("UTF-8"), CREATE, WRITE, TRUNCATE_EXISTING);
         }
     }
+
+    /**
+     * Test to ensure signature created with an EC key is built successfully and its
+     * signature value can be verified.
+     * @throws Exception in case of any unexpected error
+     */
+    @Test
+    public void buildSuccessfullyWithEcKey() throws Exception {
+        byte[] messageBytes = fileToBytes("message-0.xml");
+
+        MessagePart hash = new MessagePart(MessageFileNames.MESSAGE, CryptoUtils.SHA512_ID,
+                CryptoUtils.calculateDigest(CryptoUtils.SHA512_ID, messageBytes), messageBytes);
+
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        KeyPair keyPair = generator.generateKeyPair();
+        X509Certificate cert = createCertificate(keyPair);
+
+        SignatureBuilder builder = new SignatureBuilder();
+        builder.addPart(hash);
+        builder.setSigningCert(cert);
+
+        SignatureData data = builder.build(new TestSigningKey(keyPair.getPrivate()), CryptoUtils.SHA256_ID);
+
+        Signature signature = new Signature(data.getSignatureXml());
+        XMLSignature xmlSignature = signature.getXmlSignature();
+
+        assertEquals(XMLSignature.ALGO_ID_SIGNATURE_ECDSA_SHA256, xmlSignature.getSignedInfo().getSignatureMethodURI());
+
+        xmlSignature.addResourceResolver(new IdResolver(signature.getDocument()));
+        xmlSignature.addResourceResolver(new ResourceResolverSpi() {
+            @Override
+            public boolean engineCanResolveURI(ResourceResolverContext context) {
+                return MessageFileNames.MESSAGE.equals(context.attr.getValue());
+            }
+
+            @Override
+            public XMLSignatureInput engineResolveURI(ResourceResolverContext context) {
+                return new XMLSignatureInput(messageBytes);
+            }
+        });
+
+        assertTrue(xmlSignature.checkSignatureValue(cert));
+    }
+
+    private static X509Certificate createCertificate(KeyPair keyPair) throws Exception {
+        X500Name name = new X500Name("CN=ec-signer");
+        Date notBefore = new Date();
+        Date notAfter = new DateTime(notBefore).plusDays(1).toDate();
+
+        ContentSigner signer = new JcaContentSignerBuilder(CryptoUtils.SHA256WITHECDSA_ID).build(keyPair.getPrivate());
+
+        return new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(name, BigInteger.ONE,
+                notBefore, notAfter, name, keyPair.getPublic()).build(signer));
+    }
 }
@@ -32,14 +32,13 @@ import lombok.extern.slf4j.Slf4j;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
 
 /**
  * Signing key that is located in PKCS12 key store.
  */
 @Slf4j
 public class TestSigningKey implements SigningKey {
-    private static final String SIGNING_MECHANISM_NAME = CryptoUtils.CKM_RSA_PKCS_NAME;
-
     /** The private key. */
     private final PrivateKey key;
 
@@ -79,7 +78,10 @@ public class TestSigningKey implements SigningKey {
         return signature.sign();
     }
 
-    private static String getSignatureAlgorithmId(String digestAlgorithmId) throws NoSuchAlgorithmException {
-        return CryptoUtils.getSignatureAlgorithmId(digestAlgorithmId, SIGNING_MECHANISM_NAME);
+    private String getSignatureAlgorithmId(String digestAlgorithmId) throws NoSuchAlgorithmException {
+        String signMechanismName = key instanceof ECPrivateKey
+                ? CryptoUtils.CKM_ECDSA_NAME : CryptoUtils.CKM_RSA_PKCS_NAME;
+
+        return CryptoUtils.getSignatureAlgorithmId(digestAlgorithmId, signMechanismName);
     }
 }
@@ -30,10 +30,24 @@ import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Set;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -48,15 +62,21 @@ public class AntiDosConnectionManagerTest {
         KNOWN_ADDRESSES.add("test3");
     }
 
+    private static final long TIMEOUT_MILLIS = 10000;
+
     /**
      * Set up configuration.
      */
     @BeforeClass
     public static void reloadGlobalConf() {
+        reloadGlobalConf(KNOWN_ADDRESSES);
+    }
+
+    private static void reloadGlobalConf(Set<String> knownAddresses) {
         GlobalConf.reload(new EmptyGlobalConf() {
             @Override
             public Set<String> getKnownAddresses() {
-                return KNOWN_ADDRESSES;
+                return knownAddresses;
             }
         });
     }
@@ -156,6 +176,159 @@ public class AntiDosConnectionManagerTest {
         cm.assertEmpty();
     }
 
+    /**
+     * Test to ensure no connection is lost or handed out twice when
+     * connections are accepted and taken concurrently.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void concurrentAcceptAndTake() throws Exception {
+        final int producers = 4;
+        final int consumers = 2;
+        final int connectionsPerProducer = 5000;
+        final String[] addresses = {"test1", "test2", "test3", "attacker1"};
+
+        FixedResourcesConnectionManager cm =
+                new FixedResourcesConnectionManager(
+                        new TestConfiguration(5, 1.1));
+        cm.init();
+
+        List<List<TestSocketChannel>> produced = new ArrayList<>();
+        for (int i = 0; i < producers; i++) {
+            List<TestSocketChannel> connections = new ArrayList<>();
+            for (int j = 0; j < connectionsPerProducer; j++) {
+                connections.add(
+                        createConnection(addresses[j % addresses.length]));
+            }
+
+            produced.add(connections);
+        }
+
+        int total = producers * connectionsPerProducer;
+
+        List<Callable<List<TestSocketChannel>>> tasks = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            tasks.add(() -> {
+                List<TestSocketChannel> taken = new ArrayList<>();
+                for (int j = 0; j < total / consumers; j++) {
+                    taken.add(cm.takeNextConnection());
+                }
+
+                return taken;
+            });
+        }
+
+        for (List<TestSocketChannel> connections : produced) {
+            tasks.add(() -> {
+                connections.forEach(cm::accept);
+                return Collections.emptyList();
+            });
+        }
+
+        Set<TestSocketChannel> taken =
+                Collections.newSetFromMap(new IdentityHashMap<>());
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<Future<List<TestSocketChannel>>> results =
+                    tasks.stream().map(executor::submit).collect(
+                            Collectors.toList());
+
+            for (Future<List<TestSocketChannel>> result : results) {
+                // Times out if a connection was lost in the handoff
+                for (TestSocketChannel connection : result.get(
+                        TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    assertTrue("Connection taken twice: " + connection,
+                            taken.add(connection));
+                }
+            }
+
+            assertEquals(total, taken.size());
+            produced.forEach(connections ->
+                    connections.forEach(c -> assertTrue(taken.contains(c))));
+
+            assertEquals(0, cm.activePartners.size());
+
+            // No partner may be left marked active without being buffered,
+            // otherwise its next connection would never be handed out.
+            for (String address : addresses) {
+                TestSocketChannel connection = createConnection(address);
+                cm.accept(connection);
+
+                assertSame(connection, executor.submit(
+                        cm::takeNextConnection).get(
+                                TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+            }
+
+            assertEquals(0, cm.activePartners.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test to ensure the background ticker refreshes the resource usage
+     * without explicit sampling and stops refreshing once stopped.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void tickerSamplesResources() throws Exception {
+        FixedResourcesConnectionManager cm =
+                new FixedResourcesConnectionManager(createTickerConfiguration());
+        cm.init();
+
+        cm.freeFileHandles = 10;
+        assertTrue(cm.canAccept());
+
+        cm.start();
+        try {
+            cm.freeFileHandles = 0;
+            awaitTrue(() -> !cm.canAccept());
+
+            cm.freeFileHandles = 10;
+            awaitTrue(cm::canAccept);
+        } finally {
+            cm.stop();
+        }
+
+        // Give a running tick the chance to finish
+        Thread.sleep(100);
+
+        cm.freeFileHandles = 0;
+        Thread.sleep(100);
+
+        assertTrue(cm.canAccept());
+    }
+
+    /**
+     * Test to ensure the background ticker picks up the changes in the
+     * known member addresses.
+     * @throws Exception in case of any unexpected errors
+     */
+    @Test
+    public void tickerSyncsKnownAddresses() throws Exception {
+        FixedResourcesConnectionManager cm =
+                new FixedResourcesConnectionManager(createTickerConfiguration());
+        cm.init();
+
+        assertFalse(cm.database.containsKey("test4"));
+
+        Set<String> knownAddresses = new HashSet<>(KNOWN_ADDRESSES);
+        knownAddresses.add("test4");
+        knownAddresses.remove("test3");
+
+        cm.start();
+        try {
+            reloadGlobalConf(knownAddresses);
+
+            awaitTrue(() -> cm.database.containsKey("test4")
+                    && !cm.database.containsKey("test3"));
+        } finally {
+            cm.stop();
+            reloadGlobalConf(KNOWN_ADDRESSES);
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     private static TestConnectionManager createConnectionManager(
@@ -170,4 +343,53 @@ public class AntiDosConnectionManagerTest {
     private static TestSocketChannel createConnection(String address) {
         return new TestSocketChannel(address);
     }
+
+    private static TestConfiguration createTickerConfiguration() {
+        return new TestConfiguration(5, 1.1) {
+            @Override
+            long getResourceSamplingInterval() {
+                return 10;
+            }
+        };
+    }
+
+    private static void awaitTrue(BooleanSupplier condition)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Condition not met in " + TIMEOUT_MILLIS + " ms",
+                    System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Connection manager with the resource usage controlled by the test.
+     * Unlike {@link TestConnectionManager}, it samples the resources
+     * only when asked to or on the ticker.
+     */
+    private static class FixedResourcesConnectionManager
+            extends AntiDosConnectionManager<TestSocketChannel> {
+
+        volatile long freeFileHandles = 100;
+
+        FixedResourcesConnectionManager(TestConfiguration configuration) {
+            super(configuration);
+        }
+
+        @Override
+        protected long getFreeFileDescriptorCount() {
+            return freeFileHandles;
+        }
+
+        @Override
+        protected double getCpuLoad() {
+            return 0;
+        }
+
+        @Override
+        protected double getHeapUsage() {
+            return 0;
+        }
+    }
 }
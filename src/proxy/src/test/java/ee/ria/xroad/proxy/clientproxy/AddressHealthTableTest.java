@@ -0,0 +1,199 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.FastestConnectionSelectingSSLSocketFactoryConnectionCacheTest.FakeTicker;
+import ee.ria.xroad.proxy.clientproxy.FastestSocketSelector.SocketInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the address selection of the address health table.
+ */
+public class AddressHealthTableTest {
+
+    private static final long PROBE_INTERVAL_SECONDS = 60;
+
+    private static final URI ADDRESS_A = URI.create("https://10.0.0.1:5500");
+    private static final URI ADDRESS_B = URI.create("https://10.0.0.2:5500");
+    private static final URI ADDRESS_C = URI.create("https://10.0.0.3:5500");
+
+    private static final URI[] TARGET = {ADDRESS_A, ADDRESS_B, ADDRESS_C};
+
+    private FakeTicker ticker;
+    private AddressHealthTable table;
+
+    /**
+     * Before
+     */
+    @Before
+    public void setUp() {
+        ticker = new FakeTicker();
+        table = new AddressHealthTable(PROBE_INTERVAL_SECONDS, TimeUnit.SECONDS, ticker);
+    }
+
+    @Test
+    public void probesUnknownTarget() {
+        assertNull(table.selectBest(TARGET));
+        // nothing is known about the addresses yet
+        assertNull(table.selectBest(TARGET));
+    }
+
+    @Test
+    public void selectsAddressWithLowestLatency() {
+        probe(20, 5, 50);
+
+        assertEquals(ADDRESS_B, table.selectBest(TARGET));
+        // the order of the addresses does not matter
+        assertEquals(ADDRESS_B, table.selectBest(new URI[] {ADDRESS_C, ADDRESS_B, ADDRESS_A}));
+    }
+
+    @Test
+    public void followsChangingLatency() {
+        probe(20, 5, 50);
+
+        for (int i = 0; i < 5; i++) {
+            table.recordConnect(ADDRESS_B, millis(100));
+        }
+
+        assertEquals(ADDRESS_A, table.selectBest(TARGET));
+    }
+
+    @Test
+    public void backsOffFailingAddress() {
+        probe(20, 5, 50);
+
+        table.recordFailure(ADDRESS_B);
+
+        assertEquals(ADDRESS_A, table.selectBest(TARGET));
+
+        ticker.advance(AddressHealthTable.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(ADDRESS_B, table.selectBest(TARGET));
+
+        // the backoff doubles with consecutive failures
+        table.recordFailure(ADDRESS_B);
+        ticker.advance(AddressHealthTable.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(ADDRESS_A, table.selectBest(TARGET));
+
+        ticker.advance(AddressHealthTable.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(ADDRESS_B, table.selectBest(TARGET));
+
+        // a successful connection resets the backoff
+        table.recordConnect(ADDRESS_B, millis(5));
+        table.recordFailure(ADDRESS_B);
+        ticker.advance(AddressHealthTable.MIN_BACKOFF_MILLIS, TimeUnit.MILLISECONDS);
+
+        assertEquals(ADDRESS_B, table.selectBest(TARGET));
+    }
+
+    @Test
+    public void probesAllAddressesPeriodically() {
+        probe(20, 5, 50);
+
+        ticker.advance(PROBE_INTERVAL_SECONDS - 1, TimeUnit.SECONDS);
+
+        assertEquals(ADDRESS_B, table.selectBest(TARGET));
+
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        // only one request probes, the others keep using the best address
+        assertNull(table.selectBest(TARGET));
+        assertEquals(ADDRESS_B, table.selectBest(TARGET));
+    }
+
+    @Test
+    public void exposesMetrics() {
+        probe(20, 5, 50);
+
+        table.recordFailure(ADDRESS_C);
+
+        AddressHealthTable.AddressMetrics metrics = table.getMetrics().stream()
+                .filter(m -> ADDRESS_C.equals(m.getAddress()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No metrics for " + ADDRESS_C));
+
+        assertEquals(50, metrics.getAverageConnectMillis(), 0.001);
+        assertEquals(1, metrics.getConnects());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(1, metrics.getConsecutiveFailures());
+        assertEquals(AddressHealthTable.MIN_BACKOFF_MILLIS, metrics.getBackoffRemainingMillis());
+        assertEquals(3, table.getMetrics().size());
+    }
+
+    @Test
+    public void recordsFailedAddressesOfLocalListeners() throws Exception {
+        try (ServerSocket listener = new ServerSocket(0)) {
+            URI listening = URI.create("https://127.0.0.1:" + listener.getLocalPort());
+            URI closed = URI.create("https://127.0.0.1:" + getUnusedPort());
+
+            FastestSocketSelector selector = new FastestSocketSelector(new URI[] {closed, listening}, 5000);
+            SocketInfo selected = selector.select();
+
+            assertNotNull(selected);
+
+            try {
+                assertEquals(listening, selected.getUri());
+            } finally {
+                selected.getSocket().close();
+            }
+
+            selector = new FastestSocketSelector(new URI[] {closed}, 1000);
+
+            assertNull(selector.select());
+            assertTrue(selector.getFailedAddresses().contains(closed));
+        }
+    }
+
+    private void probe(long latencyA, long latencyB, long latencyC) {
+        assertNull(table.selectBest(TARGET));
+
+        table.recordConnect(ADDRESS_A, millis(latencyA));
+        table.recordConnect(ADDRESS_B, millis(latencyB));
+        table.recordConnect(ADDRESS_C, millis(latencyC));
+    }
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    private static int getUnusedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
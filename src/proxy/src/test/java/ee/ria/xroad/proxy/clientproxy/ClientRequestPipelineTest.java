@@ -0,0 +1,235 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.clientproxy;
+
+import ee.ria.xroad.proxy.clientproxy.ClientRequestPipeline.RequestProcessor;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that the client request pipeline does not hold a thread per slow client.
+ */
+@Slf4j
+public class ClientRequestPipelineTest {
+
+    private static final int CLIENT_COUNT = 500;
+    private static final int WORKER_COUNT = 4;
+
+    private static final String BODY_START = "01234";
+    private static final String BODY_END = "56789";
+
+    private Server server;
+    private ClientRequestPipeline pipeline;
+
+    /**
+     * Stops the server.
+     * @throws Exception in case of any errors
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (server != null) {
+            server.stop();
+        }
+
+        if (pipeline != null) {
+            pipeline.shutdown();
+        }
+    }
+
+    /**
+     * Opens connections that send the request body slowly and checks that
+     * the server does not use a thread per connection while the requests are
+     * being received. Reports the latency of the requests after the bodies
+     * are completed.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void slowClientsDoNotHoldThreads() throws Exception {
+        int port = startServer(WORKER_COUNT, CLIENT_COUNT, (request, response) -> {
+            byte[] body = IOUtils.toByteArray(request.getInputStream());
+
+            response.setContentType("text/plain");
+            response.getOutputStream().write(body);
+        });
+
+        QueuedThreadPool threadPool = (QueuedThreadPool) server.getThreadPool();
+        int idleBusyThreads = threadPool.getBusyThreads();
+
+        List<Socket> clients = new ArrayList<>(CLIENT_COUNT);
+
+        try {
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                Socket client = new Socket("localhost", port);
+                send(client, requestHeader(BODY_START.length() + BODY_END.length()) + BODY_START);
+                clients.add(client);
+            }
+
+            // give the server time to read what has been sent so far
+            TimeUnit.MILLISECONDS.sleep(500);
+
+            int busyThreads = threadPool.getBusyThreads();
+
+            log.info("{} slow clients connected, busy server threads: {} (idle server: {}), JVM threads: {}",
+                    CLIENT_COUNT, busyThreads, idleBusyThreads, Thread.activeCount());
+
+            // a blocking server would use a thread for each client (up to the thread pool limit)
+            assertTrue("Server threads are blocked by slow clients: " + busyThreads,
+                    busyThreads - idleBusyThreads < CLIENT_COUNT / 4);
+            assertEquals(0, pipeline.getActiveCount());
+
+            long[] latencies = new long[CLIENT_COUNT];
+
+            for (int i = 0; i < CLIENT_COUNT; i++) {
+                long start = System.nanoTime();
+
+                Socket client = clients.get(i);
+                send(client, BODY_END);
+
+                String response = readResponse(client);
+                latencies[i] = System.nanoTime() - start;
+
+                assertTrue(response, response.startsWith("HTTP/1.1 200"));
+                assertTrue(response, response.endsWith(BODY_START + BODY_END));
+            }
+
+            Arrays.sort(latencies);
+
+            log.info("Request latency after the body was completed: p50 {} us, p99 {} us",
+                    TimeUnit.NANOSECONDS.toMicros(latencies[CLIENT_COUNT / 2]),
+                    TimeUnit.NANOSECONDS.toMicros(latencies[CLIENT_COUNT * 99 / 100]));
+        } finally {
+            for (Socket client : clients) {
+                IOUtils.closeQuietly(client);
+            }
+        }
+    }
+
+    /**
+     * Checks that requests are rejected when all the workers are busy and
+     * the queue is full.
+     * @throws Exception in case of any errors
+     */
+    @Test
+    public void rejectsRequestsWhenQueueIsFull() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+
+        int port = startServer(1, 1, (request, response) -> {
+            started.countDown();
+            release.await();
+
+            response.getOutputStream().write(IOUtils.toByteArray(request.getInputStream()));
+        });
+
+        try (Socket first = new Socket("localhost", port);
+                Socket queued = new Socket("localhost", port);
+                Socket rejected = new Socket("localhost", port)) {
+            send(first, requestHeader(BODY_START.length()) + BODY_START);
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+
+            send(queued, requestHeader(BODY_START.length()) + BODY_START);
+            // wait until the second request is in the queue
+            while (pipeline.getQueuedCount() == 0) {
+                TimeUnit.MILLISECONDS.sleep(10);
+            }
+
+            send(rejected, requestHeader(BODY_START.length()) + BODY_START);
+            assertTrue(readResponse(rejected).startsWith("HTTP/1.1 503"));
+
+            release.countDown();
+
+            assertTrue(readResponse(first).endsWith(BODY_START));
+            assertTrue(readResponse(queued).endsWith(BODY_START));
+        }
+    }
+
+    private int startServer(int workerCount, int queueSize, RequestProcessor processor) throws Exception {
+        pipeline = new ClientRequestPipeline(workerCount, queueSize);
+
+        server = new Server();
+
+        ServerConnector connector = new ServerConnector(server);
+        connector.setHost("localhost");
+        connector.setPort(0);
+        server.addConnector(connector);
+
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request,
+                    HttpServletResponse response) throws IOException {
+                baseRequest.setHandled(true);
+
+                pipeline.submit(request, response, processor);
+            }
+        });
+
+        server.start();
+
+        return connector.getLocalPort();
+    }
+
+    private static String requestHeader(int contentLength) {
+        return "POST / HTTP/1.1\r\n"
+                + "Host: localhost\r\n"
+                + "Content-Type: text/plain\r\n"
+                + "Content-Length: " + contentLength + "\r\n"
+                + "Connection: close\r\n"
+                + "\r\n";
+    }
+
+    private static void send(Socket client, String data) throws IOException {
+        OutputStream out = client.getOutputStream();
+        out.write(data.getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    private static String readResponse(Socket client) throws IOException {
+        return new String(IOUtils.toByteArray(client.getInputStream()), StandardCharsets.US_ASCII);
+    }
+}
@@ -22,13 +22,12 @@
  */
 package ee.ria.xroad.proxy.conf;
 
+import ee.ria.xroad.common.conf.globalconf.AuthKey;
 import ee.ria.xroad.common.identifier.ClientId;
-import ee.ria.xroad.common.util.FileContentChangeChecker;
 
 import lombok.extern.slf4j.Slf4j;
 import org.junit.Test;
 
-import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -65,6 +64,23 @@ public class CachingKeyConfImplTest {
     public static final int NO_DELAY = 0;
 
 
+    @Test
+    public void testCacheMetrics() throws Exception {
+        long invalidations = KeyConf.getCacheMetrics().getInvalidations();
+        long signingInfoMisses = KeyConf.getCacheMetrics().getSigningInfoMisses();
+        long signingInfoHits = KeyConf.getCacheMetrics().getSigningInfoHits();
+
+        // one miss and one hit
+        doConcurrentSigningInfoReads(new AtomicInteger(0), Arrays.asList(ClientId.create("FI", "GOV", "3")),
+                UNCHANGED_KEY_CONF, VALID_AUTH_KEY, VALID_SIGNING_INFO, NO_LOOPING, 2, NO_DELAY);
+        CachingKeyConfImpl.keyConfChanged();
+
+        KeyConf.CacheMetrics metrics = KeyConf.getCacheMetrics();
+        assertEquals(invalidations + 1, metrics.getInvalidations());
+        assertEquals(signingInfoMisses + 1, metrics.getSigningInfoMisses());
+        assertEquals(signingInfoHits + 1, metrics.getSigningInfoHits());
+    }
+
     @Test(timeout = 5000)
     public void testSigningInfoReads() throws Exception {
         CachingKeyConfImpl.invalidateCaches();
@@ -332,19 +348,31 @@ public class CachingKeyConfImplTest {
         }
 
         @Override
-        protected FileContentChangeChecker getKeyConfChangeChecker() throws Exception {
-            return new FileContentChangeChecker("dummyFileName") {
-                @Override
-                protected String calculateConfFileChecksum(File file) throws Exception {
-                    return "dummyChecksum";
-                }
+        protected void startKeyConfChangeMonitor() {
+            // key conf changes are simulated by simulateKeyConfChange()
+        }
 
-                @Override
-                public boolean hasChanged() throws Exception {
-                    log.debug("asking if key conf has changed, answer: " + keyConfHasChanged.getAsBoolean());
-                    return keyConfHasChanged.getAsBoolean();
-                }
-            };
+        /**
+         * Simulates the key conf change monitor noticing a change just before a cache read
+         */
+        private void simulateKeyConfChange() {
+            boolean changed = keyConfHasChanged.getAsBoolean();
+            log.debug("simulating key conf change check, changed: " + changed);
+            if (changed) {
+                CachingKeyConfImpl.keyConfChanged();
+            }
+        }
+
+        @Override
+        public SigningCtx getSigningCtx(ClientId clientId) {
+            simulateKeyConfChange();
+            return super.getSigningCtx(clientId);
+        }
+
+        @Override
+        public AuthKey getAuthKey() {
+            simulateKeyConfChange();
+            return super.getAuthKey();
         }
 
         private void delay(long delayMs) throws Exception {
@@ -0,0 +1,279 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.OcspResponsesUpdated;
+import ee.ria.xroad.signer.protocol.message.SubscribeOcspResponses;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.TestProbe;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the subscription of the proxy OCSP response cache to the OCSP response updates of the signer.
+ */
+public class OcspResponseCacheTest {
+
+    private static final FiniteDuration SUBSCRIBE_INTERVAL = Duration.create(200, TimeUnit.MILLISECONDS);
+    private static final FiniteDuration TIMEOUT = Duration.create(5, TimeUnit.SECONDS);
+
+    private static ActorSystem actorSystem;
+
+    private static X509Certificate issuer;
+    private static X509Certificate subject;
+    private static OCSPResp issuerResponse;
+    private static OCSPResp subjectResponse;
+
+    private TestProbe signer;
+    private TestProbe publisher;
+    private ActorRef subscriber;
+
+    /**
+     * Test that the subscriber keeps subscribing until the signer has confirmed the subscription.
+     */
+    @Test
+    public void resubscribeUntilSubscribed() throws Exception {
+        subscriber = actorSystem.actorOf(Props.create(TestSubscriber.class, signer.ref()));
+
+        signer.expectMsgClass(TIMEOUT, SubscribeOcspResponses.class);
+        signer.expectMsgClass(TIMEOUT, SubscribeOcspResponses.class);
+
+        subscriber.tell(update("foo", subjectResponse), publisher.ref());
+        awaitCached("foo");
+        drainSubscribeRequests();
+
+        signer.expectNoMsg(SUBSCRIBE_INTERVAL.mul(3));
+    }
+
+    /**
+     * Test that the responses pushed by the signer are cached.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void cachePushedResponses() throws Exception {
+        subscribe(update());
+
+        subscriber.tell(update("foo", subjectResponse), publisher.ref());
+
+        assertArrayEquals(subjectResponse.getEncoded(), awaitCached("foo").getEncoded());
+    }
+
+    /**
+     * Test that the cache is cleared and the subscription renewed when the signer goes away.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void clearCacheWhenSignerTerminates() throws Exception {
+        subscribe(update("foo", subjectResponse));
+
+        assertNotNull(awaitCached("foo"));
+        drainSubscribeRequests();
+
+        actorSystem.stop(publisher.ref());
+
+        // the subscription is renewed only after the terminated publisher has been handled
+        signer.expectMsgClass(TIMEOUT, SubscribeOcspResponses.class);
+
+        assertNull(OcspResponseCache.get("foo"));
+    }
+
+    /**
+     * Test that the key configuration reads the cached responses first and asks the signer only for the missing ones.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void queryOnlyMissingResponsesFromSigner() throws Exception {
+        OcspResponseCache.put(calculateCertHexHash(subject), subjectResponse);
+
+        List<String[]> requests = new ArrayList<>();
+
+        KeyConfImpl keyConf = new KeyConfImpl() {
+            @Override
+            GetOcspResponsesResponse requestOcspResponses(GetOcspResponses message) {
+                requests.add(message.getCertHash());
+
+                return new GetOcspResponsesResponse(new byte[][] {encode(issuerResponse)});
+            }
+        };
+
+        List<OCSPResp> responses = keyConf.getOcspResponses(Arrays.asList(subject, issuer));
+
+        assertEquals(1, requests.size());
+        assertArrayEquals(new String[] {calculateCertHexHash(issuer)}, requests.get(0));
+        assertArrayEquals(subjectResponse.getEncoded(), responses.get(0).getEncoded());
+        assertArrayEquals(issuerResponse.getEncoded(), responses.get(1).getEncoded());
+
+        // the response received from the signer is cached as well
+        assertArrayEquals(issuerResponse.getEncoded(), keyConf.getOcspResponse(issuer).getEncoded());
+        assertEquals(1, requests.size());
+    }
+
+    private void subscribe(OcspResponsesUpdated initialUpdate) {
+        subscriber = actorSystem.actorOf(Props.create(TestSubscriber.class, signer.ref()));
+
+        signer.expectMsgClass(TIMEOUT, SubscribeOcspResponses.class);
+        subscriber.tell(initialUpdate, publisher.ref());
+    }
+
+    private void drainSubscribeRequests() {
+        // requests sent before the subscription was confirmed
+        while (signer.msgAvailable()) {
+            signer.receiveOne(Duration.Zero());
+        }
+    }
+
+    private static OCSPResp awaitCached(String certHash) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+
+        OCSPResp response = OcspResponseCache.get(certHash);
+        while (response == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+            response = OcspResponseCache.get(certHash);
+        }
+
+        return response;
+    }
+
+    private static OcspResponsesUpdated update(Object... hashesAndResponses) {
+        String[] certHashes = new String[hashesAndResponses.length / 2];
+        byte[][] ocspResponses = new byte[certHashes.length][];
+
+        for (int i = 0; i < certHashes.length; i++) {
+            certHashes[i] = (String) hashesAndResponses[2 * i];
+            ocspResponses[i] = encode((OCSPResp) hashesAndResponses[2 * i + 1]);
+        }
+
+        return new OcspResponsesUpdated(certHashes, ocspResponses);
+    }
+
+    private static byte[] encode(OCSPResp response) {
+        try {
+            return response.getEncoded();
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Creates the probes standing in for the signer.
+     */
+    @Before
+    public void startup() {
+        OcspResponseCache.clear();
+
+        signer = new TestProbe(actorSystem);
+        publisher = new TestProbe(actorSystem);
+    }
+
+    /**
+     * Stops the subscriber.
+     */
+    @After
+    public void afterTest() {
+        if (subscriber != null) {
+            actorSystem.stop(subscriber);
+        }
+    }
+
+    /**
+     * Creates the actor system and the test OCSP responses.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void loadCerts() throws Exception {
+        GlobalConf.reload(new EmptyGlobalConf());
+
+        issuer = TestCertUtil.getCertChainCert("root_ca.p12");
+        subject = TestCertUtil.getCertChainCert("user_0.p12");
+        PrivateKey signerKey = TestCertUtil.getCertChainKey("root_ca.p12");
+
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+        issuerResponse = OcspTestUtils.createOCSPResponse(issuer, issuer, issuer, signerKey, CertificateStatus.GOOD,
+                thisUpdate, null);
+        subjectResponse = OcspTestUtils.createOCSPResponse(subject, issuer, issuer, signerKey, CertificateStatus.GOOD,
+                thisUpdate, null);
+
+        actorSystem = ActorSystem.create();
+    }
+
+    /**
+     * Shuts down the actor system.
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void shutdown() throws Exception {
+        OcspResponseCache.clear();
+
+        Await.ready(actorSystem.terminate(), Duration.Inf());
+    }
+
+    static class TestSubscriber extends OcspResponseCache.Subscriber {
+
+        private final ActorRef signerProbe;
+
+        TestSubscriber(ActorRef signerProbe) {
+            super(SUBSCRIBE_INTERVAL);
+
+            this.signerProbe = signerProbe;
+        }
+
+        @Override
+        void requestSubscription(SubscribeOcspResponses message) {
+            signerProbe.tell(message, getSelf());
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.TestSecurityUtil;
+import ee.ria.xroad.common.conf.globalconf.ConfigurationDirectoryV2;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfImpl;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AuthCertVerificationCache}.
+ */
+public class AuthCertVerificationCacheTest {
+
+    private static final int OCSP_FRESHNESS_SECONDS = 600;
+
+    private static final String GOOD_CONF_DIR = "../common-util/src/test/resources/globalconf_good_v2";
+
+    private static X509Certificate subject;
+    private static X509Certificate issuer;
+
+    /**
+     * Loads the certificates used in the tests.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void loadCertificates() throws Exception {
+        TestSecurityUtil.initSecurity();
+
+        issuer = TestCertUtil.getCertChainCert("root_ca.p12");
+        subject = TestCertUtil.getCertChainCert("user_0.p12");
+    }
+
+    /**
+     * Test that verifications are looked up by value and dropped when expired.
+     */
+    @Test
+    public void expireEntries() {
+        AuthCertVerificationCache cache = new AuthCertVerificationCache(10);
+
+        cache.put(key(1, 1), 2000, 1000);
+
+        assertTrue(cache.isVerified(key(1, 1), 1999));
+        assertFalse(cache.isVerified(key(1, 2), 1999));
+        assertFalse(cache.isVerified(key(2, 1), 1999));
+        assertFalse(cache.isVerified(new AuthCertVerificationCache.Key(0, new byte[] {1}, issuer, new byte[] {1},
+                OCSP_FRESHNESS_SECONDS, false), 1999));
+        assertFalse(cache.isVerified(new AuthCertVerificationCache.Key(1, new byte[] {1}, issuer, new byte[] {1},
+                OCSP_FRESHNESS_SECONDS, true), 1999));
+
+        assertFalse(cache.isVerified(key(1, 1), 2000));
+        assertEquals(0, cache.size());
+    }
+
+    /**
+     * Test that the cache does not grow over the maximum size.
+     */
+    @Test
+    public void evictEntriesWhenFull() {
+        AuthCertVerificationCache cache = new AuthCertVerificationCache(8);
+
+        for (int i = 0; i < 8; i++) {
+            cache.put(key(i, 0), i < 4 ? 2000 : 5000, 1000);
+        }
+
+        // Expired entries are evicted first.
+        cache.put(key(8, 0), 5000, 3000);
+
+        assertEquals(5, cache.size());
+        assertFalse(cache.isVerified(key(0, 0), 3000));
+        assertTrue(cache.isVerified(key(4, 0), 3000));
+
+        for (int i = 9; i < 100; i++) {
+            cache.put(key(i, 0), 5000, 3000);
+        }
+
+        assertTrue(cache.isVerified(key(99, 0), 3000));
+        assertTrue(cache.size() <= 8);
+    }
+
+    /**
+     * Test that a verification does not outlive the freshness of the OCSP responses.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void expireWithOcspFreshness() throws Exception {
+        // OCSP times have a precision of one second
+        long now = TimeUnit.SECONDS.toMillis(TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()));
+        long thisUpdate = now - TimeUnit.SECONDS.toMillis(OCSP_FRESHNESS_SECONDS) + 5000;
+
+        List<OCSPResp> responses = Collections.singletonList(OcspTestUtils.createOCSPResponse(subject, issuer,
+                issuer, TestCertUtil.getCertChainKey("root_ca.p12"), CertificateStatus.GOOD, new Date(thisUpdate),
+                new Date(now + 1000)));
+
+        X509Certificate[] certs = {};
+
+        assertEquals(now + 5000, AuthCertVerificationCache.getExpiry(certs, responses, OCSP_FRESHNESS_SECONDS,
+                false, now));
+        assertEquals(now + 1000, AuthCertVerificationCache.getExpiry(certs, responses, OCSP_FRESHNESS_SECONDS,
+                true, now));
+    }
+
+    /**
+     * Test that a verification is found in the cache by the next request, when the global configuration
+     * is reloaded for the request thread in between and the configuration has not changed.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void hitCacheAcrossUnchangedGlobalConfReload() throws Exception {
+        String configurationPath = System.getProperty(SystemProperties.CONFIGURATION_PATH);
+        System.setProperty(SystemProperties.CONFIGURATION_PATH, GOOD_CONF_DIR);
+
+        try {
+            GlobalConf.reload(new GlobalConfImpl(new ConfigurationDirectoryV2(GOOD_CONF_DIR)));
+
+            AuthCertVerificationCache cache = new AuthCertVerificationCache(10);
+            cache.put(globalConfKey(), 2000, 1000);
+
+            // Done by every message processor, run in a separate thread to keep the
+            // thread-local configuration out of the other tests.
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread requestThread = new Thread(() -> {
+                try {
+                    GlobalConf.initForCurrentThread();
+                } catch (Throwable t) {
+                    error.set(t);
+                }
+            });
+            requestThread.start();
+            requestThread.join();
+
+            assertNull(error.get());
+            assertTrue(cache.isVerified(globalConfKey(), 1500));
+
+            GlobalConf.reload(new GlobalConfImpl(new ConfigurationDirectoryV2(GOOD_CONF_DIR)));
+
+            assertFalse(cache.isVerified(globalConfKey(), 1500));
+        } finally {
+            if (configurationPath != null) {
+                System.setProperty(SystemProperties.CONFIGURATION_PATH, configurationPath);
+            } else {
+                System.clearProperty(SystemProperties.CONFIGURATION_PATH);
+            }
+        }
+    }
+
+    private static AuthCertVerificationCache.Key globalConfKey() {
+        return new AuthCertVerificationCache.Key(GlobalConf.getLoadCount(), new byte[] {1}, issuer, new byte[] {1},
+                OCSP_FRESHNESS_SECONDS, true);
+    }
+
+    private static AuthCertVerificationCache.Key key(int peerCertHash, int ocspResponseHash) {
+        return new AuthCertVerificationCache.Key(0, new byte[] {(byte) peerCertHash}, issuer,
+                new byte[] {(byte) ocspResponseHash}, OCSP_FRESHNESS_SECONDS, true);
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.serverproxy;
+
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.opmonitoring.OpMonitoringData;
+import ee.ria.xroad.proxy.protocol.ProxyMessage;
+
+import org.apache.http.client.HttpClient;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.servlet.http.HttpServletRequest;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the handler selection of the service handler registry.
+ */
+public class ServiceHandlerRegistryTest {
+
+    private static final ClientId PROVIDER = ClientId.create("EE", "BUSINESS", "producer");
+
+    private static final ServiceId FIRST_SERVICE = ServiceId.create(PROVIDER, "first");
+    private static final ServiceId SECOND_SERVICE = ServiceId.create(PROVIDER, "second");
+    private static final ServiceId OTHER_SERVICE = ServiceId.create(PROVIDER, "other");
+
+    private static final AtomicInteger FIRST_INSTANCES = new AtomicInteger();
+    private static final AtomicInteger SECOND_INSTANCES = new AtomicInteger();
+
+    private ServiceHandlerRegistry registry;
+
+    /**
+     * Before
+     */
+    @Before
+    public void setUp() {
+        FIRST_INSTANCES.set(0);
+        SECOND_INSTANCES.set(0);
+
+        registry = new ServiceHandlerRegistry(Arrays.asList(
+                ServiceHandlerLoader.factoryFor(FirstHandler.class),
+                ServiceHandlerLoader.load(SecondHandler.class.getName())));
+    }
+
+    /**
+     * Test that the handler accepting the service is selected.
+     */
+    @Test
+    public void selectsHandlerAcceptingService() {
+        assertTrue(registry.getHandler(FIRST_SERVICE, null) instanceof FirstHandler);
+        assertTrue(registry.getHandler(SECOND_SERVICE, null) instanceof SecondHandler);
+        assertNull(registry.getHandler(OTHER_SERVICE, null));
+    }
+
+    /**
+     * Test that only the selected handler is instantiated once the selection is cached.
+     */
+    @Test
+    public void cachesSelection() {
+        registry.getHandler(SECOND_SERVICE, null);
+
+        assertEquals(1, FIRST_INSTANCES.get());
+        assertEquals(1, SECOND_INSTANCES.get());
+
+        ServiceHandler first = registry.getHandler(SECOND_SERVICE, null);
+        ServiceHandler second = registry.getHandler(SECOND_SERVICE, null);
+
+        assertTrue(first != second);
+        assertEquals(1, FIRST_INSTANCES.get());
+        assertEquals(3, SECOND_INSTANCES.get());
+
+        assertNull(registry.getHandler(OTHER_SERVICE, null));
+        assertNull(registry.getHandler(OTHER_SERVICE, null));
+
+        assertEquals(2, FIRST_INSTANCES.get());
+        assertEquals(4, SECOND_INSTANCES.get());
+    }
+
+    private abstract static class TestHandler implements ServiceHandler {
+
+        @Override
+        public boolean shouldVerifyAccess() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldVerifySignature() {
+            return true;
+        }
+
+        @Override
+        public boolean shouldLogSignature() {
+            return true;
+        }
+
+        @Override
+        public void startHandling(HttpServletRequest servletRequest, ProxyMessage requestMessage,
+                HttpClient opMonitorClient, OpMonitoringData opMonitoringData) {
+            // nothing to do
+        }
+
+        @Override
+        public void finishHandling() {
+            // nothing to do
+        }
+
+        @Override
+        public String getResponseContentType() {
+            return null;
+        }
+
+        @Override
+        public InputStream getResponseContent() {
+            return null;
+        }
+    }
+
+    private static class FirstHandler extends TestHandler {
+
+        FirstHandler() {
+            FIRST_INSTANCES.incrementAndGet();
+        }
+
+        @Override
+        public boolean canHandle(ServiceId requestServiceId, ProxyMessage requestMessage) {
+            return FIRST_SERVICE.equals(requestServiceId);
+        }
+    }
+
+    private static class SecondHandler extends TestHandler {
+
+        SecondHandler() {
+            SECOND_INSTANCES.incrementAndGet();
+        }
+
+        @Override
+        public boolean canHandle(ServiceId requestServiceId, ProxyMessage requestMessage) {
+            return SECOND_SERVICE.equals(requestServiceId);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.testsuite.testcases;
+
+import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.signature.SignatureBuilder;
+import ee.ria.xroad.common.signature.SignatureData;
+import ee.ria.xroad.proxy.conf.SigningCtx;
+import ee.ria.xroad.proxy.testsuite.Message;
+import ee.ria.xroad.proxy.testsuite.MessageTestCase;
+import ee.ria.xroad.proxy.testsuite.TestServerConf;
+
+import static ee.ria.xroad.common.ErrorCodes.SERVER_CLIENTPROXY_X;
+import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_MEMBER;
+
+/**
+ * A query from a client that is not registered.
+ * Result: fault with code X_UNKNOWN_MEMBER, the request is never signed
+ * (and hence never written to the message log).
+ */
+public class UnregisteredClient extends MessageTestCase {
+
+    private volatile boolean signed;
+
+    /**
+     * Constructs the test case.
+     */
+    public UnregisteredClient() {
+        requestFileName = "getstate.query";
+        responseFile = "getstate.answer";
+    }
+
+    @Override
+    protected void startUp() throws Exception {
+        super.startUp();
+
+        ServerConf.reload(new TestServerConf() {
+            @Override
+            public String getMemberStatus(ClientId memberId) {
+                return ClientType.STATUS_SAVED;
+            }
+        });
+    }
+
+    @Override
+    public SigningCtx getSigningCtx(String sender) {
+        return new SigningCtx() {
+            @Override
+            public SignatureData buildSignature(SignatureBuilder builder) {
+                signed = true;
+
+                throw new IllegalStateException("Request of an unregistered client must not be signed");
+            }
+        };
+    }
+
+    @Override
+    protected void validateFaultResponse(Message receivedResponse) throws Exception {
+        assertErrorCode(SERVER_CLIENTPROXY_X, X_UNKNOWN_MEMBER);
+
+        if (signed) {
+            throw new Exception("Request of an unregistered client was signed");
+        }
+    }
+}
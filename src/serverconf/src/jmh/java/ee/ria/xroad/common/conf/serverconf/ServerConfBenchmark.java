@@ -0,0 +1,182 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
+import ee.ria.xroad.common.conf.serverconf.model.WsdlType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+
+/**
+ * Compares the throughput of {@link ServerConfProvider#isQueryAllowed} when every call goes to the database
+ * ({@link ServerConfImpl}) and when calls are served from the server conf snapshot ({@link CachingServerConfImpl}).
+ * The test configuration contains 10 000 access right entries.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ServerConfBenchmark {
+
+    private static final String INSTANCE = "XX";
+    private static final String MEMBER_CLASS = "COM";
+
+    private static final int NUM_PROVIDERS = 100;
+    private static final int NUM_SERVICES = 10;
+    private static final int NUM_CLIENTS_PER_SERVICE = 10;
+
+    private ServerConfImpl databaseConf;
+    private CachingServerConfImpl snapshotConf;
+
+    /**
+     * Creates the test database.
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        doInTransaction(session -> {
+            session.save(createConf());
+            return null;
+        });
+
+        databaseConf = new ServerConfImpl();
+        snapshotConf = new CachingServerConfImpl();
+    }
+
+    /**
+     * Closes the database.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        snapshotConf.close();
+        ServerConfDatabaseCtx.get().closeSessionFactory();
+    }
+
+    /**
+     * @return whether a random client is allowed to invoke a random service, read from the database
+     */
+    @Benchmark
+    public boolean isQueryAllowedDatabase() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        return databaseConf.isQueryAllowed(randomClient(random), randomService(random));
+    }
+
+    /**
+     * @return whether a random client is allowed to invoke a random service, read from the snapshot
+     */
+    @Benchmark
+    public boolean isQueryAllowedSnapshot() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        return snapshotConf.isQueryAllowed(randomClient(random), randomService(random));
+    }
+
+    private static ClientId randomClient(ThreadLocalRandom random) {
+        return client(random.nextInt(NUM_CLIENTS_PER_SERVICE * 2));
+    }
+
+    private static ServiceId randomService(ThreadLocalRandom random) {
+        return ServiceId.create(provider(random.nextInt(NUM_PROVIDERS)), service(random.nextInt(NUM_SERVICES)), "v1");
+    }
+
+    private static ServerConfType createConf() {
+        ServerConfType conf = new ServerConfType();
+        conf.setServerCode("benchmark");
+
+        for (int i = 0; i < NUM_PROVIDERS; i++) {
+            ClientType provider = new ClientType();
+            provider.setConf(conf);
+            provider.setIdentifier(provider(i));
+            provider.setClientStatus(ClientType.STATUS_REGISTERED);
+
+            WsdlType wsdl = new WsdlType();
+            wsdl.setClient(provider);
+            wsdl.setUrl("http://wsdl" + i);
+
+            for (int j = 0; j < NUM_SERVICES; j++) {
+                ServiceType service = new ServiceType();
+                service.setWsdl(wsdl);
+                service.setServiceCode(service(j));
+                service.setServiceVersion("v1");
+                service.setUrl("http://service" + j);
+                wsdl.getService().add(service);
+
+                for (int k = 0; k < NUM_CLIENTS_PER_SERVICE; k++) {
+                    AccessRightType accessRight = new AccessRightType();
+                    accessRight.setServiceCode(service(j));
+                    accessRight.setSubjectId(client(k));
+                    accessRight.setRightsGiven(new Date());
+                    provider.getAcl().add(accessRight);
+                }
+            }
+
+            provider.getWsdl().add(wsdl);
+            conf.getClient().add(provider);
+        }
+
+        conf.setOwner(conf.getClient().get(0));
+
+        return conf;
+    }
+
+    private static ClientId provider(int idx) {
+        return ClientId.create(INSTANCE, MEMBER_CLASS, "provider" + idx, "SUB");
+    }
+
+    private static ClientId client(int idx) {
+        return ClientId.create(INSTANCE, MEMBER_CLASS, "client" + idx);
+    }
+
+    private static String service(int idx) {
+        return "service" + idx;
+    }
+}
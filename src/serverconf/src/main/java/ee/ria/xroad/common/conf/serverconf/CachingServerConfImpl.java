@@ -24,63 +24,229 @@
  */
 package ee.ria.xroad.common.conf.serverconf;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
-import ee.ria.xroad.common.conf.globalconf.TimeBasedObjectCache;
+import ee.ria.xroad.common.conf.serverconf.ServerConfSnapshot.ClientInfo;
+import ee.ria.xroad.common.conf.serverconf.ServerConfSnapshot.ServiceInfo;
 import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.SecurityCategoryId;
+import ee.ria.xroad.common.identifier.ServiceId;
 
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.ObjectUtils;
+import org.hibernate.Session;
+
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_UNKNOWN_SERVICE;
 
 /**
- * Caching implementation for ServerConf
- * The long lasting and frequently used operations
- * getTspUrl, getMemberStatus and getIsAuthentication are cached
- * Performance improvent was measured to be significant.
+ * Caching implementation for ServerConf.
+ * The data used on the message processing path (services, access rights, disabled services, client status and
+ * IS authentication, TSP URLs) is read from an immutable {@link ServerConfSnapshot} without accessing the
+ * database. A background thread checks the change version of the server conf, the id of the latest row in the
+ * history table that the database triggers write on every change, and rebuilds and swaps the snapshot when the
+ * version changes. The snapshot is also rebuilt once it is older than the server conf cache period, in case a
+ * change was not recorded in the history table.
  */
+@Slf4j
 public class CachingServerConfImpl extends ServerConfImpl {
 
-    public static final String TSP_URL = "tsp_url";
-    public static final String MEMBERS = "members";
-    public static final String MEMBER_STATUS = "member_status";
-    public static final String AUTHENTICATION = "authentication";
-    public static final String IDENTIFIER = "identifier";
+    private static final long UNKNOWN_VERSION = -1;
+
+    private final long changeCheckIntervalMillis;
+    private final long expireNanos;
 
+    private volatile ServerConfSnapshot snapshot;
+    private volatile long snapshotLoadedAt;
 
-    private final int expireSeconds;
-    private final TimeBasedObjectCache cache;
+    private ScheduledExecutorService changeChecker;
+    private boolean changeVersionAvailable = true;
 
     /**
-     * Constructor, creates time based object cache with expireSeconds paramter
+     * Constructor, uses the server conf change check interval and cache period system properties
      */
     public CachingServerConfImpl() {
         super();
-        expireSeconds = SystemProperties.getServerConfCachePeriod();
-        cache = new TimeBasedObjectCache(expireSeconds);
+        changeCheckIntervalMillis = SystemProperties.getServerConfChangeCheckInterval();
+        expireNanos = TimeUnit.SECONDS.toNanos(SystemProperties.getServerConfCachePeriod());
     }
 
     @Override
-    public synchronized List<String> getTspUrl() {
-        if (!cache.isValid(TSP_URL)) {
-            cache.setValue(TSP_URL, super.getTspUrl());
-        }
+    public boolean serviceExists(ServiceId service) {
+        return getSnapshot().serviceExists(service);
+    }
+
+    @Override
+    public String getServiceAddress(ServiceId service) {
+        ServiceInfo serviceInfo = getSnapshot().getService(service);
+
+        return serviceInfo != null ? serviceInfo.getUrl() : null;
+    }
 
-        return (List<String>)cache.getValue(TSP_URL);
+    @Override
+    public int getServiceTimeout(ServiceId service) {
+        ServiceInfo serviceInfo = getSnapshot().getService(service);
+
+        return serviceInfo != null ? serviceInfo.getTimeout() : DEFAULT_SERVICE_TIMEOUT;
     }
 
     @Override
-    public synchronized String getMemberStatus(ClientId clientId) {
-        String key = MEMBER_STATUS + clientId;
-        if (!cache.isValid(key)) {
-            cache.setValue(key, super.getMemberStatus(clientId));
+    public boolean isSslAuthentication(ServiceId service) {
+        ServiceInfo serviceInfo = getSnapshot().getService(service);
+        if (serviceInfo != null) {
+            return ObjectUtils.defaultIfNull(serviceInfo.getSslAuthentication(), true);
         }
-        return (String)cache.getValue(key);
+
+        throw new CodedException(X_UNKNOWN_SERVICE, "Service '%s' not found", service);
+    }
+
+    @Override
+    public String getDisabledNotice(ServiceId service) {
+        ServiceInfo serviceInfo = getSnapshot().getService(service);
+
+        return serviceInfo != null ? serviceInfo.getDisabledNotice() : null;
+    }
+
+    @Override
+    public List<SecurityCategoryId> getRequiredCategories(ServiceId service) {
+        ServiceInfo serviceInfo = getSnapshot().getService(service);
+
+        return serviceInfo != null ? serviceInfo.getRequiredCategories() : new ArrayList<>();
+    }
+
+    @Override
+    public boolean isQueryAllowed(ClientId client, ServiceId service) {
+        return getSnapshot().isQueryAllowed(client, service);
+    }
+
+    @Override
+    public List<String> getTspUrl() {
+        return getSnapshot().getTspUrls();
+    }
+
+    @Override
+    public String getMemberStatus(ClientId clientId) {
+        ClientInfo clientInfo = getSnapshot().getClient(clientId);
+
+        return clientInfo != null ? clientInfo.getClientStatus() : null;
     }
 
     @Override
-    public synchronized IsAuthentication getIsAuthentication(ClientId clientId) {
-        String key = AUTHENTICATION + clientId;
-        if (!cache.isValid(key)) {
-            cache.setValue(key, super.getIsAuthentication(clientId));
+    public IsAuthentication getIsAuthentication(ClientId clientId) {
+        ClientInfo clientInfo = getSnapshot().getClient(clientId);
+
+        return clientInfo != null ? clientInfo.getIsAuthentication() : null;
+    }
+
+    /**
+     * Discards the current snapshot, so that the next read reloads it from the database.
+     */
+    public synchronized void invalidate() {
+        snapshot = null;
+    }
+
+    /**
+     * Stops checking the server conf for changes. Called when the implementation is replaced.
+     */
+    public synchronized void close() {
+        if (changeChecker != null) {
+            changeChecker.shutdownNow();
+            changeChecker = null;
+        }
+    }
+
+    ServerConfSnapshot getSnapshot() {
+        ServerConfSnapshot current = snapshot;
+
+        if (current == null) {
+            synchronized (this) {
+                if (snapshot == null) {
+                    reload(readChangeVersion());
+                    startChangeChecker();
+                }
+
+                return snapshot;
+            }
+        }
+
+        return current;
+    }
+
+    private void startChangeChecker() {
+        if (changeChecker != null || changeCheckIntervalMillis <= 0) {
+            return;
+        }
+
+        changeChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "serverconf-change-checker");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+
+        changeChecker.scheduleWithFixedDelay(this::checkForChanges, changeCheckIntervalMillis,
+                changeCheckIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void checkForChanges() {
+        try {
+            long version = readChangeVersion();
+
+            synchronized (this) {
+                ServerConfSnapshot current = snapshot;
+
+                if (current != null && (version != current.getVersion()
+                        || System.nanoTime() - snapshotLoadedAt > expireNanos)) {
+                    reload(version);
+                }
+            }
+        } catch (Exception e) {
+            // keep serving the previous snapshot, retry on the next check
+            log.error("Failed to reload server conf snapshot", e);
         }
-        return (IsAuthentication)cache.getValue(key);
+    }
+
+    /**
+     * Reads the change version in a transaction of its own, the version must be read before the snapshot is
+     * created so that a change made in between triggers another reload.
+     */
+    private long readChangeVersion() {
+        try {
+            return tx(this::getChangeVersion);
+        } catch (Exception e) {
+            if (changeVersionAvailable) {
+                log.warn("Cannot read server conf change version, the snapshot is reloaded once per cache period", e);
+                changeVersionAvailable = false;
+            }
+
+            return UNKNOWN_VERSION;
+        }
+    }
+
+    /**
+     * @param session the database session
+     * @return the id of the latest server conf history row, 0 if there are none
+     */
+    protected long getChangeVersion(Session session) {
+        Number latestId = (Number) session.createSQLQuery("select max(id) from history").uniqueResult();
+
+        return latestId != null ? latestId.longValue() : 0;
+    }
+
+    private void reload(long version) {
+        long start = System.nanoTime();
+
+        ServerConfSnapshot newSnapshot = tx(session -> new ServerConfSnapshot(getConf(), version));
+
+        snapshot = newSnapshot;
+        snapshotLoadedAt = System.nanoTime();
+
+        log.debug("Loaded server conf snapshot version {} in {} ms", version,
+                TimeUnit.NANOSECONDS.toMillis(snapshotLoadedAt - start));
     }
 }
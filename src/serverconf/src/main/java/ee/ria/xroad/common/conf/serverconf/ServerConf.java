@@ -65,7 +65,13 @@ public class ServerConf {
     public static void reload(ServerConfProvider conf) {
         log.trace("reload({})", conf.getClass());
 
+        ServerConfProvider previous = instance;
+
         instance = conf;
+
+        if (previous instanceof CachingServerConfImpl && previous != conf) {
+            ((CachingServerConfImpl) previous).close();
+        }
     }
 
     // ------------------------------------------------------------------------
@@ -68,7 +68,7 @@ import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 public class ServerConfImpl implements ServerConfProvider {
 
     // default service connection timeout in seconds
-    private static final int DEFAULT_SERVICE_TIMEOUT = 30;
+    protected static final int DEFAULT_SERVICE_TIMEOUT = 30;
 
     private static SecurityServerId identifier;
 
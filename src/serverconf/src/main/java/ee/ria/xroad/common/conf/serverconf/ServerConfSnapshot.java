@@ -0,0 +1,234 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.common.conf.serverconf;
+
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.serverconf.model.AccessRightType;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.conf.serverconf.model.GroupMemberType;
+import ee.ria.xroad.common.conf.serverconf.model.LocalGroupType;
+import ee.ria.xroad.common.conf.serverconf.model.ServerConfType;
+import ee.ria.xroad.common.conf.serverconf.model.ServiceType;
+import ee.ria.xroad.common.conf.serverconf.model.TspType;
+import ee.ria.xroad.common.conf.serverconf.model.WsdlType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.GlobalGroupId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.SecurityCategoryId;
+import ee.ria.xroad.common.identifier.ServiceId;
+import ee.ria.xroad.common.identifier.XRoadId;
+
+import lombok.Getter;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, indexed copy of the server conf data that is needed on the message processing path.
+ * Services are indexed by service identifier, and access rights are resolved per
+ * (service provider, service code) pair, with local group members expanded into the set of allowed clients.
+ * Global group membership depends on global configuration and is therefore checked at query time.
+ */
+final class ServerConfSnapshot {
+
+    @Getter
+    private final long version;
+
+    private final Map<ServiceId, ServiceInfo> services = new HashMap<>();
+    private final Map<ClientId, Map<String, AccessRights>> accessRights = new HashMap<>();
+    private final Map<ClientId, ClientInfo> clients = new HashMap<>();
+    private final List<String> tspUrls = new ArrayList<>();
+
+    /**
+     * Creates a snapshot of the given server conf. Must be called inside a transaction, so that lazy
+     * collections of the configuration can be initialized.
+     * @param conf the server conf
+     * @param version the change version of the server conf the snapshot was created from
+     */
+    ServerConfSnapshot(ServerConfType conf, long version) {
+        this.version = version;
+
+        for (ClientType client : conf.getClient()) {
+            ClientId clientId = copyOf(client.getIdentifier());
+
+            clients.put(clientId, new ClientInfo(client));
+
+            for (WsdlType wsdl : client.getWsdl()) {
+                for (ServiceType service : wsdl.getService()) {
+                    ServiceId serviceId = ServiceId.create(clientId, service.getServiceCode(),
+                            service.getServiceVersion());
+
+                    services.put(serviceId, new ServiceInfo(serviceId, service, wsdl));
+                }
+            }
+
+            accessRights.put(clientId, indexAccessRights(client));
+        }
+
+        for (TspType tsp : conf.getTsp()) {
+            if (StringUtils.isNotBlank(tsp.getUrl())) {
+                tspUrls.add(tsp.getUrl());
+            }
+        }
+    }
+
+    boolean serviceExists(ServiceId service) {
+        return services.containsKey(service);
+    }
+
+    ServiceInfo getService(ServiceId service) {
+        return services.get(service);
+    }
+
+    ClientInfo getClient(ClientId client) {
+        return clients.get(client);
+    }
+
+    List<String> getTspUrls() {
+        return Collections.unmodifiableList(tspUrls);
+    }
+
+    boolean isQueryAllowed(ClientId client, ServiceId service) {
+        if (client == null) {
+            return false;
+        }
+
+        Map<String, AccessRights> ownerAccessRights = accessRights.get(service.getClientId());
+        if (ownerAccessRights == null) {
+            return false;
+        }
+
+        AccessRights rights = ownerAccessRights.get(service.getServiceCode());
+
+        return rights != null && rights.isAllowed(client);
+    }
+
+    private static Map<String, AccessRights> indexAccessRights(ClientType owner) {
+        Map<String, Set<ClientId>> localGroups = new HashMap<>();
+        for (LocalGroupType group : owner.getLocalGroup()) {
+            Set<ClientId> members = new HashSet<>();
+            for (GroupMemberType member : group.getGroupMember()) {
+                members.add(copyOf(member.getGroupMemberId()));
+            }
+
+            localGroups.put(group.getGroupCode(), members);
+        }
+
+        Map<String, AccessRights> result = new HashMap<>();
+        for (AccessRightType accessRight : owner.getAcl()) {
+            AccessRights rights = result.computeIfAbsent(accessRight.getServiceCode(), c -> new AccessRights());
+            XRoadId subjectId = accessRight.getSubjectId();
+
+            if (subjectId instanceof GlobalGroupId) {
+                rights.globalGroups.add((GlobalGroupId) subjectId);
+            } else if (subjectId instanceof LocalGroupId) {
+                Set<ClientId> members = localGroups.get(((LocalGroupId) subjectId).getGroupCode());
+                if (members != null) {
+                    rights.clients.addAll(members);
+                }
+            } else if (subjectId instanceof ClientId) {
+                rights.clients.add(copyOf((ClientId) subjectId));
+            }
+        }
+
+        return result;
+    }
+
+    // identifiers loaded by Hibernate might be proxies, store plain copies as hash keys
+    private static ClientId copyOf(ClientId id) {
+        return ClientId.create(id.getXRoadInstance(), id.getMemberClass(), id.getMemberCode(),
+                id.getSubsystemCode());
+    }
+
+    /**
+     * Access rights to the services of one service provider with one service code.
+     */
+    private static final class AccessRights {
+        private final Set<ClientId> clients = new HashSet<>();
+        private final List<GlobalGroupId> globalGroups = new ArrayList<>();
+
+        boolean isAllowed(ClientId client) {
+            if (clients.contains(client)) {
+                return true;
+            }
+
+            for (GlobalGroupId group : globalGroups) {
+                if (GlobalConf.isSubjectInGlobalGroup(client, group)) {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+    }
+
+    /**
+     * Service data needed on the message processing path.
+     */
+    @Getter
+    static final class ServiceInfo {
+        private final String url;
+        private final int timeout;
+        private final Boolean sslAuthentication;
+        private final List<SecurityCategoryId> requiredCategories;
+        private final String disabledNotice;
+
+        ServiceInfo(ServiceId serviceId, ServiceType service, WsdlType wsdl) {
+            this.url = service.getUrl();
+            this.timeout = service.getTimeout();
+            this.sslAuthentication = service.getSslAuthentication();
+            this.requiredCategories = Collections.unmodifiableList(
+                    new ArrayList<>(service.getRequiredSecurityCategory()));
+
+            if (wsdl.isDisabled()) {
+                this.disabledNotice = wsdl.getDisabledNotice() != null
+                        ? wsdl.getDisabledNotice() : String.format("Service '%s' is disabled", serviceId);
+            } else {
+                this.disabledNotice = null;
+            }
+        }
+    }
+
+    /**
+     * Client data needed on the message processing path.
+     */
+    @Getter
+    static final class ClientInfo {
+        private final String clientStatus;
+        private final IsAuthentication isAuthentication;
+
+        ClientInfo(ClientType client) {
+            this.clientStatus = client.getClientStatus();
+            this.isAuthentication = client.getIsAuthentication() != null
+                    ? IsAuthentication.valueOf(client.getIsAuthentication()) : IsAuthentication.NOSSL;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.proxy.conf;
+
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.serverconf.CachingServerConfImpl;
+import ee.ria.xroad.common.conf.serverconf.ServerConf;
+import ee.ria.xroad.common.conf.serverconf.dao.ClientDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.dao.WsdlDAOImpl;
+import ee.ria.xroad.common.conf.serverconf.model.ClientType;
+import ee.ria.xroad.common.identifier.ClientId;
+import ee.ria.xroad.common.identifier.LocalGroupId;
+import ee.ria.xroad.common.identifier.ServiceId;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.function.BooleanSupplier;
+
+import static ee.ria.xroad.common.conf.serverconf.ServerConfDatabaseCtx.doInTransaction;
+import static ee.ria.xroad.proxy.conf.TestUtil.SERVICE_VERSION;
+import static ee.ria.xroad.proxy.conf.TestUtil.client;
+import static ee.ria.xroad.proxy.conf.TestUtil.createAccessRight;
+import static ee.ria.xroad.proxy.conf.TestUtil.createTestClientId;
+import static ee.ria.xroad.proxy.conf.TestUtil.createTestServiceId;
+import static ee.ria.xroad.proxy.conf.TestUtil.service;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the server conf API tests against the snapshot based {@link CachingServerConfImpl}.
+ */
+public class CachingServerConfTest extends ServerConfTest {
+
+    private static final long CHANGE_TIMEOUT_MILLIS = 10000;
+
+    private static CachingServerConfImpl serverConf;
+
+    /**
+     * Replaces the server conf implementation set up by {@link ServerConfTest}. Creates the history table, the
+     * test database has no triggers, so the tests record their changes in it themselves.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void setUpCachingServerConf() throws Exception {
+        doInTransaction(session -> session.createSQLQuery("create table history (id bigint primary key)")
+                .executeUpdate());
+
+        System.setProperty(SystemProperties.PROXY_SERVER_CONF_CHANGE_CHECK_INTERVAL, "50");
+
+        serverConf = new CachingServerConfImpl();
+
+        ServerConf.reload(serverConf);
+    }
+
+    /**
+     * Stops the change check of the server conf implementation.
+     */
+    @AfterClass
+    public static void tearDownCachingServerConf() {
+        serverConf.close();
+
+        System.clearProperty(SystemProperties.PROXY_SERVER_CONF_CHANGE_CHECK_INTERVAL);
+    }
+
+    /**
+     * Tests that access rights granted to a local group take effect once the change is detected.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void isQueryAllowedForLocalGroupMemberAfterChange() throws Exception {
+        ClientId owner = createTestClientId(client(2));
+        ClientId groupMember = ClientId.create("XX", "memberClass", "memberCode2");
+        ServiceId service = createTestServiceId(owner, service(1, 2), SERVICE_VERSION);
+
+        assertFalse(ServerConf.isQueryAllowed(groupMember, service));
+
+        doInTransaction(session -> {
+            ClientType client = new ClientDAOImpl().getClient(session, owner);
+            client.getAcl().add(createAccessRight(service(1, 2), LocalGroupId.create("localGroup2")));
+            return null;
+        });
+
+        assertFalse(ServerConf.isQueryAllowed(groupMember, service));
+
+        recordChange();
+
+        assertTrue(awaitChange(() -> ServerConf.isQueryAllowed(groupMember, service)));
+        assertFalse(ServerConf.isQueryAllowed(createTestClientId(client(3)), service));
+    }
+
+    /**
+     * Tests that the client status is served from the snapshot until a change is detected.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void getMemberStatusFromSnapshotUntilChange() throws Exception {
+        ClientId clientId = createTestClientId(client(3));
+        String status = ServerConf.getMemberStatus(clientId);
+
+        setClientStatus(clientId, ClientType.STATUS_DELINPROG);
+
+        assertEquals(status, ServerConf.getMemberStatus(clientId));
+
+        recordChange();
+
+        assertTrue(awaitChange(() -> ClientType.STATUS_DELINPROG.equals(ServerConf.getMemberStatus(clientId))));
+
+        setClientStatus(clientId, status);
+        recordChange();
+
+        assertTrue(awaitChange(() -> status.equals(ServerConf.getMemberStatus(clientId))));
+    }
+
+    /**
+     * Tests that disabling a service takes effect once the change is detected.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void getDisabledNoticeAfterChange() throws Exception {
+        ServiceId service = createTestServiceId(createTestClientId(client(1)), service(0, 1), SERVICE_VERSION);
+
+        assertNull(ServerConf.getDisabledNotice(service));
+
+        setWsdlDisabled(service, true);
+
+        assertNull(ServerConf.getDisabledNotice(service));
+
+        recordChange();
+
+        assertTrue(awaitChange(() -> ServerConf.getDisabledNotice(service) != null));
+
+        setWsdlDisabled(service, false);
+        recordChange();
+
+        assertTrue(awaitChange(() -> ServerConf.getDisabledNotice(service) == null));
+    }
+
+    private static void setClientStatus(ClientId clientId, String status) throws Exception {
+        doInTransaction(session -> {
+            new ClientDAOImpl().getClient(session, clientId).setClientStatus(status);
+            return null;
+        });
+    }
+
+    private static void setWsdlDisabled(ServiceId service, boolean disabled) throws Exception {
+        doInTransaction(session -> {
+            new WsdlDAOImpl().getWsdl(session, service).setDisabled(disabled);
+            return null;
+        });
+    }
+
+    // does what the history triggers of the server conf tables do in the real database
+    private static void recordChange() throws Exception {
+        doInTransaction(session -> session
+                .createSQLQuery("insert into history (id) select coalesce(max(id), 0) + 1 from history")
+                .executeUpdate());
+    }
+
+    private static boolean awaitChange(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + CHANGE_TIMEOUT_MILLIS;
+
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+
+            Thread.sleep(10);
+        }
+
+        return true;
+    }
+}
@@ -33,8 +33,9 @@ import java.io.Serializable;
  * Signer API message.
  */
 @Value
-@ToString(exclude = "base64EncodedResponses")
+@ToString(exclude = "ocspResponses")
 public class GetOcspResponsesResponse implements Serializable {
 
-    private final String[] base64EncodedResponses;
+    /** DER encoded OCSP responses, null for certificates without a response */
+    private final byte[][] ocspResponses;
 }
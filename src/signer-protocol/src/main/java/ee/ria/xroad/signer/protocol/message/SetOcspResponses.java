@@ -33,10 +33,11 @@ import java.io.Serializable;
  * Signer API message.
  */
 @Value
-@ToString(exclude = "base64EncodedResponses")
+@ToString(exclude = "ocspResponses")
 public class SetOcspResponses implements Serializable {
 
     String[] certHashes;
-    String[] base64EncodedResponses;
+    /** DER encoded OCSP responses */
+    byte[][] ocspResponses;
 
 }
@@ -0,0 +1,159 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenType;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Base64;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+
+/**
+ * Measures the throughput of {@link TokenManager} lookups with 32 reader threads over 1000 keys
+ * holding 10000 certificates in total.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(32)
+@State(Scope.Benchmark)
+public class TokenManagerBenchmark {
+
+    private static final int KEY_COUNT = 1000;
+    private static final int CERTS_PER_KEY = 10;
+
+    private String tokenId;
+    private String[] keyIds;
+    private String[] certHashes;
+
+    /**
+     * Populates the token manager with a software token, its keys and certificates.
+     * @throws Exception if an error occurs
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+
+        KeyPair keyPair = generator.generateKeyPair();
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate());
+        String publicKey = Base64.getEncoder().encodeToString(keyPair.getPublic().getEncoded());
+
+        tokenId = TokenManager.createToken(new SoftwareTokenType()).getId();
+        keyIds = new String[KEY_COUNT];
+        certHashes = new String[KEY_COUNT * CERTS_PER_KEY];
+
+        Date notBefore = new Date();
+        Date notAfter = new Date(notBefore.getTime() + TimeUnit.DAYS.toMillis(1));
+        X500Name name = new X500Name("CN=benchmark");
+
+        for (int i = 0; i < KEY_COUNT; i++) {
+            keyIds[i] = "key" + i;
+            TokenManager.addKey(tokenId, keyIds[i], publicKey);
+
+            for (int j = 0; j < CERTS_PER_KEY; j++) {
+                int serial = i * CERTS_PER_KEY + j;
+                byte[] cert = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(serial), notBefore, notAfter,
+                        name, keyPair.getPublic()).build(signer).getEncoded();
+
+                TokenManager.addCert(keyIds[i], cert);
+                certHashes[serial] = calculateCertHexHash(cert);
+            }
+        }
+    }
+
+    /**
+     * @return the key info
+     */
+    @Benchmark
+    public Object getKeyInfo() {
+        return TokenManager.getKeyInfo(randomKeyId());
+    }
+
+    /**
+     * @return the token id
+     */
+    @Benchmark
+    public Object findTokenIdForKeyId() {
+        return TokenManager.findTokenIdForKeyId(randomKeyId());
+    }
+
+    /**
+     * @return the certificate info
+     */
+    @Benchmark
+    public Object getCertificateInfoForCertHash() {
+        return TokenManager.getCertificateInfoForCertHash(randomCertHash());
+    }
+
+    /**
+     * @return the key info
+     */
+    @Benchmark
+    public Object getKeyInfoForCertHash() {
+        return TokenManager.getKeyInfoForCertHash(randomCertHash());
+    }
+
+    /**
+     * @return whether the key is available
+     */
+    @Benchmark
+    public boolean isKeyAvailable() {
+        return TokenManager.isKeyAvailable(randomKeyId());
+    }
+
+    private String randomKeyId() {
+        return keyIds[ThreadLocalRandom.current().nextInt(keyIds.length)];
+    }
+
+    private String randomCertHash() {
+        return certHashes[ThreadLocalRandom.current().nextInt(certHashes.length)];
+    }
+}
@@ -24,7 +24,6 @@
  */
 package ee.ria.xroad.signer.certmanager;
 
-import ee.ria.xroad.common.conf.globalconf.GlobalConf;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.MimeTypes;
 import ee.ria.xroad.common.util.MimeUtils;
@@ -45,15 +44,13 @@ import java.io.BufferedOutputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.ConnectException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
-import java.util.List;
 
 /**
- * OCSP client downloads OCSP responses for specified certificates using responders defined in the Global Configuration.
+ * OCSP client downloads OCSP responses for specified certificates from the given OCSP responders.
  */
 @Slf4j
 final class OcspClient {
@@ -69,16 +66,6 @@ final class OcspClient {
     private OcspClient() {
     }
 
-    static OCSPResp queryCertStatus(X509Certificate subject) throws Exception {
-        X509Certificate issuer = GlobalConf.getCaCert(GlobalConf.getInstanceIdentifier(), subject);
-
-        PrivateKey signerKey = getOcspRequestKey(subject);
-        X509Certificate signer = getOcspSignerCert();
-        String signAlgoId = getSignAlgorithmId();
-
-        return fetchResponse(subject, issuer, signerKey, signer, signAlgoId);
-    }
-
     @SneakyThrows
     static String getSignAlgorithmId() {
         return CryptoUtils.getSignatureAlgorithmId(DIGEST_ALGORITHM_ID, SIGN_MECHANISM_NAME);
@@ -93,29 +80,6 @@ final class OcspClient {
         return null; // FUTURE task #8162.
     }
 
-    static OCSPResp fetchResponse(X509Certificate subject, X509Certificate issuer, PrivateKey signerKey,
-            X509Certificate signer, String signAlgoId) throws Exception {
-        List<String> responderURIs = GlobalConf.getOcspResponderAddresses(subject);
-
-        log.trace("responder URIs: {}", responderURIs);
-
-        if (responderURIs.isEmpty()) {
-            throw new ConnectException("No OCSP responder URIs available");
-        }
-
-        for (String responderURI : responderURIs) {
-            try {
-                log.trace("fetch response from: {}", responderURI);
-
-                return fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
-            } catch (Exception e) {
-                log.error("Unable to fetch response from responder at {}", responderURI, e);
-            }
-        }
-
-        throw new OCSPException("Unable to get valid OCSP response from any responders");
-    }
-
     static OCSPResp fetchResponse(String responderURI, X509Certificate subject, X509Certificate issuer,
             PrivateKey signerKey, X509Certificate signer, String signAlgoId) throws Exception {
         HttpURLConnection connection = createConnection(responderURI);
@@ -46,12 +46,8 @@ import ee.ria.xroad.signer.util.SignerUtil;
 import akka.actor.ActorRef;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPResp;
 
-import java.io.IOException;
-import java.net.ConnectException;
-import java.security.PrivateKey;
 import java.security.cert.X509Certificate;
 import java.time.LocalTime;
 import java.util.ArrayList;
@@ -59,13 +55,15 @@ import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
-import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 import static ee.ria.xroad.common.util.CryptoUtils.readCertificate;
 import static ee.ria.xroad.signer.protocol.ComponentNames.OCSP_CLIENT_JOB;
 import static ee.ria.xroad.signer.tokenmanager.ServiceLocator.getOcspResponseManager;
@@ -99,11 +97,14 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     private CertificationServiceDiagnostics certServDiagnostics;
 
+    private OcspFetcher fetcher;
+
     @Override
     public void preStart() throws Exception {
         super.preStart();
         changeChecker = new GlobalConfChangeChecker();
         certServDiagnostics = new CertificationServiceDiagnostics();
+        fetcher = OcspFetcher.getInstance();
     }
 
     @Override
@@ -212,11 +213,26 @@ public class OcspClientWorker extends AbstractSignerActor {
 
         Boolean failed = false;
         Map<String, OCSPResp> statuses = new HashMap<>();
+        Map<X509Certificate, CompletableFuture<OcspFetcher.Result>> results = new LinkedHashMap<>();
+        OcspVerifierOptions verifierOptions = new OcspVerifierOptions(
+                GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate());
 
+        // start all queries first, the responders are queried concurrently
         for (X509Certificate subject : certs) {
             try {
-                OCSPResp status = queryCertStatus(subject, new OcspVerifierOptions(
-                        GlobalConfExtensions.getInstance().shouldVerifyOcspNextUpdate()));
+                results.put(subject, fetcher.fetch(subject));
+            } catch (Exception e) {
+                failed = true;
+
+                log.error("Error when querying certificate '{}'", subject.getSerialNumber(), e);
+            }
+        }
+
+        for (Entry<X509Certificate, CompletableFuture<OcspFetcher.Result>> result : results.entrySet()) {
+            X509Certificate subject = result.getKey();
+
+            try {
+                OCSPResp status = verifyResponse(getResult(result.getValue()), verifierOptions);
                 if (status != null) {
                     String subjectHash = calculateCertHexHash(subject);
                     statuses.put(subjectHash, status);
@@ -230,6 +246,8 @@ public class OcspClientWorker extends AbstractSignerActor {
             }
         }
 
+        logMetrics();
+
         if (failed) {
             getSender().tell(FAILED, getSelf());
         } else {
@@ -285,54 +303,27 @@ public class OcspClientWorker extends AbstractSignerActor {
     }
 
     OCSPResp queryCertStatus(X509Certificate subject, OcspVerifierOptions verifierOptions) throws Exception {
-        X509Certificate issuer = GlobalConf.getCaCert(GlobalConf.getInstanceIdentifier(), subject);
-
-        PrivateKey signerKey = OcspClient.getOcspRequestKey(subject);
-        X509Certificate signer = OcspClient.getOcspSignerCert();
-        String signAlgoId = OcspClient.getSignAlgorithmId();
-
-        List<String> responderURIs = GlobalConf.getOcspResponderAddresses(subject);
-
-        log.debug("responder URIs: {}", responderURIs);
+        return verifyResponse(getResult(fetcher.fetch(subject)), verifierOptions);
+    }
 
-        if (responderURIs.isEmpty()) {
-            throw new ConnectException("No OCSP responder URIs available");
+    private static OcspFetcher.Result getResult(CompletableFuture<OcspFetcher.Result> result) throws Exception {
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
+    }
 
-        OCSPResp response = null;
-
-        for (String responderURI : responderURIs) {
-            try {
-                log.debug("Fetching response from: {}", responderURI);
-
-                response = OcspClient.fetchResponse(responderURI, subject, issuer, signerKey, signer, signAlgoId);
-
-                if (response != null) {
-                    reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.RETURN_SUCCESS, LocalTime.now(),
-                            LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
+    private OCSPResp verifyResponse(OcspFetcher.Result result, OcspVerifierOptions verifierOptions) {
+        X509Certificate subject = result.getSubject();
+        X509Certificate issuer = result.getIssuer();
+        OCSPResp response = result.getResponse();
 
-                    break;
-                }
-            } catch (OCSPException e) {
-                log.error("Parsing OCSP response from " + responderURI + " failed", e);
-
-                reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID,
-                        LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-            } catch (IOException e) {
-                log.error("Unable to connect to responder at " + responderURI, e);
-
-                reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR,
-                        LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-            } catch (Exception e) {
-                log.error("Unable to fetch response from responder at " + responderURI, e);
-
-                reportOcspDiagnostics(issuer, responderURI, DiagnosticsErrorCodes.ERROR_CODE_OCSP_FAILED,
-                        LocalTime.now(),
-                        LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
-            }
+        for (OcspFetcher.Attempt attempt : result.getAttempts()) {
+            reportOcspDiagnostics(issuer, attempt.getResponderURI(), attempt.getStatusCode(), LocalTime.now(),
+                    LocalTime.now().plusSeconds(GlobalConfExtensions.getInstance().getOcspFetchInterval()));
         }
+
         try {
             log.debug("Verifying response: {}", response);
 
@@ -350,6 +341,15 @@ public class OcspClientWorker extends AbstractSignerActor {
         }
     }
 
+    private void logMetrics() {
+        for (OcspFetcher.ResponderMetrics metrics : fetcher.getMetrics()) {
+            log.info("OCSP responder {}: {} requests, {} failed, {} skipped, average {} ms, max {} ms{}",
+                    metrics.getResponderURI(), metrics.getRequests(), metrics.getFailures(), metrics.getSkipped(),
+                    metrics.getAverageMillis(), metrics.getMaxMillis(),
+                    metrics.isAvailable() ? "" : " (unavailable)");
+        }
+    }
+
     private void reportOcspDiagnostics(X509Certificate issuer, String responderURI, int statusCode,
             LocalTime prevUpdate, LocalTime nextUpdate) {
 
@@ -374,15 +374,15 @@ public class OcspClientWorker extends AbstractSignerActor {
 
     void updateCertStatuses(Map<String, OCSPResp> statuses) throws Exception {
         List<String> hashes = new ArrayList<>(statuses.size());
-        List<String> responses = new ArrayList<>(statuses.size());
+        List<byte[]> responses = new ArrayList<>(statuses.size());
 
         for (Entry<String, OCSPResp> e : statuses.entrySet()) {
             hashes.add(e.getKey());
-            responses.add(encodeBase64(e.getValue().getEncoded()));
+            responses.add(e.getValue().getEncoded());
         }
 
         getOcspResponseManager(getContext()).tell(new SetOcspResponses(hashes.toArray(
-                new String[statuses.size()]), responses.toArray(new String[statuses.size()])), getSelf());
+                new String[statuses.size()]), responses.toArray(new byte[statuses.size()][])), getSelf());
     }
 
     /**
@@ -0,0 +1,362 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import ee.ria.xroad.common.DiagnosticsErrorCodes;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.bouncycastle.cert.ocsp.OCSPException;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+
+/**
+ * Fetches OCSP responses from the OCSP responders concurrently.
+ *
+ * Every responder has its own bounded pool of request threads, so a slow responder only delays the queries
+ * sent to it. A responder that fails repeatedly is skipped for a while and the next responder of the
+ * certification service is used instead. Concurrent queries for the same certificate share a single request.
+ */
+@Slf4j
+final class OcspFetcher {
+
+    private static final long IDLE_THREAD_TIMEOUT_SECONDS = 60;
+
+    private final int maxConcurrentRequests;
+    private final int failureThreshold;
+    private final long retryIntervalMillis;
+
+    private final ConcurrentMap<String, Responder> responders = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Result>> pendingRequests = new ConcurrentHashMap<>();
+
+    /**
+     * Result of fetching the OCSP response for a certificate.
+     */
+    @Value
+    static class Result {
+        private final X509Certificate subject;
+        private final X509Certificate issuer;
+        /** The fetched response, null if none of the responders returned a response */
+        private final OCSPResp response;
+        /** The responders queried, in the order they were queried */
+        private final List<Attempt> attempts;
+    }
+
+    /**
+     * Outcome of a single OCSP request.
+     */
+    @Value
+    static class Attempt {
+        private final String responderURI;
+        /** One of the OCSP status codes in {@link DiagnosticsErrorCodes} */
+        private final int statusCode;
+        private final OCSPResp response;
+    }
+
+    /**
+     * Request statistics of an OCSP responder.
+     */
+    @Value
+    static class ResponderMetrics {
+        private final String responderURI;
+        private final long requests;
+        private final long failures;
+        private final long skipped;
+        private final long averageMillis;
+        private final long maxMillis;
+        private final boolean available;
+    }
+
+    @Value
+    private static class FetchRequest {
+        private final X509Certificate subject;
+        private final X509Certificate issuer;
+        private final PrivateKey signerKey;
+        private final X509Certificate signer;
+        private final String signAlgoId;
+        private final List<String> responderURIs;
+    }
+
+    private static class InstanceHolder {
+        private static final OcspFetcher INSTANCE = new OcspFetcher(
+                SystemProperties.getOcspResponderMaxConcurrentRequests(),
+                SystemProperties.getOcspResponderFailureThreshold(),
+                TimeUnit.SECONDS.toMillis(SystemProperties.getOcspResponderRetryInterval()));
+    }
+
+    /**
+     * @param maxConcurrentRequests maximum number of concurrent requests sent to a single responder
+     * @param failureThreshold number of consecutive failures after which a responder is skipped
+     * @param retryIntervalMillis time a failing responder is skipped before it is queried again
+     */
+    OcspFetcher(int maxConcurrentRequests, int failureThreshold, long retryIntervalMillis) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.failureThreshold = failureThreshold;
+        this.retryIntervalMillis = retryIntervalMillis;
+    }
+
+    /**
+     * @return the fetcher shared by the signer components, configured from the system properties
+     */
+    static OcspFetcher getInstance() {
+        return InstanceHolder.INSTANCE;
+    }
+
+    /**
+     * Starts fetching the OCSP response for the given certificate. The responders of the certificate are
+     * queried in the order given by the global configuration until one of them returns a response.
+     * If a query for the same certificate is already in progress, its result is returned instead.
+     * @param subject the certificate whose status is queried
+     * @return future of the fetch result, never completes exceptionally
+     * @throws Exception if the issuer or the responders of the certificate cannot be determined
+     */
+    CompletableFuture<Result> fetch(X509Certificate subject) throws Exception {
+        // the issuer is determined by the subject, so the certificate hash identifies the cert/issuer pair
+        String subjectHash = calculateCertHexHash(subject);
+
+        CompletableFuture<Result> pending = pendingRequests.get(subjectHash);
+
+        if (pending != null) {
+            log.debug("Joining pending OCSP request for certificate '{}'", subject.getSubjectX500Principal());
+
+            return pending;
+        }
+
+        FetchRequest request = createRequest(subject);
+
+        CompletableFuture<Result> result = new CompletableFuture<>();
+        pending = pendingRequests.putIfAbsent(subjectHash, result);
+
+        if (pending != null) {
+            return pending;
+        }
+
+        query(request, 0, new ArrayList<>()).whenComplete((r, e) -> {
+            pendingRequests.remove(subjectHash, result);
+
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(r);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * @return request statistics of the responders queried so far
+     */
+    List<ResponderMetrics> getMetrics() {
+        List<ResponderMetrics> metrics = new ArrayList<>(responders.size());
+
+        responders.values().forEach(r -> metrics.add(r.getMetrics()));
+
+        return Collections.unmodifiableList(metrics);
+    }
+
+    private static FetchRequest createRequest(X509Certificate subject) throws Exception {
+        X509Certificate issuer = GlobalConf.getCaCert(GlobalConf.getInstanceIdentifier(), subject);
+
+        List<String> responderURIs = GlobalConf.getOcspResponderAddresses(subject);
+
+        log.debug("responder URIs: {}", responderURIs);
+
+        if (responderURIs.isEmpty()) {
+            throw new ConnectException("No OCSP responder URIs available");
+        }
+
+        return new FetchRequest(subject, issuer, OcspClient.getOcspRequestKey(subject),
+                OcspClient.getOcspSignerCert(), OcspClient.getSignAlgorithmId(), responderURIs);
+    }
+
+    private CompletableFuture<Result> query(FetchRequest request, int index, List<Attempt> attempts) {
+        if (index >= request.getResponderURIs().size()) {
+            return CompletableFuture.completedFuture(
+                    new Result(request.getSubject(), request.getIssuer(), null, attempts));
+        }
+
+        Responder responder = responders.computeIfAbsent(request.getResponderURIs().get(index), Responder::new);
+
+        if (!responder.allowRequest()) {
+            log.debug("Skipping unavailable OCSP responder {}", responder.uri);
+
+            return query(request, index + 1, attempts);
+        }
+
+        return CompletableFuture.supplyAsync(() -> responder.fetch(request), responder.executor)
+                .thenCompose(attempt -> {
+                    attempts.add(attempt);
+
+                    if (attempt.getResponse() != null) {
+                        return CompletableFuture.completedFuture(
+                                new Result(request.getSubject(), request.getIssuer(), attempt.getResponse(),
+                                        attempts));
+                    }
+
+                    return query(request, index + 1, attempts);
+                });
+    }
+
+    private final class Responder {
+
+        private final String uri;
+        private final ThreadPoolExecutor executor;
+
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        // circuit breaker state, guarded by this
+        private int consecutiveFailures;
+        private long retryAt;
+        private boolean probing;
+
+        Responder(String uri) {
+            this.uri = uri;
+
+            AtomicInteger threadCount = new AtomicInteger();
+
+            executor = new ThreadPoolExecutor(maxConcurrentRequests, maxConcurrentRequests,
+                    IDLE_THREAD_TIMEOUT_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                        Thread t = new Thread(r, "ocsp-fetcher-" + threadCount.incrementAndGet() + " (" + uri + ")");
+                        t.setDaemon(true);
+
+                        return t;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+        }
+
+        /**
+         * @return false if the responder has failed repeatedly and should be skipped. After the retry interval
+         * a single probe request is let through, the responder is used normally again if the probe succeeds.
+         */
+        synchronized boolean allowRequest() {
+            if (consecutiveFailures < failureThreshold) {
+                return true;
+            }
+
+            if (probing || System.currentTimeMillis() < retryAt) {
+                skipped.increment();
+
+                return false;
+            }
+
+            probing = true;
+
+            return true;
+        }
+
+        Attempt fetch(FetchRequest request) {
+            long start = System.nanoTime();
+
+            OCSPResp response = null;
+            int statusCode;
+
+            try {
+                log.debug("Fetching response from: {}", uri);
+
+                response = OcspClient.fetchResponse(uri, request.getSubject(), request.getIssuer(),
+                        request.getSignerKey(), request.getSigner(), request.getSignAlgoId());
+                statusCode = DiagnosticsErrorCodes.RETURN_SUCCESS;
+            } catch (OCSPException e) {
+                log.error("Parsing OCSP response from " + uri + " failed", e);
+
+                statusCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_RESPONSE_INVALID;
+            } catch (IOException e) {
+                log.error("Unable to connect to responder at " + uri, e);
+
+                statusCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR;
+            } catch (Exception e) {
+                log.error("Unable to fetch response from responder at " + uri, e);
+
+                statusCode = DiagnosticsErrorCodes.ERROR_CODE_OCSP_FAILED;
+            }
+
+            long elapsed = System.nanoTime() - start;
+
+            requests.increment();
+            totalNanos.add(elapsed);
+            maxNanos.accumulateAndGet(elapsed, Math::max);
+
+            if (response != null) {
+                onSuccess();
+            } else {
+                failures.increment();
+                onFailure();
+            }
+
+            return new Attempt(uri, statusCode, response);
+        }
+
+        private synchronized void onSuccess() {
+            consecutiveFailures = 0;
+            probing = false;
+        }
+
+        private synchronized void onFailure() {
+            consecutiveFailures++;
+            probing = false;
+
+            if (consecutiveFailures >= failureThreshold) {
+                retryAt = System.currentTimeMillis() + retryIntervalMillis;
+
+                log.warn("OCSP responder {} failed {} times in a row, skipping it for {} ms", uri,
+                        consecutiveFailures, retryIntervalMillis);
+            }
+        }
+
+        synchronized ResponderMetrics getMetrics() {
+            long count = requests.sum();
+
+            return new ResponderMetrics(uri, count, failures.sum(), skipped.sum(),
+                    count > 0 ? TimeUnit.NANOSECONDS.toMillis(totalNanos.sum() / count) : 0,
+                    TimeUnit.NANOSECONDS.toMillis(maxNanos.get()),
+                    consecutiveFailures < failureThreshold);
+        }
+    }
+}
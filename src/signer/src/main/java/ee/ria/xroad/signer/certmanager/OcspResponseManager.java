@@ -26,13 +26,17 @@ package ee.ria.xroad.signer.certmanager;
 
 import ee.ria.xroad.signer.protocol.message.GetOcspResponses;
 import ee.ria.xroad.signer.protocol.message.GetOcspResponsesResponse;
+import ee.ria.xroad.signer.protocol.message.OcspResponsesUpdated;
 import ee.ria.xroad.signer.protocol.message.SetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.SubscribeOcspResponses;
 import ee.ria.xroad.signer.tokenmanager.ServiceLocator;
 import ee.ria.xroad.signer.tokenmanager.TokenManager;
 import ee.ria.xroad.signer.util.AbstractSignerActor;
 import ee.ria.xroad.signer.util.SignerUtil;
 
+import akka.actor.ActorRef;
 import akka.actor.Props;
+import akka.actor.Terminated;
 import akka.actor.UntypedActorContext;
 import lombok.RequiredArgsConstructor;
 import lombok.Value;
@@ -42,11 +46,14 @@ import org.bouncycastle.cert.ocsp.OCSPResp;
 import java.io.Serializable;
 import java.security.cert.X509Certificate;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
-import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
-import static ee.ria.xroad.common.util.CryptoUtils.encodeBase64;
 
 
 /**
@@ -77,9 +84,21 @@ public class OcspResponseManager extends AbstractSignerActor {
         private final Date atDate;
     }
 
+    /**
+     * Sent to the manager by the child actors when they have downloaded new
+     * OCSP responses, so that the subscribers are notified by the manager itself.
+     */
+    @Value
+    static class OcspResponsesDownloaded {
+        private final Map<String, OCSPResp> responses;
+    }
+
     /** Maps a certificate hash to an OCSP response. */
     private final FileBasedOcspCache responseCache = new FileBasedOcspCache();
 
+    /** Actors notified when OCSP responses change. */
+    private final Set<ActorRef> subscribers = new HashSet<>();
+
     // ------------------------------------------------------------------------
 
     /**
@@ -110,9 +129,8 @@ public class OcspResponseManager extends AbstractSignerActor {
                 (GetOcspResponsesResponse) SignerUtil.ask(
                         ServiceLocator.getOcspResponseManager(ctx), message);
 
-        if (result.getBase64EncodedResponses().length > 0
-                && result.getBase64EncodedResponses()[0] != null) {
-            return decodeBase64(result.getBase64EncodedResponses()[0]);
+        if (result.getOcspResponses().length > 0) {
+            return result.getOcspResponses()[0];
         } else {
             return null;
         }
@@ -152,6 +170,12 @@ public class OcspResponseManager extends AbstractSignerActor {
                 handleSetOcspResponses((SetOcspResponses) message);
             } else if (message instanceof IsCachedOcspResponse) {
                 handleIsCachedOcspResponse((IsCachedOcspResponse) message);
+            } else if (message instanceof OcspResponsesDownloaded) {
+                notifySubscribers(((OcspResponsesDownloaded) message).getResponses());
+            } else if (message instanceof SubscribeOcspResponses) {
+                handleSubscribeOcspResponses();
+            } else if (message instanceof Terminated) {
+                handleTerminated((Terminated) message);
             } else {
                 unhandled(message);
             }
@@ -170,9 +194,39 @@ public class OcspResponseManager extends AbstractSignerActor {
     void handleSetOcspResponses(SetOcspResponses message) throws Exception {
         log.trace("handleSetOcspResponses()");
 
+        Map<String, OCSPResp> responses = new HashMap<>();
+
         for (int i = 0; i < message.getCertHashes().length; i++) {
-            setResponse(message.getCertHashes()[i], new OCSPResp(
-                    decodeBase64(message.getBase64EncodedResponses()[i])));
+            OCSPResp response = new OCSPResp(message.getOcspResponses()[i]);
+
+            setResponse(message.getCertHashes()[i], response);
+            responses.put(message.getCertHashes()[i], response);
+        }
+
+        notifySubscribers(responses);
+    }
+
+    void handleSubscribeOcspResponses() throws Exception {
+        ActorRef subscriber = getSender();
+
+        if (subscribers.add(subscriber)) {
+            log.info("Subscribing {} to OCSP response updates", subscriber);
+
+            getContext().watch(subscriber);
+        }
+
+        Map<String, OCSPResp> responses = new HashMap<>();
+
+        for (Entry<String, OCSPResp> e : responseCache.entrySet()) {
+            responses.put(e.getKey(), e.getValue());
+        }
+
+        subscriber.tell(createUpdate(responses), getSelf());
+    }
+
+    void handleTerminated(Terminated message) {
+        if (subscribers.remove(message.getActor())) {
+            log.info("Unsubscribing terminated {} from OCSP response updates", message.getActor());
         }
     }
 
@@ -187,6 +241,35 @@ public class OcspResponseManager extends AbstractSignerActor {
         return responseCache.get(certHash);
     }
 
+    /**
+     * Pushes the given responses to the subscribed actors, so that they do not need to query them from the signer.
+     */
+    private void notifySubscribers(Map<String, OCSPResp> responses) throws Exception {
+        if (responses.isEmpty() || subscribers.isEmpty()) {
+            return;
+        }
+
+        OcspResponsesUpdated update = createUpdate(responses);
+
+        for (ActorRef subscriber : subscribers) {
+            subscriber.tell(update, getSelf());
+        }
+    }
+
+    private static OcspResponsesUpdated createUpdate(Map<String, OCSPResp> responses) throws Exception {
+        String[] certHashes = new String[responses.size()];
+        byte[][] ocspResponses = new byte[responses.size()][];
+
+        int i = 0;
+        for (Entry<String, OCSPResp> e : responses.entrySet()) {
+            certHashes[i] = e.getKey();
+            ocspResponses[i] = e.getValue().getEncoded();
+            i++;
+        }
+
+        return new OcspResponsesUpdated(certHashes, ocspResponses);
+    }
+
     void setResponse(String certHash, OCSPResp response) throws Exception {
         log.debug("Setting a new response to cache for cert: {}", certHash);
         try {
@@ -217,35 +300,57 @@ public class OcspResponseManager extends AbstractSignerActor {
         }
 
         void handleGetOcspResponses(String[] certHashes) throws Exception {
-            String[] base64EncodedResponses = new String[certHashes.length];
+            OCSPResp[] ocspResponses = new OCSPResp[certHashes.length];
+            Map<Integer, CompletableFuture<OcspFetcher.Result>> downloads = new HashMap<>();
+
+            // start downloading all missing responses first, the responders are queried concurrently
             for (int i = 0; i < certHashes.length; i++) {
-                OCSPResp ocspResponse = manager.getResponse(certHashes[i]);
-                if (ocspResponse == null) {
+                ocspResponses[i] = manager.getResponse(certHashes[i]);
+                if (ocspResponses[i] == null) {
                     log.debug("No cached OCSP response available for cert {}", certHashes[i]);
                     // if the response is not in local cache, download it
-                    ocspResponse = downloadOcspResponse(certHashes[i]);
-                    if (ocspResponse != null) {
-                        manager.setResponse(certHashes[i], ocspResponse);
+                    CompletableFuture<OcspFetcher.Result> download = downloadOcspResponse(certHashes[i]);
+                    if (download != null) {
+                        downloads.put(i, download);
                     }
                 } else {
                     log.debug("Found a cached OCSP response for cert {}", certHashes[i]);
                 }
+            }
 
-                if (ocspResponse != null) {
+            Map<String, OCSPResp> downloadedResponses = new HashMap<>();
+
+            for (Entry<Integer, CompletableFuture<OcspFetcher.Result>> download : downloads.entrySet()) {
+                int i = download.getKey();
+
+                ocspResponses[i] = download.getValue().get().getResponse();
+                if (ocspResponses[i] != null) {
+                    manager.setResponse(certHashes[i], ocspResponses[i]);
+                    downloadedResponses.put(certHashes[i], ocspResponses[i]);
+                }
+            }
+
+            if (!downloadedResponses.isEmpty()) {
+                // the subscribers are notified by the manager, in its own thread
+                getContext().parent().tell(new OcspResponsesDownloaded(downloadedResponses), getSelf());
+            }
+
+            byte[][] encodedResponses = new byte[certHashes.length][];
+            for (int i = 0; i < certHashes.length; i++) {
+                if (ocspResponses[i] != null) {
                     log.debug("Acquired an OCSP response for certificate {}",
                             certHashes[i]);
-                    base64EncodedResponses[i] =
-                            encodeBase64(ocspResponse.getEncoded());
+                    encodedResponses[i] = ocspResponses[i].getEncoded();
                 } else {
                     log.warn("Could not acquire an OCSP response for "
                             + "certificate {}", certHashes[i]);
                 }
             }
 
-            sendResponse(new GetOcspResponsesResponse(base64EncodedResponses));
+            sendResponse(new GetOcspResponsesResponse(encodedResponses));
         }
 
-        OCSPResp downloadOcspResponse(String certHash) throws Exception {
+        CompletableFuture<OcspFetcher.Result> downloadOcspResponse(String certHash) throws Exception {
             log.trace("downloadOcspResponse({})", certHash);
 
             X509Certificate cert = SignerUtil.getCertForCertHash(certHash);
@@ -257,7 +362,7 @@ public class OcspResponseManager extends AbstractSignerActor {
 
             try {
                 log.debug("Downloading a new OCSP response for certificate {}", cert.getIssuerX500Principal());
-                return OcspClient.queryCertStatus(cert);
+                return OcspFetcher.getInstance().fetch(cert);
             } catch (Exception e) {
                 log.error("Error downloading OCSP response for certificate "
                         + cert.getSubjectX500Principal().getName()
@@ -50,26 +50,26 @@ public class Cert {
 
     /** If this certificate belongs to signing key, then this attribute contains
      * identifier of the member that uses this certificate. */
-    private ClientId memberId;
+    private volatile ClientId memberId;
 
     /** Whether this certificate can be used by the proxy. */
-    private boolean active;
+    private volatile boolean active;
 
     /** Whether or not this certificate is in the configuration. */
-    private boolean savedToConfiguration;
+    private volatile boolean savedToConfiguration;
 
     /** Holds the status of the certificate. */
-    private String status;
+    private volatile String status;
 
     /** Holds the precalculated hash of the certificate. */
     @Setter(AccessLevel.PRIVATE)
-    private String hash;
+    private volatile String hash;
 
     /** Holds the certificate instance. */
-    private X509Certificate certificate;
+    private volatile X509Certificate certificate;
 
     /** Holds the OCSP response of the certificate. */
-    private OCSPResp ocspResponse;
+    private volatile OCSPResp ocspResponse;
 
     /**
      * Sets the certificate and hash
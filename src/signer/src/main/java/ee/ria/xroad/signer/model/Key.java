@@ -24,17 +24,20 @@
  */
 package ee.ria.xroad.signer.model;
 
+import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.signer.protocol.dto.CertRequestInfo;
 import ee.ria.xroad.signer.protocol.dto.CertificateInfo;
 import ee.ria.xroad.signer.protocol.dto.KeyInfo;
 import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import lombok.ToString;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -52,25 +55,29 @@ public final class Key {
     private final String id;
 
     /** Whether of not this key is available. */
-    private boolean available;
+    private volatile boolean available;
 
     /** Key usage info. */
-    private KeyUsageInfo usage;
+    private volatile KeyUsageInfo usage;
 
     /** The friendly name of the key. */
-    private String friendlyName;
+    private volatile String friendlyName;
 
     /** The label of the key. */
-    private String label;
+    private volatile String label;
 
     /** The X509 encoded public key. */
-    private String publicKey;
+    private volatile String publicKey;
+
+    /** Whether the public key is an elliptic curve key. */
+    @Setter(AccessLevel.NONE)
+    private volatile boolean ecKey;
 
     /** List of certificates. */
-    private final List<Cert> certs = new ArrayList<>();
+    private final List<Cert> certs = new CopyOnWriteArrayList<>();
 
     /** List of certificate requests. */
-    private final List<CertRequest> certRequests = new ArrayList<>();
+    private final List<CertRequest> certRequests = new CopyOnWriteArrayList<>();
 
     /**
      * Adds a certificate to this key.
@@ -88,6 +95,23 @@ public final class Key {
         certRequests.add(certReq);
     }
 
+    /**
+     * Sets the public key.
+     * @param publicKey the base64 encoded X509 public key
+     */
+    public void setPublicKey(String publicKey) {
+        this.ecKey = isEcPublicKey(publicKey);
+        this.publicKey = publicKey;
+    }
+
+    /**
+     * @return the signing mechanism of this key, ECDSA for elliptic curve keys and
+     * the signing mechanism of the token otherwise
+     */
+    public String getSignMechanismName() {
+        return ecKey ? CryptoUtils.CKM_ECDSA_NAME : token.getSignMechanismName();
+    }
+
     /**
      * Converts this object to value object.
      * @return the value object
@@ -95,7 +119,7 @@ public final class Key {
     public KeyInfo toDTO() {
         return new KeyInfo(available, usage, friendlyName, id, label, publicKey,
                 Collections.unmodifiableList(getCertsAsDTOs()), Collections.unmodifiableList(getCertRequestsAsDTOs()),
-                token.getSignMechanismName());
+                getSignMechanismName());
     }
 
     /**
@@ -105,6 +129,19 @@ public final class Key {
         return isAvailable() && getUsage() == KeyUsageInfo.SIGNING;
     }
 
+    private static boolean isEcPublicKey(String publicKeyBase64) {
+        if (publicKeyBase64 == null) {
+            return false;
+        }
+
+        try {
+            return CryptoUtils.isEcPublicKey(CryptoUtils.decodeBase64(publicKeyBase64));
+        } catch (RuntimeException e) {
+            // Not a valid X509 encoded key, use the signing mechanism of the token
+            return false;
+        }
+    }
+
     private List<CertificateInfo> getCertsAsDTOs() {
         return certs.stream().map(c -> c.toDTO()).collect(Collectors.toList());
     }
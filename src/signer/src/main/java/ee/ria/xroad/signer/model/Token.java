@@ -29,14 +29,16 @@ import ee.ria.xroad.signer.protocol.dto.TokenInfo;
 import ee.ria.xroad.signer.protocol.dto.TokenStatusInfo;
 import ee.ria.xroad.signer.tokenmanager.token.TokenType;
 
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Setter;
 import org.apache.commons.lang3.ObjectUtils;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -52,40 +54,41 @@ public final class Token {
     private final String id;
 
     /** The module id. */
-    private String moduleId;
+    private volatile String moduleId;
 
     /** The name to display in UI. */
-    private String friendlyName;
+    private volatile String friendlyName;
 
     /** True, if token is read-only */
-    private boolean readOnly;
+    private volatile boolean readOnly;
 
     /** True, if token is available (in module) */
-    private boolean available;
+    private volatile boolean available;
 
     /** True, if password is inserted */
-    private boolean active;
+    private volatile boolean active;
 
     /** The token serial number (optional). */
-    private String serialNumber;
+    private volatile String serialNumber;
 
     /** The token label (optional). */
-    private String label;
+    private volatile String label;
 
     /** The pin index to further specify the token (optional). */
-    private int slotIndex;
+    private volatile int slotIndex;
 
     /** Whether batch signing should be enabled for this token. */
-    private boolean batchSigningEnabled = true;
+    private volatile boolean batchSigningEnabled = true;
 
     /** Holds the currect status of the token. */
-    private TokenStatusInfo status = TokenStatusInfo.OK;
+    private volatile TokenStatusInfo status = TokenStatusInfo.OK;
 
     /** Contains the the keys of this token. */
-    private final List<Key> keys = new ArrayList<>();
+    private final List<Key> keys = new CopyOnWriteArrayList<>();
 
     /** Contains label-value pairs of information about token. */
-    private final Map<String, String> tokenInfo = new LinkedHashMap<>();
+    @Setter(AccessLevel.NONE)
+    private volatile Map<String, String> tokenInfo = new LinkedHashMap<>();
 
     /** Signing (PKCS#11) mechanism name. */
     private final String signMechanismName;
@@ -103,8 +106,7 @@ public final class Token {
      * @param info the token info
      */
     public void setInfo(Map<String, String> info) {
-        this.tokenInfo.clear();
-        this.tokenInfo.putAll(info);
+        this.tokenInfo = new LinkedHashMap<>(info);
     }
 
     /**
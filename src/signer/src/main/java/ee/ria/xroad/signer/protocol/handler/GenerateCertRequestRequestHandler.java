@@ -86,6 +86,13 @@ public class GenerateCertRequestRequestHandler extends AbstractRequestHandler<Ge
                     "Authentication certificate requests can only be created under software tokens");
         }
 
+        if (message.getKeyUsage() == KeyUsageInfo.AUTHENTICATION
+                && CryptoUtils.CKM_ECDSA_NAME.equals(tokenAndKey.getSignMechanism())) {
+            throw CodedException.tr(X_WRONG_CERT_USAGE,
+                    "auth_cert_ec_key",
+                    "Authentication certificate requests can only be created for RSA keys");
+        }
+
         if (tokenAndKey.getKey().getPublicKey() == null) {
             throw new CodedException(X_INTERNAL_ERROR, "Key '%s' has no public key", message.getKeyId());
         }
@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of lookup indexes over the current tokens, their keys,
+ * certificates and certificate requests. The snapshot is rebuilt whenever
+ * the structure of the tokens changes (e.g. a key or certificate is added
+ * or removed) and replaced atomically, so that lookups can be done without
+ * locking. When several objects share the same identifier, the first one
+ * (in token/key/certificate order) is indexed, matching the behaviour of
+ * a linear search.
+ */
+final class TokenIndex {
+
+    static final TokenIndex EMPTY = new TokenIndex(Collections.emptyList());
+
+    private final Map<String, Token> tokensById = new HashMap<>();
+    private final Map<String, Key> keysById = new HashMap<>();
+    private final Map<String, Token> tokensByKeyId = new HashMap<>();
+    private final Map<String, Cert> certsById = new HashMap<>();
+    private final Map<String, Key> keysByCertId = new HashMap<>();
+    private final Map<String, Cert> certsByHash = new HashMap<>();
+    private final Map<String, Key> keysByCertHash = new HashMap<>();
+    private final Map<String, CertRequest> certRequestsById = new HashMap<>();
+    private final Map<String, Key> keysByCertRequestId = new HashMap<>();
+
+    /**
+     * Builds the indexes for the given tokens.
+     * @param tokens the tokens
+     */
+    TokenIndex(List<Token> tokens) {
+        for (Token token : tokens) {
+            tokensById.putIfAbsent(token.getId(), token);
+
+            for (Key key : token.getKeys()) {
+                indexKey(token, key);
+            }
+        }
+    }
+
+    Token getToken(String tokenId) {
+        return tokensById.get(tokenId);
+    }
+
+    Key getKey(String keyId) {
+        return keysById.get(keyId);
+    }
+
+    Token getTokenForKey(String keyId) {
+        return tokensByKeyId.get(keyId);
+    }
+
+    Cert getCert(String certId) {
+        return certsById.get(certId);
+    }
+
+    Key getKeyForCert(String certId) {
+        return keysByCertId.get(certId);
+    }
+
+    Cert getCertForHash(String certHash) {
+        return certsByHash.get(certHash);
+    }
+
+    Key getKeyForCertHash(String certHash) {
+        return keysByCertHash.get(certHash);
+    }
+
+    CertRequest getCertRequest(String certReqId) {
+        return certRequestsById.get(certReqId);
+    }
+
+    Key getKeyForCertRequest(String certReqId) {
+        return keysByCertRequestId.get(certReqId);
+    }
+
+    private void indexKey(Token token, Key key) {
+        if (keysById.putIfAbsent(key.getId(), key) == null) {
+            tokensByKeyId.put(key.getId(), token);
+        }
+
+        for (Cert cert : key.getCerts()) {
+            if (certsById.putIfAbsent(cert.getId(), cert) == null) {
+                keysByCertId.put(cert.getId(), key);
+            }
+
+            if (cert.getHash() != null
+                    && certsByHash.putIfAbsent(cert.getHash(), cert) == null) {
+                keysByCertHash.put(cert.getHash(), key);
+            }
+        }
+
+        for (CertRequest certReq : key.getCertRequests()) {
+            if (certRequestsById.putIfAbsent(certReq.getId(), certReq) == null) {
+                keysByCertRequestId.put(certReq.getId(), key);
+            }
+        }
+    }
+}
@@ -53,7 +53,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.BiFunction;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
@@ -65,11 +65,17 @@ import static java.util.Collections.unmodifiableList;
 
 /**
  * Manages the current state of tokens, their keys and certificates.
+ *
+ * Modifications are serialized on the class lock. Lookups go through an
+ * immutable {@link TokenIndex} snapshot that is rebuilt and swapped after
+ * every structural modification, so readers never take the lock.
  */
 @Slf4j
 public final class TokenManager {
 
-    private static volatile List<Token> currentTokens = new ArrayList<>();
+    private static volatile List<Token> currentTokens = new CopyOnWriteArrayList<>();
+
+    private static volatile TokenIndex index = TokenIndex.EMPTY;
 
     private static boolean initialized;
 
@@ -91,7 +97,10 @@ public final class TokenManager {
             log.error("Failed to load token conf", e);
         }
 
-        currentTokens = new ArrayList<>(TokenConf.getInstance().getTokens());
+        synchronized (TokenManager.class) {
+            currentTokens = new CopyOnWriteArrayList<>(TokenConf.getInstance().getTokens());
+            reindex();
+        }
 
         initialized = true;
     }
@@ -131,7 +140,8 @@ public final class TokenManager {
             MergeResult result;
             synchronized (TokenManager.class) {
                 result = mergeStrategy.merge(fileTokens, currentTokens);
-                currentTokens = result.getResultTokens();
+                currentTokens = new CopyOnWriteArrayList<>(result.getResultTokens());
+                reindex();
             }
             if (listener != null) {
                 listener.mergeDone(result.getAddedCertificates());
@@ -150,7 +160,7 @@ public final class TokenManager {
     /**
      * @return list of tokens
      */
-    public static synchronized List<TokenInfo> listTokens() {
+    public static List<TokenInfo> listTokens() {
         return unmodifiableList(
                 currentTokens.stream()
                         .map(t -> t.toDTO())
@@ -183,6 +193,7 @@ public final class TokenManager {
         token.setAvailable(true);
 
         currentTokens.add(token);
+        reindex();
 
         return token.toDTO();
     }
@@ -205,42 +216,49 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the token info DTO for the token id or null of not found
      */
-    public static synchronized TokenInfo getTokenInfo(String tokenId) {
+    public static TokenInfo getTokenInfo(String tokenId) {
         log.trace("getTokenInfo({})", tokenId);
 
-        return currentTokens.stream()
-                .filter(t -> t.getId().equals(tokenId))
-                .map(t -> t.toDTO())
-                .findFirst().orElse(null);
+        Token token = index.getToken(tokenId);
+
+        return token != null ? token.toDTO() : null;
     }
 
     /**
      * @param keyId the key id
      * @return the token and key or throws exception if not found
      */
-    public static synchronized TokenAndKey findTokenAndKey(String keyId) {
+    public static TokenAndKey findTokenAndKey(String keyId) {
         log.trace("findTokenAndKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> new TokenAndKey(t.getId(), k.toDTO()))
-                .orElseThrow(() -> keyNotFound(keyId));
+        TokenIndex current = index;
+        Key key = current.getKey(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return new TokenAndKey(current.getTokenForKey(keyId).getId(), key.toDTO());
     }
 
     /**
      * @param keyId the key id
      * @return the token id for the key id or throws exception if not found
      */
-    public static synchronized String findTokenIdForKeyId(String keyId) {
+    public static String findTokenIdForKeyId(String keyId) {
         log.trace("findTokenIdForKeyId({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getId()).orElseThrow(() -> keyNotFound(keyId));
+        Token token = index.getTokenForKey(keyId);
+        if (token == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return token.getId();
     }
 
     /**
      * @return the software token id
      */
-    public static synchronized String getSoftwareTokenId() {
+    public static String getSoftwareTokenId() {
         return forToken(t -> t.getType().equals(SoftwareModuleType.TYPE),
                 t -> t.getId()).orElse(null);
     }
@@ -249,9 +267,10 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return the module id for the token id or null if not found
      */
-    public static synchronized String getModuleId(String tokenId) {
-        return forToken(t -> t.getId().equals(tokenId),
-                t -> t.getModuleId()).orElse(null);
+    public static String getModuleId(String tokenId) {
+        Token token = index.getToken(tokenId);
+
+        return token != null ? token.getModuleId() : null;
     }
 
     /**
@@ -271,18 +290,19 @@ public final class TokenManager {
      * @param keyId the key id
      * @return the key info for the key id or null if not found
      */
-    public static synchronized KeyInfo getKeyInfo(String keyId) {
+    public static KeyInfo getKeyInfo(String keyId) {
         log.trace("getKeyInfo({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> k.toDTO()).orElse(null);
+        Key key = index.getKey(keyId);
+
+        return key != null ? key.toDTO() : null;
     }
 
     /**
      * @param clientId the client id
      * @return the list of keys for the given client id
      */
-    public static synchronized List<KeyInfo> getKeyInfo(ClientId clientId) {
+    public static List<KeyInfo> getKeyInfo(ClientId clientId) {
         log.trace("getKeyInfo({})", clientId);
 
         List<KeyInfo> keyInfo = new ArrayList<>();
@@ -335,42 +355,42 @@ public final class TokenManager {
      * @param certId the certificate id
      * @return the certificate info for the certificate id or null if not found
      */
-    public static synchronized CertificateInfo getCertificateInfo(
-            String certId) {
+    public static CertificateInfo getCertificateInfo(String certId) {
         log.trace("getCertificateInfo({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c.toDTO())
-                .orElse(null);
+        Cert cert = index.getCert(certId);
+
+        return cert != null ? cert.toDTO() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate info for the certificate hash or null
      */
-    public static synchronized CertificateInfo getCertificateInfoForCertHash(
-            String certHash) {
+    public static CertificateInfo getCertificateInfoForCertHash(String certHash) {
         log.trace("getCertificateInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.toDTO()).orElse(null);
+        Cert cert = index.getCertForHash(certHash);
+
+        return cert != null ? cert.toDTO() : null;
     }
 
     /**
      * @param certHash the certificate hash
      * @return the certificate for the certificate hash or null
      */
-    public static synchronized X509Certificate getCertificateForCertHash(
-            String certHash) {
+    public static X509Certificate getCertificateForCertHash(String certHash) {
         log.trace("getCertificateForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> c.getCertificate()).orElse(null);
+        Cert cert = index.getCertForHash(certHash);
+
+        return cert != null ? cert.getCertificate() : null;
     }
 
     /**
      * @return all certificates
      */
-    public static synchronized List<CertificateInfo> getAllCerts() {
+    public static List<CertificateInfo> getAllCerts() {
         log.trace("getAllCerts()");
 
         return currentTokens.stream()
@@ -390,11 +410,10 @@ public final class TokenManager {
                                                     OCSPResp response) {
         log.trace("setOcspResponse({})", certHash);
 
-        forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> {
-                    c.setOcspResponse(response);
-                    return null;
-                });
+        Cert cert = index.getCertForHash(certHash);
+        if (cert != null) {
+            cert.setOcspResponse(response);
+        }
     }
 
     /**
@@ -402,7 +421,7 @@ public final class TokenManager {
      * @param memberId the member id
      * @return the certificate request info or null if not found
      */
-    public static synchronized CertRequestInfo getCertRequestInfo(String keyId,
+    public static CertRequestInfo getCertRequestInfo(String keyId,
                                                                   ClientId memberId) {
         log.trace("getCertRequestInfo({}, {})", keyId, memberId);
 
@@ -417,22 +436,24 @@ public final class TokenManager {
      * @param certHash the certificate hash
      * @return key info for the certificate hash
      */
-    public static synchronized KeyInfo getKeyInfoForCertHash(String certHash) {
+    public static KeyInfo getKeyInfoForCertHash(String certHash) {
         log.trace("getKeyInfoForCertHash({})", certHash);
 
-        return forCert((k, c) -> certHash.equals(c.getHash()),
-                (k, c) -> k.toDTO()).orElse(null);
+        Key key = index.getKeyForCertHash(certHash);
+
+        return key != null ? key.toDTO() : null;
     }
 
     /**
      * @param certId the certificate id
      * @return key info for certificate id
      */
-    public static synchronized KeyInfo getKeyInfoForCertId(String certId) {
+    public static KeyInfo getKeyInfoForCertId(String certId) {
         log.trace("getKeyInfoForCertId({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.toDTO()).orElse(null);
+        Key key = index.getKeyForCert(certId);
+
+        return key != null ? key.toDTO() : null;
     }
 
     /**
@@ -450,7 +471,7 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is available
      */
-    public static synchronized boolean isTokenAvailable(String tokenId) {
+    public static boolean isTokenAvailable(String tokenId) {
         log.trace("isTokenAvailable({})", tokenId);
 
         return findToken(tokenId).isAvailable();
@@ -460,7 +481,7 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if token is active (logged in)
      */
-    public static synchronized boolean isTokenActive(String tokenId) {
+    public static boolean isTokenActive(String tokenId) {
         log.trace("isTokenActive({})", tokenId);
 
         return findToken(tokenId).isActive();
@@ -525,7 +546,7 @@ public final class TokenManager {
      * @param tokenId the token if
      * @return the token status info
      */
-    public static synchronized TokenStatusInfo getTokenStatus(String tokenId) {
+    public static TokenStatusInfo getTokenStatus(String tokenId) {
         log.trace("getTokenStatus({})", tokenId);
 
         return findToken(tokenId).getStatus();
@@ -561,7 +582,7 @@ public final class TokenManager {
      * @param keyId the key id
      * @return true if key is available
      */
-    public static synchronized boolean isKeyAvailable(String keyId) {
+    public static boolean isKeyAvailable(String keyId) {
         log.trace("isKeyAvailable()");
 
         return findKey(keyId).isAvailable();
@@ -622,6 +643,7 @@ public final class TokenManager {
         key.setPublicKey(publicKeyBase64);
 
         token.addKey(key);
+        reindex();
 
         return key.toDTO();
     }
@@ -635,8 +657,15 @@ public final class TokenManager {
     public static synchronized boolean removeKey(String keyId) {
         log.trace("removeKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId),
-                (t, k) -> t.getKeys().remove(k)).orElse(false);
+        TokenIndex current = index;
+        Key key = current.getKey(keyId);
+        if (key == null || !current.getTokenForKey(keyId).getKeys().remove(key)) {
+            return false;
+        }
+
+        reindex();
+
+        return true;
     }
 
     /**
@@ -667,6 +696,7 @@ public final class TokenManager {
         cert.setCertificate(certBytes);
 
         key.addCert(cert);
+        reindex();
     }
 
     /**
@@ -690,6 +720,7 @@ public final class TokenManager {
         cert.setStatus(certInfo.getStatus());
 
         key.addCert(cert);
+        reindex();
     }
 
     /**
@@ -727,8 +758,15 @@ public final class TokenManager {
     public static synchronized boolean removeCert(String certId) {
         log.trace("removeCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId),
-                (k, c) -> k.getCerts().remove(c)).orElse(false);
+        TokenIndex current = index;
+        Cert cert = current.getCert(certId);
+        if (cert == null || !current.getKeyForCert(certId).getCerts().remove(cert)) {
+            return false;
+        }
+
+        reindex();
+
+        return true;
     }
 
     /**
@@ -771,6 +809,7 @@ public final class TokenManager {
 
         String certId = SignerUtil.randomId();
         key.addCertRequest(new CertRequest(certId, memberId, subjectName));
+        reindex();
 
         log.info("Added new certificate request (memberId: {}, "
                         + "subjectId: {}) under key {}",
@@ -788,19 +827,23 @@ public final class TokenManager {
     public static synchronized String removeCertRequest(String certReqId) {
         log.trace("removeCertRequest({})", certReqId);
 
-        return forCertRequest((k, c) -> c.getId().equals(certReqId),
-                (k, c) -> {
-                    if (k.getUsage() == KeyUsageInfo.AUTHENTICATION) {
-                        // Authentication keys can only have one certificate request
-                        k.getCertRequests().clear();
-                    } else {
-                        if (!k.getCertRequests().remove(c)) {
-                            return null;
-                        }
-                    }
+        TokenIndex current = index;
+        CertRequest certReq = current.getCertRequest(certReqId);
+        if (certReq == null) {
+            return null;
+        }
 
-                    return k.getId();
-                }).orElse(null);
+        Key key = current.getKeyForCertRequest(certReqId);
+        if (key.getUsage() == KeyUsageInfo.AUTHENTICATION) {
+            // Authentication keys can only have one certificate request
+            key.getCertRequests().clear();
+        } else if (!key.getCertRequests().remove(certReq)) {
+            return null;
+        }
+
+        reindex();
+
+        return key.getId();
     }
 
     /**
@@ -817,7 +860,7 @@ public final class TokenManager {
      * @param tokenId the token id
      * @return true if batch signing is enabled for a token
      */
-    public static synchronized boolean isBatchSigningEnabled(String tokenId) {
+    public static boolean isBatchSigningEnabled(String tokenId) {
         log.trace("isBatchSigningEnabled({})", tokenId);
 
         return findToken(tokenId).isBatchSigningEnabled();
@@ -835,71 +878,45 @@ public final class TokenManager {
         return Optional.empty();
     }
 
-    private static <T> Optional<T> forKey(
-            BiFunction<Token, Key, Boolean> tester,
-            BiFunction<Token, Key, T> mapper) {
-        for (Token token : currentTokens) {
-            for (Key key : token.getKeys()) {
-                if (tester.apply(token, key)) {
-                    return Optional.ofNullable(mapper.apply(token, key));
-                }
-            }
-        }
-
-        return Optional.empty();
-    }
-
-    private static <T> Optional<T> forCert(
-            BiFunction<Key, Cert, Boolean> tester,
-            BiFunction<Key, Cert, T> mapper) {
-        for (Token token : currentTokens) {
-            for (Key key : token.getKeys()) {
-                for (Cert cert : key.getCerts()) {
-                    if (tester.apply(key, cert)) {
-                        return Optional.ofNullable(mapper.apply(key, cert));
-                    }
-                }
-            }
-        }
-
-        return Optional.empty();
-    }
-
-    private static <T> Optional<T> forCertRequest(
-            BiFunction<Key, CertRequest, Boolean> tester,
-            BiFunction<Key, CertRequest, T> mapper) {
-        for (Token token : currentTokens) {
-            for (Key key : token.getKeys()) {
-                for (CertRequest certReq : key.getCertRequests()) {
-                    if (tester.apply(key, certReq)) {
-                        return Optional.ofNullable(mapper.apply(key, certReq));
-                    }
-                }
-            }
-        }
-
-        return Optional.empty();
-    }
-
     private static Token findToken(String tokenId) {
         log.trace("findToken({})", tokenId);
 
-        return forToken(t -> t.getId().equals(tokenId), t -> t)
-                .orElseThrow(() -> tokenNotFound(tokenId));
+        Token token = index.getToken(tokenId);
+        if (token == null) {
+            throw tokenNotFound(tokenId);
+        }
+
+        return token;
     }
 
     private static Key findKey(String keyId) {
         log.trace("findKey({})", keyId);
 
-        return forKey((t, k) -> k.getId().equals(keyId), (t, k) -> k)
-                .orElseThrow(() -> keyNotFound(keyId));
+        Key key = index.getKey(keyId);
+        if (key == null) {
+            throw keyNotFound(keyId);
+        }
+
+        return key;
     }
 
     private static Cert findCert(String certId) {
         log.trace("findCert({})", certId);
 
-        return forCert((k, c) -> c.getId().equals(certId), (k, c) -> c)
-                .orElseThrow(() -> certWithIdNotFound(certId));
+        Cert cert = index.getCert(certId);
+        if (cert == null) {
+            throw certWithIdNotFound(certId);
+        }
+
+        return cert;
+    }
+
+    /**
+     * Rebuilds the lookup indexes from the current tokens. Must be called
+     * while holding the class lock after every structural modification.
+     */
+    private static void reindex() {
+        index = new TokenIndex(currentTokens);
     }
 
     private static String getDefaultFriendlyName(TokenType tokenType) {
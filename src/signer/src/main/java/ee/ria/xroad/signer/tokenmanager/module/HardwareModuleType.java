@@ -46,6 +46,9 @@ public class HardwareModuleType implements ModuleType {
 
     private final boolean batchSigningEnabled;
 
+    // Number of logged in sessions used for signing concurrently.
+    private final int signingSessionPoolSize;
+
     private final boolean forceReadOnly;
 
     private final String signMechanismName;
@@ -66,6 +66,8 @@ public final class ModuleConf {
 
     private static final String DEFAULT_SIGN_MECHANISM_NAME = PKCS11Constants.NAME_CKM_RSA_PKCS;
 
+    private static final int DEFAULT_SIGNING_SESSION_POOL_SIZE = 1;
+
     // Module configuration fields.
     private static final String ENABLED_PARAM = "enabled";
     private static final String LIBRARY_PARAM = "library";
@@ -73,6 +75,7 @@ public final class ModuleConf {
     private static final String OS_LOCKING_OK_PARAM = "os_locking_ok";
     private static final String SIGN_VERIFY_PIN_PARAM = "sign_verify_pin";
     private static final String BATCH_SIGNING_ENABLED_PARAM = "batch_signing_enabled";
+    private static final String SIGNING_SESSION_POOL_SIZE_PARAM = "signing_session_pool_size";
     private static final String READ_ONLY_PARAM = "read_only";
     private static final String TOKEN_ID_FORMAT_PARAM = "token_id_format";
     private static final String SIGN_MECHANISM_PARAM = "sign_mechanism";
@@ -215,6 +218,24 @@ public final class ModuleConf {
 
         boolean verifyPin = getBoolean(section, SIGN_VERIFY_PIN_PARAM, false);
         boolean batchSigning = getBoolean(section, BATCH_SIGNING_ENABLED_PARAM, true);
+        int signingSessionPoolSize = getInteger(section, SIGNING_SESSION_POOL_SIZE_PARAM,
+                DEFAULT_SIGNING_SESSION_POOL_SIZE);
+
+        if (signingSessionPoolSize < 1) {
+            throw new ConfigurationRuntimeException(String.format(
+                    "Invalid value of '%s' for module (%s), skipping...", SIGNING_SESSION_POOL_SIZE_PARAM, uid));
+        }
+
+        if (signingSessionPoolSize > 1) {
+            // The library must be initialized for concurrent access from several threads
+            if (osLockingOk == null) {
+                osLockingOk = true;
+            } else if (!osLockingOk) {
+                log.warn("Module ({}) does not allow OS locking, ignoring '{}'", uid, SIGNING_SESSION_POOL_SIZE_PARAM);
+
+                signingSessionPoolSize = 1;
+            }
+        }
         boolean readOnly = getBoolean(section, READ_ONLY_PARAM, false);
         String tokenIdFormat = section.getString(TOKEN_ID_FORMAT_PARAM);
 
@@ -242,9 +263,10 @@ public final class ModuleConf {
 
         log.debug("Read module configuration (UID = {}, library = {}, library_cant_create_os_threads = {}"
                 + ", os_locking_ok = {}, token_id_format = {}, pin_verification_per_signing = {}, batch_signing = {}"
-                + ", sign_mechanism = {}, pub_key_attributes = {}, priv_key_attributes = {})",
+                + ", signing_session_pool_size = {}, sign_mechanism = {}, pub_key_attributes = {}"
+                + ", priv_key_attributes = {})",
                 uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat, verifyPin, batchSigning,
-                signMechanismName, pubKeyAttributes, privKeyAttributes);
+                signingSessionPoolSize, signMechanismName, pubKeyAttributes, privKeyAttributes);
 
         if (MODULES.containsKey(uid)) {
             log.warn("Module information already defined for {}, skipping...", uid);
@@ -253,7 +275,8 @@ public final class ModuleConf {
         }
 
         MODULES.put(uid, new HardwareModuleType(uid, library, libraryCantCreateOsThreads, osLockingOk, tokenIdFormat,
-                verifyPin, batchSigning, readOnly, signMechanismName, privKeyAttributes, pubKeyAttributes));
+                verifyPin, batchSigning, signingSessionPoolSize, readOnly, signMechanismName, privKeyAttributes,
+                pubKeyAttributes));
     }
 
     private static PubKeyAttributes loadPubKeyAttributes(SubnodeConfiguration section) {
@@ -318,6 +341,15 @@ public final class ModuleConf {
         }
     }
 
+    private static int getInteger(SubnodeConfiguration section, String key, int defaultValue) {
+        try {
+            return section.getInt(key, defaultValue);
+        } catch (ConversionException e) {
+            throw new ConversionException(String.format("Invalid value of '%s' for module (%s), skipping...",
+                    key, section.getSubnodeKey()), e);
+        }
+    }
+
     private static String[] getStringArray(SubnodeConfiguration section, String key) {
         try {
             return section.getStringArray(key);
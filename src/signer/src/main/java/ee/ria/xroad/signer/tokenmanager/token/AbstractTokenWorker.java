@@ -173,16 +173,25 @@ public abstract class AbstractTokenWorker extends AbstractUpdateableActor {
     }
 
     private void handleCalculateSignature(CalculateSignature signRequest) throws Exception {
+        sendResponse(calculateSignature(signRequest));
+    }
+
+    /**
+     * Calculates the signature for the given request. Errors are returned in the result.
+     * @param signRequest the signature calculation request
+     * @return the calculated signature or the error
+     */
+    protected CalculatedSignature calculateSignature(CalculateSignature signRequest) {
         try {
             byte data[] = SignerUtil.createDataToSign(signRequest.getDigest(), signRequest.getSignatureAlgorithmId());
 
             byte[] signature = sign(signRequest.getKeyId(), signRequest.getSignatureAlgorithmId(), data);
-            sendResponse(new CalculatedSignature(signRequest, signature, null));
+            return new CalculatedSignature(signRequest, signature, null);
         } catch (Exception e) { // catch-log-rethrow
             log.error("Error while signing with key '{}'", signRequest.getKeyId(), e);
 
             CodedException tr = translateError(customizeException(e)).withPrefix(X_CANNOT_SIGN);
-            sendResponse(new CalculatedSignature(signRequest, null, tr));
+            return new CalculatedSignature(signRequest, null, tr);
         }
     }
 
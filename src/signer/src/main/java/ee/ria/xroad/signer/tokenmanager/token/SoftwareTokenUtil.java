@@ -24,6 +24,7 @@
  */
 package ee.ria.xroad.signer.tokenmanager.token;
 
+import ee.ria.xroad.common.CodedException;
 import ee.ria.xroad.common.SystemProperties;
 import ee.ria.xroad.common.util.CryptoUtils;
 import ee.ria.xroad.common.util.ResourceUtils;
@@ -40,10 +41,13 @@ import java.security.PrivateKey;
 import java.security.SecureRandom;
 import java.security.cert.Certificate;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
 
+import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.util.CryptoUtils.loadPkcs12KeyStore;
 
 /**
@@ -57,8 +61,14 @@ public final class SoftwareTokenUtil {
 
     static final String P12 = ".p12";
 
+    static final String KEY_ALGORITHM_RSA = "RSA";
+    static final String KEY_ALGORITHM_EC = "EC";
+
+    private static final List<String> SUPPORTED_EC_CURVES = Arrays.asList("secp256r1", "secp384r1");
+
     // TODO make it configurable.
     private static final String SIGNATURE_ALGORITHM = CryptoUtils.SHA512WITHRSA_ID;
+    private static final String EC_SIGNATURE_ALGORITHM = CryptoUtils.SHA256WITHECDSA_ID;
 
     private static final FilenameFilter P12_FILTER = new FilenameFilter() {
         @Override
@@ -100,7 +110,9 @@ public final class SoftwareTokenUtil {
     }
 
     static KeyStore createKeyStore(KeyPair kp, String alias, char[] password) throws Exception {
-        ContentSigner signer = CryptoUtils.createContentSigner(SIGNATURE_ALGORITHM, kp.getPrivate());
+        String signatureAlgorithm = KEY_ALGORITHM_EC.equals(kp.getPrivate().getAlgorithm())
+                ? EC_SIGNATURE_ALGORITHM : SIGNATURE_ALGORITHM;
+        ContentSigner signer = CryptoUtils.createContentSigner(signatureAlgorithm, kp.getPrivate());
 
         X509Certificate[] certChain = new X509Certificate[1];
         certChain[0] = SignerUtil.createCertificate("KeyHolder", kp, signer);
@@ -161,8 +173,28 @@ public final class SoftwareTokenUtil {
     }
 
     static KeyPair generateKeyPair(int keySize) throws Exception {
-        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance("RSA");
-        keyPairGen.initialize(keySize, new SecureRandom());
+        String keyAlgorithm = SystemProperties.getSignerKeyAlgorithm();
+
+        switch (keyAlgorithm) {
+            case KEY_ALGORITHM_RSA:
+                KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance(KEY_ALGORITHM_RSA);
+                keyPairGen.initialize(keySize, new SecureRandom());
+
+                return keyPairGen.generateKeyPair();
+            case KEY_ALGORITHM_EC:
+                return generateEcKeyPair(SystemProperties.getSignerKeyEcCurve());
+            default:
+                throw new CodedException(X_INTERNAL_ERROR, "Unsupported key algorithm '%s'", keyAlgorithm);
+        }
+    }
+
+    static KeyPair generateEcKeyPair(String curve) throws Exception {
+        if (!SUPPORTED_EC_CURVES.contains(curve)) {
+            throw new CodedException(X_INTERNAL_ERROR, "Unsupported EC curve '%s'", curve);
+        }
+
+        KeyPairGenerator keyPairGen = KeyPairGenerator.getInstance(KEY_ALGORITHM_EC);
+        keyPairGen.initialize(new ECGenParameterSpec(curve), new SecureRandom());
 
         return keyPairGen.generateKeyPair();
     }
@@ -49,8 +49,8 @@ import java.security.KeyPair;
 import java.security.KeyStore;
 import java.security.PrivateKey;
 import java.security.Signature;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static ee.ria.xroad.common.ErrorCodes.X_INTERNAL_ERROR;
 import static ee.ria.xroad.common.ErrorCodes.X_PIN_INCORRECT;
@@ -88,8 +88,15 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     // Use no digesting algorithm, since the input data is already a digest
     private static final String SIGNATURE_ALGORITHM = "NONEwithRSA";
+    private static final String EC_SIGNATURE_ALGORITHM = "NONEwithECDSA";
 
-    private final Map<String, PrivateKey> privateKeys = new HashMap<>();
+    private final Map<String, PrivateKey> privateKeys = new ConcurrentHashMap<>();
+
+    // Initialized signature engines of every thread, by key id. The engine is
+    // reset to the initialized state after every signature, so it can be reused
+    // until the key is deleted or its private key changes. Removing the key id
+    // drops the engines of all threads.
+    private final Map<String, ThreadLocal<SignatureEngine>> signatureEngines = new ConcurrentHashMap<>();
 
     /**
      * Creates new worker.
@@ -170,6 +177,8 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         log.info("Deleting key file {}", path);
 
         Files.deleteIfExists(path);
+        privateKeys.remove(keyId);
+        signatureEngines.remove(keyId);
     }
 
     @Override
@@ -199,11 +208,22 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
         log.debug("Signing with key '{}' and signature algorithm '{}'", keyId, signatureAlgorithmId);
 
-        Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
-        signature.initSign(key);
-        signature.update(data);
+        ThreadLocal<SignatureEngine> threadEngine = signatureEngines.computeIfAbsent(keyId, id -> new ThreadLocal<>());
+        SignatureEngine engine = threadEngine.get();
+
+        if (engine == null || !engine.isFor(key, signatureAlgorithmId)) {
+            engine = new SignatureEngine(key, signatureAlgorithmId);
+            threadEngine.set(engine);
+        }
 
-        return signature.sign();
+        try {
+            return engine.sign(data);
+        } catch (Exception e) {
+            // The state of the engine is unknown after a failure
+            threadEngine.remove();
+
+            throw e;
+        }
     }
 
     private static void checkSignatureAlgorithm(String signatureAlgorithmId) throws CodedException {
@@ -212,6 +232,9 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
             case CryptoUtils.SHA256WITHRSA_ID:
             case CryptoUtils.SHA384WITHRSA_ID:
             case CryptoUtils.SHA512WITHRSA_ID:
+            case CryptoUtils.SHA256WITHECDSA_ID:
+            case CryptoUtils.SHA384WITHECDSA_ID:
+            case CryptoUtils.SHA512WITHECDSA_ID:
                 break;
             default:
                 throw CodedException.tr(X_UNSUPPORTED_SIGN_ALGORITHM, "unsupported_sign_algorithm",
@@ -219,6 +242,44 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
         }
     }
 
+    /**
+     * @param keyId the key id
+     * @return the signature engine of the current thread for the key id or null if there is none
+     */
+    SignatureEngine getSignatureEngine(String keyId) {
+        ThreadLocal<SignatureEngine> threadEngine = signatureEngines.get(keyId);
+
+        return threadEngine != null ? threadEngine.get() : null;
+    }
+
+    /**
+     * Signature instance initialized with a private key.
+     */
+    static final class SignatureEngine {
+
+        private final PrivateKey key;
+        private final boolean ecdsa;
+        private final Signature signature;
+
+        SignatureEngine(PrivateKey key, String signatureAlgorithmId) throws Exception {
+            this.key = key;
+            this.ecdsa = CryptoUtils.isEcdsaSignatureAlgorithm(signatureAlgorithmId);
+            this.signature = Signature.getInstance(ecdsa ? EC_SIGNATURE_ALGORITHM : SIGNATURE_ALGORITHM);
+
+            signature.initSign(key);
+        }
+
+        boolean isFor(PrivateKey privateKey, String signatureAlgorithmId) {
+            return key == privateKey && ecdsa == CryptoUtils.isEcdsaSignatureAlgorithm(signatureAlgorithmId);
+        }
+
+        byte[] sign(byte[] data) throws Exception {
+            signature.update(data);
+
+            return signature.sign();
+        }
+    }
+
     // ------------------------------------------------------------------------
 
     private void updateStatus() {
@@ -297,6 +358,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
             log.debug("Found usable key '{}'", keyId);
 
             privateKeys.put(keyId, pkey);
+            signatureEngines.remove(keyId);
         }
     }
 
@@ -320,7 +382,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     private void activateToken() throws Exception {
         try {
-            verifyPin(PasswordStore.getPassword(tokenId));
+            verifyPin(getStoredPin());
 
             setTokenStatus(tokenId, TokenStatusInfo.OK);
             setTokenActive(tokenId, true);
@@ -341,6 +403,7 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
 
     private void deactivateToken() {
         privateKeys.clear();
+        signatureEngines.clear();
 
         setTokenActive(tokenId, false);
     }
@@ -381,12 +444,16 @@ public class SoftwareTokenWorker extends AbstractTokenWorker {
     }
 
     private char[] getPin() throws Exception {
-        final char[] pin = PasswordStore.getPassword(tokenId);
+        final char[] pin = getStoredPin();
         verifyPinProvided(pin);
 
         return pin;
     }
 
+    char[] getStoredPin() throws Exception {
+        return PasswordStore.getPassword(tokenId);
+    }
+
     private static void verifyPinProvided(char[] pin) {
         if (pin == null || pin.length == 0) {
             throw new CodedException(X_INTERNAL_ERROR, "PIN not provided");
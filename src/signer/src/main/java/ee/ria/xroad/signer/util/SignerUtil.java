@@ -58,10 +58,13 @@ import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import static ee.ria.xroad.common.util.CryptoUtils.SHA1WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA256WITHECDSA_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA256WITHRSAANDMGF1_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA256WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA384WITHECDSA_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA384WITHRSAANDMGF1_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA384WITHRSA_ID;
+import static ee.ria.xroad.common.util.CryptoUtils.SHA512WITHECDSA_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA512WITHRSAANDMGF1_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.SHA512WITHRSA_ID;
 import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
@@ -100,6 +103,9 @@ public final class SignerUtil {
             case SHA256WITHRSAANDMGF1_ID:
             case SHA384WITHRSAANDMGF1_ID:
             case SHA512WITHRSAANDMGF1_ID:
+            case SHA256WITHECDSA_ID:
+            case SHA384WITHECDSA_ID:
+            case SHA512WITHECDSA_ID:
                 return digest; // Nothing to do
             case SHA1WITHRSA_ID:
             case SHA256WITHRSA_ID:
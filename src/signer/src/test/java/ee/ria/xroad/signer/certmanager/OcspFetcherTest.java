@@ -0,0 +1,336 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import ee.ria.xroad.common.DiagnosticsErrorCodes;
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConfProvider;
+
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.joda.time.DateTime;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests the concurrent OCSP fetcher against a local OCSP responder.
+ */
+public class OcspFetcherTest {
+
+    private static final int RESPONDER_PORT = 8092;
+
+    private static final String RESPONDER_URI = "http://127.0.0.1:" + RESPONDER_PORT;
+
+    private static final String UNAVAILABLE_RESPONDER_URI = "http://127.0.0.1:1234";
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private static Server ocspResponder;
+
+    private static volatile byte[] responseData;
+    private static volatile CountDownLatch responseGate;
+    private static volatile long responseDelayMillis;
+
+    private static final AtomicInteger REQUESTS = new AtomicInteger();
+    private static final AtomicInteger CONCURRENT_REQUESTS = new AtomicInteger();
+    private static final AtomicInteger MAX_CONCURRENT_REQUESTS = new AtomicInteger();
+
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void fetchesResponse() throws Exception {
+        OcspFetcher fetcher = new OcspFetcher(4, 3, 60000);
+        X509Certificate subject = TestCertUtil.getConsumer().certChain[0];
+
+        OcspFetcher.Result result = fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertNotNull(result.getResponse());
+        assertSame(subject, result.getSubject());
+        assertEquals(1, result.getAttempts().size());
+        assertEquals(DiagnosticsErrorCodes.RETURN_SUCCESS, result.getAttempts().get(0).getStatusCode());
+
+        OcspFetcher.ResponderMetrics metrics = getMetrics(fetcher, RESPONDER_URI);
+        assertEquals(1, metrics.getRequests());
+        assertEquals(0, metrics.getFailures());
+        assertTrue(metrics.isAvailable());
+    }
+
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void coalescesRequestsForSameCertificate() throws Exception {
+        OcspFetcher fetcher = new OcspFetcher(4, 3, 60000);
+        X509Certificate subject = TestCertUtil.getConsumer().certChain[0];
+
+        responseGate = new CountDownLatch(1);
+
+        CompletableFuture<OcspFetcher.Result> first = fetcher.fetch(subject);
+        CompletableFuture<OcspFetcher.Result> second = fetcher.fetch(subject);
+
+        assertSame(first, second);
+
+        responseGate.countDown();
+
+        assertNotNull(first.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResponse());
+        assertEquals(1, REQUESTS.get());
+
+        // a completed request is not reused
+        assertNotNull(fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResponse());
+        assertEquals(2, REQUESTS.get());
+    }
+
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void limitsConcurrentRequestsPerResponder() throws Exception {
+        OcspFetcher fetcher = new OcspFetcher(2, 3, 60000);
+
+        responseDelayMillis = 200;
+
+        List<CompletableFuture<OcspFetcher.Result>> results = new ArrayList<>();
+
+        for (X509Certificate subject : Arrays.asList(TestCertUtil.getConsumer().certChain[0],
+                TestCertUtil.getProducer().certChain[0], TestCertUtil.getCa2TestOrg().certChain[0],
+                TestCertUtil.getInternalKey().certChain[0])) {
+            results.add(fetcher.fetch(subject));
+        }
+
+        for (CompletableFuture<OcspFetcher.Result> result : results) {
+            assertNotNull(result.get(TIMEOUT_SECONDS, TimeUnit.SECONDS).getResponse());
+        }
+
+        assertEquals(4, REQUESTS.get());
+        assertEquals(2, MAX_CONCURRENT_REQUESTS.get());
+    }
+
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void skipsFailingResponder() throws Exception {
+        GlobalConfProvider conf = getTestGlobalConf();
+        when(conf.getOcspResponderAddresses(Mockito.any(X509Certificate.class))).thenReturn(
+                Arrays.asList(UNAVAILABLE_RESPONDER_URI, RESPONDER_URI));
+        GlobalConf.reload(conf);
+
+        OcspFetcher fetcher = new OcspFetcher(4, 2, 60000);
+        X509Certificate subject = TestCertUtil.getConsumer().certChain[0];
+
+        for (int i = 0; i < 2; i++) {
+            OcspFetcher.Result result = fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+            assertNotNull(result.getResponse());
+            assertEquals(2, result.getAttempts().size());
+            assertEquals(DiagnosticsErrorCodes.ERROR_CODE_OCSP_CONNECTION_ERROR,
+                    result.getAttempts().get(0).getStatusCode());
+        }
+
+        OcspFetcher.Result result = fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertNotNull(result.getResponse());
+        assertEquals(1, result.getAttempts().size());
+        assertEquals(RESPONDER_URI, result.getAttempts().get(0).getResponderURI());
+
+        OcspFetcher.ResponderMetrics metrics = getMetrics(fetcher, UNAVAILABLE_RESPONDER_URI);
+        assertEquals(2, metrics.getRequests());
+        assertEquals(2, metrics.getFailures());
+        assertEquals(1, metrics.getSkipped());
+        assertFalse(metrics.isAvailable());
+    }
+
+    /**
+     * Test.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void retriesFailingResponderAfterInterval() throws Exception {
+        OcspFetcher fetcher = new OcspFetcher(4, 1, 500);
+        X509Certificate subject = TestCertUtil.getConsumer().certChain[0];
+
+        byte[] goodResponse = responseData;
+        responseData = null;
+
+        OcspFetcher.Result result = fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertNull(result.getResponse());
+        assertEquals(1, result.getAttempts().size());
+
+        responseData = goodResponse;
+
+        // the responder is skipped until the retry interval has passed
+        result = fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertNull(result.getResponse());
+        assertTrue(result.getAttempts().isEmpty());
+
+        Thread.sleep(1000);
+
+        result = fetcher.fetch(subject).get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertNotNull(result.getResponse());
+        assertTrue(getMetrics(fetcher, RESPONDER_URI).isAvailable());
+    }
+
+    // ------------------------------------------------------------------------
+
+    /**
+     * BeforeClass
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void doBeforeClass() throws Exception {
+        ocspResponder = new Server(RESPONDER_PORT);
+        ocspResponder.setHandler(new TestOCSPResponder());
+        ocspResponder.start();
+    }
+
+    /**
+     * Before
+     * @throws Exception if an error occurs
+     */
+    @Before
+    public void startup() throws Exception {
+        GlobalConf.reload(getTestGlobalConf());
+
+        X509Certificate subject = TestCertUtil.getConsumer().certChain[0];
+        Date thisUpdate = new DateTime().plusDays(1).toDate();
+
+        responseData = OcspTestUtils.createOCSPResponse(subject, TestCertUtil.getCaCert(),
+                TestCertUtil.getOcspSigner().certChain[0], TestCertUtil.getOcspSigner().key, CertificateStatus.GOOD,
+                thisUpdate, null).getEncoded();
+        responseGate = null;
+        responseDelayMillis = 0;
+
+        REQUESTS.set(0);
+        CONCURRENT_REQUESTS.set(0);
+        MAX_CONCURRENT_REQUESTS.set(0);
+    }
+
+    /**
+     * AfterClass
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void shutdown() throws Exception {
+        if (ocspResponder != null) {
+            try {
+                ocspResponder.stop();
+            } finally {
+                ocspResponder = null;
+            }
+        }
+    }
+
+    private static OcspFetcher.ResponderMetrics getMetrics(OcspFetcher fetcher, String responderURI) {
+        return fetcher.getMetrics().stream()
+                .filter(m -> responderURI.equals(m.getResponderURI()))
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No metrics for " + responderURI));
+    }
+
+    private static GlobalConfProvider getTestGlobalConf() throws Exception {
+        GlobalConfProvider testConf = mock(GlobalConfProvider.class);
+
+        when(testConf.getOcspResponderAddresses(Mockito.any(X509Certificate.class))).thenReturn(
+                Arrays.asList(RESPONDER_URI));
+
+        when(testConf.getCaCert(Mockito.any(String.class), Mockito.any(X509Certificate.class))).thenReturn(
+                TestCertUtil.getCaCert());
+
+        return testConf;
+    }
+
+    private static class TestOCSPResponder extends AbstractHandler {
+
+        @Override
+        public void handle(String target, Request baseRequest, HttpServletRequest request,
+                HttpServletResponse response) throws IOException {
+            REQUESTS.incrementAndGet();
+            MAX_CONCURRENT_REQUESTS.accumulateAndGet(CONCURRENT_REQUESTS.incrementAndGet(), Math::max);
+
+            try {
+                CountDownLatch gate = responseGate;
+
+                if (gate != null) {
+                    gate.await(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                }
+
+                if (responseDelayMillis > 0) {
+                    Thread.sleep(responseDelayMillis);
+                }
+
+                response.setContentType("application/ocsp-response");
+
+                byte[] data = responseData;
+
+                if (data != null) {
+                    response.getOutputStream().write(data);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                CONCURRENT_REQUESTS.decrementAndGet();
+                baseRequest.setHandled(true);
+            }
+        }
+    }
+}
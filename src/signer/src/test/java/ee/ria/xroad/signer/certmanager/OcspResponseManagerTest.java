@@ -0,0 +1,199 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.certmanager;
+
+import ee.ria.xroad.common.OcspTestUtils;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.TestCertUtil;
+import ee.ria.xroad.common.conf.globalconf.EmptyGlobalConf;
+import ee.ria.xroad.common.conf.globalconf.GlobalConf;
+import ee.ria.xroad.signer.certmanager.OcspResponseManager.OcspResponsesDownloaded;
+import ee.ria.xroad.signer.protocol.message.OcspResponsesUpdated;
+import ee.ria.xroad.signer.protocol.message.SetOcspResponses;
+import ee.ria.xroad.signer.protocol.message.SubscribeOcspResponses;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.TestProbe;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the OCSP response manager pushes the responses to the subscribers.
+ */
+public class OcspResponseManagerTest {
+
+    private static final FiniteDuration TIMEOUT = Duration.create(5, TimeUnit.SECONDS);
+
+    @ClassRule
+    public static final TemporaryFolder OCSP_CACHE_DIR = new TemporaryFolder();
+
+    private static ActorSystem actorSystem;
+
+    private static OCSPResp ocspResponse;
+
+    private ActorRef manager;
+
+    private TestProbe subscriber;
+
+    /**
+     * Test that a new subscriber immediately receives the responses the manager already has.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void subscriberReceivesCachedResponses() throws Exception {
+        manager.tell(new SetOcspResponses(new String[] {"foo"}, new byte[][] {ocspResponse.getEncoded()}),
+                ActorRef.noSender());
+
+        OcspResponsesUpdated update = subscribe();
+
+        assertArrayEquals(new String[] {"foo"}, update.getCertHashes());
+        assertArrayEquals(ocspResponse.getEncoded(), update.getOcspResponses()[0]);
+        assertEquals(manager, subscriber.lastSender());
+    }
+
+    /**
+     * Test that responses set by the proxy are pushed to the subscribers.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void setResponsesArePushed() throws Exception {
+        assertEquals(0, subscribe().getCertHashes().length);
+
+        manager.tell(new SetOcspResponses(new String[] {"foo"}, new byte[][] {ocspResponse.getEncoded()}),
+                ActorRef.noSender());
+
+        OcspResponsesUpdated update = subscriber.expectMsgClass(TIMEOUT, OcspResponsesUpdated.class);
+
+        assertArrayEquals(new String[] {"foo"}, update.getCertHashes());
+        assertEquals(manager, subscriber.lastSender());
+    }
+
+    /**
+     * Test that responses downloaded by the child actors are pushed to the subscribers by the manager.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void downloadedResponsesArePushed() throws Exception {
+        assertEquals(0, subscribe().getCertHashes().length);
+
+        manager.tell(new OcspResponsesDownloaded(Collections.singletonMap("bar", ocspResponse)), ActorRef.noSender());
+
+        OcspResponsesUpdated update = subscriber.expectMsgClass(TIMEOUT, OcspResponsesUpdated.class);
+
+        assertArrayEquals(new String[] {"bar"}, update.getCertHashes());
+        assertArrayEquals(ocspResponse.getEncoded(), update.getOcspResponses()[0]);
+        assertEquals(manager, subscriber.lastSender());
+    }
+
+    /**
+     * Test to ensure a subscriber subscribing again is not notified twice.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void resubscribingDoesNotDuplicateNotifications() throws Exception {
+        subscribe();
+        subscribe();
+
+        manager.tell(new OcspResponsesDownloaded(Collections.singletonMap("bar", ocspResponse)), ActorRef.noSender());
+
+        subscriber.expectMsgClass(TIMEOUT, OcspResponsesUpdated.class);
+        subscriber.expectNoMsg(Duration.create(500, TimeUnit.MILLISECONDS));
+    }
+
+    private OcspResponsesUpdated subscribe() {
+        manager.tell(new SubscribeOcspResponses(), subscriber.ref());
+
+        return subscriber.expectMsgClass(TIMEOUT, OcspResponsesUpdated.class);
+    }
+
+    /**
+     * Creates the manager and the subscriber.
+     */
+    @Before
+    public void startup() {
+        manager = actorSystem.actorOf(Props.create(OcspResponseManager.class));
+        subscriber = new TestProbe(actorSystem);
+    }
+
+    /**
+     * Stops the manager.
+     */
+    @After
+    public void afterTest() {
+        actorSystem.stop(manager);
+    }
+
+    /**
+     * Creates the actor system and the test OCSP response.
+     * @throws Exception if an error occurs
+     */
+    @BeforeClass
+    public static void loadCerts() throws Exception {
+        System.setProperty(SystemProperties.OCSP_CACHE_PATH, OCSP_CACHE_DIR.getRoot().getAbsolutePath());
+
+        GlobalConf.reload(new EmptyGlobalConf());
+
+        X509Certificate issuer = TestCertUtil.getCertChainCert("root_ca.p12");
+        PrivateKey signerKey = TestCertUtil.getCertChainKey("root_ca.p12");
+        X509Certificate subject = TestCertUtil.getCertChainCert("user_0.p12");
+
+        ocspResponse = OcspTestUtils.createOCSPResponse(subject, issuer, issuer, signerKey, CertificateStatus.GOOD,
+                new DateTime().plusDays(1).toDate(), null);
+
+        actorSystem = ActorSystem.create();
+    }
+
+    /**
+     * Shuts down the actor system.
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void shutdown() throws Exception {
+        System.clearProperty(SystemProperties.OCSP_CACHE_PATH);
+
+        Await.ready(actorSystem.terminate(), Duration.Inf());
+    }
+}
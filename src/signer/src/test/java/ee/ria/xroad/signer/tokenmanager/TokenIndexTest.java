@@ -0,0 +1,132 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager;
+
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.model.Cert;
+import ee.ria.xroad.signer.model.CertRequest;
+import ee.ria.xroad.signer.model.Key;
+import ee.ria.xroad.signer.model.Token;
+import ee.ria.xroad.signer.tokenmanager.module.SoftwareModuleType;
+
+import org.junit.Test;
+
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import static ee.ria.xroad.common.util.CryptoUtils.calculateCertHexHash;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link TokenIndex}.
+ */
+public class TokenIndexTest {
+
+    @Test
+    public void indexesTokensKeysCertsAndCertRequests() throws Exception {
+        Token token = createToken("token");
+        Key key = createKey(token, "key");
+        Cert cert = createCert(key, "cert", new byte[] {1});
+        CertRequest certReq = new CertRequest("certReq", null, "CN=test");
+        key.addCertRequest(certReq);
+
+        TokenIndex index = new TokenIndex(Arrays.asList(token));
+
+        assertSame(token, index.getToken("token"));
+        assertSame(key, index.getKey("key"));
+        assertSame(token, index.getTokenForKey("key"));
+        assertSame(cert, index.getCert("cert"));
+        assertSame(key, index.getKeyForCert("cert"));
+        assertSame(cert, index.getCertForHash(cert.getHash()));
+        assertSame(key, index.getKeyForCertHash(cert.getHash()));
+        assertSame(certReq, index.getCertRequest("certReq"));
+        assertSame(key, index.getKeyForCertRequest("certReq"));
+
+        assertNull(index.getToken("missing"));
+        assertNull(index.getKey("missing"));
+        assertNull(index.getCert("missing"));
+        assertNull(index.getCertForHash("missing"));
+        assertNull(index.getCertRequest("missing"));
+    }
+
+    @Test
+    public void firstMatchWinsOnDuplicateIds() throws Exception {
+        Token token1 = createToken("token1");
+        Key key1 = createKey(token1, "key");
+        Cert cert1 = createCert(key1, "cert", new byte[] {1});
+
+        Token token2 = createToken("token2");
+        Key key2 = createKey(token2, "key");
+        createCert(key2, "cert", new byte[] {1});
+
+        TokenIndex index = new TokenIndex(Arrays.asList(token1, token2));
+
+        assertSame(key1, index.getKey("key"));
+        assertSame(token1, index.getTokenForKey("key"));
+        assertSame(cert1, index.getCert("cert"));
+        assertSame(key1, index.getKeyForCert("cert"));
+        assertSame(cert1, index.getCertForHash(calculateCertHexHash(new byte[] {1})));
+        assertSame(key1, index.getKeyForCertHash(calculateCertHexHash(new byte[] {1})));
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByLaterModifications() throws Exception {
+        Token token = createToken("token");
+        Key key = createKey(token, "key");
+
+        TokenIndex index = new TokenIndex(Arrays.asList(token));
+
+        createKey(token, "added");
+        token.getKeys().remove(key);
+
+        assertSame(key, index.getKey("key"));
+        assertNull(index.getKey("added"));
+    }
+
+    private static Token createToken(String id) {
+        return new Token(SoftwareModuleType.TYPE, id, CryptoUtils.CKM_RSA_PKCS_NAME);
+    }
+
+    private static Key createKey(Token token, String id) {
+        Key key = new Key(token, id);
+        token.addKey(key);
+
+        return key;
+    }
+
+    private static Cert createCert(Key key, String id, byte[] encoded) throws Exception {
+        X509Certificate certificate = mock(X509Certificate.class);
+        when(certificate.getEncoded()).thenReturn(encoded);
+
+        Cert cert = new Cert(id);
+        cert.setCertificate(certificate);
+        key.addCert(cert);
+
+        return cert;
+    }
+}
@@ -0,0 +1,321 @@
+/**
+ * The MIT License
+ * Copyright (c) 2018 Estonian Information System Authority (RIA),
+ * Nordic Institute for Interoperability Solutions (NIIS), Population Register Centre (VRK)
+ * Copyright (c) 2015-2017 Estonian Information System Authority (RIA), Population Register Centre (VRK)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package ee.ria.xroad.signer.tokenmanager.token;
+
+import ee.ria.xroad.common.CodedException;
+import ee.ria.xroad.common.SystemProperties;
+import ee.ria.xroad.common.util.CryptoUtils;
+import ee.ria.xroad.signer.protocol.dto.KeyInfo;
+import ee.ria.xroad.signer.protocol.dto.KeyUsageInfo;
+import ee.ria.xroad.signer.protocol.dto.TokenInfo;
+import ee.ria.xroad.signer.protocol.handler.GenerateCertRequestRequestHandler;
+import ee.ria.xroad.signer.protocol.message.ActivateToken;
+import ee.ria.xroad.signer.protocol.message.DeleteKey;
+import ee.ria.xroad.signer.protocol.message.GenerateCertRequest;
+import ee.ria.xroad.signer.protocol.message.GenerateKey;
+import ee.ria.xroad.signer.protocol.message.InitSoftwareToken;
+import ee.ria.xroad.signer.protocol.message.SuccessResponse;
+import ee.ria.xroad.signer.tokenmanager.TokenManager;
+import ee.ria.xroad.signer.tokenmanager.token.SoftwareTokenWorker.SignatureEngine;
+import ee.ria.xroad.signer.util.SignerUtil;
+
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.Props;
+import akka.testkit.TestActorRef;
+import akka.testkit.TestProbe;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import scala.concurrent.Await;
+import scala.concurrent.duration.Duration;
+import scala.concurrent.duration.FiniteDuration;
+
+import java.io.File;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+import java.util.concurrent.TimeUnit;
+
+import static ee.ria.xroad.common.ErrorCodes.X_WRONG_CERT_USAGE;
+import static ee.ria.xroad.common.util.CryptoUtils.calculateDigest;
+import static ee.ria.xroad.common.util.CryptoUtils.decodeBase64;
+import static ee.ria.xroad.common.util.CryptoUtils.getDigestAlgorithmId;
+import static ee.ria.xroad.common.util.CryptoUtils.readX509PublicKey;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the signing and key generation of the software token worker.
+ */
+public class SoftwareTokenWorkerTest {
+
+    private static final char[] PIN = "Secret1234".toCharArray();
+
+    private static final byte[] DATA = "Hello, world!".getBytes();
+
+    private static final FiniteDuration TIMEOUT = Duration.create(30, TimeUnit.SECONDS);
+
+    @ClassRule
+    public static final TemporaryFolder KEY_DIR = new TemporaryFolder();
+
+    private static ActorSystem actorSystem;
+
+    private static TokenInfo tokenInfo;
+
+    private TestActorRef<TestSoftwareTokenWorker> workerRef;
+
+    private SoftwareTokenWorker worker;
+
+    /**
+     * Test that a thread reuses its signature engine for the key.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void reuseSignatureEngine() throws Exception {
+        KeyInfo key = generateKey();
+
+        byte[] signature = sign(key.getId(), CryptoUtils.SHA256WITHRSA_ID);
+        SignatureEngine engine = worker.getSignatureEngine(key.getId());
+
+        assertNotNull(engine);
+        assertTrue(verify(key, "SHA256withRSA", signature));
+
+        signature = sign(key.getId(), CryptoUtils.SHA256WITHRSA_ID);
+
+        assertSame(engine, worker.getSignatureEngine(key.getId()));
+        assertTrue(verify(key, "SHA256withRSA", signature));
+
+        // another signature algorithm of the same key type uses the same engine
+        sign(key.getId(), CryptoUtils.SHA512WITHRSA_ID);
+
+        assertSame(engine, worker.getSignatureEngine(key.getId()));
+    }
+
+    /**
+     * Test that the signature engines are dropped when the token is deactivated.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void dropSignatureEnginesOnDeactivate() throws Exception {
+        KeyInfo key = generateKey();
+
+        sign(key.getId(), CryptoUtils.SHA256WITHRSA_ID);
+        SignatureEngine engine = worker.getSignatureEngine(key.getId());
+
+        assertNotNull(engine);
+
+        workerRef.tell(new ActivateToken(tokenInfo.getId(), false), ActorRef.noSender());
+
+        assertNull(worker.getSignatureEngine(key.getId()));
+
+        activate();
+        byte[] signature = sign(key.getId(), CryptoUtils.SHA256WITHRSA_ID);
+
+        // the private key is loaded again, so a new engine is needed as well
+        assertNotSame(engine, worker.getSignatureEngine(key.getId()));
+        assertTrue(verify(key, "SHA256withRSA", signature));
+    }
+
+    /**
+     * Test that the signature engines are dropped when the key is deleted.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void dropSignatureEnginesOnDeleteKey() throws Exception {
+        KeyInfo key = generateKey();
+        KeyInfo otherKey = generateKey();
+
+        sign(key.getId(), CryptoUtils.SHA256WITHRSA_ID);
+        sign(otherKey.getId(), CryptoUtils.SHA256WITHRSA_ID);
+
+        TestProbe sender = new TestProbe(actorSystem);
+        workerRef.tell(new DeleteKey(key.getId(), true), sender.ref());
+        sender.expectMsgClass(TIMEOUT, SuccessResponse.class);
+
+        assertNull(worker.getSignatureEngine(key.getId()));
+        assertNotNull(worker.getSignatureEngine(otherKey.getId()));
+        assertFalse(new File(SoftwareTokenUtil.getKeyStoreFileName(key.getId())).exists());
+    }
+
+    /**
+     * Test that EC keys are generated on the curve configured with the system parameters and sign with ECDSA.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void generateEcKey() throws Exception {
+        System.setProperty(SystemProperties.SIGNER_KEY_ALGORITHM, "EC");
+        System.setProperty(SystemProperties.SIGNER_KEY_EC_CURVE, "secp384r1");
+
+        KeyInfo key = generateKey();
+        PublicKey publicKey = readX509PublicKey(decodeBase64(key.getPublicKey()));
+
+        assertEquals(CryptoUtils.CKM_ECDSA_NAME, key.getSignMechanismName());
+        assertTrue(publicKey instanceof ECPublicKey);
+        assertEquals(384, ((ECPublicKey) publicKey).getParams().getCurve().getField().getFieldSize());
+
+        byte[] signature = sign(key.getId(), CryptoUtils.SHA384WITHECDSA_ID);
+
+        assertTrue(verify(key, "SHA384withECDSA", signature));
+    }
+
+    /**
+     * Test that RSA keys are generated by default.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void generateRsaKeyByDefault() throws Exception {
+        KeyInfo key = generateKey();
+
+        assertEquals(CryptoUtils.CKM_RSA_PKCS_NAME, key.getSignMechanismName());
+        assertEquals("RSA", readX509PublicKey(decodeBase64(key.getPublicKey())).getAlgorithm());
+    }
+
+    /**
+     * Test to ensure authentication certificate requests are not created for EC keys.
+     * @throws Exception if an error occurs
+     */
+    @Test
+    public void rejectAuthCertRequestForEcKey() throws Exception {
+        System.setProperty(SystemProperties.SIGNER_KEY_ALGORITHM, "EC");
+
+        KeyInfo key = generateKey();
+
+        TestProbe sender = new TestProbe(actorSystem);
+        ActorRef handler = actorSystem.actorOf(Props.create(GenerateCertRequestRequestHandler.class));
+        handler.tell(new GenerateCertRequest(key.getId(), null, KeyUsageInfo.AUTHENTICATION, "C=EE, CN=test",
+                GenerateCertRequest.RequestFormat.PEM), sender.ref());
+
+        CodedException error = sender.expectMsgClass(TIMEOUT, CodedException.class);
+
+        assertTrue(error.getFaultCode().endsWith(X_WRONG_CERT_USAGE));
+        assertTrue(TokenManager.getKeyInfo(key.getId()).getCertRequests().isEmpty());
+    }
+
+    private KeyInfo generateKey() {
+        TestProbe sender = new TestProbe(actorSystem);
+        workerRef.tell(new GenerateKey(tokenInfo.getId(), "test"), sender.ref());
+
+        return sender.expectMsgClass(TIMEOUT, KeyInfo.class);
+    }
+
+    private byte[] sign(String keyId, String signatureAlgorithmId) throws Exception {
+        byte[] digest = calculateDigest(getDigestAlgorithmId(signatureAlgorithmId), DATA);
+
+        return worker.sign(keyId, signatureAlgorithmId, SignerUtil.createDataToSign(digest, signatureAlgorithmId));
+    }
+
+    private static boolean verify(KeyInfo key, String algorithm, byte[] signature) throws Exception {
+        Signature verifier = Signature.getInstance(algorithm);
+        verifier.initVerify(readX509PublicKey(decodeBase64(key.getPublicKey())));
+        verifier.update(DATA);
+
+        return verifier.verify(signature);
+    }
+
+    private void activate() {
+        workerRef.tell(new ActivateToken(tokenInfo.getId(), true), ActorRef.noSender());
+    }
+
+    /**
+     * Creates an initialized and activated software token.
+     */
+    @Before
+    public void startup() {
+        workerRef = TestActorRef.create(actorSystem,
+                Props.create(TestSoftwareTokenWorker.class, tokenInfo, new SoftwareTokenType()));
+        worker = workerRef.underlyingActor();
+
+        workerRef.tell(new InitSoftwareToken(PIN), ActorRef.noSender());
+        activate();
+    }
+
+    /**
+     * Stops the worker and restores the default key type.
+     */
+    @After
+    public void afterTest() {
+        workerRef.stop();
+
+        System.clearProperty(SystemProperties.SIGNER_KEY_ALGORITHM);
+        System.clearProperty(SystemProperties.SIGNER_KEY_EC_CURVE);
+    }
+
+    /**
+     * Creates the actor system and the software token.
+     */
+    @BeforeClass
+    public static void setUp() {
+        System.setProperty(SystemProperties.KEY_CONFIGURATION_FILE,
+                new File(KEY_DIR.getRoot(), "keyconf.xml").getAbsolutePath());
+
+        tokenInfo = TokenManager.getTokenInfo(SoftwareTokenType.ID);
+        if (tokenInfo == null) {
+            tokenInfo = TokenManager.createToken(new SoftwareTokenType());
+        }
+
+        actorSystem = ActorSystem.create();
+    }
+
+    /**
+     * Shuts down the actor system.
+     * @throws Exception if an error occurs
+     */
+    @AfterClass
+    public static void shutdown() throws Exception {
+        System.clearProperty(SystemProperties.KEY_CONFIGURATION_FILE);
+
+        Await.ready(actorSystem.terminate(), Duration.Inf());
+    }
+
+    /**
+     * Software token worker that reads the PIN from memory instead of the shared memory password store.
+     */
+    static class TestSoftwareTokenWorker extends SoftwareTokenWorker {
+
+        TestSoftwareTokenWorker(TokenInfo tokenInfo, SoftwareTokenType tokenType) {
+            super(tokenInfo, tokenType);
+        }
+
+        @Override
+        protected boolean isPinStored() {
+            return true;
+        }
+
+        @Override
+        char[] getStoredPin() {
+            return PIN;
+        }
+    }
+}